@@ -0,0 +1,44 @@
+package com.example.fitness.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Runs Tomcat request handling on virtual threads when
+ * {@code fitness.threads.virtual=true}. Requests mostly wait on the
+ * NutriFlow service and the database, so one virtual thread per
+ * request replaces the bounded worker pool. Virtual threads are
+ * reached through reflection so the application still builds for
+ * Java 17.
+ */
+@Configuration
+@ConditionalOnProperty(name = "fitness.threads.virtual",
+        havingValue = "true")
+public class VirtualThreadConfig {
+
+    /**
+     * Hands every Tomcat request to a new virtual thread.
+     *
+     * @return the protocol handler customizer
+     * @throws IllegalStateException if the runtime has no virtual threads
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler>
+            virtualThreadProtocolHandlerCustomizer() {
+        final ExecutorService executor;
+        try {
+            executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Virtual threads need Java 21 "
+                    + "or later; running on " + Runtime.version(), ex);
+        }
+        return handler -> handler.setExecutor(executor);
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Runtime configuration of the application.
+ */
+package com.example.fitness.config;
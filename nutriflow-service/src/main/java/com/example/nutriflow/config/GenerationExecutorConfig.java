@@ -0,0 +1,213 @@
+package com.example.nutriflow.config;
+
+import com.example.nutriflow.service.ai.ClientContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Configuration of the thread pools that run AI recipe generation.
+ * Keeping model calls on a dedicated, sized pool gives AI concurrency
+ * its own knob, independent of the servlet container threads. The AI
+ * endpoints hand their requests to another pool, so servlet threads
+ * stay free for cheap endpoints while the model is called.
+ * Speculative work has a separate, smaller pool so it can never take
+ * threads from interactive generation, and streamed meal plans write
+ * to their clients from a pool of their own, so a slow client never
+ * holds a generation thread or a timer thread. Every pool carries the
+ * submitting thread's {@link ClientContext} over to its tasks, so
+ * model usage is accounted to the client that caused it.
+ * With {@code nutriflow.threads.virtual=true} (Java 21) the generation,
+ * request and hedging pools run their tasks on virtual threads. Their
+ * sizes and queues still bound AI concurrency; only the cost of a
+ * thread blocked on the model goes away. Pre-generation keeps its
+ * low-priority platform threads.
+ */
+@Configuration
+public class GenerationExecutorConfig {
+
+    /** Bean name of the AI generation executor. */
+    public static final String AI_GENERATION_EXECUTOR =
+        "aiGenerationExecutor";
+
+    /** Bean name of the executor handling AI endpoint requests. */
+    public static final String AI_REQUEST_EXECUTOR = "aiRequestExecutor";
+
+    /** Bean name of the background recipe pre-generation executor. */
+    public static final String AI_PREFETCH_EXECUTOR = "aiPrefetchExecutor";
+
+    /** Bean name of the executor running hedged model calls. */
+    public static final String AI_HEDGE_EXECUTOR = "aiHedgeExecutor";
+
+    /** Bean name of the executor writing streamed meal plans. */
+    public static final String MEAL_PLAN_STREAM_EXECUTOR =
+        "mealPlanStreamExecutor";
+
+    /** Whether pool threads are virtual threads. */
+    @Value("${nutriflow.threads.virtual:false}")
+    private boolean virtualThreads;
+
+    /**
+     * Creates the executor used for AI recipe generation.
+     * When both the threads and the queue are busy the submitting
+     * thread runs the task itself, which slows producers down instead
+     * of dropping work.
+     *
+     * @param poolSize number of generation threads
+     * @param queueCapacity number of tasks that may wait for a thread
+     * @return the generation executor
+     */
+    @Bean(name = AI_GENERATION_EXECUTOR)
+    public ThreadPoolTaskExecutor aiGenerationExecutor(
+            final @Value("${nutriflow.ai.executor.pool-size:8}")
+                int poolSize,
+            final @Value("${nutriflow.ai.executor.queue-capacity:200}")
+                int queueCapacity) {
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("ai-gen-");
+        useVirtualThreads(executor);
+        executor.setRejectedExecutionHandler(
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setTaskDecorator(ClientContext::wrap);
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Creates the executor that handles requests to the AI endpoints
+     * off the servlet threads. It is separate from the generation
+     * executor because meal plan requests wait on generation tasks;
+     * sharing one pool could leave every thread waiting. Streamed
+     * recipes are generated here too. When both the threads and the
+     * queue are busy new requests are rejected, and the endpoints
+     * answer 503 instead of tying up a servlet thread.
+     *
+     * @param poolSize number of request threads
+     * @param queueCapacity number of requests that may wait for a thread
+     * @return the request executor
+     */
+    @Bean(name = AI_REQUEST_EXECUTOR)
+    public ThreadPoolTaskExecutor aiRequestExecutor(
+            final @Value("${nutriflow.ai.request-executor.pool-size:32}")
+                int poolSize,
+            final @Value("${nutriflow.ai.request-executor.queue-capacity:100}")
+                int queueCapacity) {
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("ai-req-");
+        useVirtualThreads(executor);
+        executor.setRejectedExecutionHandler(
+            new ThreadPoolExecutor.AbortPolicy());
+        executor.setTaskDecorator(ClientContext::wrap);
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Creates the executor used to pre-generate recipes in the
+     * background. Its threads run at minimum priority, and when the
+     * queue is full new tasks are rejected rather than run by the
+     * submitting request thread.
+     *
+     * @param threads number of pre-generation threads
+     * @param queueCapacity number of tasks that may wait for a thread
+     * @return the pre-generation executor
+     */
+    @Bean(name = AI_PREFETCH_EXECUTOR)
+    public ThreadPoolTaskExecutor aiPrefetchExecutor(
+            final @Value("${nutriflow.ai.prefetch.threads:1}") int threads,
+            final @Value("${nutriflow.ai.prefetch.queue-capacity:50}")
+                int queueCapacity) {
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("ai-prefetch-");
+        executor.setThreadPriority(Thread.MIN_PRIORITY);
+        executor.setDaemon(true);
+        executor.setRejectedExecutionHandler(
+            new ThreadPoolExecutor.AbortPolicy());
+        executor.setTaskDecorator(ClientContext::wrap);
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Creates the executor that runs both attempts of a hedged model
+     * call. Tasks never wait in a queue: when every thread is busy the
+     * call runs unhedged on the caller's thread instead.
+     *
+     * @param threads maximum number of attempts running at once
+     * @return the hedging executor
+     */
+    @Bean(name = AI_HEDGE_EXECUTOR)
+    public ThreadPoolTaskExecutor aiHedgeExecutor(
+            final @Value("${nutriflow.ai.hedge.threads:16}") int threads) {
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("ai-hedge-");
+        useVirtualThreads(executor);
+        executor.setDaemon(true);
+        executor.setRejectedExecutionHandler(
+            new ThreadPoolExecutor.AbortPolicy());
+        executor.setTaskDecorator(ClientContext::wrap);
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Creates the executor that sends the meals, days and plan of
+     * streamed meal plans to their clients. Each plan runs its sends
+     * one at a time in order on this pool. When both the threads and
+     * the queue are busy the send is rejected and that stream fails.
+     *
+     * @param poolSize number of threads writing to clients
+     * @param queueCapacity number of sends that may wait for a thread
+     * @return the stream executor
+     */
+    @Bean(name = MEAL_PLAN_STREAM_EXECUTOR)
+    public ThreadPoolTaskExecutor mealPlanStreamExecutor(
+            final @Value("${nutriflow.mealplan.stream-executor.pool-size:8}")
+                int poolSize,
+            final @Value(
+                "${nutriflow.mealplan.stream-executor.queue-capacity:1000}")
+                int queueCapacity) {
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("plan-stream-");
+        useVirtualThreads(executor);
+        executor.setRejectedExecutionHandler(
+            new ThreadPoolExecutor.AbortPolicy());
+        executor.setTaskDecorator(ClientContext::wrap);
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Makes the pool start virtual threads, named after its prefix,
+     * when virtual threads are enabled.
+     */
+    private void useVirtualThreads(final ThreadPoolTaskExecutor executor) {
+        if (virtualThreads) {
+            executor.setThreadFactory(
+                VirtualThreads.factory(executor.getThreadNamePrefix()));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.nutriflow.config;
+
+import java.util.concurrent.ExecutorService;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Runs Tomcat request handling on virtual threads when
+ * {@code nutriflow.threads.virtual=true} (Java 21 or later). Requests
+ * spend most of their time waiting on the model, the database or
+ * other services, so one virtual thread per request replaces the
+ * bounded worker pool. The AI pools switch to virtual threads in
+ * {@link GenerationExecutorConfig} under the same switch.
+ */
+@Configuration
+@ConditionalOnProperty(name = "nutriflow.threads.virtual",
+    havingValue = "true")
+public class VirtualThreadConfig {
+
+    /**
+     * Hands every Tomcat request to a new virtual thread. Fails at
+     * startup on runtimes without virtual threads.
+     *
+     * @return the protocol handler customizer
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler>
+        virtualThreadProtocolHandlerCustomizer() {
+        final ExecutorService executor =
+            VirtualThreads.newThreadPerTaskExecutor("tomcat-vt-");
+        return handler -> handler.setExecutor(executor);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.nutriflow.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to the virtual threads of Java 21 through reflection, so the
+ * service still compiles for and runs on Java 17 as long as they are
+ * not enabled.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Creates a factory of virtual threads named {@code prefix0},
+     * {@code prefix1}, and so on.
+     *
+     * @param namePrefix prefix of the thread names
+     * @return the thread factory
+     * @throws IllegalStateException if the runtime has no virtual threads
+     */
+    static ThreadFactory factory(final String namePrefix) {
+        try {
+            final Class<?> builderType =
+                Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class)
+                .invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory")
+                .invoke(builder);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Virtual threads need Java 21 "
+                + "or later; running on " + Runtime.version(), ex);
+        }
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread per task.
+     *
+     * @param namePrefix prefix of the thread names
+     * @return the executor
+     * @throws IllegalStateException if the runtime has no virtual threads
+     */
+    static ExecutorService newThreadPerTaskExecutor(final String namePrefix) {
+        final ThreadFactory factory = factory(namePrefix);
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                .invoke(null, factory);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException(
+                "Cannot create a virtual thread executor", ex);
+        }
+    }
+}
@@ -1,13 +1,19 @@
 package com.example.nutriflow.config;
 
+import com.example.nutriflow.interceptor.AdaptiveConcurrencyFilter;
+import com.example.nutriflow.interceptor.ClientBulkheadFilter;
 import com.example.nutriflow.interceptor.ClientTrackingInterceptor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 /**
- * Web MVC configuration for registering interceptors.
+ * Web MVC configuration for registering interceptors and the inbound
+ * per-client bulkhead and concurrency filters.
  */
 @Configuration
 public class WebMvcConfig implements WebMvcConfigurer {
@@ -16,6 +22,14 @@ public class WebMvcConfig implements WebMvcConfigurer {
     @Autowired
     private ClientTrackingInterceptor clientTrackingInterceptor;
 
+    /** Filter shedding requests beyond the adaptive concurrency limits. */
+    @Autowired
+    private AdaptiveConcurrencyFilter adaptiveConcurrencyFilter;
+
+    /** Filter isolating clients from each other. */
+    @Autowired
+    private ClientBulkheadFilter clientBulkheadFilter;
+
     /**
      * Registers interceptors for tracking client requests.
      * @param registry the interceptor registry
@@ -25,4 +39,35 @@ public class WebMvcConfig implements WebMvcConfigurer {
         registry.addInterceptor(clientTrackingInterceptor)
                 .addPathPatterns("/api/**");
     }
+
+    /**
+     * Registers the per-client bulkhead filter for API requests, ahead
+     * of every other filter so a throttled client takes no capacity.
+     * @return the filter registration
+     */
+    @Bean
+    public FilterRegistrationBean<ClientBulkheadFilter>
+        clientBulkheadFilterRegistration() {
+        final FilterRegistrationBean<ClientBulkheadFilter> registration =
+            new FilterRegistrationBean<>(clientBulkheadFilter);
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    /**
+     * Registers the adaptive concurrency filter for API requests, right
+     * after the bulkhead filter so shed requests cost as little as
+     * possible.
+     * @return the filter registration
+     */
+    @Bean
+    public FilterRegistrationBean<AdaptiveConcurrencyFilter>
+        adaptiveConcurrencyFilterRegistration() {
+        final FilterRegistrationBean<AdaptiveConcurrencyFilter> registration =
+            new FilterRegistrationBean<>(adaptiveConcurrencyFilter);
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
 }
@@ -0,0 +1,169 @@
+package com.example.nutriflow.controller;
+
+import com.example.nutriflow.interceptor.AdaptiveConcurrencyFilter;
+import com.example.nutriflow.interceptor.ClientBulkheadFilter;
+import com.example.nutriflow.service.GeneratedRecipeWriter;
+import com.example.nutriflow.service.PersonalizedRecipeCache;
+import com.example.nutriflow.service.PromptCompactor;
+import com.example.nutriflow.service.RecipePrefetcher;
+import com.example.nutriflow.service.UsageAnalytics;
+import com.example.nutriflow.service.ai.AIResponseCache;
+import com.example.nutriflow.service.ai.AIUsageMetrics;
+import com.example.nutriflow.service.ai.ModelCallHedger;
+import com.example.nutriflow.service.ai.ModelCallLimiter;
+import com.example.nutriflow.service.ai.ModelCircuitBreaker;
+import com.example.nutriflow.service.ai.ModelRouter;
+import com.example.nutriflow.service.ai.RequestCoalescer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * REST controller exposing runtime metrics of the AI recipe pipeline.
+ */
+@RestController
+@RequestMapping("/api/ai/metrics")
+public class AIMetricsController {
+
+    /** Cache of model responses. */
+    @Autowired
+    private AIResponseCache responseCache;
+
+    /** Per-user pools of generated recipes. */
+    @Autowired
+    private PersonalizedRecipeCache personalCache;
+
+    /** Compaction of user prompts. */
+    @Autowired
+    private PromptCompactor promptCompactor;
+
+    /** Background pre-generation of personal pools. */
+    @Autowired
+    private RecipePrefetcher prefetcher;
+
+    /** Coalescer of concurrent identical generation requests. */
+    @Autowired
+    private RequestCoalescer coalescer;
+
+    /** Outbound limiter of model calls. */
+    @Autowired
+    private ModelCallLimiter limiter;
+
+    /** Hedging of slow model calls. */
+    @Autowired
+    private ModelCallHedger hedger;
+
+    /** Model routing and per-model statistics. */
+    @Autowired
+    private ModelRouter router;
+
+    /** Circuit breaker around model calls. */
+    @Autowired
+    private ModelCircuitBreaker breaker;
+
+    /** Background writer of generated recipes. */
+    @Autowired
+    private GeneratedRecipeWriter recipeWriter;
+
+    /** Model usage per client, prompt kind and model. */
+    @Autowired
+    private AIUsageMetrics usage;
+
+    /** Adaptive inbound concurrency limits. */
+    @Autowired
+    private AdaptiveConcurrencyFilter concurrencyFilter;
+
+    /** Per-client bulkheads. */
+    @Autowired
+    private ClientBulkheadFilter bulkheadFilter;
+
+    /** Usage analytics pipeline. */
+    @Autowired
+    private UsageAnalytics usageAnalytics;
+
+    /**
+     * GET endpoint returning a snapshot of the AI pipeline counters.
+     *
+     * Example:
+     * /api/ai/metrics - returns inbound concurrency limit, usage
+     * analytics pipeline, response cache, coalescing, model limiter,
+     * hedging, model routing, circuit breaker, prompt compaction and
+     * pre-generation counters
+     * @return ResponseEntity containing the metrics grouped by component
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getMetrics() {
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("inboundConcurrency", concurrencyFilter.stats());
+        metrics.put("usageAnalytics", usageAnalytics.stats());
+        metrics.put("responseCache", responseCache.stats());
+        metrics.put("personalCache", personalCache.stats());
+        metrics.put("prefetch", prefetcher.stats());
+        metrics.put("promptCompaction", promptCompactor.stats());
+        metrics.put("coalescing", coalescer.stats());
+        metrics.put("modelLimiter", limiter.stats());
+        metrics.put("hedging", hedger.stats());
+        metrics.put("modelRouting", router.stats());
+        metrics.put("circuitBreaker", breaker.stats());
+        metrics.put("recipeWriter", recipeWriter.stats());
+        return ResponseEntity.ok(metrics);
+    }
+
+    /**
+     * GET endpoint returning model usage broken down by client
+     * ({@code X-Client-Id}), prompt kind and model: calls, errors,
+     * parse failures, latency histograms, prompt and output tokens,
+     * and requests served from caches or coalesced. Clients using the
+     * most tokens come first.
+     *
+     * Example:
+     * /api/ai/metrics/usage - returns the usage of every client
+     * /api/ai/metrics/usage?clientId=web - returns one client's usage
+     * @param clientId optional client to report on
+     * @return ResponseEntity containing the usage, or 404 if the given
+     *         client made no requests
+     */
+    @GetMapping("/usage")
+    public ResponseEntity<Map<String, Object>> getUsage(
+            final @RequestParam(name = "clientId",
+                required = false) String clientId) {
+        if (clientId == null) {
+            return ResponseEntity.ok(usage.stats());
+        }
+        final Map<String, Object> stats = usage.stats(clientId);
+        return stats.isEmpty()
+            ? ResponseEntity.notFound().build() : ResponseEntity.ok(stats);
+    }
+
+    /**
+     * GET endpoint returning the per-client bulkheads keyed on
+     * {@code X-Client-Id}: quota, slots and overflow slots in use, queue
+     * depth, admitted, borrowed, rejected and timed-out requests, queue
+     * wait and latency. Clients with the most rejected requests come
+     * first.
+     *
+     * Example:
+     * /api/ai/metrics/clients - returns the overflow pool and every
+     * client's bulkhead
+     * /api/ai/metrics/clients?clientId=web - returns one client's bulkhead
+     * @param clientId optional client to report on
+     * @return ResponseEntity containing the bulkheads, or 404 if the given
+     *         client made no requests
+     */
+    @GetMapping("/clients")
+    public ResponseEntity<Map<String, Object>> getClientBulkheads(
+            final @RequestParam(name = "clientId",
+                required = false) String clientId) {
+        if (clientId == null) {
+            return ResponseEntity.ok(bulkheadFilter.stats());
+        }
+        final Map<String, Object> stats = bulkheadFilter.stats(clientId);
+        return stats.isEmpty()
+            ? ResponseEntity.notFound().build() : ResponseEntity.ok(stats);
+    }
+}
@@ -1,17 +1,41 @@
 package com.example.nutriflow.controller;
 
+import com.example.nutriflow.config.GenerationExecutorConfig;
+import com.example.nutriflow.model.Recipe;
 import com.example.nutriflow.service.AIRecipeService;
+import com.example.nutriflow.service.RecipePrefetcher;
+import com.example.nutriflow.service.RecipeStreamListener;
+import com.example.nutriflow.service.ai.ModelOverloadedException;
+import com.example.nutriflow.service.ai.StreamCancelledException;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 /**
  * REST controller for managing AI recipe-related operations.
  * Provides endpoints for retrieving ai generated recipes.
+ * Requests are handled asynchronously on the AI request executor, so
+ * they do not hold a servlet thread while the model is called.
  */
 @RestController
 @RequestMapping("/api/ai/recipes")
@@ -19,6 +43,19 @@ public class AIRecipeController {
     /** Service handling recipe-related logic. */
     @Autowired
     private AIRecipeService aiRecipeService;
+    /** Pre-generates recipes for users who request them regularly. */
+    @Autowired
+    private RecipePrefetcher prefetcher;
+    /** Executor handling requests to the AI endpoints. */
+    @Autowired
+    @Qualifier(GenerationExecutorConfig.AI_REQUEST_EXECUTOR)
+    private AsyncTaskExecutor requestExecutor;
+    /** Time a recipe request may take, in milliseconds. */
+    @Value("${nutriflow.ai.request-timeout-ms:60000}")
+    private long requestTimeoutMs;
+    /** Time a recipe stream may stay open, in milliseconds. */
+    @Value("${nutriflow.ai.stream-timeout-ms:120000}")
+    private long streamTimeoutMs;
 
     /**
      * GET endpoint to retrieve a recipe with the given ingredient.
@@ -30,18 +67,24 @@ public class AIRecipeController {
      * /api/ai/recipes/ingredient/{ingredient} - returns a recipe
      * with the given ingredient.
      * @param ingredient ingredient that the user wants to use
-     * @return ResponseEntity containing the appropriate recipe
+     * @return ResponseEntity containing the appropriate recipe, or 503
+     *         if the request could not be handled in time
      */
     @GetMapping("/ingredient/{ingredient}")
-    public ResponseEntity<?> getAIRecipe(
+    public DeferredResult<ResponseEntity<?>> getAIRecipe(
         final @PathVariable String ingredient) {
-        try {
-            return ResponseEntity.ok(
-                aiRecipeService.getAIRecipe(ingredient));
-        } catch (Exception e) {
-        return ResponseEntity.badRequest()
-            .body(Map.of("error", e.getMessage()));
-        }
+        return AsyncResponses.submit(requestExecutor, requestTimeoutMs,
+            () -> {
+                try {
+                    return ResponseEntity.ok(
+                        aiRecipeService.getAIRecipe(ingredient));
+                } catch (ModelOverloadedException e) {
+                    return overloaded(e);
+                } catch (Exception e) {
+                    return ResponseEntity.badRequest()
+                        .body(Map.of("error", e.getMessage()));
+                }
+            });
     }
 
     /**
@@ -49,17 +92,23 @@ public class AIRecipeController {
      * An LLM recommends a randomly generated delicious recipe.
      * Example:
      * /api/ai/recipes/recommendation - returns some AI recommended recipe
-     * @return ResponseEntity containing a recommended recipe
+     * @return ResponseEntity containing a recommended recipe, or 503
+     *         if the request could not be handled in time
      */
     @GetMapping("/recommendation")
-    public ResponseEntity<?> getAIRecommendedRecipe() {
-        try {
-            return ResponseEntity.ok(
-                aiRecipeService.getAIRecommendedRecipe());
-        } catch (Exception e) {
-        return ResponseEntity.badRequest()
-            .body(Map.of("error", e.getMessage()));
-        }
+    public DeferredResult<ResponseEntity<?>> getAIRecommendedRecipe() {
+        return AsyncResponses.submit(requestExecutor, requestTimeoutMs,
+            () -> {
+                try {
+                    return ResponseEntity.ok(
+                        aiRecipeService.getAIRecommendedRecipe());
+                } catch (ModelOverloadedException e) {
+                    return overloaded(e);
+                } catch (Exception e) {
+                    return ResponseEntity.badRequest()
+                        .body(Map.of("error", e.getMessage()));
+                }
+            });
     }
 
     /**
@@ -68,18 +117,157 @@ public class AIRecipeController {
      * /api/ai/recipes/user/{userId} - returns a recipe
      * using the user's information
      * @param userId user identifier
-     * @return ResponseEntity containing the appropriate recipe
+     * @return ResponseEntity containing the appropriate recipe, or 503
+     *         if the request could not be handled in time
      */
     @GetMapping("/user/{userId}")
-    public ResponseEntity<?> getUserRecipe(
+    public DeferredResult<ResponseEntity<?>> getUserRecipe(
         final @PathVariable Integer userId) {
+        return AsyncResponses.submit(requestExecutor, requestTimeoutMs,
+            () -> {
+                try {
+                    final Recipe recipe =
+                        aiRecipeService.getUserRecipe(userId);
+                    prefetcher.recordActivity(userId);
+                    return ResponseEntity.ok(recipe);
+                } catch (ModelOverloadedException e) {
+                    return overloaded(e);
+                } catch (Exception e) {
+                    return ResponseEntity.badRequest()
+                        .body(Map.of("error", e.getMessage()));
+                }
+            });
+    }
+
+    /**
+     * GET endpoint streaming a recipe for the user as Server-Sent Events,
+     * so the client can show it while it is generated.
+     * A {@code title} event is sent once the title is generated, an
+     * {@code ingredients} event with the ingredient array once it is
+     * complete, {@code instructions} events with each new piece of the
+     * instruction text, and a final {@code recipe} event with the whole
+     * recipe. Failures end the stream with an {@code error} event,
+     * carrying {@code retryAfterSeconds} when the model is overloaded.
+     * When no AI request thread is free the answer is 503 with a single
+     * such event. If the client goes away the generation is stopped.
+     *
+     * Example:
+     * /api/ai/recipes/user/{userId}/stream - streams a recipe
+     * using the user's information
+     * @param userId user identifier
+     * @return the event stream, or 503 with an {@code error} event if
+     *         the request could not be started
+     */
+    @GetMapping(value = "/user/{userId}/stream",
+        produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamUserRecipe(
+        final @PathVariable Integer userId) {
+        final SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        final CompletableFuture<Recipe> recipe;
         try {
-            return ResponseEntity.ok(
-                aiRecipeService.getUserRecipe(userId));
-        } catch (Exception e) {
-        return ResponseEntity.badRequest()
-            .body(Map.of("error", e.getMessage()));
+            recipe = aiRecipeService.streamUserRecipe(userId,
+                new EmitterListener(emitter));
+        } catch (RejectedExecutionException ex) {
+            sendError(emitter, new ModelOverloadedException(
+                "Too many AI requests in progress",
+                AsyncResponses.RETRY_AFTER_SECONDS));
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER,
+                    String.valueOf(AsyncResponses.RETRY_AFTER_SECONDS))
+                .body(emitter);
+        }
+        recipe.whenComplete((result, ex) -> {
+            final Throwable cause = ex instanceof CompletionException
+                && ex.getCause() != null ? ex.getCause() : ex;
+            if (ex == null) {
+                prefetcher.recordActivity(userId);
+                emitter.complete();
+            } else if (!(cause instanceof CancellationException
+                || cause instanceof StreamCancelledException)) {
+                sendError(emitter, cause);
+            }
+        });
+        emitter.onTimeout(() -> recipe.cancel(true));
+        emitter.onError(ex -> recipe.cancel(true));
+        emitter.onCompletion(() -> recipe.cancel(true));
+        return ResponseEntity.ok(emitter);
+    }
+
+    private static void sendError(final SseEmitter emitter,
+                                  final Throwable cause) {
+        final Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error", String.valueOf(cause.getMessage()));
+        if (cause instanceof ModelOverloadedException) {
+            error.put("retryAfterSeconds",
+                ((ModelOverloadedException) cause).getRetryAfterSeconds());
+        }
+        try {
+            emitter.send(SseEmitter.event().name("error")
+                .data(error, MediaType.APPLICATION_JSON));
+            emitter.complete();
+        } catch (IOException e) {
+            emitter.completeWithError(e);
         }
     }
 
+    /**
+     * Builds the response for a model call shed by the outbound limiter:
+     * 503 with a Retry-After header, so clients back off instead of
+     * retrying at once.
+     *
+     * @param e the shedding exception
+     * @return 503 response with the error message
+     */
+    private static ResponseEntity<?> overloaded(
+        final ModelOverloadedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER,
+                String.valueOf(e.getRetryAfterSeconds()))
+            .body(Map.of("error", e.getMessage()));
+    }
+
+    /**
+     * Forwards recipe parts to an SSE emitter.
+     * A failed send (usually a closed connection) is rethrown, which
+     * stops the generation; it is not counted as a model failure.
+     */
+    private static final class EmitterListener
+        implements RecipeStreamListener {
+
+        /** The emitter events are sent to. */
+        private final SseEmitter emitter;
+
+        EmitterListener(final SseEmitter target) {
+            this.emitter = target;
+        }
+
+        @Override
+        public void onTitle(final String title) {
+            send("title", Map.of("title", title));
+        }
+
+        @Override
+        public void onIngredients(final JsonNode ingredients) {
+            send("ingredients", ingredients);
+        }
+
+        @Override
+        public void onInstructions(final String text) {
+            send("instructions", Map.of("text", text));
+        }
+
+        @Override
+        public void onComplete(final Recipe recipe) {
+            send("recipe", recipe);
+        }
+
+        private void send(final String name, final Object data) {
+            try {
+                emitter.send(SseEmitter.event().name(name)
+                    .data(data, MediaType.APPLICATION_JSON));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
 }
@@ -0,0 +1,70 @@
+package com.example.nutriflow.controller;
+
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+/**
+ * Runs blocking AI request handling on the AI request executor, so the
+ * servlet thread is released while the model is called and cheap
+ * endpoints keep their threads during bursts of AI traffic.
+ * A request the executor has no room for, or that runs past its
+ * timeout, is answered with 503 and a Retry-After header; a timed-out
+ * handler is interrupted.
+ */
+final class AsyncResponses {
+
+    /** Seconds clients are asked to wait after a rejected request. */
+    static final long RETRY_AFTER_SECONDS = 5;
+
+    private AsyncResponses() {
+    }
+
+    /**
+     * Starts a handler on the executor.
+     *
+     * @param executor the AI request executor
+     * @param timeoutMs time the handler may take, in milliseconds
+     * @param handler builds the response; exceptions it throws are
+     *                handled as if thrown by the controller method
+     * @return the pending response
+     */
+    static DeferredResult<ResponseEntity<?>> submit(
+            final AsyncTaskExecutor executor, final long timeoutMs,
+            final Supplier<ResponseEntity<?>> handler) {
+        final DeferredResult<ResponseEntity<?>> result =
+            new DeferredResult<>(timeoutMs);
+        final Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                try {
+                    result.setResult(handler.get());
+                } catch (RuntimeException | Error ex) {
+                    result.setErrorResult(ex);
+                }
+            });
+        } catch (TaskRejectedException ex) {
+            result.setResult(unavailable(
+                "Too many AI requests in progress"));
+            return result;
+        }
+        result.onTimeout(() -> {
+            result.setResult(unavailable("AI request timed out"));
+            task.cancel(true);
+        });
+        return result;
+    }
+
+    private static ResponseEntity<?> unavailable(final String message) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER,
+                String.valueOf(RETRY_AFTER_SECONDS))
+            .body(Map.of("error", message));
+    }
+}
@@ -1,7 +1,15 @@
 package com.example.nutriflow.controller;
 
-import com.example.nutriflow.service.AIRecipeService;
+import com.example.nutriflow.config.GenerationExecutorConfig;
+import com.example.nutriflow.model.enums.MealPlanMode;
+import com.example.nutriflow.service.MealPlanListener;
+import com.example.nutriflow.service.MealPlanService;
+import com.example.nutriflow.service.RecipePrefetcher;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -9,88 +17,212 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 
 /**
- * Generates weekly meal plans by repeatedly calling the AI recipe generator.
+ * Generates weekly meal plans out of AI-generated recipes.
  */
 @RestController
 @RequestMapping("/api/mealplan")
 @CrossOrigin
 public class MealPlanController {
 
-    /** Service for AI-based recipe generation. */
+    /** Error message for an unknown generation mode. */
+    private static final String MODE_ERROR = "mode must be 'sequential', "
+            + "'parallel', 'batch' or 'catalog'";
+
+    /** Error message for an invalid number of meals per day. */
+    private static final String MEALS_ERROR = "mealsPerDay must be a "
+            + "whole number from 1 to " + MealPlanService.MAX_MEALS_PER_DAY;
+
+    /** Service that builds meal plans. */
     @Autowired
-    private AIRecipeService aiRecipeService;
+    private MealPlanService mealPlanService;
 
-    /** Number of days in a week. */
-    private static final int DAYS_IN_WEEK = 7;
+    /** Pre-generates recipes for users who request them regularly. */
+    @Autowired
+    private RecipePrefetcher prefetcher;
+
+    /** Executor handling requests to the AI endpoints. */
+    @Autowired
+    @Qualifier(GenerationExecutorConfig.AI_REQUEST_EXECUTOR)
+    private AsyncTaskExecutor requestExecutor;
 
-    /** Default number of meals per day. */
-    private static final int DEFAULT_MEALS_PER_DAY = 3;
+    /** Time a meal plan request may take, in milliseconds. */
+    @Value("${nutriflow.mealplan.request-timeout-ms:180000}")
+    private long requestTimeoutMs;
 
-    /** Names of days in a week. */
-    private static final String[] DAY_NAMES = {
-            "Monday", "Tuesday", "Wednesday", "Thursday",
-            "Friday", "Saturday", "Sunday"
-    };
+    /** Time a meal plan stream may stay open, in milliseconds. */
+    @Value("${nutriflow.mealplan.stream-timeout-ms:180000}")
+    private long streamTimeoutMs;
 
     /**
      * Generate a weekly meal plan for a user.
+     * The optional {@code mode} entry of the request selects
+     * {@code sequential}, {@code parallel}, {@code batch} or
+     * {@code catalog} generation. The plan is generated on the AI
+     * request executor, without holding a servlet thread.
      *
      * @param nutriflowUserId the user ID in NutriFlow
      * @param request         preferences map from fitness-client
-     * @return weekly meal plan JSON
+     * @return weekly meal plan JSON, 400 for an unknown mode or an
+     *         invalid number of meals per day, or 503 if the plan could
+     *         not be generated in time
      */
     @PostMapping("/generate/{nutriflowUserId}")
-    public ResponseEntity<?> generateWeeklyPlan(
+    public DeferredResult<ResponseEntity<?>> generateWeeklyPlan(
             @PathVariable final Long nutriflowUserId,
             @RequestBody final Map<String, Object> request) {
 
-        int mealsPerDay = request.get("mealsPerDay") != null
-                ? ((Number) request.get("mealsPerDay")).intValue()
-                : DEFAULT_MEALS_PER_DAY;
+        MealPlanMode mode = parseMode(request);
+        final Integer mealsPerDay = parseMealsPerDay(request);
+        if (mode == null || mealsPerDay == null) {
+            final DeferredResult<ResponseEntity<?>> error =
+                    new DeferredResult<>();
+            error.setResult(ResponseEntity.badRequest().body(Map.of(
+                    "error", mode == null ? MODE_ERROR : MEALS_ERROR)));
+            return error;
+        }
+        prefetcher.recordActivity(nutriflowUserId.intValue());
+        return AsyncResponses.submit(requestExecutor, requestTimeoutMs,
+                () -> ResponseEntity.ok(mealPlanService.generateWeeklyPlan(
+                        nutriflowUserId, mealsPerDay, mode)));
+    }
 
-        List<Map<String, Object>> week = new ArrayList<>();
+    /**
+     * Stream a weekly meal plan for a user as Server-Sent Events.
+     * A {@code meal} event is sent as soon as each meal is ready, a
+     * {@code day} event once all meals of a day are ready, and a final
+     * {@code complete} event with the whole plan. If the client goes
+     * away, the remaining generation work is cancelled.
+     *
+     * @param nutriflowUserId the user ID in NutriFlow
+     * @param request         preferences map from fitness-client
+     * @return event stream, or 400 with a single {@code error} event for
+     *         an unknown mode or an invalid number of meals per day
+     */
+    @PostMapping(value = "/generate/{nutriflowUserId}/stream",
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamWeeklyPlan(
+            @PathVariable final Long nutriflowUserId,
+            @RequestBody final Map<String, Object> request) throws IOException {
+
+        MealPlanMode mode = parseMode(request);
+        final Integer mealsPerDay = parseMealsPerDay(request);
+        if (mode == null || mealsPerDay == null) {
+            final SseEmitter error = new SseEmitter();
+            error.send(SseEmitter.event().name("error")
+                    .data(Map.of("error",
+                            mode == null ? MODE_ERROR : MEALS_ERROR),
+                            MediaType.APPLICATION_JSON));
+            error.complete();
+            return ResponseEntity.badRequest().body(error);
+        }
 
-        for (int d = 0; d < DAYS_IN_WEEK; d++) {
+        prefetcher.recordActivity(nutriflowUserId.intValue());
+        final SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        final CompletableFuture<Map<String, Object>> plan =
+                mealPlanService.streamWeeklyPlan(nutriflowUserId,
+                        mealsPerDay, mode,
+                        new EmitterListener(emitter));
+        plan.whenComplete((result, ex) -> {
+            if (ex == null) {
+                emitter.complete();
+            } else if (!(ex instanceof CancellationException)) {
+                emitter.completeWithError(ex);
+            }
+        });
+        emitter.onTimeout(() -> plan.cancel(true));
+        emitter.onError(ex -> plan.cancel(true));
+        emitter.onCompletion(() -> plan.cancel(true));
+        return ResponseEntity.ok(emitter);
+    }
 
-            Map<String, Object> dayObject = new HashMap<>();
-            dayObject.put("day", DAY_NAMES[d]);
+    /**
+     * Reads the optional number of meals per day of a request.
+     *
+     * @return the number of meals, the default if none is given, or null
+     *         if the given value is not a whole number from 1 to
+     *         {@link MealPlanService#MAX_MEALS_PER_DAY}
+     */
+    private static Integer parseMealsPerDay(
+            final Map<String, Object> request) {
+        final Object value = request.get("mealsPerDay");
+        if (value == null) {
+            return MealPlanService.DEFAULT_MEALS_PER_DAY;
+        }
+        if (!(value instanceof Number number)
+                || number.doubleValue() != number.intValue()
+                || number.intValue() < 1
+                || number.intValue() > MealPlanService.MAX_MEALS_PER_DAY) {
+            return null;
+        }
+        return number.intValue();
+    }
 
-            List<Map<String, Object>> meals = new ArrayList<>();
+    /**
+     * Reads the optional generation mode of a request.
+     *
+     * @return the mode, the default mode if none is given, or null if
+     *         the given mode is unknown
+     */
+    private MealPlanMode parseMode(final Map<String, Object> request) {
+        if (request.get("mode") == null) {
+            return mealPlanService.getDefaultMode();
+        }
+        try {
+            return MealPlanMode.valueOf(request.get("mode").toString()
+                    .trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
 
-            for (int m = 0; m < mealsPerDay; m++) {
+    /**
+     * Forwards plan progress to an SSE emitter.
+     * A failed send (usually a closed connection) is rethrown, which
+     * makes the service cancel the rest of the plan.
+     */
+    private static final class EmitterListener implements MealPlanListener {
 
-                // call EXISTING AI recipe generator
-                Map<String, Object> recipe =
-                    aiRecipeService.generateRecipeForUser(nutriflowUserId);
+        /** The emitter events are sent to. */
+        private final SseEmitter emitter;
 
-                if (recipe == null) {
-                    recipe = new HashMap<>();
-                    recipe.put("title", "AI Recipe Not Available");
-                    recipe.put("calories", 0);
-                    recipe.put("protein", 0);
-                    recipe.put("carbohydrates", 0);
-                    recipe.put("fat", 0);
-                    recipe.put("cookTime", 0);
-                    recipe.put("instructions", "No instructions available.");
-                }
+        EmitterListener(final SseEmitter target) {
+            this.emitter = target;
+        }
 
-                meals.add(recipe);
-            }
+        @Override
+        public void onMeal(final String day, final int slot,
+                           final Map<String, Object> meal) {
+            send("meal", Map.of("day", day, "slot", slot, "meal", meal));
+        }
 
-            dayObject.put("meals", meals);
-            week.add(dayObject);
+        @Override
+        public void onDay(final Map<String, Object> day) {
+            send("day", day);
         }
 
-        Map<String, Object> response = new HashMap<>();
-        response.put("days", week);
+        @Override
+        public void onComplete(final Map<String, Object> plan) {
+            send("complete", plan);
+        }
 
-        return ResponseEntity.ok(response);
+        private void send(final String name, final Object data) {
+            try {
+                emitter.send(SseEmitter.event().name(name)
+                        .data(data, MediaType.APPLICATION_JSON));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
     }
 }
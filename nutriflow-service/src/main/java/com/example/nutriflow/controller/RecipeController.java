@@ -2,8 +2,10 @@ package com.example.nutriflow.controller;
 
 import com.example.nutriflow.model.FavoriteRecipe;
 import com.example.nutriflow.model.Recipe;
+import com.example.nutriflow.service.RecipeIngredientIndex;
 import com.example.nutriflow.service.RecipeService;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -78,6 +80,41 @@ public class RecipeController {
         recipeService.getPopularRecipes(limit));
     }
 
+    /**
+    * GET endpoint to search recipes by one or more ingredients.
+    * Recipes are ranked by how many of the requested ingredients they
+    * use.
+    *
+    * Example:
+    * - /api/recipes/search?ingredients=egg,spinach → recipes using
+    *   egg or spinach, those using both first
+    * - /api/recipes/search?ingredients=egg,spinach&amp;match=all → only
+    *   recipes using both
+    *
+    * @param ingredients comma-separated ingredient names
+    * @param match "any" (default) or "all"
+    * @return ResponseEntity containing the ranked recipes,
+    *         or 400 Bad Request if the match mode is unknown
+    */
+    @GetMapping("/search")
+    public ResponseEntity<?> searchByIngredients(
+        final @RequestParam(name = "ingredients") List<String> ingredients,
+        final @RequestParam(name = "match",
+        defaultValue = "any") String match) {
+
+    final RecipeIngredientIndex.MatchMode mode;
+    try {
+        mode = RecipeIngredientIndex.MatchMode.valueOf(
+            match.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+        return ResponseEntity.badRequest()
+            .body(Map.of("error", "match must be 'any' or 'all'"));
+    }
+
+    return ResponseEntity.ok(
+        recipeService.searchByIngredients(ingredients, mode));
+    }
+
     /**
     * GET endpoint to retrieve all favorite recipes for a specific user.
     * Currently returns an empty list placeholder until favorite data is
@@ -0,0 +1,92 @@
+package com.example.nutriflow.controller;
+
+import com.example.nutriflow.service.UsageAnalytics;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * REST controller serving API usage per client and route over time,
+ * as aggregated by {@link UsageAnalytics}.
+ */
+@RestController
+@RequestMapping("/api/analytics")
+public class UsageAnalyticsController {
+
+    /** Range reported when no start is given. */
+    private static final Duration DEFAULT_RANGE = Duration.ofHours(1);
+
+    /** Longest range that may be queried. */
+    private static final Duration MAX_RANGE = Duration.ofDays(31);
+
+    /** Usage analytics pipeline. */
+    @Autowired
+    private UsageAnalytics usageAnalytics;
+
+    /**
+     * GET endpoint returning request counts and latency per client and
+     * route, in time buckets. Rows are written once their window (a
+     * minute by default) has closed, so the last window is missing.
+     *
+     * Example:
+     * /api/analytics/usage - returns the last hour for every client and
+     * route in 5-minute buckets
+     * /api/analytics/usage?clientId=web&amp;route=GET /api/recipes/{id}
+     * &amp;from=2025-01-01T00:00:00&amp;to=2025-01-02T00:00:00&amp;bucketMinutes=60
+     * - returns one client's use of one route per hour on one day
+     * @param clientId optional client to report on
+     * @param route optional route ({@code METHOD /pattern}) to report on
+     * @param from optional inclusive start (UTC), defaults to an hour
+     *             before the end
+     * @param to optional exclusive end (UTC), defaults to now
+     * @param bucketMinutes length of a bucket in minutes
+     * @return ResponseEntity containing one entry per bucket, client and
+     *         route with requests, client and server errors, average and
+     *         maximum latency, peak end users and requests per status;
+     *         or 400 Bad Request if the range or bucket is invalid
+     */
+    @GetMapping("/usage")
+    public ResponseEntity<?> getUsage(
+            final @RequestParam(name = "clientId",
+                required = false) String clientId,
+            final @RequestParam(name = "route",
+                required = false) String route,
+            final @RequestParam(name = "from", required = false)
+                @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                LocalDateTime from,
+            final @RequestParam(name = "to", required = false)
+                @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                LocalDateTime to,
+            final @RequestParam(name = "bucketMinutes",
+                defaultValue = "5") int bucketMinutes) {
+        final LocalDateTime end = to != null
+            ? to : LocalDateTime.now(Clock.systemUTC());
+        final LocalDateTime start = from != null
+            ? from : end.minus(DEFAULT_RANGE);
+        if (!start.isBefore(end)
+            || Duration.between(start, end).compareTo(MAX_RANGE) > 0) {
+            return ResponseEntity.badRequest().body(Map.of("error",
+                "from must be before to, at most 31 days apart"));
+        }
+        if (bucketMinutes < 1) {
+            return ResponseEntity.badRequest().body(Map.of("error",
+                "bucketMinutes must be at least 1"));
+        }
+        final Map<String, Object> body = new LinkedHashMap<>();
+        body.put("from", start);
+        body.put("to", end);
+        body.put("bucketMinutes", bucketMinutes);
+        body.put("usage", usageAnalytics.query(
+            clientId, route, start, end, bucketMinutes));
+        return ResponseEntity.ok(body);
+    }
+}
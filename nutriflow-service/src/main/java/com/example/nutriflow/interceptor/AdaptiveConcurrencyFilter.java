@@ -0,0 +1,236 @@
+package com.example.nutriflow.interceptor;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Servlet filter applying an {@link AdaptiveConcurrencyLimit} to
+ * inbound requests, so an overloaded service sheds requests at once
+ * with 503 and a Retry-After header instead of letting them queue
+ * until the caller has given up. AI requests (recipe generation and
+ * meal plans) and the remaining CRUD requests have separate limits, so
+ * cheap endpoints stay fast when AI traffic spikes.
+ * A request's slot is held until its response completes, including
+ * asynchronously handled requests after the servlet thread is released.
+ * Server-Sent Event streams (paths ending in {@value #STREAM_SUFFIX})
+ * are the exception: they stay open as long as the client reads, which
+ * says nothing about load, so their slot is given back without a
+ * latency sample once the servlet thread has started the stream.
+ */
+@Component
+public final class AdaptiveConcurrencyFilter extends OncePerRequestFilter {
+
+    /** Seconds clients are asked to wait after a shed request. */
+    static final long RETRY_AFTER_SECONDS = 1;
+
+    /** Path suffix of the Server-Sent Event endpoints. */
+    static final String STREAM_SUFFIX = "/stream";
+
+    /** Classes of routes limited separately. */
+    public enum RouteClass {
+        /** Endpoints calling the language model. */
+        AI,
+        /** All other endpoints. */
+        CRUD
+    }
+
+    /** Whether requests are limited at all. */
+    private final boolean enabled;
+
+    /** Path prefixes of AI routes. */
+    private final List<String> aiPaths;
+
+    /** Limit of each route class. */
+    private final Map<RouteClass, AdaptiveConcurrencyLimit> limits =
+        new EnumMap<>(RouteClass.class);
+
+    /** Source of timestamps in nanoseconds. */
+    private final LongSupplier clock;
+
+    /**
+     * Creates the filter from application properties.
+     *
+     * @param enabledValue whether requests are limited
+     * @param aiPathsValue path prefixes of AI routes
+     * @param tolerance short-term to long-term latency ratio tolerated
+     *                  before a limit shrinks
+     * @param aiInitialLimit initial limit of AI requests
+     * @param aiMinLimit lowest limit of AI requests
+     * @param aiMaxLimit highest limit of AI requests
+     * @param aiQueueCapacity AI requests that may wait for a slot
+     * @param aiMaxQueueMs longest wait of an AI request, in milliseconds
+     * @param crudInitialLimit initial limit of CRUD requests
+     * @param crudMinLimit lowest limit of CRUD requests
+     * @param crudMaxLimit highest limit of CRUD requests
+     * @param crudQueueCapacity CRUD requests that may wait for a slot
+     * @param crudMaxQueueMs longest wait of a CRUD request, in milliseconds
+     */
+    @Autowired
+    public AdaptiveConcurrencyFilter(
+            final @Value("${nutriflow.concurrency.enabled:true}")
+                boolean enabledValue,
+            final @Value("${nutriflow.concurrency.ai-paths:"
+                + "/api/ai/recipes/,/api/mealplan/}") String[] aiPathsValue,
+            final @Value("${nutriflow.concurrency.latency-tolerance:1.5}")
+                double tolerance,
+            final @Value("${nutriflow.concurrency.ai.initial-limit:16}")
+                int aiInitialLimit,
+            final @Value("${nutriflow.concurrency.ai.min-limit:2}")
+                int aiMinLimit,
+            final @Value("${nutriflow.concurrency.ai.max-limit:64}")
+                int aiMaxLimit,
+            final @Value("${nutriflow.concurrency.ai.queue-capacity:16}")
+                int aiQueueCapacity,
+            final @Value("${nutriflow.concurrency.ai.max-queue-ms:200}")
+                long aiMaxQueueMs,
+            final @Value("${nutriflow.concurrency.crud.initial-limit:100}")
+                int crudInitialLimit,
+            final @Value("${nutriflow.concurrency.crud.min-limit:10}")
+                int crudMinLimit,
+            final @Value("${nutriflow.concurrency.crud.max-limit:200}")
+                int crudMaxLimit,
+            final @Value("${nutriflow.concurrency.crud.queue-capacity:50}")
+                int crudQueueCapacity,
+            final @Value("${nutriflow.concurrency.crud.max-queue-ms:50}")
+                long crudMaxQueueMs) {
+        this(enabledValue, Arrays.asList(aiPathsValue),
+            new AdaptiveConcurrencyLimit(aiInitialLimit, aiMinLimit,
+                aiMaxLimit, aiQueueCapacity, aiMaxQueueMs, tolerance),
+            new AdaptiveConcurrencyLimit(crudInitialLimit, crudMinLimit,
+                crudMaxLimit, crudQueueCapacity, crudMaxQueueMs, tolerance),
+            System::nanoTime);
+    }
+
+    AdaptiveConcurrencyFilter(final boolean enabledValue,
+                              final List<String> aiPathsValue,
+                              final AdaptiveConcurrencyLimit aiLimit,
+                              final AdaptiveConcurrencyLimit crudLimit,
+                              final LongSupplier clockValue) {
+        this.enabled = enabledValue;
+        this.aiPaths = aiPathsValue.stream()
+            .map(String::trim).filter(path -> !path.isEmpty()).toList();
+        this.limits.put(RouteClass.AI, aiLimit);
+        this.limits.put(RouteClass.CRUD, crudLimit);
+        this.clock = clockValue;
+    }
+
+    /**
+     * Returns the class a request's route belongs to.
+     *
+     * @param request the request
+     * @return AI if the path starts with an AI prefix, CRUD otherwise
+     */
+    RouteClass classify(final HttpServletRequest request) {
+        final String path = request.getRequestURI()
+            .substring(request.getContextPath().length());
+        for (String prefix : aiPaths) {
+            if (path.startsWith(prefix)) {
+                return RouteClass.AI;
+            }
+        }
+        return RouteClass.CRUD;
+    }
+
+    /**
+     * Tells whether a request opens a Server-Sent Event stream.
+     *
+     * @param request the request
+     * @return true if the path ends with {@value #STREAM_SUFFIX}
+     */
+    static boolean isStream(final HttpServletRequest request) {
+        return request.getRequestURI().endsWith(STREAM_SUFFIX);
+    }
+
+    /**
+     * Returns a snapshot of the limit of each route class.
+     *
+     * @return map of route class to its limit counters
+     */
+    public Map<String, Object> stats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        limits.forEach((route, limit) ->
+            stats.put(route.name().toLowerCase(), limit.stats()));
+        return stats;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(final HttpServletRequest request) {
+        return !enabled;
+    }
+
+    @Override
+    protected void doFilterInternal(final HttpServletRequest request,
+                                    final HttpServletResponse response,
+                                    final FilterChain chain)
+            throws ServletException, IOException {
+        final AdaptiveConcurrencyLimit limit = limits.get(classify(request));
+        if (!limit.acquire()) {
+            shed(response);
+            return;
+        }
+        final long start = clock.getAsLong();
+        boolean completed = false;
+        try {
+            chain.doFilter(request, response);
+            completed = true;
+        } finally {
+            if (!completed || isStream(request)) {
+                limit.releaseIgnored();
+            } else if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncCompletion(
+                    new AsyncCompletion.Callback() {
+                        @Override
+                        public void completed(final int status,
+                                              final boolean timedOut) {
+                            release(limit, start, status, timedOut);
+                        }
+
+                        @Override
+                        public void failed() {
+                            limit.releaseIgnored();
+                        }
+                    }));
+            } else {
+                release(limit, start, response.getStatus(), false);
+            }
+        }
+    }
+
+    private void release(final AdaptiveConcurrencyLimit limit,
+                         final long start, final int status,
+                         final boolean timedOut) {
+        if (timedOut || status == HttpStatus.SERVICE_UNAVAILABLE.value()
+            || status == HttpStatus.GATEWAY_TIMEOUT.value()) {
+            limit.releaseDropped();
+        } else {
+            limit.release(clock.getAsLong() - start);
+        }
+    }
+
+    private static void shed(final HttpServletResponse response)
+            throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER,
+            String.valueOf(RETRY_AFTER_SECONDS));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write(
+            "{\"error\":\"Too many requests in progress\"}");
+    }
+}
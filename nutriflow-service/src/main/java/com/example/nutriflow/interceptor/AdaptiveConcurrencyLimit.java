@@ -0,0 +1,311 @@
+package com.example.nutriflow.interceptor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limit on the number of concurrent requests of one route class that
+ * adapts to their latency, after the gradient algorithm of Netflix's
+ * concurrency-limits library.
+ * A short-term and a long-term moving average of the latency are
+ * kept; while the short-term one stays within the tolerance of the
+ * long-term one the limit grows by about its square root, and as
+ * latency climbs above it the limit shrinks in proportion. Requests
+ * completing with an overload signal (a timeout, 503 or 504) cut the
+ * limit multiplicatively.
+ * Requests over the limit wait in a bounded queue; when it is full, or
+ * a request cannot start within the maximum queueing time, it is shed.
+ */
+public final class AdaptiveConcurrencyLimit {
+
+    /** Nanoseconds in one millisecond. */
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    /** Weight of a sample in the short-term latency (about 10 samples). */
+    private static final double SHORT_WEIGHT = 0.1;
+
+    /** Weight of a sample in the long-term latency (about 100 samples). */
+    private static final double LONG_WEIGHT = 0.01;
+
+    /** Weight of a newly computed limit against the current one. */
+    private static final double SMOOTHING = 0.2;
+
+    /** Factor the limit is multiplied by on an overload signal. */
+    private static final double BACKOFF = 0.9;
+
+    /** Largest share of the limit a single sample can take away. */
+    private static final double MIN_GRADIENT = 0.5;
+
+    /**
+     * Long-term to short-term latency ratio above which the long-term
+     * latency is decayed, so it follows a lasting drop in latency.
+     */
+    private static final double DRIFT_RATIO = 2;
+
+    /** Factor the long-term latency is decayed by on drift. */
+    private static final double DRIFT_DECAY = 0.95;
+
+    /** Lowest the limit goes. */
+    private final int minLimit;
+
+    /** Highest the limit goes. */
+    private final int maxLimit;
+
+    /** Maximum number of requests waiting for a slot. */
+    private final int queueCapacity;
+
+    /** Longest time a request may wait for a slot, in nanoseconds. */
+    private final long maxQueueNanos;
+
+    /** Short-term to long-term latency ratio tolerated without backing off. */
+    private final double tolerance;
+
+    /** Guards the limit state. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signalled when a slot is freed or the limit grows. */
+    private final Condition slotFreed = lock.newCondition();
+
+    /** Current limit; its integer part is enforced. */
+    private double limit;
+
+    /** Number of requests holding a slot. */
+    private int inFlight;
+
+    /** Number of requests waiting for a slot. */
+    private int queued;
+
+    /** Short-term moving average latency, in nanoseconds. */
+    private double shortLatency;
+
+    /** Long-term moving average latency, in nanoseconds. */
+    private double longLatency;
+
+    /** Number of requests given a slot. */
+    private final LongAdder admitted = new LongAdder();
+
+    /** Number of requests shed because the queue was full. */
+    private final LongAdder rejected = new LongAdder();
+
+    /** Number of requests shed because they queued too long. */
+    private final LongAdder timedOut = new LongAdder();
+
+    /** Number of admitted requests that completed overloaded. */
+    private final LongAdder dropped = new LongAdder();
+
+    /** Total queueing time of admitted requests, in nanoseconds. */
+    private final LongAdder queueNanos = new LongAdder();
+
+    /** Longest queueing time of an admitted request, in nanoseconds. */
+    private final LongAccumulator longestQueueNanos =
+        new LongAccumulator(Math::max, 0);
+
+    /**
+     * Creates a limit.
+     *
+     * @param initialLimit limit before any latency is observed
+     * @param minLimitValue lowest the limit goes
+     * @param maxLimitValue highest the limit goes
+     * @param queueCapacityValue maximum number of waiting requests
+     * @param maxQueueMs longest wait for a slot, in milliseconds
+     * @param toleranceValue short-term to long-term latency ratio
+     *                       tolerated before the limit shrinks
+     */
+    public AdaptiveConcurrencyLimit(final int initialLimit,
+                                    final int minLimitValue,
+                                    final int maxLimitValue,
+                                    final int queueCapacityValue,
+                                    final long maxQueueMs,
+                                    final double toleranceValue) {
+        this.minLimit = Math.max(1, minLimitValue);
+        this.maxLimit = Math.max(minLimit, maxLimitValue);
+        this.queueCapacity = Math.max(0, queueCapacityValue);
+        this.maxQueueNanos = TimeUnit.MILLISECONDS.toNanos(
+            Math.max(0, maxQueueMs));
+        this.tolerance = Math.max(1, toleranceValue);
+        this.limit = clamp(initialLimit);
+    }
+
+    /**
+     * Takes a slot, waiting in the queue if the limit is reached.
+     * A successful call must be followed by exactly one of
+     * {@link #release(long)}, {@link #releaseDropped()} or
+     * {@link #releaseIgnored()}.
+     *
+     * @return true if a slot was taken, false if the request is shed
+     */
+    public boolean acquire() {
+        final long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                admit(0);
+                return true;
+            }
+            if (queued >= queueCapacity || maxQueueNanos == 0) {
+                rejected.increment();
+                return false;
+            }
+            queued++;
+            try {
+                long remaining = maxQueueNanos;
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        timedOut.increment();
+                        return false;
+                    }
+                    remaining = slotFreed.awaitNanos(remaining);
+                }
+            } finally {
+                queued--;
+            }
+            admit(System.nanoTime() - start);
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                "Interrupted while waiting for a request slot", ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees a slot and adapts the limit to the request's latency.
+     *
+     * @param latencyNanos time the request held its slot, in nanoseconds
+     */
+    public void release(final long latencyNanos) {
+        lock.lock();
+        try {
+            adapt(Math.max(1, latencyNanos));
+            free();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees the slot of a request that completed with an overload
+     * signal, and cuts the limit.
+     */
+    public void releaseDropped() {
+        lock.lock();
+        try {
+            dropped.increment();
+            limit = clamp(limit * BACKOFF);
+            free();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees the slot of a request whose latency says nothing about
+     * load, such as one that failed with an exception.
+     */
+    public void releaseIgnored() {
+        lock.lock();
+        try {
+            free();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the limit currently enforced.
+     *
+     * @return maximum number of concurrent requests
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests shed.
+     *
+     * @return rejected plus timed-out request count
+     */
+    public long getShed() {
+        return rejected.sum() + timedOut.sum();
+    }
+
+    /**
+     * Returns a snapshot of the limit state and counters.
+     *
+     * @return map of counter name to value
+     */
+    public Map<String, Object> stats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            stats.put("limit", (int) limit);
+            stats.put("inFlight", inFlight);
+            stats.put("queueDepth", queued);
+            stats.put("shortLatencyMs", shortLatency / NANOS_PER_MILLI);
+            stats.put("longLatencyMs", longLatency / NANOS_PER_MILLI);
+        } finally {
+            lock.unlock();
+        }
+        final long requests = admitted.sum();
+        stats.put("minLimit", minLimit);
+        stats.put("maxLimit", maxLimit);
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("admitted", requests);
+        stats.put("rejected", rejected.sum());
+        stats.put("timedOut", timedOut.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("avgQueueMs", requests == 0
+            ? 0d : queueNanos.sum() / NANOS_PER_MILLI / requests);
+        stats.put("maxQueueMs", longestQueueNanos.get() / NANOS_PER_MILLI);
+        return stats;
+    }
+
+    private void admit(final long waited) {
+        inFlight++;
+        admitted.increment();
+        queueNanos.add(waited);
+        longestQueueNanos.accumulate(waited);
+    }
+
+    private void free() {
+        inFlight--;
+        slotFreed.signalAll();
+    }
+
+    private void adapt(final long latencyNanos) {
+        if (shortLatency == 0) {
+            shortLatency = latencyNanos;
+            longLatency = latencyNanos;
+            return;
+        }
+        shortLatency += (latencyNanos - shortLatency) * SHORT_WEIGHT;
+        longLatency += (latencyNanos - longLatency) * LONG_WEIGHT;
+        if (longLatency > shortLatency * DRIFT_RATIO) {
+            longLatency *= DRIFT_DECAY;
+        }
+        // a limit far above the load did not shape this latency
+        if (inFlight < limit / 2) {
+            return;
+        }
+        final double gradient = Math.max(MIN_GRADIENT,
+            Math.min(1, tolerance * longLatency / shortLatency));
+        final double target = limit * gradient + Math.sqrt(limit);
+        limit = clamp(limit * (1 - SMOOTHING) + target * SMOOTHING);
+    }
+
+    private double clamp(final double value) {
+        return Math.min(maxLimit, Math.max(minLimit, value));
+    }
+}
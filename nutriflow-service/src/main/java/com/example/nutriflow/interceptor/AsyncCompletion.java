@@ -0,0 +1,72 @@
+package com.example.nutriflow.interceptor;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.http.HttpServletResponse;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Listener reporting once how an asynchronously handled request ended,
+ * so filters can hold a slot past the release of the servlet thread.
+ */
+final class AsyncCompletion implements AsyncListener {
+
+    /** Receiver of the outcome. */
+    interface Callback {
+
+        /**
+         * Called when the response completed.
+         *
+         * @param status the response status
+         * @param timedOut whether the request timed out first
+         */
+        void completed(int status, boolean timedOut);
+
+        /**
+         * Called when the request failed with an I/O error, for
+         * instance because the client went away.
+         */
+        void failed();
+    }
+
+    /** Receiver of the outcome. */
+    private final Callback callback;
+
+    /** Whether the request timed out before completing. */
+    private volatile boolean timedOut;
+
+    /** Whether the outcome was reported. */
+    private final AtomicBoolean reported = new AtomicBoolean();
+
+    AsyncCompletion(final Callback callbackValue) {
+        this.callback = callbackValue;
+    }
+
+    @Override
+    public void onComplete(final AsyncEvent event) {
+        if (reported.compareAndSet(false, true)) {
+            final int status = event.getSuppliedResponse()
+                instanceof HttpServletResponse http
+                ? http.getStatus() : HttpStatus.OK.value();
+            callback.completed(status, timedOut);
+        }
+    }
+
+    @Override
+    public void onTimeout(final AsyncEvent event) {
+        timedOut = true;
+    }
+
+    @Override
+    public void onError(final AsyncEvent event) {
+        if (reported.compareAndSet(false, true)) {
+            callback.failed();
+        }
+    }
+
+    @Override
+    public void onStartAsync(final AsyncEvent event) {
+        event.getAsyncContext().addListener(this);
+    }
+}
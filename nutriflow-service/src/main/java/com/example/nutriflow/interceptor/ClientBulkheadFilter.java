@@ -0,0 +1,194 @@
+package com.example.nutriflow.interceptor;
+
+import com.example.nutriflow.service.ai.ClientContext;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Servlet filter isolating API clients from each other with
+ * {@link ClientBulkheads} keyed on the {@code X-Client-Id} header (the
+ * client {@link ClientTrackingInterceptor} logs), so a client sending
+ * more requests than its quota allows is throttled with 429 and a
+ * Retry-After header while other clients keep their capacity.
+ * A request's slot is held until its response completes, including
+ * asynchronously handled requests after the servlet thread is released.
+ * Server-Sent Event streams are the exception: like in
+ * {@link AdaptiveConcurrencyFilter}, they give their slot back once the
+ * servlet thread returns, without a latency sample, so an open stream
+ * does not hold a slot for its whole lifetime.
+ * Requests without the header share the {@code anonymous} bulkhead,
+ * which has a quota of its own and is never replaced by other clients.
+ */
+@Component
+public final class ClientBulkheadFilter extends OncePerRequestFilter {
+
+    /** Seconds clients are asked to wait after a rejected request. */
+    static final long RETRY_AFTER_SECONDS = 1;
+
+    /** Header identifying the client application. */
+    private static final String CLIENT_HEADER = "X-Client-Id";
+
+    /** Whether requests are isolated at all. */
+    private final boolean enabled;
+
+    /** Bulkhead of each client. */
+    private final ClientBulkheads bulkheads;
+
+    /** Source of timestamps in nanoseconds. */
+    private final LongSupplier clock;
+
+    /**
+     * Creates the filter from application properties.
+     *
+     * @param enabledValue whether requests are isolated per client
+     * @param baseQuota concurrent requests of a client with weight one
+     * @param anonymousQuota concurrent requests of all callers without a
+     *                       client id together, unless weighted in
+     *                       {@code weights}
+     * @param weights client weights as comma-separated id:weight pairs
+     * @param overflowCapacity slots in the shared overflow pool
+     * @param maxOverflowPercent share of the overflow pool one client
+     *                           may hold, in percent
+     * @param queueCapacity requests that may wait per client
+     * @param maxQueueMs longest wait for a slot, in milliseconds
+     * @param maxClients most clients with a bulkhead of their own
+     */
+    @Autowired
+    public ClientBulkheadFilter(
+            final @Value("${nutriflow.bulkhead.enabled:true}")
+                boolean enabledValue,
+            final @Value("${nutriflow.bulkhead.client-quota:16}")
+                int baseQuota,
+            final @Value("${nutriflow.bulkhead.anonymous-quota:16}")
+                int anonymousQuota,
+            final @Value("${nutriflow.bulkhead.weights:}") String weights,
+            final @Value("${nutriflow.bulkhead.overflow-capacity:32}")
+                int overflowCapacity,
+            final @Value("${nutriflow.bulkhead.max-overflow-percent:50}")
+                int maxOverflowPercent,
+            final @Value("${nutriflow.bulkhead.queue-capacity:16}")
+                int queueCapacity,
+            final @Value("${nutriflow.bulkhead.max-queue-ms:100}")
+                long maxQueueMs,
+            final @Value("${nutriflow.bulkhead.max-clients:200}")
+                int maxClients) {
+        this(enabledValue, new ClientBulkheads(baseQuota,
+            withAnonymous(ClientBulkheads.parseWeights(weights), baseQuota,
+                anonymousQuota), overflowCapacity, maxOverflowPercent,
+            queueCapacity, maxQueueMs, maxClients),
+            System::nanoTime);
+    }
+
+    /**
+     * Adds the weight giving anonymous callers their quota, which also
+     * reserves their bulkhead, unless it is weighted explicitly.
+     */
+    static Map<String, Double> withAnonymous(
+            final Map<String, Double> weights, final int baseQuota,
+            final int anonymousQuota) {
+        final Map<String, Double> all = new HashMap<>(weights);
+        all.putIfAbsent(ClientContext.ANONYMOUS,
+            (double) Math.max(1, anonymousQuota) / Math.max(1, baseQuota));
+        return all;
+    }
+
+    ClientBulkheadFilter(final boolean enabledValue,
+                         final ClientBulkheads bulkheadsValue,
+                         final LongSupplier clockValue) {
+        this.enabled = enabledValue;
+        this.bulkheads = bulkheadsValue;
+        this.clock = clockValue;
+    }
+
+    /**
+     * Returns a snapshot of the overflow pool and every client's
+     * bulkhead.
+     *
+     * @return map of counter name to value
+     */
+    public Map<String, Object> stats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.putAll(bulkheads.stats());
+        return stats;
+    }
+
+    /**
+     * Returns a snapshot of one client's bulkhead.
+     *
+     * @param clientId the client id
+     * @return map of counter name to value, empty if the client made no
+     *         requests
+     */
+    public Map<String, Object> stats(final String clientId) {
+        return bulkheads.stats(ClientContext.normalize(clientId));
+    }
+
+    @Override
+    protected boolean shouldNotFilter(final HttpServletRequest request) {
+        return !enabled;
+    }
+
+    @Override
+    protected void doFilterInternal(final HttpServletRequest request,
+                                    final HttpServletResponse response,
+                                    final FilterChain chain)
+            throws ServletException, IOException {
+        final ClientBulkheads.Permit permit = bulkheads.acquire(
+            ClientContext.normalize(request.getHeader(CLIENT_HEADER)));
+        if (permit == null) {
+            reject(response);
+            return;
+        }
+        final long start = clock.getAsLong();
+        boolean completed = false;
+        try {
+            chain.doFilter(request, response);
+            completed = true;
+        } finally {
+            if (completed && AdaptiveConcurrencyFilter.isStream(request)) {
+                permit.releaseIgnored();
+            } else if (completed && request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncCompletion(
+                    new AsyncCompletion.Callback() {
+                        @Override
+                        public void completed(final int status,
+                                              final boolean timedOut) {
+                            permit.release(clock.getAsLong() - start);
+                        }
+
+                        @Override
+                        public void failed() {
+                            permit.release(clock.getAsLong() - start);
+                        }
+                    }));
+            } else {
+                permit.release(clock.getAsLong() - start);
+            }
+        }
+    }
+
+    private static void reject(final HttpServletResponse response)
+            throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER,
+            String.valueOf(RETRY_AFTER_SECONDS));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write(
+            "{\"error\":\"Too many requests in progress for this client\"}");
+    }
+}
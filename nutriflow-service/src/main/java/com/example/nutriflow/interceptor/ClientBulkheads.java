@@ -0,0 +1,479 @@
+package com.example.nutriflow.interceptor;
+
+import com.example.nutriflow.service.ai.LatencyHistogram;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-client bulkheads: every API client has a concurrency quota and a
+ * wait queue of its own, so one client flooding the service only
+ * queues and gets rejected itself.
+ * A client's quota is the base quota times its weight (one unless
+ * configured). A client whose quota is in use may borrow a slot from a
+ * shared overflow pool, but holds at most a set share of it, so idle
+ * capacity is used without letting one client take all of it. Beyond
+ * that, requests wait in the client's queue; when it is full, or a
+ * request cannot start within the maximum wait, it is rejected.
+ * Clients with a configured weight always have a bulkhead of their
+ * own. At most a set number of other clients get one too; a new client
+ * past that takes the place of the least recently used client with
+ * nothing in flight or queued, or, if there is none, shares the
+ * bulkhead of {@value #OTHER_CLIENTS}.
+ */
+public final class ClientBulkheads {
+
+    /** Bulkhead shared by clients beyond the tracked maximum. */
+    static final String OTHER_CLIENTS = "other";
+
+    /** Nanoseconds in one millisecond. */
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    /** Percent conversion factor. */
+    private static final double PERCENT = 100d;
+
+    /** Slots of a client with weight one. */
+    private final int baseQuota;
+
+    /** Weight of each configured client. */
+    private final Map<String, Double> weights;
+
+    /** Slots in the shared overflow pool. */
+    private final int overflowCapacity;
+
+    /** Most overflow slots one client may hold. */
+    private final int maxOverflowPerClient;
+
+    /** Maximum number of requests waiting per client. */
+    private final int queueCapacity;
+
+    /** Longest time a request may wait for a slot, in nanoseconds. */
+    private final long maxQueueNanos;
+
+    /** Most distinct clients given a bulkhead of their own. */
+    private final int maxClients;
+
+    /** Guards every bulkhead and the overflow pool. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Bulkhead of each client. */
+    private final Map<String, Bulkhead> bulkheads = new HashMap<>();
+
+    /** Overflow slots in use. */
+    private int overflowInUse;
+
+    /** Bulkheads counted against the maximum number of clients. */
+    private int tracked;
+
+    /** Number of acquisitions so far, ordering bulkheads by last use. */
+    private long uses;
+
+    /** Idle bulkheads removed to make room for a new client. */
+    private final LongAdder evicted = new LongAdder();
+
+    /**
+     * Creates the bulkheads.
+     *
+     * @param baseQuotaValue slots of a client with weight one
+     * @param weightsValue weight of each configured client
+     * @param overflowCapacityValue slots in the shared overflow pool
+     * @param maxOverflowPercent share of the overflow pool one client
+     *                           may hold, in percent
+     * @param queueCapacityValue maximum number of waiting requests per
+     *                           client
+     * @param maxQueueMs longest wait for a slot, in milliseconds
+     * @param maxClientsValue most clients without a configured weight
+     *                        that have a bulkhead of their own
+     */
+    public ClientBulkheads(final int baseQuotaValue,
+                           final Map<String, Double> weightsValue,
+                           final int overflowCapacityValue,
+                           final int maxOverflowPercent,
+                           final int queueCapacityValue,
+                           final long maxQueueMs,
+                           final int maxClientsValue) {
+        this.baseQuota = Math.max(1, baseQuotaValue);
+        this.weights = Map.copyOf(weightsValue);
+        this.overflowCapacity = Math.max(0, overflowCapacityValue);
+        this.maxOverflowPerClient = overflowCapacity == 0 ? 0
+            : Math.max(1, (int) (overflowCapacity
+                * Math.min(PERCENT, Math.max(0, maxOverflowPercent))
+                / PERCENT));
+        this.queueCapacity = Math.max(0, queueCapacityValue);
+        this.maxQueueNanos = TimeUnit.MILLISECONDS.toNanos(
+            Math.max(0, maxQueueMs));
+        this.maxClients = Math.max(1, maxClientsValue);
+    }
+
+    /**
+     * Parses client weights given as comma-separated {@code id:weight}
+     * pairs, such as {@code fitness-app:2,web:0.5}.
+     *
+     * @param spec the weights, possibly blank
+     * @return weight of each listed client
+     * @throws IllegalArgumentException if a pair is malformed or a
+     *         weight is not positive
+     */
+    public static Map<String, Double> parseWeights(final String spec) {
+        final Map<String, Double> parsed = new HashMap<>();
+        if (spec == null || spec.isBlank()) {
+            return parsed;
+        }
+        for (String pair : spec.split(",")) {
+            final int colon = pair.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException(
+                    "Client weight must be id:weight, got '" + pair + "'");
+            }
+            final double weight;
+            try {
+                weight = Double.parseDouble(pair.substring(colon + 1).trim());
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException(
+                    "Invalid client weight '" + pair + "'", ex);
+            }
+            if (!(weight > 0)) {
+                throw new IllegalArgumentException(
+                    "Client weight must be positive, got '" + pair + "'");
+            }
+            parsed.put(pair.substring(0, colon).trim(), weight);
+        }
+        return parsed;
+    }
+
+    /**
+     * Takes a slot for a client, waiting in its queue if its quota and
+     * its share of the overflow pool are in use.
+     *
+     * @param clientId the normalized client id
+     * @return the slot, to be released once the request completes, or
+     *         null if the request is rejected
+     */
+    public Permit acquire(final String clientId) {
+        final long start = System.nanoTime();
+        lock.lock();
+        try {
+            final Bulkhead bulkhead = bulkhead(clientId);
+            Permit permit = bulkhead.tryTake();
+            if (permit != null) {
+                return bulkhead.admit(permit, 0);
+            }
+            if (bulkhead.queued >= queueCapacity || maxQueueNanos == 0) {
+                bulkhead.rejected.increment();
+                return null;
+            }
+            bulkhead.queued++;
+            try {
+                long remaining = maxQueueNanos;
+                while ((permit = bulkhead.tryTake()) == null) {
+                    if (remaining <= 0) {
+                        bulkhead.timedOut.increment();
+                        return null;
+                    }
+                    remaining = bulkhead.available.awaitNanos(remaining);
+                }
+            } finally {
+                bulkhead.queued--;
+            }
+            return bulkhead.admit(permit, System.nanoTime() - start);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                "Interrupted while waiting for a client slot", ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the quota of a client.
+     *
+     * @param clientId the normalized client id
+     * @return the number of slots reserved for the client
+     */
+    public int quotaOf(final String clientId) {
+        return Math.max(1, (int) Math.round(
+            baseQuota * weights.getOrDefault(clientId, 1d)));
+    }
+
+    /**
+     * Returns a snapshot of the overflow pool and of every client's
+     * bulkhead, clients with the most rejected requests first.
+     *
+     * @return map of counter name to value
+     */
+    public Map<String, Object> stats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        final List<Bulkhead> snapshot;
+        lock.lock();
+        try {
+            stats.put("overflowInUse", overflowInUse);
+            snapshot = new ArrayList<>(bulkheads.values());
+        } finally {
+            lock.unlock();
+        }
+        stats.put("overflowCapacity", overflowCapacity);
+        stats.put("maxOverflowPerClient", maxOverflowPerClient);
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("maxClients", maxClients);
+        stats.put("evicted", evicted.sum());
+        snapshot.sort(Comparator.comparingLong(Bulkhead::shed).reversed()
+            .thenComparing(bulkhead -> bulkhead.client));
+        final Map<String, Object> clients = new LinkedHashMap<>();
+        for (Bulkhead bulkhead : snapshot) {
+            clients.put(bulkhead.client, bulkhead.stats());
+        }
+        stats.put("clients", clients);
+        return stats;
+    }
+
+    /**
+     * Returns a snapshot of one client's bulkhead.
+     *
+     * @param clientId the normalized client id
+     * @return map of counter name to value, empty if the client made no
+     *         requests
+     */
+    public Map<String, Object> stats(final String clientId) {
+        final Bulkhead bulkhead;
+        lock.lock();
+        try {
+            bulkhead = bulkheads.get(clientId);
+        } finally {
+            lock.unlock();
+        }
+        return bulkhead == null ? Map.of() : bulkhead.stats();
+    }
+
+    private Bulkhead bulkhead(final String clientId) {
+        Bulkhead bulkhead = bulkheads.get(clientId);
+        if (bulkhead == null) {
+            final boolean reserved = weights.containsKey(clientId);
+            final boolean own =
+                reserved || tracked < maxClients || evictIdle();
+            final String key = own ? clientId : OTHER_CLIENTS;
+            bulkhead = bulkheads.get(key);
+            if (bulkhead == null) {
+                bulkhead = new Bulkhead(key, own && !reserved);
+                bulkheads.put(key, bulkhead);
+                if (bulkhead.counted) {
+                    tracked++;
+                }
+            }
+        }
+        bulkhead.lastUsed = ++uses;
+        return bulkhead;
+    }
+
+    /**
+     * Removes the least recently used bulkhead counted against the
+     * maximum that has nothing in flight or queued.
+     *
+     * @return true if a bulkhead was removed
+     */
+    private boolean evictIdle() {
+        Bulkhead idlest = null;
+        for (Bulkhead candidate : bulkheads.values()) {
+            if (candidate.counted && candidate.isIdle() && (idlest == null
+                || candidate.lastUsed < idlest.lastUsed)) {
+                idlest = candidate;
+            }
+        }
+        if (idlest == null) {
+            return false;
+        }
+        bulkheads.remove(idlest.client);
+        tracked--;
+        evicted.increment();
+        return true;
+    }
+
+    /** A slot held by one request. */
+    public final class Permit {
+
+        /** Bulkhead the slot belongs to. */
+        private final Bulkhead bulkhead;
+
+        /** Whether the slot was borrowed from the overflow pool. */
+        private final boolean overflow;
+
+        private Permit(final Bulkhead bulkheadValue,
+                       final boolean overflowValue) {
+            this.bulkhead = bulkheadValue;
+            this.overflow = overflowValue;
+        }
+
+        /**
+         * Frees the slot and records the request's latency.
+         *
+         * @param latencyNanos time the slot was held, in nanoseconds
+         */
+        public void release(final long latencyNanos) {
+            // Recorded first: once the slot is free the bulkhead may be
+            // evicted.
+            bulkhead.latency.record(latencyNanos);
+            bulkhead.latencyNanos.add(latencyNanos);
+            bulkhead.completed.increment();
+            free();
+        }
+
+        /**
+         * Frees the slot without recording a latency, for requests whose
+         * time in the service does not measure the client's load, such
+         * as a stream that has started.
+         */
+        public void releaseIgnored() {
+            bulkhead.releasedEarly.increment();
+            free();
+        }
+
+        private void free() {
+            lock.lock();
+            try {
+                if (overflow) {
+                    bulkhead.overflow--;
+                    overflowInUse--;
+                    for (Bulkhead waiting : bulkheads.values()) {
+                        if (waiting.queued > 0) {
+                            waiting.available.signal();
+                        }
+                    }
+                } else {
+                    bulkhead.inFlight--;
+                    bulkhead.available.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** Quota, queue and counters of one client. */
+    private final class Bulkhead {
+
+        /** The client. */
+        private final String client;
+
+        /** Slots reserved for the client. */
+        private final int quota;
+
+        /**
+         * Whether the bulkhead counts against the maximum number of
+         * clients and may be evicted; false for configured clients and
+         * the shared bulkhead.
+         */
+        private final boolean counted;
+
+        /** Value of the use counter when the client last acquired. */
+        private long lastUsed;
+
+        /** Signalled when the client may find a free slot. */
+        private final Condition available = lock.newCondition();
+
+        /** Own slots in use. */
+        private int inFlight;
+
+        /** Overflow slots in use. */
+        private int overflow;
+
+        /** Requests waiting for a slot. */
+        private int queued;
+
+        /** Requests given a slot. */
+        private final LongAdder admitted = new LongAdder();
+
+        /** Requests given an overflow slot. */
+        private final LongAdder borrowed = new LongAdder();
+
+        /** Requests rejected because the queue was full. */
+        private final LongAdder rejected = new LongAdder();
+
+        /** Requests rejected because they waited too long. */
+        private final LongAdder timedOut = new LongAdder();
+
+        /** Requests that released their slot. */
+        private final LongAdder completed = new LongAdder();
+
+        /** Requests that released their slot without a latency. */
+        private final LongAdder releasedEarly = new LongAdder();
+
+        /** Total time slots were held, in nanoseconds. */
+        private final LongAdder latencyNanos = new LongAdder();
+
+        /** Total wait of admitted requests, in nanoseconds. */
+        private final LongAdder queueNanos = new LongAdder();
+
+        /** Latency of completed requests. */
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        Bulkhead(final String clientValue, final boolean countedValue) {
+            this.client = clientValue;
+            this.quota = quotaOf(clientValue);
+            this.counted = countedValue;
+        }
+
+        boolean isIdle() {
+            return inFlight == 0 && overflow == 0 && queued == 0;
+        }
+
+        Permit tryTake() {
+            if (inFlight < quota) {
+                inFlight++;
+                return new Permit(this, false);
+            }
+            if (overflow < maxOverflowPerClient
+                && overflowInUse < overflowCapacity) {
+                overflow++;
+                overflowInUse++;
+                return new Permit(this, true);
+            }
+            return null;
+        }
+
+        Permit admit(final Permit permit, final long waited) {
+            admitted.increment();
+            if (permit.overflow) {
+                borrowed.increment();
+            }
+            queueNanos.add(waited);
+            return permit;
+        }
+
+        long shed() {
+            return rejected.sum() + timedOut.sum();
+        }
+
+        Map<String, Object> stats() {
+            final Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("quota", quota);
+            lock.lock();
+            try {
+                stats.put("inFlight", inFlight);
+                stats.put("overflowInUse", overflow);
+                stats.put("queueDepth", queued);
+            } finally {
+                lock.unlock();
+            }
+            final long requests = admitted.sum();
+            final long done = completed.sum();
+            stats.put("admitted", requests);
+            stats.put("borrowed", borrowed.sum());
+            stats.put("rejected", rejected.sum());
+            stats.put("timedOut", timedOut.sum());
+            stats.put("releasedEarly", releasedEarly.sum());
+            stats.put("avgQueueMs", requests == 0
+                ? 0d : queueNanos.sum() / NANOS_PER_MILLI / requests);
+            stats.put("avgLatencyMs", done == 0
+                ? 0d : latencyNanos.sum() / NANOS_PER_MILLI / done);
+            stats.put("latencyHistogram", latency.toMap());
+            return stats;
+        }
+    }
+}
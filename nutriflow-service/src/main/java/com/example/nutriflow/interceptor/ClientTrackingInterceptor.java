@@ -1,36 +1,109 @@
 package com.example.nutriflow.interceptor;
 
+import com.example.nutriflow.service.UsageAnalytics;
+import com.example.nutriflow.service.ai.ClientContext;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
 
 /**
  * Interceptor for tracking client requests.
- * Extracts X-Client-Id and X-End-User-Id headers for logging purposes.
+ * Extracts X-Client-Id and X-End-User-Id headers and records every
+ * completed request with its route, status and latency in
+ * {@link UsageAnalytics}, off the request path. It also binds the
+ * client id to the request thread as the {@link ClientContext} that
+ * model usage is accounted to. Requests handled asynchronously unbind
+ * it as soon as the servlet thread is released, and are recorded once
+ * their response completes. Requests are throttled per client
+ * beforehand by the {@link ClientBulkheadFilter}.
  */
 @Component
-public final class ClientTrackingInterceptor implements HandlerInterceptor {
+public final class ClientTrackingInterceptor
+    implements AsyncHandlerInterceptor {
 
     /** Logger for this class. */
     private static final Logger LOGGER =
         LoggerFactory.getLogger(ClientTrackingInterceptor.class);
 
+    /** Request attribute holding the start of handling, in nanoseconds. */
+    static final String START_ATTRIBUTE =
+        ClientTrackingInterceptor.class.getName() + ".start";
+
+    /** Status recorded when a handler failed with an exception. */
+    private static final int SERVER_ERROR = 500;
+
+    /** Pipeline completed requests are recorded in. */
+    private final UsageAnalytics usageAnalytics;
+
+    /**
+     * Creates the interceptor.
+     *
+     * @param usageAnalyticsValue pipeline completed requests are
+     *                            recorded in
+     */
+    @Autowired
+    public ClientTrackingInterceptor(
+            final UsageAnalytics usageAnalyticsValue) {
+        this.usageAnalytics = usageAnalyticsValue;
+    }
+
     @Override
     public boolean preHandle(final HttpServletRequest request,
                              final HttpServletResponse response,
                              final Object handler) {
         String clientId = request.getHeader("X-Client-Id");
         String endUserId = request.getHeader("X-End-User-Id");
+        ClientContext.set(clientId);
 
-        if (clientId != null || endUserId != null) {
-            LOGGER.info("Request from client: {}, end user: {}, path: {} {}",
-                    clientId, endUserId, request.getMethod(),
-                    request.getRequestURI());
+        if (request.getDispatcherType() != DispatcherType.ASYNC) {
+            request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+            if (LOGGER.isDebugEnabled()
+                && (clientId != null || endUserId != null)) {
+                LOGGER.debug("Request from client: {}, end user: {}, "
+                        + "path: {} {}", clientId, endUserId,
+                        request.getMethod(), request.getRequestURI());
+            }
         }
 
         return true;
     }
+
+    @Override
+    public void afterConcurrentHandlingStarted(
+            final HttpServletRequest request,
+            final HttpServletResponse response,
+            final Object handler) {
+        ClientContext.clear();
+    }
+
+    @Override
+    public void afterCompletion(final HttpServletRequest request,
+                                final HttpServletResponse response,
+                                final Object handler,
+                                final Exception ex) {
+        ClientContext.clear();
+        if (!(request.getAttribute(START_ATTRIBUTE) instanceof Long start)) {
+            return;
+        }
+        request.removeAttribute(START_ATTRIBUTE);
+        final int status = ex != null && response.getStatus() < SERVER_ERROR
+            ? SERVER_ERROR : response.getStatus();
+        usageAnalytics.record(
+            ClientContext.normalize(request.getHeader("X-Client-Id")),
+            request.getHeader("X-End-User-Id"), routeOf(request), status,
+            System.nanoTime() - start);
+    }
+
+    private static String routeOf(final HttpServletRequest request) {
+        final Object pattern = request.getAttribute(
+            HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern == null ? UsageAnalytics.UNMATCHED_ROUTE
+            : request.getMethod() + " " + pattern;
+    }
 }
@@ -0,0 +1,65 @@
+package com.example.nutriflow.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity class representing aggregated API usage of one client on one
+ * route with one response status during one time window.
+ * Rows are written by the usage analytics pipeline once their window
+ * has closed.
+ */
+@Entity
+@Table(name = "client_usage", schema = "nutriflow")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClientUsage {
+
+    /** Unique identifier for the usage row. */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "usage_id")
+    private Long usageId;
+
+    /** Start of the time window the row covers. */
+    @Column(name = "window_start", nullable = false)
+    private LocalDateTime windowStart;
+
+    /** Client application, from the X-Client-Id header. */
+    @Column(name = "client_id", nullable = false)
+    private String clientId;
+
+    /** HTTP method and route pattern, e.g. {@code GET /api/recipes/{id}}. */
+    @Column(name = "route", nullable = false)
+    private String route;
+
+    /** HTTP response status. */
+    @Column(name = "status", nullable = false)
+    private Integer status;
+
+    /** Number of requests. */
+    @Column(name = "request_count", nullable = false)
+    private Long requestCount;
+
+    /** Number of distinct end users (X-End-User-Id) among the requests. */
+    @Column(name = "end_user_count", nullable = false)
+    private Integer endUserCount;
+
+    /** Sum of the request latencies in milliseconds. */
+    @Column(name = "total_latency_ms", nullable = false)
+    private Long totalLatencyMs;
+
+    /** Longest request latency in milliseconds. */
+    @Column(name = "max_latency_ms", nullable = false)
+    private Long maxLatencyMs;
+}
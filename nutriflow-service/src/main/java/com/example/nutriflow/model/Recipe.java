@@ -1,5 +1,6 @@
 package com.example.nutriflow.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
@@ -92,4 +93,13 @@ public class Recipe {
     /** Popularity score used to rank recipes (higher means more popular). */
     @Column(name = "popularity_score")
     private Integer popularityScore;
+
+    /**
+     * Canonical hash of the title and ingredient names, unique across
+     * generated recipes so that near copies are not stored twice; null
+     * for catalog recipes.
+     */
+    @JsonIgnore
+    @Column(name = "canonical_hash", length = 64, unique = true)
+    private String canonicalHash;
 }
@@ -0,0 +1,15 @@
+package com.example.nutriflow.model.enums;
+
+/**
+ * Enum representing how the meals of a weekly plan are generated.
+ */
+public enum MealPlanMode {
+    /** One model call per meal, one after another. */
+    SEQUENTIAL,
+    /** One model call per meal, several running concurrently. */
+    PARALLEL,
+    /** One model call per group of days, returning all their meals. */
+    BATCH,
+    /** Existing recipes chosen to match the user's targets; AI for gaps. */
+    CATALOG
+}
@@ -1,31 +1,43 @@
 package com.example.nutriflow.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
-import com.example.nutriflow.model.PantryItem;
+import com.example.nutriflow.config.GenerationExecutorConfig;
 import com.example.nutriflow.model.Recipe;
-import com.example.nutriflow.model.RecipeIngredient;
 import com.example.nutriflow.model.User;
-import com.example.nutriflow.model.enums.CookingSkillLevel;
-import com.example.nutriflow.service.repository.RecipeIngredientRepository;
+import com.example.nutriflow.service.ai.AIResponseCache;
+import com.example.nutriflow.service.ai.AIUsageMetrics;
+import com.example.nutriflow.service.ai.CircuitOpenException;
+import com.example.nutriflow.service.ai.ClientContext;
+import com.example.nutriflow.service.ai.GenerationResult;
+import com.example.nutriflow.service.ai.ModelCallHedger;
+import com.example.nutriflow.service.ai.ModelCallLimiter;
+import com.example.nutriflow.service.ai.ModelCircuitBreaker;
+import com.example.nutriflow.service.ai.ModelRouter;
+import com.example.nutriflow.service.ai.ModelRouter.PromptClass;
+import com.example.nutriflow.service.ai.ModelOverloadedException;
+import com.example.nutriflow.service.ai.PromptKind;
+import com.example.nutriflow.service.ai.RecipeGenerator;
+import com.example.nutriflow.service.ai.RecipeJsonDecoder;
+import com.example.nutriflow.service.ai.RequestCoalescer;
 import com.example.nutriflow.service.repository.RecipeRepository;
-import com.google.genai.Client;
-import com.google.genai.types.GenerateContentConfig;
-import com.google.genai.types.GenerateContentResponse;
-import com.google.genai.types.Schema;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.core.JsonProcessingException;
 
 
 /**
@@ -35,15 +47,21 @@ import com.fasterxml.jackson.core.JsonProcessingException;
  */
 @Service
 public class AIRecipeService {
-    /** Client object that makes a connection to LLM. */
-    private final Client client;
-    /** Model type used for LLM. */
-    private final String model;
-    /** An ObjectMapper object that parses a json object. */
+    /** Cache key component of single-recipe responses. */
+    private static final String RECIPE_KIND = "recipe";
+
+    /** Cache key component of recipe-array responses. */
+    private static final String RECIPE_LIST_KIND = "recipes";
+
+    /** Chooses the model backend of each generation. */
+    private final ModelRouter router;
+    /** Mapper used to read partial streamed responses. */
     private final ObjectMapper objectMapper;
-    /** Repository for accessing recipe ingredient data. */
+    /** Streaming decoder of the model's recipe JSON. */
+    private final RecipeJsonDecoder recipeDecoder;
+    /** Inverted index from ingredient name to recipe IDs. */
     @Autowired
-    private RecipeIngredientRepository recipeIngredientRepository;
+    private RecipeIngredientIndex ingredientIndex;
     /** Service handling recipe-related logic. */
     @Autowired
     private RecipeRepository recipeRepository;
@@ -53,21 +71,56 @@ public class AIRecipeService {
     /** Service handling pnatry-related logic. */
     @Autowired
     private PantryService pantryService;
+    /** Builds the compact user description sent with user prompts. */
+    @Autowired
+    private PromptCompactor promptCompactor;
+    /** Cache of recent model responses. */
+    @Autowired
+    private AIResponseCache responseCache;
+    /** Persists generated recipes into the catalog in the background. */
+    @Autowired
+    private GeneratedRecipeWriter recipeWriter;
+    /** Collapses concurrent identical generation requests. */
+    @Autowired
+    private RequestCoalescer coalescer;
+    /** Caps the rate and concurrency of model calls. */
+    @Autowired
+    private ModelCallLimiter limiter;
+    /** Fails model calls fast while the model is erroring or slow. */
+    @Autowired
+    private ModelCircuitBreaker breaker;
+    /** Re-sends slow model calls to cut tail latency. */
+    @Autowired
+    private ModelCallHedger hedger;
+    /** Catalog recipes served while the breaker is open. */
+    @Autowired
+    private FallbackRecipeProvider fallbackRecipes;
+    /** Per-user pools of generated recipes. */
+    @Autowired
+    private PersonalizedRecipeCache personalCache;
+    /** Model usage per client, prompt kind and model. */
+    @Autowired
+    private AIUsageMetrics usage;
+    /**
+     * Executor that runs streamed generations; it rejects work when
+     * full instead of running it on the caller's thread.
+     */
+    @Autowired
+    @Qualifier(GenerationExecutorConfig.AI_REQUEST_EXECUTOR)
+    private Executor streamExecutor;
     /**
      * Initializes an AIRecipeService object.
      *
-     * @param apiKey apikey used for the LLM authentication
-     * @param modelName the model type (for ex., gemini-flash)
-     * @param myObjectMapper an objectmapper object
+     * @param modelRouter chooses the model backend of each generation
+     * @param myObjectMapper the objectmapper used to decode recipe JSON
      */
     public AIRecipeService(
-            final @Value("${google.api.key}") String apiKey,
-            final @Value("${google.model.name}") String modelName,
+            final ModelRouter modelRouter,
             final ObjectMapper myObjectMapper) {
 
-        this.client = Client.builder().apiKey(apiKey).build();
-        this.model = modelName;
+        this.router = modelRouter;
         this.objectMapper = myObjectMapper;
+        this.recipeDecoder = new RecipeJsonDecoder(myObjectMapper.getFactory());
     }
 
     /**
@@ -85,22 +138,19 @@ public class AIRecipeService {
         final String finalPrompt =
             "Generate a delicious recipe with the following ingredient: "
                 + ingredient;
-        Recipe recipe = requestRecipe(finalPrompt);
-        return recipe;
+        return orFallback(() -> coalesce(PromptKind.INGREDIENT,
+            "ingredient:" + ingredient.trim().toLowerCase(Locale.ROOT),
+            () -> requestRecipe(PromptKind.INGREDIENT, finalPrompt),
+            AIRecipeService::copyOf),
+            () -> fallbackRecipes.popularRecipe(ingredient));
     }
 
     private Optional<Recipe> searchIngredient(final String ingredient) {
-        List<Recipe> allRecipes = recipeRepository.findAll();
-        for (Recipe recipe : allRecipes) {
-            Integer recipeId = recipe.getRecipeId();
-            final List<RecipeIngredient> recipeIngredients =
-                recipeIngredientRepository.findByRecipeId(recipeId);
-            for (RecipeIngredient ri : recipeIngredients) {
-                final String candidate = ri.getIngredient();
-                if (candidate != null
-                    && ingredient.equalsIgnoreCase(candidate)) {
-                    return Optional.of(recipe);
-                }
+        for (Integer recipeId : ingredientIndex.lookup(ingredient)) {
+            final Optional<Recipe> recipe =
+                recipeRepository.findById(recipeId);
+            if (recipe.isPresent()) {
+                return recipe;
             }
         }
         return Optional.empty();
@@ -113,137 +163,537 @@ public class AIRecipeService {
      */
     public Recipe getAIRecommendedRecipe() {
         String finalPrompt = "Generate a delicious recipe";
-        Recipe recipe = requestRecipe(finalPrompt);
-        return recipe;
+        return orFallback(
+            () -> requestRecipe(PromptKind.RECOMMENDATION, finalPrompt),
+            () -> fallbackRecipes.popularRecipe(null));
 }
 
     /**
      * Generates a recipe using the user information.
+     * Recipes are generated a small pool at a time and cached per user,
+     * so repeat requests by a user whose profile and pantry have not
+     * changed are served from memory. Concurrent requests for the same
+     * user share one generation.
      *
      * @param userId the user identifier
      * @return Returns a recipe object with the found or generated recipe.
      */
     public Recipe getUserRecipe(final Integer userId) {
-        User user = userService.getUserById(userId)
+        final Optional<Recipe> cached = personalCache.next(userId);
+        if (cached.isPresent()) {
+            usage.recordPoolHit(ClientContext.current(), PromptKind.USER);
+            return cached.get();
+        }
+        return coalesce(PromptKind.USER, userKey(userId, null),
+            () -> generatePersonalRecipe(userId), AIRecipeService::copyOf);
+    }
+
+    /**
+     * Generates a recipe using the user information, passing its parts
+     * to the listener as the model produces them: the title and
+     * ingredients as soon as they are complete, then the instructions
+     * piece by piece, and finally the parsed recipe. A recipe from the
+     * user's pool, the response cache or the catalog fallback is passed
+     * on in the same order at once.
+     *
+     * Cancelling the returned future, or a listener that throws, stops
+     * the model call at its next piece of text.
+     *
+     * @param userId the user identifier
+     * @param listener receives the parts of the recipe
+     * @return the recipe, completed once the listener has received it;
+     *         completes exceptionally if generation fails
+     * @throws RejectedExecutionException if no thread is free to run the
+     *         generation
+     */
+    public CompletableFuture<Recipe> streamUserRecipe(
+            final Integer userId, final RecipeStreamListener listener) {
+        final RecipeStreamParser stream =
+            new RecipeStreamParser(objectMapper, listener);
+        final CompletableFuture<Recipe> result = CompletableFuture
+            .supplyAsync(() -> streamRecipe(userId, stream), streamExecutor);
+        result.whenComplete((recipe, ex) -> stream.cancel());
+        return result;
+    }
+
+    private Recipe streamRecipe(final Integer userId,
+                                final RecipeStreamParser stream) {
+        final Optional<Recipe> pooled = personalCache.next(userId);
+        pooled.ifPresent(recipe -> usage.recordPoolHit(
+            ClientContext.current(), PromptKind.USER));
+        final Recipe recipe = pooled
+            .orElseGet(() -> generateStreamedRecipe(userId, stream));
+        stream.finish(recipe);
+        return recipe;
+    }
+
+    private Recipe generateStreamedRecipe(final Integer userId,
+                                          final RecipeStreamParser stream) {
+        final UserGenerationContext context = buildUserContext(userId);
+        final String prompt = userPrompt(context, null);
+        final RecipeGenerator target =
+            router.route(PromptKind.USER.promptClass());
+        final String cacheKey =
+            AIResponseCache.key(target.modelName(), RECIPE_KIND, prompt);
+        final String client = ClientContext.current();
+        final Optional<String> cached = responseCache.get(cacheKey);
+        if (cached.isPresent()) {
+            usage.recordCacheHit(client, PromptKind.USER);
+            return parseRecipe(cached.get());
+        }
+
+        final GenerationResult response;
+        try {
+            // Not hedged: text already passed on cannot be taken back.
+            response = limitedCall(
+                () -> usage.recordCall(client, PromptKind.USER,
+                    target.modelName(), () -> router.call(target,
+                    backend -> backend.streamRecipe(prompt, stream::feed))),
+                false);
+        } catch (CircuitOpenException ex) {
+            return fallbackRecipes.recipesForUser(context.getUser(), null, 1)
+                .stream().findFirst().orElseThrow(() -> ex);
+        }
+        final String json = response.getText();
+        final Recipe recipe = decodeResponse(PromptKind.USER, target,
+            () -> parseRecipe(json));
+        responseCache.put(cacheKey, json);
+        recipeWriter.submit(recipe);
+        return recipe;
+    }
+
+    /**
+     * Serves the user's cached pool if the profile fingerprint still
+     * matches, otherwise generates and caches a new pool. Fallback
+     * recipes served while the breaker is open are not cached.
+     */
+    private Recipe generatePersonalRecipe(final Integer userId) {
+        final long version = personalCache.version(userId);
+        final UserGenerationContext context = buildUserContext(userId);
+        final Optional<Recipe> kept = personalCache.revalidate(userId,
+            context.getFingerprint(), version);
+        if (kept.isPresent()) {
+            usage.recordPoolHit(ClientContext.current(), PromptKind.USER);
+            return kept.get();
+        }
+
+        final List<Recipe> pool;
+        try {
+            pool = generatePool(context, false);
+        } catch (CircuitOpenException ex) {
+            return fallbackRecipes.recipesForUser(context.getUser(), null, 1)
+                .stream().findFirst().orElseThrow(() -> ex);
+        }
+        if (pool.isEmpty()) {
+            throw new IllegalStateException("Model returned no recipes");
+        }
+        personalCache.put(userId, context.getFingerprint(), version, pool);
+        return pool.get(0);
+    }
+
+    /**
+     * Generates a user's recipe pool ahead of demand, so the next
+     * requests are served from memory. Nothing is generated if the
+     * current pool still has unserved recipes, or if an invalidated
+     * pool turns out to match the unchanged profile. The model call is
+     * made only when it would not delay interactive calls and bypasses
+     * the response cache, so a consumed pool is replaced by new recipes.
+     *
+     * @param userId the user identifier
+     * @return true if a new pool was generated
+     * @throws ModelOverloadedException if the model has no spare
+     *         capacity or the breaker is open
+     * @throws IllegalArgumentException if the user does not exist
+     */
+    public boolean prefetchPersonalRecipes(final Integer userId) {
+        if (!personalCache.needsRefill(userId)) {
+            return false;
+        }
+        final long version = personalCache.version(userId);
+        final UserGenerationContext context = buildUserContext(userId);
+        if (personalCache.adopt(userId, context.getFingerprint(), version)
+            && !personalCache.needsRefill(userId)) {
+            return false;
+        }
+        final List<Recipe> pool = generatePool(context, true);
+        personalCache.prefill(userId, context.getFingerprint(), version,
+            pool);
+        return !pool.isEmpty();
+    }
+
+    private List<Recipe> generatePool(final UserGenerationContext context,
+                                      final boolean background) {
+        final int poolSize = personalCache.getPoolSize();
+        return poolSize == 1
+            ? List.of(requestRecipe(PromptKind.USER,
+                userPrompt(context, null), background))
+            : requestRecipes(PromptKind.USER,
+                "Generate " + poolSize + " different delicious meal "
+                + "recipes given what you know about the user."
+                + context.getPromptPrefix()
+                + "Avoid repeating a recipe.", poolSize, background);
+    }
+
+    /**
+     * Generates a recipe using the user information for a specific
+     * occasion, such as one slot of a meal plan. Different occasions
+     * produce distinct prompts, so they are neither cached nor
+     * coalesced together.
+     *
+     * @param userId the user identifier
+     * @param occasion what the recipe is for (e.g. "Monday meal 1"),
+     *                 or null for no particular occasion
+     * @return Returns a recipe object with the generated recipe.
+     */
+    public Recipe getUserRecipe(final Integer userId, final String occasion) {
+        return coalesce(kindOf(occasion), userKey(userId, occasion),
+            () -> generateUserRecipe(buildUserContext(userId), occasion),
+            AIRecipeService::copyOf);
+    }
+
+    /**
+     * Generates a recipe for a specific occasion from an already built
+     * user context, without reloading the user or pantry.
+     *
+     * @param context the user generation context
+     * @param occasion what the recipe is for, or null
+     * @return Returns a recipe object with the generated recipe.
+     */
+    public Recipe getUserRecipe(final UserGenerationContext context,
+                                final String occasion) {
+        return coalesce(kindOf(occasion),
+            userKey(context.getUserId(), occasion),
+            () -> generateUserRecipe(context, occasion),
+            AIRecipeService::copyOf);
+    }
+
+    /**
+     * Recipes for an occasion are meal plan slots; the rest are plain
+     * user recipes.
+     */
+    private static PromptKind kindOf(final String occasion) {
+        return occasion == null ? PromptKind.USER : PromptKind.PLAN;
+    }
+
+    private static String userKey(final Integer userId,
+                                  final String occasion) {
+        return occasion == null
+            ? "user:" + userId : "user:" + userId + ":" + occasion;
+    }
+
+    private Recipe generateUserRecipe(final UserGenerationContext context,
+                                      final String occasion) {
+        final String finalPrompt = userPrompt(context, occasion);
+        return orFallback(
+            () -> requestRecipe(kindOf(occasion), finalPrompt),
+            () -> fallbackRecipes
+                .recipesForUser(context.getUser(), occasion, 1)
+                .stream().findFirst());
+    }
+
+    private static String userPrompt(final UserGenerationContext context,
+                                     final String occasion) {
+        return
+        "Generate a delicious meal recipe given what you know about the user."
+            + context.getPromptPrefix()
+            + (occasion == null ? ""
+                : "The recipe is for " + occasion + ". ");
+    }
+
+    /**
+     * Generates several recipes for a user with a single model call.
+     * The user context is sent once and the model returns an array with
+     * one recipe per occasion, in order. Concurrent requests for the
+     * same user and occasions share one generation.
+     *
+     * @param context the user generation context
+     * @param occasions what each recipe is for (e.g. "Monday meal 1")
+     * @return the generated recipes in occasion order; the list may be
+     *         shorter than the occasions if the model returned fewer
+     */
+    public List<Recipe> getUserRecipes(final UserGenerationContext context,
+                                       final List<String> occasions) {
+        if (occasions.isEmpty()) {
+            return List.of();
+        }
+        return coalesce(PromptKind.PLAN,
+            "user:" + context.getUserId() + ":batch:"
+                + String.join("|", occasions),
+            () -> generateUserRecipes(context, occasions),
+            recipes -> recipes.stream().map(AIRecipeService::copyOf)
+                .toList());
+    }
+
+    private List<Recipe> generateUserRecipes(
+            final UserGenerationContext context,
+            final List<String> occasions) {
+        final StringBuilder slots = new StringBuilder();
+        for (int i = 0; i < occasions.size(); i++) {
+            slots.append(i == 0 ? "" : "; ")
+                .append(i + 1).append(". ").append(occasions.get(i));
+        }
+        final String finalPrompt =
+            "Generate " + occasions.size() + " different delicious meal "
+            + "recipes given what you know about the user."
+            + context.getPromptPrefix()
+            + "Return the recipes as an array in this order: " + slots
+            + ". Avoid repeating a recipe.";
+
+        try {
+            return requestRecipes(PromptKind.PLAN, finalPrompt,
+                occasions.size());
+        } catch (CircuitOpenException ex) {
+            final List<Recipe> fallback = fallbackRecipes.recipesForUser(
+                context.getUser(), occasions.get(0), occasions.size());
+            if (fallback.isEmpty()) {
+                throw ex;
+            }
+            return fallback;
+        }
+    }
+
+    /**
+     * Runs a generation, serving a catalog recipe instead while the
+     * model circuit breaker is open.
+     *
+     * @param generation the generation
+     * @param fallback supplies the catalog recipe
+     * @return the generated recipe, or the fallback recipe
+     * @throws CircuitOpenException if the breaker is open and there is
+     *         no fallback recipe
+     */
+    private static Recipe orFallback(
+            final Supplier<Recipe> generation,
+            final Supplier<Optional<Recipe>> fallback) {
+        try {
+            return generation.get();
+        } catch (CircuitOpenException ex) {
+            return fallback.get().orElseThrow(() -> ex);
+        }
+    }
+
+    /**
+     * Loads the user and pantry and prepares the prompt sentence that
+     * describes the user's allergies, dislikes, budget, skill, equipment
+     * and pantry, compacted by the {@link PromptCompactor}. Build it once
+     * per request and pass it to every
+     * generation in that request.
+     *
+     * @param userId the user identifier
+     * @return the user generation context
+     * @throws IllegalArgumentException if the user does not exist
+     */
+    public UserGenerationContext buildUserContext(final Integer userId) {
+        final User user = userService.getUserById(userId)
             .orElseThrow(() -> new IllegalArgumentException("User not found: "
                 + userId));
-        BigDecimal budget = user.getBudget();
-        CookingSkillLevel cookingSkill = user.getCookingSkillLevel();
-        String budgetText = budget != null
-            ? "$" + budget : "unspecified budget";
-        String cookingSkillText = cookingSkill != null
-            ? cookingSkill.toString() : "unspecified cooking skill";
-        String allergies = Arrays.toString(user.getAllergies() != null
-            ? user.getAllergies() : new String[0]);
-        String dislikes = Arrays.toString(user.getDislikes() != null
-            ? user.getDislikes() : new String[0]);
-        String equipments = Arrays.toString(user.getEquipments() != null
-            ? user.getEquipments() : new String[0]);
-
-        List<PantryItem> pantryItems = pantryService.getPantryItems(userId);
-        String pantryText = pantryItems.isEmpty()
-            ? "no pantry items"
-            : pantryItems.stream()
-                .map(item -> {
-                    String qty = item.getQuantity() != null
-                        ? item.getQuantity().toPlainString() : "";
-                    String unit = item.getUnit() != null
-                        ? item.getUnit() : "";
-                    String suffix = qty.isBlank() && unit.isBlank()
-                        ? "" : " (" + qty + (unit.isBlank()
-                            ? "" : " " + unit) + ")";
-                    return item.getName() + suffix;
-                })
-                .collect(Collectors.joining(", "));
-        final String finalPrompt =
-        "Generate a delicious meal recipe given what you know about the user."
-            + "The user has the following allergies: " + allergies + "; "
-            + "the following dislikes: " + dislikes + "; "
-            + "the following budget: " + budgetText + "; "
-            + "the following cooking skill level: " + cookingSkillText + "; "
-            + "the following kitchen equipments: " + equipments + "; "
-            + "the following pantry items: " + pantryText + ". ";
-
-        Recipe recipe = requestRecipe(finalPrompt);
-        return recipe;
+        final PromptCompactor.CompactProfile profile = promptCompactor
+            .compact(user, pantryService.getPantryItems(userId));
+        return UserGenerationContext.builder()
+            .userId(userId)
+            .user(user)
+            .pantryText(profile.getPantryText())
+            .promptPrefix(profile.getPromptPrefix())
+            .fingerprint(PersonalizedRecipeCache.fingerprint(
+                profile.getPromptPrefix()))
+            .build();
     }
 
     /**
-     * A method that creates a structured output schema
-     * and uses the prompt to make an LLM query.
+     * A method that uses the prompt to make a structured-output LLM
+     * query. Responses are cached, so an identical prompt answered
+     * recently is served without another model round trip, and newly
+     * generated recipes are queued for storage in the catalog. Model
+     * calls go through the {@link ModelCircuitBreaker} and the
+     * {@link ModelCallLimiter}, either of which may shed them with a
+     * {@code ModelOverloadedException}. Cache hits, model calls and
+     * parse failures are accounted in {@link AIUsageMetrics}.
      *
+     * @param kind kind of request, used to choose the model
      * @param prompt prompt that is used to make an LLM query.
      * @return Returns a recipe object with the generated recipe.
      */
-    private Recipe requestRecipe(final String prompt) {
-        Schema responseSchema = Schema.builder().type("OBJECT")
-            .properties(Map.ofEntries(
-                Map.entry("title",
-                    Schema.builder().type("STRING").build()),
-                Map.entry("cookTime",
-                    Schema.builder().type("INTEGER").build()),
-                Map.entry("cuisines",
-                    Schema.builder().type("ARRAY")
-                        .items(Schema.builder().type("STRING").build())
-                        .build()),
-                Map.entry("tags",
-                    Schema.builder().type("ARRAY")
-                        .items(Schema.builder().type("STRING").build())
-                        .build()),
-                Map.entry("ingredients",
-                    Schema.builder().type("ARRAY").items(
-                        Schema.builder().type("OBJECT")
-                            .properties(Map.ofEntries(
-                                Map.entry("id",
-                                    Schema.builder().type("NULL").build()),
-                                Map.entry("recipeId",
-                                    Schema.builder().type("NULL").build()),
-                                Map.entry("ingredient",
-                                    Schema.builder().type("STRING").build()),
-                                Map.entry("quantity",
-                                    Schema.builder().type("NUMBER").build()),
-                                Map.entry("unit",
-                                    Schema.builder().type("STRING").build()),
-                                Map.entry("allergenTags",
-                                    Schema.builder().type("ARRAY")
-                                        .items(Schema.builder()
-                                            .type("STRING").build())
-                                        .build())
-                                )).build())
-                        .build()),
-                Map.entry("instructions",
-                    Schema.builder().type("STRING").build()),
-                Map.entry("nutrition",
-                    Schema.builder().type("OBJECT").properties(
-                        Map.ofEntries(
-                            Map.entry("summary",
-                                Schema.builder().type("NULL").build())
-                        )
-                        )
-                    .build()),
-                Map.entry("calories",
-                    Schema.builder().type("NUMBER").build()),
-                Map.entry("carbohydrates",
-                    Schema.builder().type("NUMBER").build()),
-                Map.entry("fat",
-                    Schema.builder().type("NUMBER").build()),
-                Map.entry("fiber",
-                    Schema.builder().type("NUMBER").build()),
-                Map.entry("protein",
-                    Schema.builder().type("NUMBER").build())
-            ))
-            .required(List.of("title", "ingredients"))
-            .build();
+    private Recipe requestRecipe(final PromptKind kind,
+                                 final String prompt) {
+        return requestRecipe(kind, prompt, false);
+    }
 
-        GenerateContentConfig config = GenerateContentConfig.builder()
-                .responseMimeType("application/json")
-                .responseSchema(responseSchema)
-                .build();
+    /**
+     * Makes a recipe query for interactive or background work.
+     * Background queries skip the cache lookup and only run if the
+     * limiter has spare capacity.
+     *
+     * @param kind kind of request, used to choose the model
+     * @param prompt prompt that is used to make an LLM query.
+     * @param background whether the query is background work
+     * @return Returns a recipe object with the generated recipe.
+     */
+    private Recipe requestRecipe(final PromptKind kind,
+                                 final String prompt,
+                                 final boolean background) {
+        final RecipeGenerator target = router.route(kind.promptClass());
+        final String cacheKey =
+            AIResponseCache.key(target.modelName(), RECIPE_KIND, prompt);
+        final Optional<String> cached =
+            background ? Optional.empty() : responseCache.get(cacheKey);
+        if (cached.isPresent()) {
+            usage.recordCacheHit(ClientContext.current(), kind);
+            return parseRecipe(cached.get());
+        }
 
-        GenerateContentResponse response =
-                client.models.generateContent(model, prompt, config);
+        final GenerationResult response = callModel(kind, target,
+            backend -> backend.generateRecipe(prompt), background);
 
-        return parseRecipe(response.text());
+        final String json = response.getText();
+        final Recipe recipe =
+            decodeResponse(kind, target, () -> parseRecipe(json));
+        responseCache.put(cacheKey, json);
+        recipeWriter.submit(recipe);
+        return recipe;
+    }
+
+    /**
+     * Makes a structured-output LLM query for an array of recipes.
+     * Like {@link #requestRecipe(PromptKind, String)}, responses are
+     * cached and new recipes are queued for storage in the catalog.
+     * Arrays are always routed as {@link PromptClass#BATCH}.
+     *
+     * @param kind kind of request, as accounted in usage metrics
+     * @param prompt prompt that is used to make an LLM query.
+     * @param count number of recipes requested
+     * @return Returns the generated recipes (at most {@code count}).
+     */
+    private List<Recipe> requestRecipes(final PromptKind kind,
+                                        final String prompt,
+                                        final int count) {
+        return requestRecipes(kind, prompt, count, false);
+    }
+
+    /**
+     * Makes a recipe-array query for interactive or background work,
+     * as {@link #requestRecipe(PromptKind, String, boolean)} does.
+     *
+     * @param kind kind of request, as accounted in usage metrics
+     * @param prompt prompt that is used to make an LLM query.
+     * @param count number of recipes requested
+     * @param background whether the query is background work
+     * @return Returns the generated recipes (at most {@code count}).
+     */
+    private List<Recipe> requestRecipes(final PromptKind kind,
+                                        final String prompt,
+                                        final int count,
+                                        final boolean background) {
+        final RecipeGenerator target = router.route(PromptClass.BATCH);
+        final String cacheKey =
+            AIResponseCache.key(target.modelName(), RECIPE_LIST_KIND,
+                prompt);
+        final Optional<String> cached =
+            background ? Optional.empty() : responseCache.get(cacheKey);
+        if (cached.isPresent()) {
+            usage.recordCacheHit(ClientContext.current(), kind);
+            return parseRecipes(cached.get(), count);
+        }
+
+        final GenerationResult response = callModel(kind, target,
+            backend -> backend.generateRecipes(prompt, count), background);
+
+        final String json = response.getText();
+        final List<Recipe> recipes =
+            decodeResponse(kind, target, () -> parseRecipes(json, count));
+        responseCache.put(cacheKey, json);
+        recipes.forEach(recipeWriter::submit);
+        return recipes;
+    }
+
+    /**
+     * Runs a request against the routed backend through the limiter and
+     * the breaker. Background calls give way to interactive ones instead
+     * of queueing; slow interactive calls may be hedged with a second
+     * call when the model has spare capacity. Each attempt is accounted
+     * to the client of the calling thread, including hedges made on
+     * other threads.
+     */
+    private GenerationResult callModel(
+            final PromptKind kind,
+            final RecipeGenerator target,
+            final Function<RecipeGenerator, GenerationResult> request,
+            final boolean background) {
+        final String client = ClientContext.current();
+        final Supplier<GenerationResult> call =
+            () -> usage.recordCall(client, kind, target.modelName(),
+                () -> router.call(target, request));
+        if (background) {
+            return limitedCall(call, true);
+        }
+        return limitedCall(
+            () -> hedger.call(call, () -> limiter.callIfIdle(call)), false);
+    }
+
+    /**
+     * Runs a model call in a limiter slot, through the breaker. The
+     * breaker is asked first, so callers fail fast while it is open
+     * instead of queueing, but it only times the call itself: a wait for
+     * the limiter is local queueing, not a slow model.
+     */
+    private <T> T limitedCall(final Supplier<T> call,
+                              final boolean background) {
+        breaker.checkPermitted();
+        final Supplier<T> guarded = () -> breaker.call(call);
+        return background
+            ? limiter.callIfIdle(guarded) : limiter.call(guarded);
+    }
+
+    /**
+     * Runs a coalesced generation, accounting the request as coalesced
+     * if it joined a generation already in flight. Joined requests get
+     * their own copy of the result.
+     */
+    private <V> V coalesce(final PromptKind kind, final String key,
+                           final Supplier<V> work,
+                           final UnaryOperator<V> copy) {
+        final boolean[] ran = new boolean[1];
+        try {
+            return coalescer.execute(key, () -> {
+                ran[0] = true;
+                return work.get();
+            }, copy);
+        } finally {
+            if (!ran[0]) {
+                usage.recordCoalesced(ClientContext.current(), kind);
+            }
+        }
+    }
+
+    /**
+     * Copies a recipe, so that callers sharing a generation do not share
+     * a mutable entity.
+     */
+    private static Recipe copyOf(final Recipe recipe) {
+        return new Recipe(recipe.getRecipeId(), recipe.getTitle(),
+            recipe.getCookTime(),
+            recipe.getCuisines() == null ? null : recipe.getCuisines().clone(),
+            recipe.getTags() == null ? null : recipe.getTags().clone(),
+            recipe.getIngredients(), recipe.getInstructions(),
+            recipe.getNutrition(), recipe.getCalories(),
+            recipe.getCarbohydrates(), recipe.getFat(), recipe.getFiber(),
+            recipe.getProtein(), recipe.getPopularityScore(),
+            recipe.getCanonicalHash());
+    }
+
+    /**
+     * Decodes a fresh model response, accounting a parse failure
+     * against the model before rethrowing it.
+     */
+    private <T> T decodeResponse(final PromptKind kind,
+                                 final RecipeGenerator target,
+                                 final Supplier<T> decode) {
+        try {
+            return decode.get();
+        } catch (IllegalStateException ex) {
+            usage.recordParseFailure(ClientContext.current(), kind,
+                target.modelName());
+            throw ex;
+        }
     }
 
     /**
@@ -254,57 +704,29 @@ public class AIRecipeService {
      */
     private Recipe parseRecipe(final String json) {
         try {
-            JsonNode node = objectMapper.readTree(json);
-            Recipe recipe = new Recipe();
-
-            recipe.setTitle(node.path("title").asText(null));
-            if (node.hasNonNull("cookTime")) {
-                recipe.setCookTime(node.get("cookTime").asInt());
-            }
-            recipe.setCuisines(readStringArray(node.get("cuisines")));
-            recipe.setTags(readStringArray(node.get("tags")));
-            recipe.setIngredients(writeJsonOrEmpty(node.get("ingredients")));
-            recipe.setInstructions(node.path("instructions").asText(null));
-            if (node.hasNonNull("nutrition")) {
-                recipe.setNutrition(writeJsonOrEmpty(node.get("nutrition")));
-            }
-            recipe.setCalories(readDecimal(node, "calories"));
-            recipe.setCarbohydrates(readDecimal(node, "carbohydrates"));
-            recipe.setFat(readDecimal(node, "fat"));
-            recipe.setFiber(readDecimal(node, "fiber"));
-            recipe.setProtein(readDecimal(node, "protein"));
-            if (node.hasNonNull("popularityScore")) {
-                recipe.setPopularityScore(node.get("popularityScore").asInt());
-            }
-            return recipe;
-        } catch (JsonProcessingException ex) {
+            return recipeDecoder.decodeRecipe(json);
+        } catch (IOException ex) {
             throw new IllegalStateException(
                 "Failed to parse recipe response", ex
                 );
         }
     }
 
-    private String[] readStringArray(final JsonNode node) {
-        if (node == null || !node.isArray()) {
-            return null;
+    /**
+     * Parses a JSON array of recipes, skipping elements that are not
+     * recipe objects.
+     * @param json a json array that will be parsed.
+     * @param limit maximum number of recipes returned.
+     * @return Returns the parsed recipes in array order.
+     */
+    private List<Recipe> parseRecipes(final String json, final int limit) {
+        try {
+            return recipeDecoder.decodeRecipes(json, limit);
+        } catch (IOException ex) {
+            throw new IllegalStateException(
+                "Failed to parse recipe list response", ex
+                );
         }
-        List<String> values = new ArrayList<>();
-        node.forEach(item -> values.add(item.asText()));
-        return values.toArray(String[]::new);
-    }
-
-    private String writeJsonOrEmpty(final JsonNode node)
-        throws JsonProcessingException {
-            return (node == null || node.isNull())
-                    ? "{}"
-                    : objectMapper.writeValueAsString(node);
-    }
-
-    private BigDecimal readDecimal(final JsonNode node, final String field) {
-        JsonNode valueNode = node.get(field);
-        return valueNode != null && valueNode.isNumber()
-                ? valueNode.decimalValue()
-                : null;
     }
 
     /**
@@ -314,22 +736,65 @@ public class AIRecipeService {
      * @return a map containing recipe details
      */
     public Map<String, Object> generateRecipeForUser(final Long userId) {
-        Recipe recipe = getUserRecipe(userId.intValue());
+        final Recipe recipe = getUserRecipe(userId.intValue());
+        return recipe == null ? null : toMealMap(recipe);
+    }
 
+    /**
+     * Generates a recipe for one occasion (such as a meal plan slot)
+     * from a shared user context and returns it as a Map.
+     *
+     * @param context the user generation context
+     * @param occasion what the recipe is for, or null
+     * @return a map containing recipe details, or null if no recipe
+     *         could be generated
+     */
+    public Map<String, Object> generateRecipeForUser(
+            final UserGenerationContext context, final String occasion) {
+        final Recipe recipe = getUserRecipe(context, occasion);
+        return recipe == null ? null : toMealMap(recipe);
+    }
+
+    /**
+     * Generates one recipe per occasion with a single model call and
+     * returns them as Maps.
+     *
+     * @param context the user generation context
+     * @param occasions what each recipe is for
+     * @return maps containing recipe details in occasion order; may be
+     *         shorter than the occasions
+     */
+    public List<Map<String, Object>> generateRecipesForUser(
+            final UserGenerationContext context,
+            final List<String> occasions) {
+        return getUserRecipes(context, occasions).stream()
+            .map(AIRecipeService::toMealMap)
+            .toList();
+    }
+
+    /**
+     * Converts a recipe into the meal map used by meal plans.
+     *
+     * @param recipe the recipe
+     * @return a map containing recipe details
+     */
+    public static Map<String, Object> toMealMap(final Recipe recipe) {
         String instructions = recipe.getInstructions() != null
             ? recipe.getInstructions() : "No instructions available";
 
-        return Map.of(
-                "title", recipe.getTitle(),
-                "cookTime", recipe.getCookTime(),
-                "calories", safeNum(recipe.getCalories()),
-                "protein", safeNum(recipe.getProtein()),
-                "carbohydrates", safeNum(recipe.getCarbohydrates()),
-                "fat", safeNum(recipe.getFat()),
-                "instructions", instructions);
+        final Map<String, Object> meal = new HashMap<>();
+        meal.put("title", recipe.getTitle());
+        meal.put("cookTime", recipe.getCookTime() != null
+            ? recipe.getCookTime() : 0);
+        meal.put("calories", safeNum(recipe.getCalories()));
+        meal.put("protein", safeNum(recipe.getProtein()));
+        meal.put("carbohydrates", safeNum(recipe.getCarbohydrates()));
+        meal.put("fat", safeNum(recipe.getFat()));
+        meal.put("instructions", instructions);
+        return meal;
     }
 
-    private int safeNum(final BigDecimal val) {
+    private static int safeNum(final BigDecimal val) {
         return val != null ? val.intValue() : 0;
     }
 }
@@ -0,0 +1,159 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.Recipe;
+import com.example.nutriflow.model.User;
+import com.example.nutriflow.service.repository.RecipeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serves catalog recipes in place of generated ones while the model is
+ * unavailable.
+ * The most popular recipes are kept in memory and reloaded periodically,
+ * so a fallback costs no database or model round trip. A stale list is
+ * reloaded by one caller while the others keep using it. Recipes for a
+ * user never contain one of the user's allergies or dislikes.
+ */
+@Component
+public class FallbackRecipeProvider {
+
+    /** Logger for this class. */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(FallbackRecipeProvider.class);
+
+    /** Repository used to load the popular recipes. */
+    @Autowired
+    private RecipeRepository recipeRepository;
+
+    /** Ingredient and allergen lookup per recipe. */
+    @Autowired
+    private RecipeIngredientIndex ingredientIndex;
+
+    /** Number of popular recipes kept as fallbacks. */
+    @Value("${nutriflow.ai.fallback.pool-size:50}")
+    private int poolSize;
+
+    /** Age after which the popular recipes are reloaded, in ms. */
+    @Value("${nutriflow.ai.fallback.refresh-ms:60000}")
+    private long refreshMs;
+
+    /** Popular recipes, most popular first. */
+    private volatile List<Recipe> popular = List.of();
+
+    /** Whether {@link #popular} has been loaded (or tried) once. */
+    private volatile boolean loaded;
+
+    /** Time {@link #popular} was last loaded or tried. */
+    private volatile long loadedAt;
+
+    /** Held by the caller reloading {@link #popular}. */
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    /**
+     * Returns the most popular catalog recipe, preferring one that uses
+     * the given ingredient.
+     *
+     * @param ingredient the requested ingredient, or null for any recipe
+     * @return a catalog recipe, or empty if the catalog is empty
+     */
+    public Optional<Recipe> popularRecipe(final String ingredient) {
+        final List<Recipe> candidates = currentPopular();
+        final Set<Integer> withIngredient = ingredient == null
+            ? Set.of() : ingredientIndex.lookup(ingredient);
+        for (Recipe recipe : candidates) {
+            if (withIngredient.contains(recipe.getRecipeId())) {
+                return Optional.of(recipe);
+            }
+        }
+        return candidates.stream().findFirst();
+    }
+
+    /**
+     * Returns popular catalog recipes that are safe for a user.
+     * The occasion picks the starting point among the safe recipes, so
+     * the different meals of a plan get different fallbacks.
+     *
+     * @param user the user, whose allergies and dislikes are excluded
+     * @param occasion the meal the recipes are for, or null
+     * @param count the number of recipes wanted
+     * @return up to {@code count} distinct recipes (may be empty)
+     */
+    public List<Recipe> recipesForUser(final User user, final String occasion,
+                                       final int count) {
+        final Set<String> excluded = RecipeIngredientIndex.excludedTerms(user);
+        final List<Recipe> safe = new ArrayList<>();
+        for (Recipe recipe : currentPopular()) {
+            if (!ingredientIndex.conflicts(recipe, excluded)) {
+                safe.add(recipe);
+            }
+        }
+        if (safe.isEmpty()) {
+            return List.of();
+        }
+
+        final int start = occasion == null
+            ? 0 : Math.floorMod(occasion.hashCode(), safe.size());
+        final List<Recipe> picked = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, safe.size()); i++) {
+            picked.add(safe.get((start + i) % safe.size()));
+        }
+        return picked;
+    }
+
+    /**
+     * Reloads the popular recipes.
+     * If the table cannot be read the current list is kept.
+     */
+    public void refresh() {
+        try {
+            popular = List.copyOf(recipeRepository.findPopularRecipes(
+                PageRequest.of(0, Math.max(1, poolSize))));
+        } catch (DataAccessException ex) {
+            LOGGER.warn("Could not load fallback recipes: {}",
+                ex.getMessage());
+        }
+        loadedAt = System.nanoTime();
+        loaded = true;
+    }
+
+    /**
+     * Returns the popular recipes, reloading them once they are stale.
+     * Only one caller reloads; the others get the stale list meanwhile,
+     * except before the first load, when they wait for it.
+     */
+    private List<Recipe> currentPopular() {
+        if (!isStale()) {
+            return popular;
+        }
+        if (!loaded) {
+            refreshLock.lock();
+        } else if (!refreshLock.tryLock()) {
+            return popular;
+        }
+        try {
+            if (isStale()) {
+                refresh();
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+        return popular;
+    }
+
+    private boolean isStale() {
+        return !loaded || System.nanoTime() - loadedAt
+            > TimeUnit.MILLISECONDS.toNanos(refreshMs);
+    }
+}
@@ -0,0 +1,441 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.Recipe;
+import com.example.nutriflow.model.RecipeIngredient;
+import com.example.nutriflow.service.repository.RecipeIngredientRepository;
+import com.example.nutriflow.service.repository.RecipeRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind persistence of AI-generated recipes.
+ * Generated recipes are queued on the request thread and written to
+ * {@code recipes} and {@code recipe_ingredients} in batches by a
+ * background thread, after which the ingredient index is updated so
+ * later lookups are served from the catalog.
+ * Recipes are de-duplicated on a canonical hash of the title and the
+ * set of ingredient names. The hash is stored in the unique
+ * {@code canonical_hash} column, which is what keeps several instances
+ * from storing the same recipe; the in-memory set of known hashes only
+ * saves the database round trip for recipes seen before. A batch that
+ * fails to write, for instance because another instance stored one of
+ * its recipes first, is queued again up to a maximum number of
+ * attempts, and recipes found stored by then are skipped.
+ */
+@Component
+public class GeneratedRecipeWriter {
+
+    /** Logger for this class. */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(GeneratedRecipeWriter.class);
+
+    /** Longest wait for a running flush at shutdown, in seconds. */
+    private static final long SHUTDOWN_WAIT_SECONDS = 30;
+
+    /** Repository for recipe rows. */
+    @Autowired
+    private RecipeRepository recipeRepository;
+
+    /** Repository for recipe ingredient rows. */
+    @Autowired
+    private RecipeIngredientRepository recipeIngredientRepository;
+
+    /** Index updated once a batch has been committed. */
+    @Autowired
+    private RecipeIngredientIndex ingredientIndex;
+
+    /** Parses the JSON ingredient list of a recipe. */
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /** Transaction manager used to write each batch atomically. */
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /** Whether generated recipes are persisted at all. */
+    @Value("${nutriflow.ai.persist.enabled:true}")
+    private boolean enabled;
+
+    /** Maximum number of recipes written per batch. */
+    @Value("${nutriflow.ai.persist.batch-size:20}")
+    private int batchSize;
+
+    /** Delay between background flushes in milliseconds. */
+    @Value("${nutriflow.ai.persist.flush-interval-ms:2000}")
+    private long flushIntervalMs;
+
+    /** Maximum number of recipes waiting to be written. */
+    @Value("${nutriflow.ai.persist.queue-capacity:1000}")
+    private int queueCapacity;
+
+    /** Times a recipe is tried before it is given up. */
+    @Value("${nutriflow.ai.persist.max-attempts:3}")
+    private int maxAttempts;
+
+    /** Recipes waiting to be written. */
+    private BlockingQueue<Pending> queue;
+
+    /**
+     * Canonical hashes of recipes already stored or queued by this
+     * instance; a pre-filter in front of the unique column.
+     */
+    private final Set<String> knownHashes = ConcurrentHashMap.newKeySet();
+
+    /** Background thread that flushes the queue. */
+    private ScheduledExecutorService flusher;
+
+    /** Number of recipes written. */
+    private final LongAdder written = new LongAdder();
+
+    /** Number of recipes skipped as duplicates. */
+    private final LongAdder duplicates = new LongAdder();
+
+    /** Number of recipes dropped because the queue was full. */
+    private final LongAdder dropped = new LongAdder();
+
+    /** Number of recipes queued again after their batch failed. */
+    private final LongAdder retried = new LongAdder();
+
+    /** Number of recipes given up after their last attempt failed. */
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * Seeds the duplicate filter from the catalog and starts the
+     * background flusher.
+     */
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        if (!enabled) {
+            return;
+        }
+        seedKnownHashes();
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "recipe-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly,
+            flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the flusher, waits for a flush in progress and writes
+     * whatever is still queued.
+     */
+    @PreDestroy
+    public void stop() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                if (!flusher.awaitTermination(SHUTDOWN_WAIT_SECONDS,
+                        TimeUnit.SECONDS)) {
+                    LOGGER.warn("Generated recipe flush still running "
+                        + "at shutdown");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        while (queue != null && flush() > 0) {
+            // failed batches are queued again at most maxAttempts times
+        }
+    }
+
+    /**
+     * Queues a generated recipe for persistence unless an equivalent
+     * recipe is already stored or queued.
+     * The recipe is copied, so the caller may keep using it.
+     *
+     * @param recipe the generated recipe
+     * @return true if the recipe was queued
+     */
+    public boolean submit(final Recipe recipe) {
+        if (!enabled || queue == null || recipe == null
+            || recipe.getTitle() == null || recipe.getTitle().isBlank()) {
+            return false;
+        }
+        final List<RecipeIngredient> rows = explodeIngredients(recipe);
+        final String hash = canonicalHash(recipe.getTitle(),
+            rows.stream().map(RecipeIngredient::getIngredient).toList());
+        if (!knownHashes.add(hash)) {
+            duplicates.increment();
+            return false;
+        }
+        if (!queue.offer(new Pending(copyOf(recipe, hash), rows, hash))) {
+            knownHashes.remove(hash);
+            dropped.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes up to one batch of queued recipes. If the batch fails, its
+     * recipes are queued again until they have been tried
+     * {@code max-attempts} times.
+     *
+     * @return the number of recipes taken from the queue
+     */
+    public int flush() {
+        final List<Pending> batch = takeBatch();
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+        return batch.size();
+    }
+
+    /**
+     * Returns a snapshot of the writer counters.
+     *
+     * @return map of counter name to value
+     */
+    public Map<String, Object> stats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", queue == null ? 0 : queue.size());
+        stats.put("written", written.sum());
+        stats.put("duplicates", duplicates.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("retried", retried.sum());
+        stats.put("failed", failed.sum());
+        return stats;
+    }
+
+    /**
+     * Computes the canonical hash used to detect duplicate recipes:
+     * the trimmed, lower-cased title plus the sorted set of trimmed,
+     * lower-cased ingredient names.
+     *
+     * @param title the recipe title
+     * @param ingredients the ingredient names
+     * @return hex-encoded SHA-256 hash
+     */
+    static String canonicalHash(final String title,
+                                final Collection<String> ingredients) {
+        final Set<String> names = new TreeSet<>();
+        for (String ingredient : ingredients) {
+            final String name = RecipeIngredientIndex.normalize(ingredient);
+            if (name != null) {
+                names.add(name);
+            }
+        }
+        final String canonical = title.trim().toLowerCase(Locale.ROOT)
+            + "\n" + String.join("\n", names);
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(
+                digest.digest(canonical.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+
+    private List<Pending> takeBatch() {
+        final List<Pending> batch = new ArrayList<>(batchSize);
+        queue.drainTo(batch, Math.max(1, batchSize));
+        return batch;
+    }
+
+    /**
+     * Writes a batch, or queues its recipes again if the write fails.
+     *
+     * @return true if the batch was written
+     */
+    private boolean write(final List<Pending> batch) {
+        try {
+            final List<Pending> fresh = withoutStored(batch);
+            duplicates.add(batch.size() - fresh.size());
+            if (!fresh.isEmpty()) {
+                ingredientIndex.index(writeBatch(fresh));
+                written.add(fresh.size());
+            }
+            return true;
+        } catch (RuntimeException ex) {
+            LOGGER.warn("Failed to persist {} generated recipes: {}",
+                batch.size(), ex.getMessage());
+            batch.forEach(this::retryOrGiveUp);
+            return false;
+        }
+    }
+
+    private void retryOrGiveUp(final Pending pending) {
+        pending.attempts++;
+        pending.recipe.setRecipeId(null);
+        pending.ingredients.forEach(row -> {
+            row.setId(null);
+            row.setRecipeId(null);
+        });
+        if (pending.attempts < maxAttempts && queue.offer(pending)) {
+            retried.increment();
+            return;
+        }
+        knownHashes.remove(pending.hash);
+        failed.increment();
+    }
+
+    /**
+     * Drops the recipes whose hash is already in the table, stored by
+     * another instance or before this one seeded its filter.
+     */
+    private List<Pending> withoutStored(final List<Pending> batch) {
+        final Set<String> stored = new HashSet<>(
+            recipeRepository.findStoredHashes(
+                batch.stream().map(pending -> pending.hash).toList()));
+        if (stored.isEmpty()) {
+            return batch;
+        }
+        return batch.stream()
+            .filter(pending -> !stored.contains(pending.hash)).toList();
+    }
+
+    private List<RecipeIngredient> writeBatch(final List<Pending> batch) {
+        final TransactionTemplate tx =
+            new TransactionTemplate(transactionManager);
+        return tx.execute(status -> {
+            final List<Recipe> saved = recipeRepository.saveAll(
+                batch.stream().map(pending -> pending.recipe).toList());
+            final List<RecipeIngredient> rows = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                final Integer recipeId = saved.get(i).getRecipeId();
+                for (RecipeIngredient row : batch.get(i).ingredients) {
+                    row.setRecipeId(recipeId);
+                    rows.add(row);
+                }
+            }
+            return recipeIngredientRepository.saveAll(rows);
+        });
+    }
+
+    /**
+     * Writes full batches until the queue runs low or a write fails;
+     * failed recipes wait for the next scheduled flush.
+     */
+    private void flushQuietly() {
+        try {
+            boolean more = true;
+            while (more) {
+                final List<Pending> batch = takeBatch();
+                more = !batch.isEmpty() && write(batch)
+                    && batch.size() >= batchSize;
+            }
+        } catch (RuntimeException ex) {
+            LOGGER.warn("Generated recipe flush failed: {}", ex.getMessage());
+        }
+    }
+
+    private void seedKnownHashes() {
+        try {
+            for (Recipe recipe : recipeRepository.findAll()) {
+                if (recipe.getCanonicalHash() != null) {
+                    knownHashes.add(recipe.getCanonicalHash());
+                } else if (recipe.getTitle() != null) {
+                    knownHashes.add(canonicalHash(recipe.getTitle(),
+                        ingredientIndex.ingredientsOf(recipe.getRecipeId())));
+                }
+            }
+        } catch (DataAccessException ex) {
+            LOGGER.warn("Could not seed generated recipe filter: {}",
+                ex.getMessage());
+        }
+    }
+
+    private List<RecipeIngredient> explodeIngredients(final Recipe recipe) {
+        final List<RecipeIngredient> rows = new ArrayList<>();
+        if (recipe.getIngredients() == null) {
+            return rows;
+        }
+        final JsonNode array;
+        try {
+            array = objectMapper.readTree(recipe.getIngredients());
+        } catch (JsonProcessingException ex) {
+            return rows;
+        }
+        if (array == null || !array.isArray()) {
+            return rows;
+        }
+        for (JsonNode item : array) {
+            final String name = item.path("ingredient").asText(null);
+            if (name == null || name.isBlank()) {
+                continue;
+            }
+            final RecipeIngredient row = new RecipeIngredient();
+            row.setIngredient(name.trim());
+            if (item.path("quantity").isNumber()) {
+                row.setQuantity(item.get("quantity").asDouble());
+            }
+            row.setUnit(item.path("unit").asText(null));
+            final JsonNode tags = item.get("allergenTags");
+            if (tags != null && tags.isArray()) {
+                final List<String> values = new ArrayList<>();
+                tags.forEach(tag -> values.add(tag.asText()));
+                row.setAllergenTags(values.toArray(String[]::new));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static Recipe copyOf(final Recipe source, final String hash) {
+        return new Recipe(null, source.getTitle(), source.getCookTime(),
+            source.getCuisines(), source.getTags(), source.getIngredients(),
+            source.getInstructions(), source.getNutrition(),
+            source.getCalories(), source.getCarbohydrates(), source.getFat(),
+            source.getFiber(), source.getProtein(),
+            source.getPopularityScore() != null
+                ? source.getPopularityScore() : 0, hash);
+    }
+
+    /**
+     * A recipe waiting to be written with its exploded ingredient rows.
+     */
+    private static final class Pending {
+        /** The recipe row to insert. */
+        private final Recipe recipe;
+        /** Ingredient rows, bound to the recipe ID once it is known. */
+        private final List<RecipeIngredient> ingredients;
+        /** Canonical hash used for de-duplication. */
+        private final String hash;
+        /** Failed attempts to write the recipe. */
+        private int attempts;
+
+        Pending(final Recipe pendingRecipe,
+                final List<RecipeIngredient> rows,
+                final String canonicalHash) {
+            this.recipe = pendingRecipe;
+            this.ingredients = rows;
+            this.hash = canonicalHash;
+        }
+    }
+}
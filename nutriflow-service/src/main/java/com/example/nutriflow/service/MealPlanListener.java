@@ -0,0 +1,35 @@
+package com.example.nutriflow.service;
+
+import java.util.Map;
+
+/**
+ * Receives the parts of a meal plan as they become ready.
+ * Calls are never concurrent. A listener that throws stops the plan:
+ * remaining generation work is cancelled and no further calls are made.
+ */
+public interface MealPlanListener {
+
+    /**
+     * Called when one meal is ready.
+     *
+     * @param day the day name (e.g. "Monday")
+     * @param slot the zero-based meal slot within the day
+     * @param meal the meal details
+     */
+    void onMeal(String day, int slot, Map<String, Object> meal);
+
+    /**
+     * Called when every meal of a day is ready.
+     *
+     * @param day the day object, holding its {@code day} name and
+     *            {@code meals}
+     */
+    void onDay(Map<String, Object> day);
+
+    /**
+     * Called once the whole plan is ready.
+     *
+     * @param plan the plan, with a {@code days} list
+     */
+    void onComplete(Map<String, Object> plan);
+}
@@ -0,0 +1,351 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.Recipe;
+import com.example.nutriflow.model.User;
+import com.example.nutriflow.model.UserTarget;
+import com.example.nutriflow.service.repository.RecipeRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Builds meal plans from the recipe catalog so that daily nutrient
+ * totals land close to a user's {@link UserTarget}.
+ * Recipes with known calories are held in an in-memory nutrition matrix
+ * that is reloaded periodically. Each day is filled greedily, slot by
+ * slot, and then improved by single-slot swaps until no swap lowers the
+ * day's cost. Recipes that contain one of the user's allergies or
+ * dislikes are never chosen, and each recipe may appear only a limited
+ * number of times per plan; slots that cannot be filled are left empty
+ * for the caller to fill some other way.
+ */
+@Component
+public class MealPlanOptimizer {
+
+    /** Logger for this class. */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(MealPlanOptimizer.class);
+
+    /** Column of calories in the nutrition matrix. */
+    private static final int CALORIES = 0;
+
+    /** Column of protein in the nutrition matrix. */
+    private static final int PROTEIN = 1;
+
+    /** Column of carbohydrates in the nutrition matrix. */
+    private static final int CARBS = 2;
+
+    /** Column of fat in the nutrition matrix. */
+    private static final int FAT = 3;
+
+    /** Column of fiber in the nutrition matrix. */
+    private static final int FIBER = 4;
+
+    /** Number of nutrient columns. */
+    private static final int NUTRIENTS = 5;
+
+    /** Relative weight of each nutrient in the cost; calories count most. */
+    private static final double[] WEIGHTS = {2.0, 1.0, 1.0, 1.0, 0.5};
+
+    /** Cost added per earlier use of a recipe in the same plan. */
+    private static final double REPEAT_PENALTY = 0.05;
+
+    /** Upper bound on local-search passes per day. */
+    private static final int MAX_PASSES = 20;
+
+    /** Repository used to load the catalog. */
+    @Autowired
+    private RecipeRepository recipeRepository;
+
+    /** Ingredient and allergen lookup per recipe. */
+    @Autowired
+    private RecipeIngredientIndex ingredientIndex;
+
+    /** Maximum number of times one recipe may appear in a plan. */
+    @Value("${nutriflow.mealplan.catalog.max-uses-per-recipe:2}")
+    private int maxUsesPerRecipe;
+
+    /** Age after which the nutrition matrix is reloaded, in ms. */
+    @Value("${nutriflow.mealplan.catalog.refresh-ms:300000}")
+    private long refreshMs;
+
+    /** Current catalog snapshot. */
+    private volatile Catalog catalog = new Catalog(new Recipe[0],
+        new double[0][]);
+
+    /**
+     * {@link System#nanoTime()} of the last load attempt, successful or
+     * not, so a failing database is not rescanned on every request.
+     */
+    private volatile long refreshedAt = System.nanoTime();
+
+    /** Held by the one caller reloading a stale catalog. */
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    /**
+     * Loads the nutrition matrix from the recipe table.
+     * If the table cannot be read the current snapshot is kept until
+     * the next refresh interval.
+     */
+    @PostConstruct
+    public void refresh() {
+        try {
+            final List<Recipe> usable = new ArrayList<>();
+            for (Recipe recipe : recipeRepository.findAll()) {
+                if (recipe.getRecipeId() != null
+                    && recipe.getCalories() != null
+                    && recipe.getCalories().signum() > 0) {
+                    usable.add(recipe);
+                }
+            }
+            usable.sort(Comparator.comparing(Recipe::getRecipeId));
+            final Recipe[] recipes = usable.toArray(Recipe[]::new);
+            final double[][] matrix = new double[recipes.length][];
+            for (int i = 0; i < recipes.length; i++) {
+                matrix[i] = nutrientsOf(recipes[i]);
+            }
+            catalog = new Catalog(recipes, matrix);
+        } catch (DataAccessException ex) {
+            LOGGER.warn("Could not load recipe catalog for meal plans: {}",
+                ex.getMessage());
+        }
+        refreshedAt = System.nanoTime();
+    }
+
+    /**
+     * Returns the number of recipes available to the optimizer.
+     *
+     * @return catalog size
+     */
+    public int catalogSize() {
+        return currentCatalog().recipes.length;
+    }
+
+    /**
+     * Picks catalog recipes for every slot of a plan.
+     *
+     * @param user the user, whose allergies and dislikes are excluded
+     * @param target the daily nutrient targets
+     * @param days number of days in the plan
+     * @param mealsPerDay number of meals per day
+     * @return one list per day with one recipe per slot; a slot is null
+     *         when no suitable recipe was left for it
+     */
+    public List<List<Recipe>> plan(final User user, final UserTarget target,
+                                   final int days, final int mealsPerDay) {
+        final Catalog current = currentCatalog();
+        final double[] goal = targetsOf(target);
+        final int[] allowed = allowedRecipes(current, user);
+        final int[] uses = new int[current.recipes.length];
+
+        final List<List<Recipe>> plan = new ArrayList<>(days);
+        for (int d = 0; d < days; d++) {
+            final int[] day = planDay(current, allowed, uses, goal,
+                mealsPerDay);
+            final List<Recipe> meals = new ArrayList<>(mealsPerDay);
+            for (int slot : day) {
+                if (slot >= 0) {
+                    uses[slot]++;
+                }
+                meals.add(slot >= 0 ? current.recipes[slot] : null);
+            }
+            plan.add(meals);
+        }
+        return plan;
+    }
+
+    private int[] planDay(final Catalog current, final int[] allowed,
+                          final int[] uses, final double[] goal,
+                          final int mealsPerDay) {
+        final int[] day = new int[mealsPerDay];
+        Arrays.fill(day, -1);
+        final double[] totals = new double[NUTRIENTS];
+
+        // greedy: each slot moves the running totals toward its share
+        for (int s = 0; s < mealsPerDay; s++) {
+            final double share = (s + 1) / (double) mealsPerDay;
+            int best = -1;
+            double bestCost = Double.MAX_VALUE;
+            for (int r : allowed) {
+                if (!available(r, day, uses)) {
+                    continue;
+                }
+                final double cost = cost(totals, current.matrix[r], null,
+                    goal, share) + REPEAT_PENALTY * uses[r];
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    best = r;
+                }
+            }
+            if (best >= 0) {
+                day[s] = best;
+                add(totals, current.matrix[best], 1);
+            }
+        }
+
+        // local search: replace one slot at a time while it helps
+        boolean improved = true;
+        for (int pass = 0; improved && pass < MAX_PASSES; pass++) {
+            improved = false;
+            for (int s = 0; s < mealsPerDay; s++) {
+                if (day[s] < 0) {
+                    continue;
+                }
+                final double[] out = current.matrix[day[s]];
+                double bestCost = cost(totals, null, null, goal, 1)
+                    + REPEAT_PENALTY * uses[day[s]];
+                int best = -1;
+                for (int r : allowed) {
+                    if (r == day[s] || !available(r, day, uses)) {
+                        continue;
+                    }
+                    final double cost = cost(totals, current.matrix[r], out,
+                        goal, 1) + REPEAT_PENALTY * uses[r];
+                    if (cost < bestCost - 1e-9) {
+                        bestCost = cost;
+                        best = r;
+                    }
+                }
+                if (best >= 0) {
+                    add(totals, out, -1);
+                    add(totals, current.matrix[best], 1);
+                    day[s] = best;
+                    improved = true;
+                }
+            }
+        }
+        return day;
+    }
+
+    private boolean available(final int recipe, final int[] day,
+                              final int[] uses) {
+        if (uses[recipe] >= maxUsesPerRecipe) {
+            return false;
+        }
+        for (int chosen : day) {
+            if (chosen == recipe) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Weighted squared relative error of {@code totals + in - out}
+     * against {@code share} of the goal, over nutrients with a target.
+     */
+    private static double cost(final double[] totals, final double[] in,
+                               final double[] out, final double[] goal,
+                               final double share) {
+        double cost = 0;
+        for (int j = 0; j < NUTRIENTS; j++) {
+            if (goal[j] <= 0) {
+                continue;
+            }
+            double value = totals[j];
+            if (in != null) {
+                value += in[j];
+            }
+            if (out != null) {
+                value -= out[j];
+            }
+            final double wanted = goal[j] * share;
+            final double error = (value - wanted) / wanted;
+            cost += WEIGHTS[j] * error * error;
+        }
+        return cost;
+    }
+
+    private static void add(final double[] totals, final double[] values,
+                            final int sign) {
+        for (int j = 0; j < NUTRIENTS; j++) {
+            totals[j] += sign * values[j];
+        }
+    }
+
+    private int[] allowedRecipes(final Catalog current, final User user) {
+        final Set<String> excluded = RecipeIngredientIndex.excludedTerms(user);
+
+        final List<Integer> allowed = new ArrayList<>();
+        for (int i = 0; i < current.recipes.length; i++) {
+            if (!ingredientIndex.conflicts(current.recipes[i], excluded)) {
+                allowed.add(i);
+            }
+        }
+        return allowed.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Returns the catalog, reloading it once it is stale. Only one
+     * caller reloads; the others keep using the stale snapshot.
+     */
+    private Catalog currentCatalog() {
+        if (isStale() && refreshLock.tryLock()) {
+            try {
+                if (isStale()) {
+                    refresh();
+                }
+            } finally {
+                refreshLock.unlock();
+            }
+        }
+        return catalog;
+    }
+
+    private boolean isStale() {
+        return System.nanoTime() - refreshedAt
+            > TimeUnit.MILLISECONDS.toNanos(refreshMs);
+    }
+
+    private static double[] nutrientsOf(final Recipe recipe) {
+        final double[] row = new double[NUTRIENTS];
+        row[CALORIES] = valueOf(recipe.getCalories());
+        row[PROTEIN] = valueOf(recipe.getProtein());
+        row[CARBS] = valueOf(recipe.getCarbohydrates());
+        row[FAT] = valueOf(recipe.getFat());
+        row[FIBER] = valueOf(recipe.getFiber());
+        return row;
+    }
+
+    private static double[] targetsOf(final UserTarget target) {
+        final double[] goal = new double[NUTRIENTS];
+        goal[CALORIES] = valueOf(target.getCalories());
+        goal[PROTEIN] = valueOf(target.getProtein());
+        goal[CARBS] = valueOf(target.getCarbs());
+        goal[FAT] = valueOf(target.getFat());
+        goal[FIBER] = valueOf(target.getFiber());
+        return goal;
+    }
+
+    private static double valueOf(final BigDecimal value) {
+        return value == null ? 0 : value.doubleValue();
+    }
+
+    /**
+     * Immutable snapshot of the usable recipes and their nutrients.
+     */
+    private static final class Catalog {
+        /** Recipes ordered by ID. */
+        private final Recipe[] recipes;
+        /** Nutrient row per recipe, indexed like {@link #recipes}. */
+        private final double[][] matrix;
+
+        Catalog(final Recipe[] catalogRecipes, final double[][] nutrients) {
+            this.recipes = catalogRecipes;
+            this.matrix = nutrients;
+        }
+    }
+}
@@ -0,0 +1,491 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.config.GenerationExecutorConfig;
+import com.example.nutriflow.model.Recipe;
+import com.example.nutriflow.model.UserTarget;
+import com.example.nutriflow.model.enums.MealPlanMode;
+import com.example.nutriflow.service.ai.BoundedExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Builds weekly meal plans out of AI-generated recipes.
+ * In {@link MealPlanMode#PARALLEL} mode the meals of a plan are generated
+ * concurrently on the shared AI generation executor, with a per-plan
+ * concurrency cap, a per-meal timeout and an overall plan deadline.
+ * In {@link MealPlanMode#BATCH} mode each model call returns the meals
+ * of a group of days at once, so the user context is sent once per group
+ * rather than once per meal.
+ * In {@link MealPlanMode#CATALOG} mode the plan is filled from existing
+ * recipes by {@link MealPlanOptimizer} to match the user's targets, and
+ * only the slots it cannot fill are generated.
+ * Meals that fail or miss a deadline are replaced by a placeholder so
+ * the plan is always complete.
+ */
+@Service
+public class MealPlanService {
+
+    /** Logger for this class. */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(MealPlanService.class);
+
+    /** Number of days in a week. */
+    public static final int DAYS_IN_WEEK = 7;
+
+    /** Default number of meals per day. */
+    public static final int DEFAULT_MEALS_PER_DAY = 3;
+
+    /** Largest number of meals per day a plan may have. */
+    public static final int MAX_MEALS_PER_DAY = 10;
+
+    /** Names of days in a week. */
+    private static final String[] DAY_NAMES = {
+            "Monday", "Tuesday", "Wednesday", "Thursday",
+            "Friday", "Saturday", "Sunday"
+    };
+
+    /** Service for AI-based recipe generation. */
+    @Autowired
+    private AIRecipeService aiRecipeService;
+
+    /** Picks catalog recipes that match the user's targets. */
+    @Autowired
+    private MealPlanOptimizer optimizer;
+
+    /** Service used to load the user's nutrient targets. */
+    @Autowired
+    private UserTargetService userTargetService;
+
+    /** Shared executor that runs model calls. */
+    @Autowired
+    @Qualifier(GenerationExecutorConfig.AI_GENERATION_EXECUTOR)
+    private Executor generationExecutor;
+
+    /** Executor that sends streamed plans to their listeners. */
+    @Autowired
+    @Qualifier(GenerationExecutorConfig.MEAL_PLAN_STREAM_EXECUTOR)
+    private Executor streamExecutor;
+
+    /** Maximum number of meals of one plan generated at once. */
+    @Value("${nutriflow.mealplan.max-concurrency-per-plan:4}")
+    private int maxConcurrencyPerPlan;
+
+    /** Time allowed for a whole plan in milliseconds. */
+    @Value("${nutriflow.mealplan.plan-deadline-ms:120000}")
+    private long planDeadlineMs;
+
+    /** Time allowed for a single meal in milliseconds. */
+    @Value("${nutriflow.mealplan.meal-timeout-ms:60000}")
+    private long mealTimeoutMs;
+
+    /** Number of days whose meals are requested in one batch call. */
+    @Value("${nutriflow.mealplan.batch-days:1}")
+    private int batchDays;
+
+    /** Generation mode used when the request does not name one. */
+    @Value("${nutriflow.mealplan.default-mode:PARALLEL}")
+    private MealPlanMode defaultMode;
+
+    /**
+     * Returns the generation mode used when a request does not name one.
+     *
+     * @return the default mode
+     */
+    public MealPlanMode getDefaultMode() {
+        return defaultMode;
+    }
+
+    /**
+     * Generates a weekly meal plan for a user.
+     *
+     * @param userId the user ID in NutriFlow
+     * @param mealsPerDay number of meals per day
+     * @param mode how the meals are generated
+     * @return map with a {@code days} list, each day holding its
+     *         {@code day} name and {@code meals}
+     */
+    public Map<String, Object> generateWeeklyPlan(final Long userId,
+                                                  final int mealsPerDay,
+                                                  final MealPlanMode mode) {
+        if (mode == MealPlanMode.SEQUENTIAL) {
+            return toPlan(loadContext(userId)
+                .map(context -> generateSequential(context, mealsPerDay))
+                .orElseGet(() -> placeholderMeals(mealsPerDay)),
+                mealsPerDay);
+        }
+
+        final List<CompletableFuture<Map<String, Object>>> slots =
+            startPlan(userId, mealsPerDay, mode, new ArrayList<>());
+        try {
+            CompletableFuture.allOf(slots.toArray(CompletableFuture[]::new))
+                .get(planDeadlineMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            LOGGER.warn("Meal plan for user {} missed its {} ms deadline",
+                userId, planDeadlineMs);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            // individual failures are already mapped to placeholders
+        }
+
+        final List<Map<String, Object>> meals = new ArrayList<>();
+        for (CompletableFuture<Map<String, Object>> slot : slots) {
+            // completing an unfinished meal also stops queued work
+            slot.complete(placeholderMeal());
+            meals.add(slot.join());
+        }
+        return toPlan(meals, mealsPerDay);
+    }
+
+    /**
+     * Generates a weekly meal plan for a user and reports each meal and
+     * day to the listener as soon as it is ready, instead of waiting for
+     * the whole plan. The calling thread does not wait.
+     * Meals that fail or miss the per-meal timeout or plan deadline are
+     * reported as placeholders. Cancelling the returned future stops the
+     * remaining generation work, interrupting model calls in flight, and
+     * silences the listener.
+     * The listener is called one call at a time, in order, on the stream
+     * executor; generation and timer threads only complete the meals, so
+     * a slow client cannot hold them up.
+     *
+     * @param userId the user ID in NutriFlow
+     * @param mealsPerDay number of meals per day
+     * @param mode how the meals are generated
+     * @param listener receives meals, days and the finished plan
+     * @return future completed with the whole plan
+     */
+    public CompletableFuture<Map<String, Object>> streamWeeklyPlan(
+            final Long userId, final int mealsPerDay, final MealPlanMode mode,
+            final MealPlanListener listener) {
+        final CompletableFuture<Map<String, Object>> result =
+            new CompletableFuture<>();
+        final List<Future<?>> tasks = new ArrayList<>();
+        final List<CompletableFuture<Map<String, Object>>> slots =
+            startPlan(userId, mealsPerDay, mode, tasks);
+        result.whenComplete((plan, ex) -> {
+            if (ex != null) {
+                tasks.forEach(task -> task.cancel(true));
+                slots.forEach(slot -> slot.complete(placeholderMeal()));
+            }
+        });
+
+        final Executor delivery = new BoundedExecutor(streamExecutor, 1,
+            task -> result.completeExceptionally(
+                new RejectedExecutionException("Meal plan stream stalled")));
+        // Touched only by delivery tasks, which run one at a time.
+        final int[] remaining = new int[DAYS_IN_WEEK];
+        Arrays.fill(remaining, mealsPerDay);
+        final int[] remainingMeals = {slots.size()};
+        for (int i = 0; i < slots.size(); i++) {
+            final int day = i / mealsPerDay;
+            final int slot = i % mealsPerDay;
+            slots.get(i).completeOnTimeout(placeholderMeal(),
+                planDeadlineMs, TimeUnit.MILLISECONDS);
+            slots.get(i).thenAccept(meal -> deliver(delivery, result, () -> {
+                listener.onMeal(DAY_NAMES[day], slot, meal);
+                if (--remaining[day] == 0) {
+                    listener.onDay(toDay(day, joinAll(slots.subList(
+                        day * mealsPerDay, (day + 1) * mealsPerDay))));
+                }
+                if (--remainingMeals[0] == 0) {
+                    final Map<String, Object> plan =
+                        toPlan(joinAll(slots), mealsPerDay);
+                    listener.onComplete(plan);
+                    result.complete(plan);
+                }
+            }));
+        }
+        if (slots.isEmpty()) {
+            final Map<String, Object> plan = toPlan(List.of(), mealsPerDay);
+            listener.onComplete(plan);
+            result.complete(plan);
+        }
+        return result;
+    }
+
+    /**
+     * Queues one listener step of a streamed plan. A step that fails, or
+     * cannot be queued, fails the plan; steps of a finished plan are
+     * skipped.
+     */
+    private static void deliver(final Executor delivery,
+                                final CompletableFuture<?> result,
+                                final Runnable step) {
+        try {
+            delivery.execute(() -> {
+                if (result.isDone()) {
+                    return;
+                }
+                try {
+                    step.run();
+                } catch (RuntimeException ex) {
+                    result.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            result.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * Returns the meal shown when no recipe could be generated.
+     *
+     * @return a new placeholder meal map
+     */
+    public static Map<String, Object> placeholderMeal() {
+        Map<String, Object> recipe = new HashMap<>();
+        recipe.put("title", "AI Recipe Not Available");
+        recipe.put("calories", 0);
+        recipe.put("protein", 0);
+        recipe.put("carbohydrates", 0);
+        recipe.put("fat", 0);
+        recipe.put("cookTime", 0);
+        recipe.put("instructions", "No instructions available.");
+        return recipe;
+    }
+
+    private static List<Map<String, Object>> placeholderMeals(
+            final int mealsPerDay) {
+        final List<Map<String, Object>> meals = new ArrayList<>();
+        for (int i = 0; i < DAYS_IN_WEEK * mealsPerDay; i++) {
+            meals.add(placeholderMeal());
+        }
+        return meals;
+    }
+
+    /**
+     * Loads the user and pantry once for a whole plan.
+     *
+     * @return the user context, or empty if the user cannot be loaded
+     */
+    private Optional<UserGenerationContext> loadContext(final Long userId) {
+        try {
+            return Optional.of(
+                aiRecipeService.buildUserContext(userId.intValue()));
+        } catch (IllegalArgumentException ex) {
+            LOGGER.warn("Cannot plan meals for user {}: {}", userId,
+                ex.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private List<Map<String, Object>> generateSequential(
+            final UserGenerationContext context, final int mealsPerDay) {
+        List<Map<String, Object>> meals = new ArrayList<>();
+        for (int d = 0; d < DAYS_IN_WEEK; d++) {
+            for (int m = 0; m < mealsPerDay; m++) {
+                Map<String, Object> recipe = aiRecipeService
+                    .generateRecipeForUser(context, occasion(d, m));
+                meals.add(recipe != null ? recipe : placeholderMeal());
+            }
+        }
+        return meals;
+    }
+
+    /**
+     * Starts generating every slot of a plan on the shared executor and
+     * returns one future per slot, in day and slot order.
+     * In {@link MealPlanMode#CATALOG} mode slots filled from the catalog
+     * are already complete and only the gaps are generated; in
+     * {@link MealPlanMode#BATCH} mode one task covers a group of days;
+     * otherwise each task generates one meal.
+     * The user and pantry are loaded once and shared by every task; if
+     * the user cannot be loaded every slot gets a placeholder.
+     * The generation tasks are added to {@code tasks}, so the caller can
+     * cancel them.
+     */
+    private List<CompletableFuture<Map<String, Object>>> startPlan(
+            final Long userId, final int mealsPerDay, final MealPlanMode mode,
+            final List<Future<?>> tasks) {
+        final List<String> occasions = new ArrayList<>();
+        final List<CompletableFuture<Map<String, Object>>> slots =
+            new ArrayList<>();
+        for (int d = 0; d < DAYS_IN_WEEK; d++) {
+            for (int m = 0; m < mealsPerDay; m++) {
+                occasions.add(occasion(d, m));
+                slots.add(new CompletableFuture<>());
+            }
+        }
+        final Optional<UserGenerationContext> loaded = loadContext(userId);
+        if (loaded.isEmpty()) {
+            slots.forEach(slot -> slot.complete(placeholderMeal()));
+            return slots;
+        }
+        final UserGenerationContext context = loaded.get();
+        if (mode == MealPlanMode.CATALOG) {
+            fillFromCatalog(context, mealsPerDay, slots);
+        }
+
+        final List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < slots.size(); i++) {
+            if (!slots.get(i).isDone()) {
+                pending.add(i);
+            }
+        }
+        final int slotsPerCall = mode == MealPlanMode.BATCH
+            ? Math.max(1, batchDays) * mealsPerDay : 1;
+        // A group the shared pool rejected with nothing of this plan left
+        // running would never be retried, so it gets placeholders.
+        final Executor executor = new BoundedExecutor(generationExecutor,
+            mode == MealPlanMode.SEQUENTIAL
+                ? 1 : Math.max(1, maxConcurrencyPerPlan),
+            task -> ((GroupTask) task).abandon());
+        for (int i = 0; i < pending.size(); i += slotsPerCall) {
+            final List<Integer> group = pending.subList(i,
+                Math.min(pending.size(), i + slotsPerCall));
+            final GroupTask task = new GroupTask(context,
+                group.stream().map(occasions::get).toList(),
+                group.stream().map(slots::get).toList());
+            tasks.add(task);
+            executor.execute(task);
+        }
+        return slots;
+    }
+
+    /**
+     * Completes the slots the catalog can fill for the user's targets.
+     * Users without stored targets get no catalog meals.
+     */
+    private void fillFromCatalog(
+            final UserGenerationContext context, final int mealsPerDay,
+            final List<CompletableFuture<Map<String, Object>>> slots) {
+        final Optional<UserTarget> target =
+            userTargetService.getUserTargets(context.getUserId());
+        if (target.isEmpty()) {
+            return;
+        }
+
+        final List<List<Recipe>> picked = optimizer.plan(context.getUser(),
+            target.get(), DAYS_IN_WEEK, mealsPerDay);
+        for (int d = 0; d < DAYS_IN_WEEK; d++) {
+            for (int m = 0; m < mealsPerDay; m++) {
+                final Recipe recipe = picked.get(d).get(m);
+                if (recipe != null) {
+                    Map<String, Object> meal =
+                        AIRecipeService.toMealMap(recipe);
+                    meal.put("recipeId", recipe.getRecipeId());
+                    slots.get(d * mealsPerDay + m).complete(meal);
+                }
+            }
+        }
+    }
+
+    private List<Map<String, Object>> generateGroup(
+            final UserGenerationContext context, final List<String> group) {
+        if (group.size() > 1) {
+            return aiRecipeService.generateRecipesForUser(context, group);
+        }
+        final List<Map<String, Object>> meals = new ArrayList<>();
+        meals.add(aiRecipeService.generateRecipeForUser(context,
+            group.get(0)));
+        return meals;
+    }
+
+    /**
+     * Pads or replaces missing meals with placeholders so a group always
+     * has one meal per slot.
+     */
+    private static List<Map<String, Object>> fill(
+            final List<Map<String, Object>> meals, final int size) {
+        final List<Map<String, Object>> filled = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final Map<String, Object> meal =
+                meals != null && i < meals.size() ? meals.get(i) : null;
+            filled.add(meal != null ? meal : placeholderMeal());
+        }
+        return filled;
+    }
+
+    private void generateInto(
+            final UserGenerationContext context, final List<String> occasions,
+            final List<CompletableFuture<Map<String, Object>>> slots) {
+        if (slots.stream().allMatch(CompletableFuture::isDone)) {
+            return;
+        }
+        slots.forEach(slot -> slot.completeOnTimeout(placeholderMeal(),
+            mealTimeoutMs, TimeUnit.MILLISECONDS));
+        try {
+            final List<Map<String, Object>> meals =
+                fill(generateGroup(context, occasions), slots.size());
+            for (int i = 0; i < slots.size(); i++) {
+                slots.get(i).complete(meals.get(i));
+            }
+        } catch (RuntimeException ex) {
+            LOGGER.warn("Meal generation failed for {}: {}",
+                occasions, ex.getMessage());
+            slots.forEach(slot -> slot.complete(placeholderMeal()));
+        }
+    }
+
+    /**
+     * Generation of one group of slots, cancellable like any
+     * {@link FutureTask}.
+     */
+    private final class GroupTask extends FutureTask<Void> {
+        /** Slots completed with the generated meals. */
+        private final List<CompletableFuture<Map<String, Object>>> slots;
+
+        GroupTask(final UserGenerationContext context,
+                  final List<String> occasions,
+                  final List<CompletableFuture<Map<String, Object>>>
+                      groupSlots) {
+            super(() -> generateInto(context, occasions, groupSlots), null);
+            this.slots = groupSlots;
+        }
+
+        /** Gives every slot of the group a placeholder. */
+        void abandon() {
+            slots.forEach(slot -> slot.complete(placeholderMeal()));
+        }
+    }
+
+    private static List<Map<String, Object>> joinAll(
+            final List<CompletableFuture<Map<String, Object>>> slots) {
+        return slots.stream().map(CompletableFuture::join).toList();
+    }
+
+    private static Map<String, Object> toPlan(
+            final List<Map<String, Object>> meals, final int mealsPerDay) {
+        List<Map<String, Object>> week = new ArrayList<>();
+        for (int d = 0; d < DAYS_IN_WEEK; d++) {
+            week.add(toDay(d, meals.subList(d * mealsPerDay,
+                (d + 1) * mealsPerDay)));
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("days", week);
+        return response;
+    }
+
+    private static Map<String, Object> toDay(
+            final int day, final List<Map<String, Object>> meals) {
+        Map<String, Object> dayObject = new HashMap<>();
+        dayObject.put("day", DAY_NAMES[day]);
+        dayObject.put("meals", new ArrayList<>(meals));
+        return dayObject;
+    }
+
+    private static String occasion(final int day, final int meal) {
+        return DAY_NAMES[day] + " meal " + (meal + 1);
+    }
+}
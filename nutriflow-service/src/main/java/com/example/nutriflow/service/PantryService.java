@@ -18,6 +18,10 @@ public class PantryService {
     @Autowired
     private PantryRepository pantryRepository;
 
+    /** Cache of generated recipes, invalidated when a pantry changes. */
+    @Autowired
+    private PersonalizedRecipeCache personalizedRecipeCache;
+
     /**
      * Retrieves all pantry items for the given user.
      *
@@ -44,6 +48,8 @@ public class PantryService {
         items.forEach(item -> item.setUserId(userId));
         pantryRepository.deleteAll(
                 pantryRepository.findByUserId(userId));
-        return pantryRepository.saveAll(items);
+        final List<PantryItem> saved = pantryRepository.saveAll(items);
+        personalizedRecipeCache.invalidate(userId);
+        return saved;
     }
 }
@@ -0,0 +1,470 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.Recipe;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-user pool of generated recipes, so repeat requests by a user whose
+ * profile has not changed are answered from memory in turn.
+ * A pool is tagged with the fingerprint of the prompt inputs it was
+ * generated from (allergies, dislikes, budget, skill, equipment and
+ * pantry). {@link #invalidate(Integer)} is called whenever those inputs
+ * may have changed; the next request then rebuilds the fingerprint and
+ * keeps the pool only if it is unchanged.
+ * Pools may also be filled ahead of demand with {@link #prefill}; see
+ * {@link #needsRefill(Integer)}.
+ * Expired pools, and the versions of users without a pool that were last
+ * invalidated more than {@link #VERSION_HOLD_NANOS} ago, are pruned at
+ * most once per that period, so memory stays bounded by recent activity.
+ */
+@Component
+public class PersonalizedRecipeCache {
+
+    /**
+     * Longest a request is expected to hold a version read with
+     * {@link #version(Integer)}; versions changed more recently are kept.
+     */
+    static final long VERSION_HOLD_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    /** Number of recipes generated per pool. */
+    private final int poolSize;
+
+    /** Time-to-live of a pool in nanoseconds. */
+    private final long ttlNanos;
+
+    /** Maximum number of users with a pool. */
+    private final int maxUsers;
+
+    /** Monotonic clock in nanoseconds. */
+    private final LongSupplier clock;
+
+    /** Pools by user ID. */
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+
+    /** Latest invalidation by user ID; a pool is current only for its own. */
+    private final Map<Integer, Version> versions = new ConcurrentHashMap<>();
+
+    /**
+     * Source of version numbers; never reused, so a user whose version was
+     * pruned cannot get back a number an older request still holds.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /** Time of the last pruning pass. */
+    private final AtomicLong lastPruned;
+
+    /** Requests answered from a pool. */
+    private final LongAdder hits = new LongAdder();
+
+    /** Requests that needed the profile or a new pool. */
+    private final LongAdder misses = new LongAdder();
+
+    /** Pools kept after an invalidation because the fingerprint matched. */
+    private final LongAdder revalidated = new LongAdder();
+
+    /** Number of invalidations. */
+    private final LongAdder invalidations = new LongAdder();
+
+    /** Number of pools stored ahead of demand. */
+    private final LongAdder prefilled = new LongAdder();
+
+    /** Callbacks run once a user's invalidation has taken effect. */
+    private final List<Consumer<Integer>> invalidationListeners =
+        new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates a cache from application properties.
+     *
+     * @param poolSizeValue number of recipes generated per pool
+     * @param ttlSeconds time-to-live of a pool in seconds
+     * @param maxUsersValue maximum number of users with a pool
+     */
+    @Autowired
+    public PersonalizedRecipeCache(
+            final @Value("${nutriflow.ai.personal-cache.pool-size:3}")
+                int poolSizeValue,
+            final @Value("${nutriflow.ai.personal-cache.ttl-seconds:3600}")
+                long ttlSeconds,
+            final @Value("${nutriflow.ai.personal-cache.max-users:1000}")
+                int maxUsersValue) {
+        this(poolSizeValue, TimeUnit.SECONDS.toNanos(ttlSeconds),
+            maxUsersValue, System::nanoTime);
+    }
+
+    /**
+     * Creates a cache with an explicit clock.
+     *
+     * @param poolSizeValue number of recipes generated per pool
+     * @param ttlNanosValue time-to-live of a pool in nanoseconds
+     * @param maxUsersValue maximum number of users with a pool
+     * @param clockSource monotonic nanosecond clock
+     */
+    PersonalizedRecipeCache(final int poolSizeValue,
+                            final long ttlNanosValue,
+                            final int maxUsersValue,
+                            final LongSupplier clockSource) {
+        this.poolSize = Math.max(1, poolSizeValue);
+        this.ttlNanos = Math.max(0, ttlNanosValue);
+        this.maxUsers = Math.max(0, maxUsersValue);
+        this.clock = clockSource;
+        this.lastPruned = new AtomicLong(clockSource.getAsLong());
+    }
+
+    /**
+     * Computes the fingerprint of the prompt inputs describing a user.
+     *
+     * @param promptInputs the text built from the user's profile and
+     *                     pantry
+     * @return a hex SHA-256 digest
+     */
+    public static String fingerprint(final String promptInputs) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest
+                .getInstance("SHA-256")
+                .digest(promptInputs.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    /**
+     * Returns the next recipe of a user's current pool, without looking
+     * at the profile.
+     *
+     * @param userId the user ID
+     * @return the next recipe, or empty if the user has no current pool
+     */
+    public Optional<Recipe> next(final Integer userId) {
+        final Entry entry = entries.get(userId);
+        if (entry == null || entry.version != version(userId)
+            || expired(entry)) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(entry.next());
+    }
+
+    /**
+     * Returns the next recipe of a user's pool if it was generated from
+     * the given fingerprint, making the pool current again.
+     *
+     * @param userId the user ID
+     * @param fingerprint fingerprint of the user's current prompt inputs
+     * @param version the value of {@link #version(Integer)} read before
+     *                the fingerprint's inputs were loaded
+     * @return the next recipe, or empty if the pool does not match
+     */
+    public Optional<Recipe> revalidate(final Integer userId,
+                                       final String fingerprint,
+                                       final long version) {
+        final Entry entry = matching(userId, fingerprint);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        entries.replace(userId, entry, entry.withVersion(version));
+        revalidated.increment();
+        return Optional.of(entry.next());
+    }
+
+    /**
+     * Makes a user's pool current again if it was generated from the
+     * given fingerprint, without serving from it.
+     *
+     * @param userId the user ID
+     * @param fingerprint fingerprint of the user's current prompt inputs
+     * @param version the value of {@link #version(Integer)} read before
+     *                the fingerprint's inputs were loaded
+     * @return true if the pool matched
+     */
+    public boolean adopt(final Integer userId, final String fingerprint,
+                         final long version) {
+        final Entry entry = matching(userId, fingerprint);
+        if (entry == null) {
+            return false;
+        }
+        entries.replace(userId, entry, entry.withVersion(version));
+        revalidated.increment();
+        return true;
+    }
+
+    /**
+     * Tells whether a user's pool should be generated again ahead of
+     * demand: there is none, it is not current or has expired, every
+     * recipe in it has been served, or it is past half its lifetime.
+     *
+     * @param userId the user ID
+     * @return true if a new pool would be useful
+     */
+    public boolean needsRefill(final Integer userId) {
+        final Entry entry = entries.get(userId);
+        return entry == null || entry.version != version(userId)
+            || entry.cursor.get() >= entry.recipes.size()
+            || ttlNanos > 0
+                && clock.getAsLong() - entry.createdAt > ttlNanos / 2;
+    }
+
+    /**
+     * Stores a newly generated pool for a user.
+     *
+     * @param userId the user ID
+     * @param fingerprint fingerprint of the prompt inputs used
+     * @param version the value of {@link #version(Integer)} read before
+     *                the prompt inputs were loaded
+     * @param recipes the generated recipes; the first one has been
+     *                returned to the caller already
+     */
+    public void put(final Integer userId, final String fingerprint,
+                    final long version, final List<Recipe> recipes) {
+        store(userId, fingerprint, version, recipes, 1);
+    }
+
+    /**
+     * Stores a pool generated ahead of demand, so every recipe in it is
+     * still to be served.
+     *
+     * @param userId the user ID
+     * @param fingerprint fingerprint of the prompt inputs used
+     * @param version the value of {@link #version(Integer)} read before
+     *                the prompt inputs were loaded
+     * @param recipes the generated recipes
+     */
+    public void prefill(final Integer userId, final String fingerprint,
+                        final long version, final List<Recipe> recipes) {
+        if (store(userId, fingerprint, version, recipes, 0)) {
+            prefilled.increment();
+        }
+    }
+
+    private boolean store(final Integer userId, final String fingerprint,
+                          final long version, final List<Recipe> recipes,
+                          final int served) {
+        if (maxUsers == 0 || recipes.isEmpty()) {
+            return false;
+        }
+        pruneIfDue();
+        if (!entries.containsKey(userId) && entries.size() >= maxUsers) {
+            entries.entrySet().stream()
+                .min(Comparator.comparingLong(e -> e.getValue().createdAt))
+                .ifPresent(oldest -> {
+                    entries.remove(oldest.getKey());
+                    forgetVersion(oldest.getKey());
+                });
+        }
+        entries.put(userId, new Entry(fingerprint, version,
+            List.copyOf(recipes), clock.getAsLong(),
+            new AtomicInteger(served)));
+        return true;
+    }
+
+    /**
+     * Marks a user's pool as possibly out of date, because the user's
+     * profile or pantry is changing. Inside a transaction the pool is
+     * invalidated again after commit, so a request that read the old
+     * data meanwhile cannot leave a stale pool behind. Invalidation
+     * listeners run once the change is visible: after commit, or at once
+     * outside a transaction.
+     *
+     * @param userId the user ID
+     */
+    public void invalidate(final Integer userId) {
+        bump(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        bump(userId);
+                        notifyInvalidated(userId);
+                    }
+                });
+        } else {
+            notifyInvalidated(userId);
+        }
+    }
+
+    /**
+     * Registers a callback run with the user ID whenever a user's pool
+     * has been invalidated and the change is visible.
+     *
+     * @param listener the callback; it should return quickly
+     */
+    public void addInvalidationListener(final Consumer<Integer> listener) {
+        invalidationListeners.add(listener);
+    }
+
+    /**
+     * Returns the version of a user, which changes on every invalidation.
+     * Read it before loading
+     * the user's profile and pass it to {@link #put} or
+     * {@link #revalidate}, so a pool built from data that changed in the
+     * meantime is not treated as current.
+     *
+     * @param userId the user ID
+     * @return the version
+     */
+    public long version(final Integer userId) {
+        final Version version = versions.get(userId);
+        return version == null ? 0 : version.value;
+    }
+
+    /**
+     * Returns the number of recipes generated per pool.
+     *
+     * @return the pool size
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Returns a snapshot of the cache counters.
+     *
+     * @return map of counter name to value
+     */
+    public Map<String, Object> stats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("poolSize", poolSize);
+        stats.put("users", entries.size());
+        stats.put("versions", versions.size());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("revalidated", revalidated.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("prefilled", prefilled.sum());
+        return stats;
+    }
+
+    private void bump(final Integer userId) {
+        versions.put(userId,
+            new Version(sequence.incrementAndGet(), clock.getAsLong()));
+        invalidations.increment();
+        pruneIfDue();
+    }
+
+    /**
+     * Drops expired pools and the versions of users without a pool that
+     * are past {@link #VERSION_HOLD_NANOS}, at most once per that period.
+     */
+    private void pruneIfDue() {
+        final long now = clock.getAsLong();
+        final long last = lastPruned.get();
+        if (now - last < VERSION_HOLD_NANOS
+            || !lastPruned.compareAndSet(last, now)) {
+            return;
+        }
+        entries.values().removeIf(this::expired);
+        versions.keySet().forEach(this::forgetVersion);
+    }
+
+    /**
+     * Drops a user's version if the user has no pool and no request can
+     * still hold a version read before the last invalidation.
+     */
+    private void forgetVersion(final Integer userId) {
+        final Version version = versions.get(userId);
+        if (version != null && !entries.containsKey(userId)
+            && clock.getAsLong() - version.changedAt >= VERSION_HOLD_NANOS) {
+            versions.remove(userId, version);
+        }
+    }
+
+    private void notifyInvalidated(final Integer userId) {
+        for (Consumer<Integer> listener : invalidationListeners) {
+            listener.accept(userId);
+        }
+    }
+
+    private Entry matching(final Integer userId, final String fingerprint) {
+        final Entry entry = entries.get(userId);
+        if (entry == null || !entry.fingerprint.equals(fingerprint)
+            || expired(entry)) {
+            return null;
+        }
+        return entry;
+    }
+
+    private boolean expired(final Entry entry) {
+        return ttlNanos > 0 && clock.getAsLong() - entry.createdAt > ttlNanos;
+    }
+
+    /**
+     * A user's version and when it last changed.
+     */
+    private static final class Version {
+
+        /** Version number. */
+        private final long value;
+
+        /** Time of the invalidation that set it. */
+        private final long changedAt;
+
+        Version(final long valueValue, final long changedAtValue) {
+            this.value = valueValue;
+            this.changedAt = changedAtValue;
+        }
+    }
+
+    /**
+     * One user's pool.
+     */
+    private static final class Entry {
+
+        /** Fingerprint of the prompt inputs. */
+        private final String fingerprint;
+
+        /** Version the pool is current for. */
+        private final long version;
+
+        /** The recipes, served in turn. */
+        private final List<Recipe> recipes;
+
+        /** Time the pool was generated. */
+        private final long createdAt;
+
+        /** Position of the next recipe to serve. */
+        private final AtomicInteger cursor;
+
+        Entry(final String fingerprintValue, final long versionValue,
+              final List<Recipe> recipesValue, final long createdAtValue,
+              final AtomicInteger cursorValue) {
+            this.fingerprint = fingerprintValue;
+            this.version = versionValue;
+            this.recipes = recipesValue;
+            this.createdAt = createdAtValue;
+            this.cursor = cursorValue;
+        }
+
+        Recipe next() {
+            return recipes.get(Math.floorMod(cursor.getAndIncrement(),
+                recipes.size()));
+        }
+
+        Entry withVersion(final long versionValue) {
+            return new Entry(fingerprint, versionValue, recipes, createdAt,
+                cursor);
+        }
+    }
+}
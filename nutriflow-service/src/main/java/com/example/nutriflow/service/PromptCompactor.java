@@ -0,0 +1,408 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.PantryItem;
+import com.example.nutriflow.model.User;
+import lombok.Builder;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the compact prompt sentence that describes a user to the
+ * model. Prompt length drives model latency and cost, so the profile
+ * goes through several steps:
+ * <ol>
+ *   <li>terms are trimmed, lower-cased and de-duplicated, and pantry
+ *       items of the same name and unit are merged;</li>
+ *   <li>pantry items the user is allergic to or dislikes are left out,
+ *       and the rest are capped at the most recently stocked
+ *       {@code max-pantry-items};</li>
+ *   <li>empty or unspecified sections are dropped;</li>
+ *   <li>while the estimated token count exceeds {@code token-budget},
+ *       pantry quantities, then the least recent pantry items, then
+ *       dislikes are removed. Allergies, budget, skill and equipment
+ *       are always kept.</li>
+ * </ol>
+ * The size of the uncompacted sentence is measured alongside, so the
+ * saving can be reported.
+ */
+@Component
+public class PromptCompactor {
+
+    /** Characters per token assumed for words. */
+    private static final int CHARS_PER_TOKEN = 4;
+
+    /** Percentages are given out of this value. */
+    private static final double PERCENT = 100d;
+
+    /** Most pantry items included in a prompt. */
+    private final int maxPantryItems;
+
+    /** Most tokens the user description may take. */
+    private final int tokenBudget;
+
+    /** Number of profiles compacted. */
+    private final LongAdder compactions = new LongAdder();
+
+    /** Estimated tokens of the uncompacted descriptions. */
+    private final LongAdder tokensBefore = new LongAdder();
+
+    /** Estimated tokens of the compacted descriptions. */
+    private final LongAdder tokensAfter = new LongAdder();
+
+    /** Number of descriptions trimmed to fit the token budget. */
+    private final LongAdder trimmedToBudget = new LongAdder();
+
+    /**
+     * Compacted user description.
+     */
+    @Getter
+    @Builder
+    public static final class CompactProfile {
+
+        /** Prompt sentence describing the user. */
+        private final String promptPrefix;
+
+        /** The pantry as included in the prompt; empty if left out. */
+        private final String pantryText;
+
+        /** Estimated tokens of the uncompacted description. */
+        private final int tokensBefore;
+
+        /** Estimated tokens of {@link #promptPrefix}. */
+        private final int tokensAfter;
+    }
+
+    /**
+     * Creates a compactor from application properties.
+     *
+     * @param maxPantryItemsValue most pantry items included in a prompt
+     * @param tokenBudgetValue most tokens the user description may take
+     */
+    @Autowired
+    public PromptCompactor(
+            final @Value("${nutriflow.ai.prompt.max-pantry-items:25}")
+                int maxPantryItemsValue,
+            final @Value("${nutriflow.ai.prompt.token-budget:250}")
+                int tokenBudgetValue) {
+        this.maxPantryItems = Math.max(0, maxPantryItemsValue);
+        this.tokenBudget = Math.max(1, tokenBudgetValue);
+    }
+
+    /**
+     * Builds the compact description of a user and their pantry.
+     *
+     * @param user the user profile
+     * @param pantryItems the user's pantry
+     * @return the compacted description and its size before and after
+     */
+    public CompactProfile compact(final User user,
+                                  final List<PantryItem> pantryItems) {
+        final List<String> allergies = canonicalTerms(user.getAllergies());
+        final List<String> dislikes = canonicalTerms(user.getDislikes());
+        final List<String> equipment = canonicalTerms(user.getEquipments());
+        final String budget = user.getBudget() == null
+            ? null : "$" + user.getBudget().toPlainString();
+        final String skill = user.getCookingSkillLevel() == null
+            ? null : user.getCookingSkillLevel().toString();
+        final List<Pantry> pantry =
+            rankPantry(pantryItems, allergies, dislikes);
+
+        int keptPantry = pantry.size();
+        int keptDislikes = dislikes.size();
+        boolean quantities = true;
+        String prefix = render(allergies, dislikes, keptDislikes, budget,
+            skill, equipment, pantry, keptPantry, quantities);
+        final boolean overBudget = estimateTokens(prefix) > tokenBudget;
+        while (estimateTokens(prefix) > tokenBudget) {
+            if (quantities && keptPantry > 0) {
+                quantities = false;
+            } else if (keptPantry > 0) {
+                keptPantry--;
+            } else if (keptDislikes > 0) {
+                keptDislikes--;
+            } else {
+                break;
+            }
+            prefix = render(allergies, dislikes, keptDislikes, budget,
+                skill, equipment, pantry, keptPantry, quantities);
+        }
+
+        final int before = estimateTokens(uncompacted(user, pantryItems));
+        final int after = estimateTokens(prefix);
+        compactions.increment();
+        tokensBefore.add(before);
+        tokensAfter.add(after);
+        if (overBudget) {
+            trimmedToBudget.increment();
+        }
+        return CompactProfile.builder()
+            .promptPrefix(prefix)
+            .pantryText(pantryText(pantry, keptPantry, quantities))
+            .tokensBefore(before)
+            .tokensAfter(after)
+            .build();
+    }
+
+    /**
+     * Estimates the number of model tokens in a text without calling
+     * the model: each run of letters or digits counts one token per
+     * four characters (at least one), each other visible character one
+     * token, and whitespace nothing.
+     *
+     * @param text the text
+     * @return the estimated token count
+     */
+    public static int estimateTokens(final String text) {
+        int tokens = 0;
+        int run = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            final char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                run++;
+                continue;
+            }
+            if (run > 0) {
+                tokens += (run + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+                run = 0;
+            }
+            if (!Character.isWhitespace(c)) {
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns a snapshot of the compaction counters.
+     *
+     * @return map of counter name to value
+     */
+    public Map<String, Object> stats() {
+        final long count = compactions.sum();
+        final long before = tokensBefore.sum();
+        final long after = tokensAfter.sum();
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("compactions", count);
+        stats.put("tokenBudget", tokenBudget);
+        stats.put("avgTokensBefore", count == 0 ? 0d : (double) before / count);
+        stats.put("avgTokensAfter", count == 0 ? 0d : (double) after / count);
+        stats.put("savedPercent",
+            before == 0 ? 0d : (before - after) * PERCENT / before);
+        stats.put("trimmedToBudget", trimmedToBudget.sum());
+        return stats;
+    }
+
+    private static List<String> canonicalTerms(final String[] terms) {
+        if (terms == null) {
+            return List.of();
+        }
+        final Set<String> unique = new LinkedHashSet<>();
+        for (String term : terms) {
+            final String canonical = canonical(term);
+            if (!canonical.isEmpty()) {
+                unique.add(canonical);
+            }
+        }
+        return new ArrayList<>(unique);
+    }
+
+    private static String canonical(final String term) {
+        return term == null ? ""
+            : term.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Merges duplicate pantry items, leaves out the ones the user must
+     * or would rather not eat, and orders the rest most recent first.
+     */
+    private List<Pantry> rankPantry(final List<PantryItem> items,
+                                    final List<String> allergies,
+                                    final List<String> dislikes) {
+        final List<List<String>> excluded = new ArrayList<>();
+        allergies.forEach(term -> excluded.add(
+            RecipeIngredientIndex.words(term)));
+        dislikes.forEach(term -> excluded.add(
+            RecipeIngredientIndex.words(term)));
+        final Map<String, Pantry> merged = new LinkedHashMap<>();
+        for (PantryItem item : items) {
+            final String name = canonical(item.getName());
+            if (name.isEmpty()
+                || mentions(RecipeIngredientIndex.words(name), excluded)) {
+                continue;
+            }
+            final String unit = canonical(item.getUnit());
+            final LocalDateTime stocked = item.getUpdatedAt() != null
+                ? item.getUpdatedAt() : item.getCreatedAt();
+            merged.merge(name + '\u0000' + unit,
+                new Pantry(name, item.getQuantity(), unit, stocked),
+                Pantry::plus);
+        }
+        final List<Pantry> ranked = new ArrayList<>(merged.values());
+        ranked.sort(Comparator.comparing((Pantry p) -> p.stocked,
+            Comparator.nullsLast(Comparator.reverseOrder())));
+        return ranked.size() > maxPantryItems
+            ? new ArrayList<>(ranked.subList(0, maxPantryItems)) : ranked;
+    }
+
+    /**
+     * Checks whether a name contains one of the terms as whole words,
+     * so "egg" matches "eggs" and "boiled egg" but not "eggplant".
+     */
+    private static boolean mentions(final List<String> name,
+                                    final List<List<String>> terms) {
+        for (List<String> term : terms) {
+            for (int start = 0; !term.isEmpty()
+                && start + term.size() <= name.size(); start++) {
+                int matched = 0;
+                while (matched < term.size() && sameWord(
+                    name.get(start + matched), term.get(matched))) {
+                    matched++;
+                }
+                if (matched == term.size()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Compares two words, ignoring a plural "s" or "es" on either. */
+    private static boolean sameWord(final String word, final String term) {
+        return word.equals(term) || isPlural(word, term)
+            || isPlural(term, word);
+    }
+
+    private static boolean isPlural(final String plural,
+                                    final String singular) {
+        return plural.startsWith(singular)
+            && (plural.length() == singular.length() + 1
+                    && plural.endsWith("s")
+                || plural.length() == singular.length() + 2
+                    && plural.endsWith("es"));
+    }
+
+    private static String render(final List<String> allergies,
+                                 final List<String> dislikes,
+                                 final int keptDislikes,
+                                 final String budget,
+                                 final String skill,
+                                 final List<String> equipment,
+                                 final List<Pantry> pantry,
+                                 final int keptPantry,
+                                 final boolean quantities) {
+        final List<String> sections = new ArrayList<>();
+        if (!allergies.isEmpty()) {
+            sections.add("allergies: " + String.join(", ", allergies));
+        }
+        if (keptDislikes > 0) {
+            sections.add("dislikes: " + String.join(", ",
+                dislikes.subList(0, keptDislikes)));
+        }
+        if (budget != null) {
+            sections.add("budget: " + budget);
+        }
+        if (skill != null) {
+            sections.add("cooking skill: " + skill);
+        }
+        if (!equipment.isEmpty()) {
+            sections.add("equipment: " + String.join(", ", equipment));
+        }
+        if (keptPantry > 0) {
+            sections.add("pantry: "
+                + pantryText(pantry, keptPantry, quantities));
+        }
+        return sections.isEmpty()
+            ? " " : " User profile - " + String.join("; ", sections) + ". ";
+    }
+
+    private static String pantryText(final List<Pantry> pantry,
+                                     final int kept,
+                                     final boolean quantities) {
+        return pantry.subList(0, kept).stream()
+            .map(item -> quantities ? item.describe() : item.name)
+            .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * The description in its original, uncompacted form, used only to
+     * measure the saving.
+     */
+    private static String uncompacted(final User user,
+                                      final List<PantryItem> pantryItems) {
+        final String pantry = pantryItems.stream()
+            .map(item -> item.getName() + " (" + item.getQuantity() + " "
+                + item.getUnit() + ")")
+            .collect(Collectors.joining(", "));
+        return "The user has the following allergies: "
+            + Arrays.toString(user.getAllergies()) + "; the following "
+            + "dislikes: " + Arrays.toString(user.getDislikes())
+            + "; the following budget: " + user.getBudget()
+            + "; the following cooking skill level: "
+            + user.getCookingSkillLevel()
+            + "; the following kitchen equipments: "
+            + Arrays.toString(user.getEquipments())
+            + "; the following pantry items: " + pantry + ". ";
+    }
+
+    /**
+     * A canonical pantry entry.
+     */
+    private static final class Pantry {
+
+        /** Canonical item name. */
+        private final String name;
+
+        /** Quantity, or null if unknown. */
+        private final BigDecimal quantity;
+
+        /** Canonical unit; empty if none. */
+        private final String unit;
+
+        /** When the item was last stocked, or null. */
+        private final LocalDateTime stocked;
+
+        Pantry(final String nameValue, final BigDecimal quantityValue,
+               final String unitValue, final LocalDateTime stockedValue) {
+            this.name = nameValue;
+            this.quantity = quantityValue;
+            this.unit = unitValue;
+            this.stocked = stockedValue;
+        }
+
+        Pantry plus(final Pantry other) {
+            final BigDecimal total = quantity == null ? other.quantity
+                : other.quantity == null ? quantity
+                : quantity.add(other.quantity);
+            final LocalDateTime latest = stocked == null
+                || (other.stocked != null && other.stocked.isAfter(stocked))
+                ? other.stocked : stocked;
+            return new Pantry(name, total, unit, latest);
+        }
+
+        String describe() {
+            final String qty = quantity == null
+                ? "" : quantity.stripTrailingZeros().toPlainString();
+            if (qty.isEmpty() && unit.isEmpty()) {
+                return name;
+            }
+            return name + " (" + qty
+                + (qty.isEmpty() || unit.isEmpty() ? "" : " ") + unit + ")";
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.Recipe;
+import com.example.nutriflow.model.RecipeIngredient;
+import com.example.nutriflow.model.User;
+import com.example.nutriflow.service.repository.RecipeIngredientRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-memory inverted index from case-folded ingredient name to the IDs
+ * of the recipes that use it.
+ * The index is loaded from {@code recipe_ingredients} at startup and is
+ * kept current by calling {@link #index(Collection)} whenever new
+ * ingredient rows are persisted, so single-ingredient lookups cost a
+ * hash probe plus the size of the result.
+ */
+@Component
+public class RecipeIngredientIndex {
+
+    /**
+     * How a multi-ingredient query combines its terms.
+     */
+    public enum MatchMode {
+        /** A recipe matches if it uses at least one of the terms. */
+        ANY,
+        /** A recipe matches only if it uses every term. */
+        ALL
+    }
+
+    /** Logger for this class. */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(RecipeIngredientIndex.class);
+
+    /** Repository used to (re)load the index. */
+    @Autowired
+    private RecipeIngredientRepository recipeIngredientRepository;
+
+    /** Case-folded ingredient name to the sorted IDs of its recipes. */
+    private final Map<String, NavigableSet<Integer>> recipesByIngredient =
+        new ConcurrentHashMap<>();
+
+    /** Recipe ID to the case-folded names of its ingredients. */
+    private final Map<Integer, Set<String>> ingredientsByRecipe =
+        new ConcurrentHashMap<>();
+
+    /** Recipe ID to the case-folded allergen tags of its ingredients. */
+    private final Map<Integer, Set<String>> allergensByRecipe =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Loads every ingredient row into the index at startup.
+     * If the table cannot be read the index starts empty and lookups
+     * simply miss, as they would against an empty table.
+     */
+    @PostConstruct
+    public void rebuild() {
+        recipesByIngredient.clear();
+        ingredientsByRecipe.clear();
+        allergensByRecipe.clear();
+        try {
+            index(recipeIngredientRepository.findAll());
+        } catch (DataAccessException ex) {
+            LOGGER.warn("Could not load recipe ingredients into index: {}",
+                ex.getMessage());
+        }
+    }
+
+    /**
+     * Adds the given ingredient rows to the index.
+     * Rows without a recipe ID or an ingredient name are ignored.
+     *
+     * @param rows the ingredient rows to index
+     */
+    public void index(final Collection<RecipeIngredient> rows) {
+        for (RecipeIngredient row : rows) {
+            final String term = normalize(row.getIngredient());
+            if (term == null || row.getRecipeId() == null) {
+                continue;
+            }
+            recipesByIngredient
+                .computeIfAbsent(term, k -> new ConcurrentSkipListSet<>())
+                .add(row.getRecipeId());
+            ingredientsByRecipe
+                .computeIfAbsent(row.getRecipeId(),
+                    k -> ConcurrentHashMap.newKeySet())
+                .add(term);
+            if (row.getAllergenTags() == null) {
+                continue;
+            }
+            for (String tag : row.getAllergenTags()) {
+                final String allergen = normalize(tag);
+                if (allergen != null) {
+                    allergensByRecipe
+                        .computeIfAbsent(row.getRecipeId(),
+                            k -> ConcurrentHashMap.newKeySet())
+                        .add(allergen);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the case-folded ingredient names of a recipe.
+     *
+     * @param recipeId the recipe ID
+     * @return an unmodifiable view of the ingredient names (may be empty)
+     */
+    public Set<String> ingredientsOf(final Integer recipeId) {
+        final Set<String> names = ingredientsByRecipe.get(recipeId);
+        return names == null
+            ? Set.of()
+            : Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * Returns the case-folded allergen tags of a recipe's ingredients.
+     *
+     * @param recipeId the recipe ID
+     * @return an unmodifiable view of the allergen tags (may be empty)
+     */
+    public Set<String> allergensOf(final Integer recipeId) {
+        final Set<String> tags = allergensByRecipe.get(recipeId);
+        return tags == null
+            ? Set.of()
+            : Collections.unmodifiableSet(tags);
+    }
+
+    /**
+     * Returns the normalized allergy and dislike terms of a user, as
+     * used by {@link #conflicts(Recipe, Set)}.
+     *
+     * @param user the user
+     * @return the terms (may be empty)
+     */
+    public static Set<String> excludedTerms(final User user) {
+        final Set<String> terms = new HashSet<>();
+        addTerms(terms, user.getAllergies());
+        addTerms(terms, user.getDislikes());
+        return terms;
+    }
+
+    /**
+     * Checks whether a recipe matches any of the given terms through its
+     * title, its ingredient names or its allergen tags.
+     *
+     * @param recipe the recipe
+     * @param terms normalized terms, e.g. from {@link #excludedTerms(User)}
+     * @return true if one of the terms occurs in the recipe
+     */
+    public boolean conflicts(final Recipe recipe, final Set<String> terms) {
+        if (terms.isEmpty()) {
+            return false;
+        }
+        final String title = recipe.getTitle() == null
+            ? "" : recipe.getTitle().toLowerCase(Locale.ROOT);
+        final Set<String> allergens = allergensOf(recipe.getRecipeId());
+        final Set<String> ingredients = ingredientsOf(recipe.getRecipeId());
+        for (String term : terms) {
+            if (title.contains(term) || allergens.contains(term)) {
+                return true;
+            }
+            for (String ingredient : ingredients) {
+                if (ingredient.contains(term)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the IDs of recipes that use the given ingredient,
+     * in ascending order.
+     *
+     * @param ingredient the ingredient name (case-insensitive)
+     * @return an unmodifiable view of matching recipe IDs (may be empty)
+     */
+    public NavigableSet<Integer> lookup(final String ingredient) {
+        final String term = normalize(ingredient);
+        final NavigableSet<Integer> ids = term == null
+            ? null : recipesByIngredient.get(term);
+        return ids == null
+            ? Collections.emptyNavigableSet()
+            : Collections.unmodifiableNavigableSet(ids);
+    }
+
+    /**
+     * Finds recipes that use the given ingredients, ranked by how many
+     * of the query terms they match (descending), then by recipe ID.
+     *
+     * @param ingredients the query terms (case-insensitive, de-duplicated)
+     * @param mode whether a recipe must match any or all of the terms
+     * @return ranked recipe IDs (may be empty)
+     */
+    public List<Integer> search(final Collection<String> ingredients,
+                                final MatchMode mode) {
+        final Set<String> terms = new LinkedHashSet<>();
+        for (String ingredient : ingredients) {
+            final String term = normalize(ingredient);
+            if (term != null) {
+                terms.add(term);
+            }
+        }
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+
+        final Map<Integer, Integer> matches = new HashMap<>();
+        for (String term : terms) {
+            for (Integer id : lookup(term)) {
+                matches.merge(id, 1, Integer::sum);
+            }
+        }
+
+        final int required = mode == MatchMode.ALL ? terms.size() : 1;
+        final List<Map.Entry<Integer, Integer>> ranked = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : matches.entrySet()) {
+            if (entry.getValue() >= required) {
+                ranked.add(entry);
+            }
+        }
+        ranked.sort(Map.Entry.<Integer, Integer>comparingByValue()
+            .reversed()
+            .thenComparing(Map.Entry.comparingByKey()));
+
+        final List<Integer> ids = new ArrayList<>(ranked.size());
+        ranked.forEach(entry -> ids.add(entry.getKey()));
+        return ids;
+    }
+
+    private static void addTerms(final Set<String> terms,
+                                 final String[] values) {
+        if (values == null) {
+            return;
+        }
+        for (String value : values) {
+            final String term = normalize(value);
+            if (term != null) {
+                terms.add(term);
+            }
+        }
+    }
+
+    /**
+     * Splits a normalized ingredient name into its words, so terms can be
+     * matched word by word instead of inside longer words.
+     *
+     * @param ingredient the raw ingredient name
+     * @return the words in order, or an empty list if the name is blank
+     */
+    static List<String> words(final String ingredient) {
+        final String term = normalize(ingredient);
+        if (term == null) {
+            return List.of();
+        }
+        final List<String> words = new ArrayList<>();
+        for (String word : term.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Case-folds and trims an ingredient name.
+     *
+     * @param ingredient the raw ingredient name
+     * @return the index term, or null if the name is blank
+     */
+    static String normalize(final String ingredient) {
+        if (ingredient == null || ingredient.isBlank()) {
+            return null;
+        }
+        return ingredient.trim().toLowerCase(Locale.ROOT);
+    }
+}
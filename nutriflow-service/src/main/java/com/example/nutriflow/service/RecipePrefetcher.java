@@ -0,0 +1,331 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.config.GenerationExecutorConfig;
+import com.example.nutriflow.service.ai.ModelOverloadedException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Speculative pre-generation of personal recipe pools for active users.
+ * A user is active after {@code min-requests} recipe or meal plan
+ * requests within the activity window. The pool of an active user is
+ * refilled in the background once it has been served, when the user's
+ * profile or pantry changes, and by a periodic scan.
+ * Refills run on their own small, low-priority executor, and each model
+ * call is made only if the limiter has spare capacity, so pre-generation
+ * never delays or sheds interactive requests; work that cannot run now
+ * is dropped and retried by the next scan.
+ */
+@Component
+public class RecipePrefetcher {
+
+    /** Logger for this class. */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(RecipePrefetcher.class);
+
+    /** Service that generates the pools. */
+    private final AIRecipeService aiRecipeService;
+
+    /** Cache the pools are stored in. */
+    private final PersonalizedRecipeCache personalCache;
+
+    /** Executor that runs the refills. */
+    private final Executor executor;
+
+    /** Whether pre-generation is enabled. */
+    private final boolean enabled;
+
+    /** Requests within the window that make a user active. */
+    private final int minRequests;
+
+    /** Length of the activity window in nanoseconds. */
+    private final long windowNanos;
+
+    /** Delay between scans of active users in milliseconds. */
+    private final long scanIntervalMs;
+
+    /** Maximum number of users whose activity is tracked. */
+    private final int maxUsers;
+
+    /** Monotonic clock in nanoseconds. */
+    private final LongSupplier clock;
+
+    /** Recent requests by user ID. */
+    private final Map<Integer, Activity> activity = new ConcurrentHashMap<>();
+
+    /** Users with a refill queued or running. */
+    private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+
+    /** Background thread that rescans active users. */
+    private ScheduledExecutorService scanner;
+
+    /** Number of refills handed to the executor. */
+    private final LongAdder scheduled = new LongAdder();
+
+    /** Number of refills that generated a pool. */
+    private final LongAdder generated = new LongAdder();
+
+    /** Number of refills that gave way to interactive calls. */
+    private final LongAdder deferred = new LongAdder();
+
+    /** Number of refills rejected because the executor was full. */
+    private final LongAdder rejected = new LongAdder();
+
+    /** Number of refills that failed. */
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * Creates the prefetcher from application properties.
+     *
+     * @param service service that generates the pools
+     * @param cache cache the pools are stored in
+     * @param prefetchExecutor executor that runs the refills
+     * @param enabledValue whether pre-generation is enabled
+     * @param minRequestsValue requests within the window that make a
+     *                         user active
+     * @param activeWindowSeconds length of the activity window
+     * @param scanIntervalMsValue delay between scans in milliseconds
+     * @param maxUsersValue maximum number of users tracked
+     */
+    @Autowired
+    public RecipePrefetcher(
+            final AIRecipeService service,
+            final PersonalizedRecipeCache cache,
+            final @Qualifier(GenerationExecutorConfig.AI_PREFETCH_EXECUTOR)
+                Executor prefetchExecutor,
+            final @Value("${nutriflow.ai.prefetch.enabled:true}")
+                boolean enabledValue,
+            final @Value("${nutriflow.ai.prefetch.min-requests:2}")
+                int minRequestsValue,
+            final @Value("${nutriflow.ai.prefetch.active-window-seconds:1800}")
+                long activeWindowSeconds,
+            final @Value("${nutriflow.ai.prefetch.scan-interval-ms:60000}")
+                long scanIntervalMsValue,
+            final @Value("${nutriflow.ai.prefetch.max-users:500}")
+                int maxUsersValue) {
+        this(service, cache, prefetchExecutor, enabledValue,
+            minRequestsValue, TimeUnit.SECONDS.toNanos(activeWindowSeconds),
+            scanIntervalMsValue, maxUsersValue, System::nanoTime);
+    }
+
+    /**
+     * Creates a prefetcher with an explicit clock.
+     *
+     * @param service service that generates the pools
+     * @param cache cache the pools are stored in
+     * @param prefetchExecutor executor that runs the refills
+     * @param enabledValue whether pre-generation is enabled
+     * @param minRequestsValue requests within the window that make a
+     *                         user active
+     * @param windowNanosValue length of the activity window in nanoseconds
+     * @param scanIntervalMsValue delay between scans in milliseconds
+     * @param maxUsersValue maximum number of users tracked
+     * @param clockSource monotonic nanosecond clock
+     */
+    RecipePrefetcher(final AIRecipeService service,
+                     final PersonalizedRecipeCache cache,
+                     final Executor prefetchExecutor,
+                     final boolean enabledValue,
+                     final int minRequestsValue,
+                     final long windowNanosValue,
+                     final long scanIntervalMsValue,
+                     final int maxUsersValue,
+                     final LongSupplier clockSource) {
+        this.aiRecipeService = service;
+        this.personalCache = cache;
+        this.executor = prefetchExecutor;
+        this.enabled = enabledValue;
+        this.minRequests = Math.max(1, minRequestsValue);
+        this.windowNanos = Math.max(0, windowNanosValue);
+        this.scanIntervalMs = scanIntervalMsValue;
+        this.maxUsers = Math.max(0, maxUsersValue);
+        this.clock = clockSource;
+    }
+
+    /**
+     * Listens for profile and pantry changes and starts the periodic
+     * scan of active users.
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        personalCache.addInvalidationListener(this::refillIfActive);
+        if (scanIntervalMs <= 0) {
+            return;
+        }
+        scanner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "recipe-prefetch-scan");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scanner.scheduleWithFixedDelay(this::scanQuietly,
+            scanIntervalMs, scanIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic scan.
+     */
+    @PreDestroy
+    public void stop() {
+        if (scanner != null) {
+            scanner.shutdownNow();
+        }
+    }
+
+    /**
+     * Records a recipe or meal plan request by a user and, once the user
+     * is active, refills the user's pool if it needs it.
+     *
+     * @param userId the user ID
+     */
+    public void recordActivity(final Integer userId) {
+        if (!enabled || userId == null) {
+            return;
+        }
+        Activity recent = activity.get(userId);
+        if (recent == null) {
+            if (activity.size() >= maxUsers) {
+                return;
+            }
+            recent = activity.computeIfAbsent(userId,
+                id -> new Activity(minRequests));
+        }
+        recent.record(clock.getAsLong());
+        refillIfActive(userId);
+    }
+
+    /**
+     * Forgets users who have been inactive for a whole window and
+     * refills the pools of the others where needed.
+     */
+    public void scan() {
+        final long now = clock.getAsLong();
+        activity.entrySet().removeIf(
+            entry -> now - entry.getValue().lastSeen() > windowNanos);
+        activity.keySet().forEach(this::refillIfActive);
+    }
+
+    /**
+     * Tells whether a user currently counts as active.
+     *
+     * @param userId the user ID
+     * @return true if the user made enough requests within the window
+     */
+    public boolean isActive(final Integer userId) {
+        final Activity recent = activity.get(userId);
+        return recent != null
+            && recent.isActive(clock.getAsLong(), windowNanos);
+    }
+
+    /**
+     * Returns a snapshot of the prefetcher counters.
+     *
+     * @return map of counter name to value
+     */
+    public Map<String, Object> stats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("trackedUsers", activity.size());
+        stats.put("pending", pending.size());
+        stats.put("scheduled", scheduled.sum());
+        stats.put("generated", generated.sum());
+        stats.put("deferred", deferred.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("failed", failed.sum());
+        return stats;
+    }
+
+    private void refillIfActive(final Integer userId) {
+        if (!isActive(userId) || !personalCache.needsRefill(userId)
+            || !pending.add(userId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> refill(userId));
+            scheduled.increment();
+        } catch (RejectedExecutionException ex) {
+            pending.remove(userId);
+            rejected.increment();
+        }
+    }
+
+    private void refill(final Integer userId) {
+        try {
+            if (aiRecipeService.prefetchPersonalRecipes(userId)) {
+                generated.increment();
+            }
+        } catch (ModelOverloadedException ex) {
+            deferred.increment();
+        } catch (IllegalArgumentException ex) {
+            activity.remove(userId);
+        } catch (RuntimeException ex) {
+            failed.increment();
+            LOGGER.debug("Recipe pre-generation for user {} failed: {}",
+                userId, ex.getMessage());
+        } finally {
+            pending.remove(userId);
+        }
+    }
+
+    private void scanQuietly() {
+        try {
+            scan();
+        } catch (RuntimeException ex) {
+            LOGGER.warn("Recipe pre-generation scan failed: {}",
+                ex.getMessage());
+        }
+    }
+
+    /**
+     * Times of a user's most recent requests.
+     */
+    private static final class Activity {
+
+        /** Ring of the latest request times. */
+        private final long[] times;
+
+        /** Number of requests recorded so far. */
+        private long count;
+
+        Activity(final int size) {
+            this.times = new long[size];
+        }
+
+        synchronized void record(final long now) {
+            times[(int) (count % times.length)] = now;
+            count++;
+        }
+
+        synchronized long lastSeen() {
+            return times[(int) ((count - 1) % times.length)];
+        }
+
+        synchronized boolean isActive(final long now, final long window) {
+            if (count < times.length) {
+                return false;
+            }
+            final long oldest = times[(int) (count % times.length)];
+            return now - oldest <= window;
+        }
+    }
+}
@@ -5,6 +5,8 @@ import com.example.nutriflow.model.Recipe;
 import com.example.nutriflow.service.repository.FavoriteRecipeRepository;
 import com.example.nutriflow.service.repository.RecipeRepository;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,6 +28,10 @@ public class RecipeService {
     @Autowired
     private FavoriteRecipeRepository favoriteRecipeRepository;
 
+    /** Inverted index from ingredient name to recipe IDs. */
+    @Autowired
+    private RecipeIngredientIndex ingredientIndex;
+
     /** Default number of recipes when limit is not specified. */
     private static final int DEFAULT_POPULAR_LIMIT = 5;
 
@@ -72,6 +78,36 @@ public class RecipeService {
         return recipeRepository.findAll();
     }
 
+    /**
+     * Finds recipes that use the given ingredients.
+     * Results are ranked by how many of the requested ingredients each
+     * recipe uses, so the closest matches come first.
+     *
+     * @param ingredients the ingredient names to search for
+     * @param mode {@code ANY} to match at least one ingredient,
+     *             {@code ALL} to require every ingredient
+     * @return matching recipes, best match first
+     */
+    public List<Recipe> searchByIngredients(
+            final List<String> ingredients,
+            final RecipeIngredientIndex.MatchMode mode) {
+        final List<Integer> rankedIds =
+            ingredientIndex.search(ingredients, mode);
+        if (rankedIds.isEmpty()) {
+            return List.of();
+        }
+
+        final Map<Integer, Recipe> byId = recipeRepository
+                .findAllById(rankedIds)
+                .stream()
+                .collect(Collectors.toMap(Recipe::getRecipeId, r -> r));
+
+        return rankedIds.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
     /**
      * Retrieves all favorite recipes for a given user.
      * If the user has no favorites, returns an empty list.
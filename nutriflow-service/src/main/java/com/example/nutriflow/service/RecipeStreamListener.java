@@ -0,0 +1,42 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.Recipe;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Receives the parts of a recipe as the model generates them.
+ * Calls are never concurrent and arrive in order: the title, the
+ * ingredients, pieces of the instructions, then the complete recipe.
+ * Parts the model leaves out are skipped. A listener that throws stops
+ * the generation.
+ */
+public interface RecipeStreamListener {
+
+    /**
+     * Called once the title has been generated.
+     *
+     * @param title the recipe title
+     */
+    void onTitle(String title);
+
+    /**
+     * Called once the whole ingredient list has been generated.
+     *
+     * @param ingredients the JSON array of ingredients
+     */
+    void onIngredients(JsonNode ingredients);
+
+    /**
+     * Called with each new piece of the instructions.
+     *
+     * @param text instruction text following the previous piece
+     */
+    void onInstructions(String text);
+
+    /**
+     * Called once with the complete, parsed recipe.
+     *
+     * @param recipe the recipe
+     */
+    void onComplete(Recipe recipe);
+}
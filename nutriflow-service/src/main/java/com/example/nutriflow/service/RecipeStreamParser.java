@@ -0,0 +1,341 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.Recipe;
+import com.example.nutriflow.service.ai.StreamCancelledException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns a recipe JSON response that arrives in pieces into
+ * {@link RecipeStreamListener} calls. A non-blocking Jackson parser is
+ * fed each piece; the title is passed on once its string is complete,
+ * the ingredients once their array is complete, and the instructions
+ * string is decoded as far as it has arrived, so its text can be passed
+ * on while it is still being generated.
+ * Only the bytes that arrived since the previous piece are decoded.
+ * Malformed input stops the partial calls; {@link #finish(Recipe)} then
+ * still passes on everything not yet sent.
+ * A listener that throws, or a call to {@link #cancel()}, makes
+ * {@link #feed(String)} throw a {@link StreamCancelledException}, which
+ * stops the model call without counting as a model failure.
+ */
+final class RecipeStreamParser {
+
+    /** Field holding the recipe title. */
+    private static final String TITLE = "title";
+
+    /** Field holding the ingredient array. */
+    private static final String INGREDIENTS = "ingredients";
+
+    /** Field holding the instructions text. */
+    private static final String INSTRUCTIONS = "instructions";
+
+    /** Length of a {@code \\uXXXX} escape. */
+    private static final int UNICODE_ESCAPE_LENGTH = 6;
+
+    /** Radix of a {@code \\uXXXX} escape. */
+    private static final int HEX = 16;
+
+
+    /** Mapper that builds the ingredient tree. */
+    private final ObjectMapper objectMapper;
+
+    /** Listener the parts are passed to. */
+    private final RecipeStreamListener listener;
+
+    /** Non-blocking parser fed with each piece. */
+    private final JsonParser parser;
+
+    /** Every byte received so far. */
+    private final Received received = new Received();
+
+    /** Instruction text decoded so far, while the string is incomplete. */
+    private final StringBuilder instructionsText = new StringBuilder();
+
+    /** Nesting depth of the current token; the recipe object is 1. */
+    private int depth;
+
+    /** Name of the current top-level field. */
+    private String field;
+
+    /** Tokens of the ingredient array while it is being read. */
+    private TokenBuffer ingredients;
+
+    /**
+     * Byte offset of the first instructions byte not yet decoded, or -1
+     * before the instructions field.
+     */
+    private int instructionsFrom = -1;
+
+    /** Whether the opening quote of the instructions has been read. */
+    private boolean instructionsOpened;
+
+    /** Number of instruction characters passed on. */
+    private int instructionsSent;
+
+    /** Whether the instructions string is complete. */
+    private boolean instructionsDone;
+
+    /** Whether the title has been passed on. */
+    private boolean titleSent;
+
+    /** Whether the ingredients have been passed on. */
+    private boolean ingredientsSent;
+
+    /** Whether the input turned out to be malformed. */
+    private boolean failed;
+
+    /** Whether the stream was cancelled or the listener failed. */
+    private volatile boolean cancelled;
+
+    RecipeStreamParser(final ObjectMapper mapper,
+                       final RecipeStreamListener target) {
+        this.objectMapper = mapper;
+        this.listener = target;
+        try {
+            this.parser = mapper.getFactory().createNonBlockingByteArrayParser();
+        } catch (IOException ex) {
+            throw new IllegalStateException(
+                "Non-blocking JSON parsing is not available", ex);
+        }
+    }
+
+    /**
+     * Parses the next piece of the response, passing on every part it
+     * completes.
+     *
+     * @param piece the next piece of the response text
+     * @throws StreamCancelledException if the stream was cancelled or
+     *         the listener failed
+     */
+    void feed(final String piece) {
+        if (cancelled) {
+            throw new StreamCancelledException("Recipe stream cancelled",
+                null);
+        }
+        if (failed) {
+            return;
+        }
+        final byte[] bytes = piece.getBytes(StandardCharsets.UTF_8);
+        received.write(bytes, 0, bytes.length);
+        try {
+            ((ByteArrayFeeder) parser.getNonBlockingInputFeeder())
+                .feedInput(bytes, 0, bytes.length);
+            JsonToken token;
+            while ((token = parser.nextToken()) != null
+                && token != JsonToken.NOT_AVAILABLE) {
+                handle(token);
+            }
+        } catch (IOException ex) {
+            failed = true;
+            return;
+        }
+        if (instructionsFrom >= 0 && !instructionsDone) {
+            decodeInstructions();
+            sendInstructions(instructionsText, false);
+        }
+    }
+
+    /**
+     * Stops the stream: the next piece fed makes the model call fail
+     * with a {@link StreamCancelledException}. May be called from any
+     * thread.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Passes on the parts of the parsed recipe that have not been sent
+     * yet, then the recipe itself.
+     *
+     * @param recipe the complete recipe
+     */
+    void finish(final Recipe recipe) {
+        if (!titleSent && recipe.getTitle() != null) {
+            deliver(() -> listener.onTitle(recipe.getTitle()));
+        }
+        if (!ingredientsSent && recipe.getIngredients() != null) {
+            try {
+                final JsonNode list =
+                    objectMapper.readTree(recipe.getIngredients());
+                if (list != null && list.isArray()) {
+                    deliver(() -> listener.onIngredients(list));
+                }
+            } catch (JsonProcessingException ex) {
+                // Nothing to show; the recipe still carries the text.
+            }
+        }
+        if (!instructionsDone && recipe.getInstructions() != null) {
+            sendInstructions(recipe.getInstructions(), true);
+        }
+        deliver(() -> listener.onComplete(recipe));
+    }
+
+    private void handle(final JsonToken token) throws IOException {
+        if (ingredients != null) {
+            ingredients.copyCurrentEvent(parser);
+            if (token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd() && --depth == 1) {
+                final JsonNode list =
+                    objectMapper.readTree(ingredients.asParser());
+                deliver(() -> listener.onIngredients(list));
+                ingredientsSent = true;
+                ingredients = null;
+            }
+            return;
+        }
+        if (token.isStructStart()) {
+            depth++;
+            if (depth == 2 && token == JsonToken.START_ARRAY
+                && INGREDIENTS.equals(field) && !ingredientsSent) {
+                ingredients = new TokenBuffer(parser);
+                ingredients.copyCurrentEvent(parser);
+            }
+        } else if (token.isStructEnd()) {
+            depth--;
+        } else if (depth == 1 && token == JsonToken.FIELD_NAME) {
+            field = parser.currentName();
+            if (INSTRUCTIONS.equals(field) && instructionsFrom < 0) {
+                instructionsFrom =
+                    (int) parser.currentLocation().getByteOffset();
+            }
+        } else if (depth == 1 && token == JsonToken.VALUE_STRING) {
+            if (TITLE.equals(field) && !titleSent) {
+                final String title = parser.getText();
+                deliver(() -> listener.onTitle(title));
+                titleSent = true;
+            } else if (INSTRUCTIONS.equals(field) && !instructionsDone) {
+                sendInstructions(parser.getText(), true);
+            }
+        }
+    }
+
+    /**
+     * Passes on the instructions after the part already sent. An
+     * incomplete string is held back before a trailing high surrogate,
+     * whose low half has not arrived yet.
+     */
+    private void sendInstructions(final CharSequence text,
+                                  final boolean done) {
+        int length = text.length();
+        if (!done && length > 0
+            && Character.isHighSurrogate(text.charAt(length - 1))) {
+            length--;
+        }
+        if (length > instructionsSent) {
+            final String next =
+                text.subSequence(instructionsSent, length).toString();
+            deliver(() -> listener.onInstructions(next));
+            instructionsSent = length;
+        }
+        instructionsDone = done;
+    }
+
+    /**
+     * Runs a listener call, turning its failure into a
+     * {@link StreamCancelledException} so the stream stops.
+     */
+    private void deliver(final Runnable call) {
+        if (cancelled) {
+            throw new StreamCancelledException("Recipe stream cancelled",
+                null);
+        }
+        try {
+            call.run();
+        } catch (RuntimeException ex) {
+            cancelled = true;
+            throw new StreamCancelledException(
+                "Recipe stream receiver failed", ex);
+        }
+    }
+
+    /**
+     * Decodes the instructions string from {@link #instructionsFrom} as
+     * far as it has arrived, stopping before an incomplete escape, and
+     * moves the offset past what was decoded. Pieces are whole strings,
+     * so the bytes received never end inside a UTF-8 sequence.
+     */
+    private void decodeInstructions() {
+        final byte[] bytes = received.bytes();
+        final int end = received.size();
+        int i = instructionsFrom;
+        if (!instructionsOpened) {
+            while (i < end && (bytes[i] == ':'
+                || Character.isWhitespace(bytes[i]))) {
+                i++;
+            }
+            if (i >= end || bytes[i] != '"') {
+                instructionsFrom = i;
+                return;
+            }
+            instructionsOpened = true;
+            i++;
+        }
+        while (i < end && bytes[i] != '"') {
+            if (bytes[i] != '\\') {
+                final int from = i;
+                while (i < end && bytes[i] != '"' && bytes[i] != '\\') {
+                    i++;
+                }
+                instructionsText.append(new String(bytes, from, i - from,
+                    StandardCharsets.UTF_8));
+            } else if (i + 1 >= end) {
+                break;
+            } else if (bytes[i + 1] == 'u') {
+                if (i + UNICODE_ESCAPE_LENGTH > end) {
+                    break;
+                }
+                try {
+                    instructionsText.append((char) Integer.parseInt(
+                        new String(bytes, i + 2, UNICODE_ESCAPE_LENGTH - 2,
+                            StandardCharsets.US_ASCII), HEX));
+                } catch (NumberFormatException ex) {
+                    break;
+                }
+                i += UNICODE_ESCAPE_LENGTH;
+            } else {
+                instructionsText.append(unescape((char) bytes[i + 1]));
+                i += 2;
+            }
+        }
+        instructionsFrom = i;
+    }
+
+    private static char unescape(final char escaped) {
+        switch (escaped) {
+            case 'n':
+                return '\n';
+            case 't':
+                return '\t';
+            case 'r':
+                return '\r';
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            default:
+                return escaped;
+        }
+    }
+
+    /**
+     * Byte buffer whose contents can be read without copying.
+     */
+    private static final class Received extends ByteArrayOutputStream {
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,616 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.ClientUsage;
+import com.example.nutriflow.service.repository.ClientUsageRepository;
+import com.example.nutriflow.service.repository.ClientUsageRepository.BucketTotals;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Low-overhead analytics of API usage per client, end user, route and
+ * response status.
+ * The request thread only bumps {@link LongAdder} counters and offers
+ * an event to a lock-free {@link UsageEventRing}; when the ring is full
+ * the event is dropped and counted rather than waited for. A background
+ * thread drains the ring into aggregates per time window, client, route
+ * and status, and writes the aggregates of closed windows to the
+ * {@code client_usage} table, from which usage over time is queried.
+ * End user ids are never kept: each is hashed on the request thread and
+ * distinct end users are estimated from a fixed-size bitmap per row.
+ * At most a set number of clients get rows of their own per window; the
+ * others are aggregated as {@value #OTHER_CLIENTS}. Rows that fail to
+ * write are kept for the next drain, up to a set number of attempts.
+ */
+@Component
+public class UsageAnalytics {
+
+    /** Logger for this class. */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(UsageAnalytics.class);
+
+    /** Route reported for requests that matched no handler. */
+    public static final String UNMATCHED_ROUTE = "unmatched";
+
+    /** Client under which clients beyond the cap are aggregated. */
+    static final String OTHER_CLIENTS = "other";
+
+    /** Milliseconds in one minute. */
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+
+    /** Nanoseconds in one millisecond. */
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    /** Most events taken from the ring per drain. */
+    private static final int DRAIN_BATCH = 4096;
+
+    /**
+     * Bits of the end user bitmap of an aggregate row; counts up to a
+     * few thousand distinct end users are estimated within a few percent.
+     */
+    private static final int END_USER_BITS = 1024;
+
+    /** Event value for a request without an end user. */
+    private static final long NO_END_USER = -1L;
+
+    /** Status codes from this value on count as client errors. */
+    private static final int CLIENT_ERROR = 400;
+
+    /** Status codes from this value on count as server errors. */
+    private static final int SERVER_ERROR = 500;
+
+    /** Repository the aggregates are written to. */
+    private final ClientUsageRepository repository;
+
+    /** Whether usage is recorded at all. */
+    private final boolean enabled;
+
+    /** Length of an aggregation window in milliseconds. */
+    private final long windowMillis;
+
+    /** Delay between drains of the ring in milliseconds. */
+    private final long drainIntervalMs;
+
+    /** Most aggregate rows held before new keys are dropped. */
+    private final int maxPendingRows;
+
+    /** Most clients with rows of their own per window. */
+    private final int maxClients;
+
+    /** Times a row is written before it is given up. */
+    private final int maxAttempts;
+
+    /** Source of wall-clock time in milliseconds. */
+    private final LongSupplier clock;
+
+    /** Events recorded on request threads, waiting to be aggregated. */
+    private final UsageEventRing<Event> ring;
+
+    /** Aggregates not yet written; touched by the drain thread only. */
+    private final Map<Key, Aggregate> pending = new HashMap<>();
+
+    /**
+     * Clients with rows of their own per window start; touched by the
+     * drain thread only.
+     */
+    private final Map<Long, Set<String>> windowClients = new HashMap<>();
+
+    /** Background thread draining and flushing. */
+    private ScheduledExecutorService drainer;
+
+    /** Number of requests recorded. */
+    private final LongAdder recorded = new LongAdder();
+
+    /** Number of requests answered with a 4xx status. */
+    private final LongAdder clientErrors = new LongAdder();
+
+    /** Number of requests answered with a 5xx status. */
+    private final LongAdder serverErrors = new LongAdder();
+
+    /** Number of events dropped because the ring was full. */
+    private final LongAdder dropped = new LongAdder();
+
+    /** Number of events dropped because too many rows were pending. */
+    private final LongAdder overflowed = new LongAdder();
+
+    /** Number of events aggregated as {@value #OTHER_CLIENTS}. */
+    private final LongAdder folded = new LongAdder();
+
+    /** Number of aggregate rows written. */
+    private final LongAdder rowsWritten = new LongAdder();
+
+    /** Number of aggregate rows kept again after a failed write. */
+    private final LongAdder rowsRetried = new LongAdder();
+
+    /** Number of aggregate rows given up after their last write failed. */
+    private final LongAdder rowsFailed = new LongAdder();
+
+    /**
+     * Creates the pipeline from application properties.
+     *
+     * @param repositoryValue repository the aggregates are written to
+     * @param enabledValue whether usage is recorded
+     * @param bufferSize events the ring holds before dropping
+     * @param windowSeconds length of an aggregation window in seconds
+     * @param drainIntervalMsValue delay between drains in milliseconds
+     * @param maxPendingRowsValue most aggregate rows held in memory
+     * @param maxClientsValue most clients with rows of their own per
+     *                        window
+     * @param maxAttemptsValue times a row is written before it is given
+     *                         up
+     */
+    @Autowired
+    public UsageAnalytics(
+            final ClientUsageRepository repositoryValue,
+            final @Value("${nutriflow.analytics.enabled:true}")
+                boolean enabledValue,
+            final @Value("${nutriflow.analytics.buffer-size:8192}")
+                int bufferSize,
+            final @Value("${nutriflow.analytics.window-seconds:60}")
+                long windowSeconds,
+            final @Value("${nutriflow.analytics.drain-interval-ms:500}")
+                long drainIntervalMsValue,
+            final @Value("${nutriflow.analytics.max-pending-rows:10000}")
+                int maxPendingRowsValue,
+            final @Value("${nutriflow.analytics.max-clients:200}")
+                int maxClientsValue,
+            final @Value("${nutriflow.analytics.max-attempts:3}")
+                int maxAttemptsValue) {
+        this(repositoryValue, enabledValue, bufferSize, windowSeconds,
+            drainIntervalMsValue, maxPendingRowsValue, maxClientsValue,
+            maxAttemptsValue, System::currentTimeMillis);
+    }
+
+    UsageAnalytics(final ClientUsageRepository repositoryValue,
+                   final boolean enabledValue,
+                   final int bufferSize,
+                   final long windowSeconds,
+                   final long drainIntervalMsValue,
+                   final int maxPendingRowsValue,
+                   final int maxClientsValue,
+                   final int maxAttemptsValue,
+                   final LongSupplier clockValue) {
+        this.repository = repositoryValue;
+        this.enabled = enabledValue;
+        this.ring = new UsageEventRing<>(bufferSize);
+        this.windowMillis = TimeUnit.SECONDS.toMillis(
+            Math.max(1, windowSeconds));
+        this.drainIntervalMs = Math.max(1, drainIntervalMsValue);
+        this.maxPendingRows = Math.max(1, maxPendingRowsValue);
+        this.maxClients = Math.max(1, maxClientsValue);
+        this.maxAttempts = Math.max(1, maxAttemptsValue);
+        this.clock = clockValue;
+    }
+
+    /**
+     * Starts the background drain thread.
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "usage-analytics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        drainer.scheduleWithFixedDelay(this::drainQuietly,
+            drainIntervalMs, drainIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the drain thread and writes every pending aggregate,
+     * including those of the current window, trying failed rows again up
+     * to their last attempt. If the thread does not stop in time nothing
+     * more is written, since the ring and the pending aggregates may only
+     * be touched by one thread.
+     */
+    @PreDestroy
+    public void stop() {
+        if (drainer != null) {
+            drainer.shutdown();
+            try {
+                if (!drainer.awaitTermination(drainIntervalMs * 2,
+                        TimeUnit.MILLISECONDS)) {
+                    // The ring and pending rows belong to the drain
+                    // thread until it has stopped.
+                    LOGGER.warn("Usage analytics drain did not stop; "
+                        + "pending rows not written");
+                    return;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        for (int attempt = 0; attempt < maxAttempts
+                && (attempt == 0 || !pending.isEmpty()); attempt++) {
+            drain(true);
+        }
+    }
+
+    /**
+     * Records one completed request. Never blocks.
+     *
+     * @param clientId the normalized client id
+     * @param endUserId the end user id, or null; only its hash is kept
+     * @param route the HTTP method and route pattern
+     * @param status the response status
+     * @param latencyNanos time taken by the request, in nanoseconds
+     */
+    public void record(final String clientId, final String endUserId,
+                       final String route, final int status,
+                       final long latencyNanos) {
+        if (!enabled) {
+            return;
+        }
+        recorded.increment();
+        if (status >= SERVER_ERROR) {
+            serverErrors.increment();
+        } else if (status >= CLIENT_ERROR) {
+            clientErrors.increment();
+        }
+        if (!ring.offer(new Event(clock.getAsLong(), clientId,
+                endUserHash(endUserId), route, status,
+                Math.max(0, latencyNanos)))) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Aggregates the recorded events and writes the rows of closed
+     * windows, or of every window if {@code all} is set. If the write
+     * fails, the rows are kept for the next drain until their last
+     * attempt, as long as there is room among the pending rows.
+     *
+     * @param all whether to write the current window as well
+     * @return the number of rows written
+     */
+    int drain(final boolean all) {
+        while (ring.drain(this::aggregate, DRAIN_BATCH) == DRAIN_BATCH) {
+            // keep draining until the ring is empty
+        }
+        final long closedBefore = all
+            ? Long.MAX_VALUE : windowStart(clock.getAsLong());
+        windowClients.keySet().removeIf(start -> start < closedBefore);
+        final Map<Key, Aggregate> closed = new HashMap<>();
+        final List<ClientUsage> rows = new ArrayList<>();
+        final Iterator<Map.Entry<Key, Aggregate>> entries =
+            pending.entrySet().iterator();
+        while (entries.hasNext()) {
+            final Map.Entry<Key, Aggregate> entry = entries.next();
+            if (entry.getKey().windowStart < closedBefore) {
+                closed.put(entry.getKey(), entry.getValue());
+                rows.add(entry.getValue().toRow(entry.getKey()));
+                entries.remove();
+            }
+        }
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        try {
+            repository.saveAll(rows);
+            rowsWritten.add(rows.size());
+            return rows.size();
+        } catch (RuntimeException ex) {
+            LOGGER.warn("Failed to write {} client usage rows: {}",
+                rows.size(), ex.getMessage());
+            closed.forEach(this::retryOrGiveUp);
+            return 0;
+        }
+    }
+
+    private void retryOrGiveUp(final Key key, final Aggregate aggregate) {
+        aggregate.attempts++;
+        final Aggregate current = pending.get(key);
+        if (aggregate.attempts >= maxAttempts
+            || (current == null && pending.size() >= maxPendingRows)) {
+            rowsFailed.increment();
+            return;
+        }
+        if (current == null) {
+            pending.put(key, aggregate);
+        } else {
+            current.merge(aggregate);
+        }
+        rowsRetried.increment();
+    }
+
+    /**
+     * Returns usage from the {@code client_usage} table grouped per
+     * client, route and time bucket. The filtering and summing happen in
+     * the database, which returns one row per bucket, client, route and
+     * status.
+     *
+     * @param clientId client to report on, or null for all
+     * @param route route to report on, or null for all
+     * @param from inclusive start of the range (UTC)
+     * @param to exclusive end of the range (UTC)
+     * @param bucketMinutes length of a time bucket in minutes
+     * @return one entry per bucket, client and route, oldest first
+     */
+    public List<Map<String, Object>> query(final String clientId,
+                                           final String route,
+                                           final LocalDateTime from,
+                                           final LocalDateTime to,
+                                           final int bucketMinutes) {
+        final long bucketMillis = Math.max(1, bucketMinutes)
+            * MILLIS_PER_MINUTE;
+        final List<BucketTotals> rows = repository.sumPerBucket(clientId,
+            route, from, to, TimeUnit.MILLISECONDS.toSeconds(bucketMillis));
+        final Map<List<Object>, Bucket> buckets = new LinkedHashMap<>();
+        for (BucketTotals row : rows) {
+            final long start = row.getBucket() * bucketMillis;
+            buckets.computeIfAbsent(
+                List.of(start, row.getClientId(), row.getRoute()),
+                key -> new Bucket()).add(row);
+        }
+        final List<Map<String, Object>> result = new ArrayList<>();
+        buckets.forEach((key, bucket) ->
+            result.add(bucket.toMap((Long) key.get(0),
+                (String) key.get(1), (String) key.get(2))));
+        result.sort(Comparator
+            .comparing((Map<String, Object> entry) ->
+                (LocalDateTime) entry.get("windowStart"))
+            .thenComparing(entry -> (String) entry.get("clientId"))
+            .thenComparing(entry -> (String) entry.get("route")));
+        return result;
+    }
+
+    /**
+     * Returns a snapshot of the pipeline counters.
+     *
+     * @return map of counter name to value
+     */
+    public Map<String, Object> stats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("recorded", recorded.sum());
+        stats.put("clientErrors", clientErrors.sum());
+        stats.put("serverErrors", serverErrors.sum());
+        stats.put("buffered", ring.size());
+        stats.put("bufferCapacity", ring.capacity());
+        stats.put("dropped", dropped.sum());
+        stats.put("overflowed", overflowed.sum());
+        stats.put("foldedToOther", folded.sum());
+        stats.put("rowsWritten", rowsWritten.sum());
+        stats.put("rowsRetried", rowsRetried.sum());
+        stats.put("rowsFailed", rowsFailed.sum());
+        return stats;
+    }
+
+    private void drainQuietly() {
+        try {
+            drain(false);
+        } catch (RuntimeException ex) {
+            LOGGER.warn("Usage analytics drain failed: {}", ex.getMessage());
+        }
+    }
+
+    private void aggregate(final Event event) {
+        final long window = windowStart(event.timestamp);
+        final Key key = new Key(window, clientOf(window, event.clientId),
+            event.route, event.status);
+        Aggregate aggregate = pending.get(key);
+        if (aggregate == null) {
+            if (pending.size() >= maxPendingRows) {
+                overflowed.increment();
+                return;
+            }
+            aggregate = new Aggregate();
+            pending.put(key, aggregate);
+        }
+        aggregate.add(event);
+    }
+
+    /**
+     * Returns the client a window's event is aggregated under: the client
+     * itself while fewer than the maximum clients have rows in the
+     * window, {@value #OTHER_CLIENTS} after that.
+     */
+    private String clientOf(final long window, final String clientId) {
+        final Set<String> clients = windowClients.computeIfAbsent(window,
+            start -> new HashSet<>());
+        if (clients.contains(clientId)) {
+            return clientId;
+        }
+        if (clients.size() >= maxClients) {
+            folded.increment();
+            return OTHER_CLIENTS;
+        }
+        clients.add(clientId);
+        return clientId;
+    }
+
+    /**
+     * Hashes a trimmed end user id to a non-negative value, or returns
+     * {@link #NO_END_USER} if the id is blank.
+     */
+    static long endUserHash(final String endUserId) {
+        if (endUserId == null || endUserId.isBlank()) {
+            return NO_END_USER;
+        }
+        // MurmurHash3 finalizer, spreading String.hashCode over all bits
+        long hash = endUserId.trim().hashCode();
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash & Long.MAX_VALUE;
+    }
+
+    private long windowStart(final long millis) {
+        return Math.floorDiv(millis, windowMillis) * windowMillis;
+    }
+
+    private static LocalDateTime toDateTime(final long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis),
+            ZoneOffset.UTC);
+    }
+
+    /**
+     * A completed request as recorded on the request thread.
+     *
+     * @param timestamp completion time in epoch milliseconds
+     * @param clientId the client
+     * @param endUser hash of the end user, or {@link #NO_END_USER}
+     * @param route the HTTP method and route pattern
+     * @param status the response status
+     * @param latencyNanos the request latency in nanoseconds
+     */
+    private record Event(long timestamp, String clientId, long endUser,
+                         String route, int status, long latencyNanos) {
+    }
+
+    /**
+     * Identity of an aggregate row.
+     *
+     * @param windowStart start of the window in epoch milliseconds
+     * @param clientId the client
+     * @param route the HTTP method and route pattern
+     * @param status the response status
+     */
+    private record Key(long windowStart, String clientId, String route,
+                       int status) {
+    }
+
+    /** Running totals of one aggregate row. */
+    private static final class Aggregate {
+        /** Number of requests. */
+        private long count;
+        /** Sum of latencies in nanoseconds. */
+        private long totalNanos;
+        /** Longest latency in nanoseconds. */
+        private long maxNanos;
+        /** Bitmap of end user hashes; null until the first end user. */
+        private long[] endUsers;
+        /** Failed attempts to write the row. */
+        private int attempts;
+
+        void add(final Event event) {
+            count++;
+            totalNanos += event.latencyNanos;
+            maxNanos = Math.max(maxNanos, event.latencyNanos);
+            if (event.endUser != NO_END_USER) {
+                final int bit = (int) (event.endUser % END_USER_BITS);
+                bitmap()[bit / Long.SIZE] |= 1L << bit;
+            }
+        }
+
+        void merge(final Aggregate other) {
+            count += other.count;
+            totalNanos += other.totalNanos;
+            maxNanos = Math.max(maxNanos, other.maxNanos);
+            attempts = Math.max(attempts, other.attempts);
+            if (other.endUsers != null) {
+                for (int i = 0; i < other.endUsers.length; i++) {
+                    bitmap()[i] |= other.endUsers[i];
+                }
+            }
+        }
+
+        /**
+         * Estimates the distinct end users by linear counting over the
+         * bitmap; a full bitmap gives the largest estimate it can make.
+         */
+        int endUserCount() {
+            if (endUsers == null) {
+                return 0;
+            }
+            int set = 0;
+            for (long word : endUsers) {
+                set += Long.bitCount(word);
+            }
+            final int empty = Math.max(1, END_USER_BITS - set);
+            return (int) Math.round(END_USER_BITS
+                * Math.log((double) END_USER_BITS / empty));
+        }
+
+        private long[] bitmap() {
+            if (endUsers == null) {
+                endUsers = new long[END_USER_BITS / Long.SIZE];
+            }
+            return endUsers;
+        }
+
+        ClientUsage toRow(final Key key) {
+            return new ClientUsage(null, toDateTime(key.windowStart),
+                key.clientId, key.route, key.status, count,
+                endUserCount(), totalNanos / NANOS_PER_MILLI,
+                maxNanos / NANOS_PER_MILLI);
+        }
+    }
+
+    /** Totals of the status groups falling into one query bucket. */
+    private static final class Bucket {
+        /** Number of requests. */
+        private long requests;
+        /** Number of 4xx responses. */
+        private long clientErrorCount;
+        /** Number of 5xx responses. */
+        private long serverErrorCount;
+        /** Sum of latencies in milliseconds. */
+        private long totalLatencyMs;
+        /** Longest latency in milliseconds. */
+        private long maxLatencyMs;
+        /** Most distinct end users of a single window. */
+        private int peakEndUsers;
+        /** Requests per response status. */
+        private final Map<Integer, Long> statuses = new HashMap<>();
+
+        void add(final BucketTotals row) {
+            requests += row.getRequestCount();
+            if (row.getStatus() >= SERVER_ERROR) {
+                serverErrorCount += row.getRequestCount();
+            } else if (row.getStatus() >= CLIENT_ERROR) {
+                clientErrorCount += row.getRequestCount();
+            }
+            totalLatencyMs += row.getTotalLatencyMs();
+            maxLatencyMs = Math.max(maxLatencyMs, row.getMaxLatencyMs());
+            peakEndUsers = Math.max(peakEndUsers, row.getEndUserCount());
+            statuses.merge(row.getStatus(), row.getRequestCount(), Long::sum);
+        }
+
+        Map<String, Object> toMap(final long start, final String clientId,
+                                  final String route) {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            map.put("windowStart", toDateTime(start));
+            map.put("clientId", clientId);
+            map.put("route", route);
+            map.put("requests", requests);
+            map.put("clientErrors", clientErrorCount);
+            map.put("serverErrors", serverErrorCount);
+            map.put("avgLatencyMs", requests == 0
+                ? 0d : (double) totalLatencyMs / requests);
+            map.put("maxLatencyMs", maxLatencyMs);
+            map.put("peakEndUsers", peakEndUsers);
+            map.put("statuses", new TreeMap<>(statuses));
+            return map;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.nutriflow.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free ring buffer with many producers and a single
+ * consumer. Producers claim a slot with a compare-and-set on the tail
+ * and publish into it; an offer to a full ring fails at once instead of
+ * blocking. The consumer takes published elements in claim order and
+ * stops at a slot whose producer has not published yet.
+ *
+ * @param <E> the element type
+ */
+final class UsageEventRing<E> {
+
+    /** Slots; null once consumed or before being published. */
+    private final AtomicReferenceArray<E> slots;
+
+    /** Mask mapping a sequence number to its slot. */
+    private final int mask;
+
+    /** Next sequence number to claim. */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** Next sequence number to consume; written by the consumer only. */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Creates an empty ring.
+     *
+     * @param minCapacity minimum number of slots, rounded up to a power
+     *                    of two
+     */
+    UsageEventRing(final int minCapacity) {
+        final int capacity = Integer.highestOneBit(
+            Math.max(2, minCapacity) * 2 - 1);
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Adds an element unless the ring is full.
+     *
+     * @param element the element, not null
+     * @return true if the element was added
+     */
+    boolean offer(final E element) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head.get() >= slots.length()) {
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        slots.lazySet((int) sequence & mask, element);
+        return true;
+    }
+
+    /**
+     * Passes published elements to a consumer, oldest first. Must only
+     * be called from one thread at a time.
+     *
+     * @param consumer receiver of the elements
+     * @param max most elements to take
+     * @return number of elements taken
+     */
+    int drain(final Consumer<E> consumer, final int max) {
+        long sequence = head.get();
+        int taken = 0;
+        while (taken < max) {
+            final int slot = (int) sequence & mask;
+            final E element = slots.get(slot);
+            if (element == null) {
+                break;
+            }
+            slots.lazySet(slot, null);
+            sequence++;
+            taken++;
+            consumer.accept(element);
+        }
+        head.set(sequence);
+        return taken;
+    }
+
+    /**
+     * Returns the number of claimed but not yet consumed slots.
+     *
+     * @return approximate number of queued elements
+     */
+    int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return capacity
+     */
+    int capacity() {
+        return slots.length();
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.User;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Snapshot of everything needed to prompt for a user's recipes, built
+ * once per request and shared by every generation in it (for example
+ * all meals of a weekly plan), so the user and pantry are loaded and
+ * the prompt prefix is formatted only once.
+ * Instances are immutable; the user profile must be treated as
+ * read-only.
+ */
+@Getter
+@Builder
+public final class UserGenerationContext {
+
+    /** The user identifier. */
+    private final Integer userId;
+
+    /** The user profile as loaded when the context was built. */
+    private final User user;
+
+    /** The pantry as included in the prompt; empty if left out. */
+    private final String pantryText;
+
+    /** Prompt sentence describing the user, appended to every prompt. */
+    private final String promptPrefix;
+
+    /** Hash of {@link #promptPrefix}, identifying the prompt inputs. */
+    private final String fingerprint;
+}
@@ -23,6 +23,12 @@ public class UserService {
     @Autowired
     private UserRepository userRepository;
 
+    /**
+     * Cache of generated recipes, invalidated when a profile changes.
+     */
+    @Autowired
+    private PersonalizedRecipeCache personalizedRecipeCache;
+
     /**
      * Create a new user with the provided information.
      *
@@ -105,6 +111,7 @@ public class UserService {
                     updateIfNotNull(request.getEquipments(),
                             existingUser::setEquipments);
 
+                    personalizedRecipeCache.invalidate(userId);
                     return userRepository.save(existingUser);
                 });
     }
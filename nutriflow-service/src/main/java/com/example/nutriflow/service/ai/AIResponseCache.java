@@ -0,0 +1,315 @@
+package com.example.nutriflow.service.ai;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Size-bounded, TTL-expiring cache of raw model responses.
+ * Entries are keyed by model name, response schema and a normalized
+ * form of the prompt, so byte-identical (or whitespace/case-only
+ * different) prompts are answered without another model round trip.
+ * When full, an entry is evicted according to the configured
+ * {@link EvictionPolicy}.
+ */
+@Component
+public class AIResponseCache {
+
+    /**
+     * Strategy used to choose a victim when the cache is full.
+     */
+    public enum EvictionPolicy {
+        /** Evict the least recently used entry. */
+        LRU,
+        /** Evict the least frequently used entry (ties go to LRU). */
+        LFU
+    }
+
+    /** Runs of whitespace collapsed during prompt normalization. */
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /** Separator between key components. */
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    /** Initial capacity of the backing map. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Load factor of the backing map. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** Maximum number of entries held; zero disables the cache. */
+    private final int maxEntries;
+
+    /** Time-to-live of an entry in nanoseconds; zero disables. */
+    private final long ttlNanos;
+
+    /** Eviction strategy. */
+    private final EvictionPolicy policy;
+
+    /** Monotonic clock in nanoseconds. */
+    private final LongSupplier clock;
+
+    /** Entries in access order (least recently used first). */
+    private final LinkedHashMap<String, Entry> entries =
+        new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+    /** Guards {@link #entries}. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Number of lookups answered from the cache. */
+    private final LongAdder hits = new LongAdder();
+
+    /** Number of lookups that were not in the cache. */
+    private final LongAdder misses = new LongAdder();
+
+    /** Number of entries removed to make room for new ones. */
+    private final LongAdder evictions = new LongAdder();
+
+    /** Number of entries dropped because their TTL elapsed. */
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * Creates a cache from application properties.
+     *
+     * @param maxEntriesValue maximum number of cached responses
+     * @param ttlSeconds time-to-live of a cached response in seconds
+     * @param policyValue eviction policy used when the cache is full
+     */
+    @Autowired
+    public AIResponseCache(
+            final @Value("${nutriflow.ai.cache.max-entries:256}")
+                int maxEntriesValue,
+            final @Value("${nutriflow.ai.cache.ttl-seconds:600}")
+                long ttlSeconds,
+            final @Value("${nutriflow.ai.cache.policy:LRU}")
+                EvictionPolicy policyValue) {
+        this(maxEntriesValue, TimeUnit.SECONDS.toNanos(ttlSeconds),
+            policyValue, System::nanoTime);
+    }
+
+    /**
+     * Creates a cache with an explicit clock.
+     *
+     * @param maxEntriesValue maximum number of cached responses
+     * @param ttlNanosValue time-to-live in nanoseconds
+     * @param policyValue eviction policy used when the cache is full
+     * @param clockSource monotonic nanosecond clock
+     */
+    AIResponseCache(final int maxEntriesValue, final long ttlNanosValue,
+                    final EvictionPolicy policyValue,
+                    final LongSupplier clockSource) {
+        this.maxEntries = Math.max(0, maxEntriesValue);
+        this.ttlNanos = Math.max(0, ttlNanosValue);
+        this.policy = policyValue;
+        this.clock = clockSource;
+    }
+
+    /**
+     * Builds the cache key for a model request.
+     * The prompt is trimmed, lower-cased and has whitespace runs
+     * collapsed so trivially different prompts share an entry.
+     *
+     * @param model the model name
+     * @param schemaKey a stable identifier of the response schema
+     * @param prompt the prompt text
+     * @return the cache key
+     */
+    public static String key(final String model, final String schemaKey,
+                             final String prompt) {
+        final String normalized = WHITESPACE.matcher(prompt.trim())
+            .replaceAll(" ").toLowerCase(Locale.ROOT);
+        return model + KEY_SEPARATOR + schemaKey + KEY_SEPARATOR
+            + normalized;
+    }
+
+    /**
+     * Looks up a cached response.
+     *
+     * @param key the cache key from {@link #key(String, String, String)}
+     * @return the cached response text, or empty on a miss
+     */
+    public Optional<String> get(final String key) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        lock.lock();
+        try {
+            final Entry entry = entries.get(key);
+            if (entry == null) {
+                misses.increment();
+                return Optional.empty();
+            }
+            if (clock.getAsLong() - entry.expiresAt >= 0) {
+                entries.remove(key);
+                expirations.increment();
+                misses.increment();
+                return Optional.empty();
+            }
+            entry.frequency++;
+            hits.increment();
+            return Optional.of(entry.value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores a response, evicting an entry first if the cache is full.
+     *
+     * @param key the cache key from {@link #key(String, String, String)}
+     * @param value the response text
+     */
+    public void put(final String key, final String value) {
+        if (!isEnabled() || value == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            final long now = clock.getAsLong();
+            if (!entries.containsKey(key) && entries.size() >= maxEntries) {
+                purgeExpired(now);
+                if (entries.size() >= maxEntries) {
+                    evictOne();
+                }
+            }
+            entries.put(key, new Entry(value, now + ttlNanos));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the cache counters.
+     *
+     * @return map of counter name to value
+     */
+    public Map<String, Object> stats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("policy", policy.name());
+        stats.put("maxEntries", maxEntries);
+        stats.put("size", size());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("expirations", expirations.sum());
+        return stats;
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     *
+     * @return hit count
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that missed.
+     *
+     * @return miss count
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of entries evicted to make room.
+     *
+     * @return eviction count
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the current number of entries (including expired entries
+     * that have not been purged yet).
+     *
+     * @return entry count
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isEnabled() {
+        return maxEntries > 0 && ttlNanos > 0;
+    }
+
+    private void purgeExpired(final long now) {
+        final Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().expiresAt >= 0) {
+                it.remove();
+                expirations.increment();
+            }
+        }
+    }
+
+    private void evictOne() {
+        final Iterator<Map.Entry<String, Entry>> it =
+            entries.entrySet().iterator();
+        if (!it.hasNext()) {
+            return;
+        }
+        final Map.Entry<String, Entry> eldest = it.next();
+        String victim = eldest.getKey();
+        if (policy == EvictionPolicy.LFU) {
+            long lowest = eldest.getValue().frequency;
+            while (it.hasNext()) {
+                final Map.Entry<String, Entry> candidate = it.next();
+                if (candidate.getValue().frequency < lowest) {
+                    lowest = candidate.getValue().frequency;
+                    victim = candidate.getKey();
+                }
+            }
+        }
+        entries.remove(victim);
+        evictions.increment();
+    }
+
+    /**
+     * A cached response with its expiry and use count.
+     */
+    private static final class Entry {
+        /** The cached response text. */
+        private final String value;
+        /** Clock reading at which the entry expires. */
+        private final long expiresAt;
+        /** Number of hits served from this entry. */
+        private long frequency;
+
+        Entry(final String entryValue, final long expiresAtNanos) {
+            this.value = entryValue;
+            this.expiresAt = expiresAtNanos;
+        }
+    }
+}
@@ -0,0 +1,477 @@
+package com.example.nutriflow.service.ai;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Accounts for model usage per API client, prompt kind and model:
+ * every model call with its latency, outcome and prompt and output
+ * tokens, responses that failed to parse, and requests answered
+ * without a model call of their own, from the response cache, a
+ * user's recipe pool or a coalesced generation. Counters are
+ * {@link LongAdder}s in concurrent maps, so recording a known client
+ * never blocks.
+ * The number of distinct clients tracked is capped. Clients are
+ * admitted one at a time under a lock taken only for a client not yet
+ * tracked. A new client past the cap takes the place of the client idle
+ * the longest, if that one has made no request for the idle time; the
+ * idle client's counts are folded into {@value #OTHER_CLIENTS}.
+ * Otherwise the new client is accounted as {@value #OTHER_CLIENTS},
+ * until a place frees up. A client is never replaced while a count is
+ * being recorded into it, so no count is lost in the fold.
+ */
+@Component
+public class AIUsageMetrics {
+
+    /** Client under which clients beyond the cap are accounted. */
+    static final String OTHER_CLIENTS = "other";
+
+    /** Nanoseconds in one millisecond. */
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    /** Most distinct clients tracked. */
+    private final int maxClients;
+
+    /** Time without requests after which a client may be replaced. */
+    private final long idleNanos;
+
+    /** Monotonic clock in nanoseconds. */
+    private final LongSupplier clock;
+
+    /** Usage per client id. */
+    private final Map<String, ClientUsage> clients =
+        new ConcurrentHashMap<>();
+
+    /** Held while a client is admitted or replaced. */
+    private final ReentrantLock admitLock = new ReentrantLock();
+
+    /**
+     * Creates the metrics from application properties.
+     *
+     * @param maxClientsValue most distinct clients tracked
+     * @param idleSeconds time without requests after which a client
+     *                    may be replaced, in seconds
+     */
+    @Autowired
+    public AIUsageMetrics(
+            final @Value("${nutriflow.ai.usage.max-clients:200}")
+                int maxClientsValue,
+            final @Value("${nutriflow.ai.usage.idle-seconds:600}")
+                long idleSeconds) {
+        this(maxClientsValue, TimeUnit.SECONDS.toNanos(idleSeconds),
+            System::nanoTime);
+    }
+
+    /**
+     * Creates the metrics with an explicit clock.
+     *
+     * @param maxClientsValue most distinct clients tracked
+     * @param idleNanosValue time without requests after which a client
+     *                       may be replaced, in nanoseconds
+     * @param clockValue monotonic clock in nanoseconds
+     */
+    AIUsageMetrics(final int maxClientsValue, final long idleNanosValue,
+                   final LongSupplier clockValue) {
+        this.maxClients = Math.max(1, maxClientsValue);
+        this.idleNanos = Math.max(0, idleNanosValue);
+        this.clock = clockValue;
+    }
+
+    /**
+     * Makes a model call and records its latency, outcome and tokens.
+     * Failures of calls cancelled by interruption, and streams stopped
+     * by their receiver, are not counted.
+     *
+     * @param client the client the call is made for
+     * @param kind what the call generates
+     * @param model name of the model called
+     * @param call makes the call
+     * @return the result of the call
+     */
+    public GenerationResult recordCall(
+            final String client, final PromptKind kind, final String model,
+            final Supplier<GenerationResult> call) {
+        // The model is listed from the first call; the outcome is
+        // recorded once the call ends, so a client replaced meanwhile
+        // does not swallow it.
+        record(client, kind, u -> u.model(model));
+        final long start = clock.getAsLong();
+        try {
+            final GenerationResult result = call.get();
+            final long elapsed = clock.getAsLong() - start;
+            record(client, kind, u -> u.model(model).success(elapsed, result));
+            return result;
+        } catch (RuntimeException | Error ex) {
+            if (!Thread.currentThread().isInterrupted()
+                && !(ex instanceof StreamCancelledException)) {
+                record(client, kind, u -> u.model(model).failure());
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Records a model response that could not be parsed into recipes.
+     *
+     * @param client the client the call was made for
+     * @param kind what the call generated
+     * @param model name of the model called
+     */
+    public void recordParseFailure(final String client,
+                                   final PromptKind kind,
+                                   final String model) {
+        record(client, kind, u -> u.model(model).parseFailures.increment());
+    }
+
+    /**
+     * Records a request answered from the response cache.
+     *
+     * @param client the client of the request
+     * @param kind what was requested
+     */
+    public void recordCacheHit(final String client, final PromptKind kind) {
+        record(client, kind, u -> u.cacheHits.increment());
+    }
+
+    /**
+     * Records a request answered from a user's recipe pool.
+     *
+     * @param client the client of the request
+     * @param kind what was requested
+     */
+    public void recordPoolHit(final String client, final PromptKind kind) {
+        record(client, kind, u -> u.poolHits.increment());
+    }
+
+    /**
+     * Records a request that shared a generation already in flight.
+     *
+     * @param client the client of the request
+     * @param kind what was requested
+     */
+    public void recordCoalesced(final String client, final PromptKind kind) {
+        record(client, kind, u -> u.coalesced.increment());
+    }
+
+    /**
+     * Returns a snapshot of the usage of every client, the clients
+     * using the most tokens first.
+     *
+     * @return map of counter name to value
+     */
+    public Map<String, Object> stats() {
+        final List<Map.Entry<String, ClientUsage>> ranked =
+            new ArrayList<>(clients.entrySet());
+        ranked.sort(Comparator.comparingLong(
+            (Map.Entry<String, ClientUsage> e) -> e.getValue().tokens())
+            .reversed());
+        final Map<String, Object> byClient = new LinkedHashMap<>();
+        for (Map.Entry<String, ClientUsage> entry : ranked) {
+            byClient.put(entry.getKey(), entry.getValue().stats());
+        }
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("trackedClients", clients.size());
+        stats.put("maxClients", maxClients);
+        stats.put("clients", byClient);
+        return stats;
+    }
+
+    /**
+     * Returns a snapshot of the usage of one client.
+     *
+     * @param client the client id
+     * @return map of counter name to value; empty if the client made
+     *         no requests
+     */
+    public Map<String, Object> stats(final String client) {
+        final ClientUsage usage = clients.get(client);
+        return usage == null ? Map.of() : usage.stats();
+    }
+
+    /**
+     * Records into the usage of a client, admitting the client if needed.
+     * The recorder registers before checking that the client is not being
+     * retired, and {@link #replaceIdle(long)} marks it retired before
+     * checking for recorders, so one of the two always sees the other.
+     */
+    private void record(final String client, final PromptKind kind,
+                        final Consumer<KindUsage> update) {
+        final long now = clock.getAsLong();
+        while (true) {
+            ClientUsage usage = clients.get(client);
+            if (usage == null) {
+                usage = admit(client, now);
+            }
+            usage.recorders.incrementAndGet();
+            try {
+                if (!usage.retired) {
+                    usage.lastUsed = now;
+                    update.accept(usage.kinds.get(kind));
+                    return;
+                }
+            } finally {
+                usage.recorders.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Tracks a new client if there is room or an idle client to replace,
+     * and accounts it as {@value #OTHER_CLIENTS} otherwise. Once the cap
+     * is reached, a client that finds another admission in progress is
+     * accounted as {@value #OTHER_CLIENTS} without waiting.
+     */
+    private ClientUsage admit(final String client, final long now) {
+        if (tracked() < maxClients) {
+            admitLock.lock();
+        } else if (!admitLock.tryLock()) {
+            return other(now);
+        }
+        try {
+            final ClientUsage usage = clients.get(client);
+            if (usage != null) {
+                return usage;
+            }
+            return tracked() < maxClients || replaceIdle(now)
+                ? clients.computeIfAbsent(client, c -> new ClientUsage(now))
+                : other(now);
+        } finally {
+            admitLock.unlock();
+        }
+    }
+
+    private ClientUsage other(final long now) {
+        return clients.computeIfAbsent(OTHER_CLIENTS,
+            c -> new ClientUsage(now));
+    }
+
+    private int tracked() {
+        return clients.size() - (clients.containsKey(OTHER_CLIENTS) ? 1 : 0);
+    }
+
+    /**
+     * Removes the client idle the longest if it is past the idle time,
+     * folding its counts into {@value #OTHER_CLIENTS}. Called with
+     * {@link #admitLock} held.
+     *
+     * @return true if a client was removed
+     */
+    private boolean replaceIdle(final long now) {
+        Map.Entry<String, ClientUsage> idlest = null;
+        for (Map.Entry<String, ClientUsage> entry : clients.entrySet()) {
+            if (!OTHER_CLIENTS.equals(entry.getKey()) && (idlest == null
+                || entry.getValue().lastUsed < idlest.getValue().lastUsed)) {
+                idlest = entry;
+            }
+        }
+        if (idlest == null || now - idlest.getValue().lastUsed < idleNanos) {
+            return false;
+        }
+        final ClientUsage retiring = idlest.getValue();
+        retiring.retired = true;
+        if (retiring.recorders.get() > 0) {
+            retiring.retired = false;
+            return false;
+        }
+        clients.remove(idlest.getKey(), retiring);
+        retiring.addTo(other(now));
+        return true;
+    }
+
+    /**
+     * Usage of one client, by prompt kind.
+     */
+    private static final class ClientUsage {
+
+        /** Usage per prompt kind; every kind is present. */
+        private final Map<PromptKind, KindUsage> kinds =
+            new EnumMap<>(PromptKind.class);
+
+        /** Time of the client's last request. */
+        private volatile long lastUsed;
+
+        /** Set once the client is being replaced; recorders then retry. */
+        private volatile boolean retired;
+
+        /** Number of counts being recorded into this client. */
+        private final AtomicInteger recorders = new AtomicInteger();
+
+        ClientUsage(final long now) {
+            this.lastUsed = now;
+            for (PromptKind kind : PromptKind.values()) {
+                kinds.put(kind, new KindUsage());
+            }
+        }
+
+        void addTo(final ClientUsage target) {
+            kinds.forEach((kind, usage) -> usage.addTo(target.kinds.get(kind)));
+        }
+
+        long tokens() {
+            long total = 0;
+            for (KindUsage usage : kinds.values()) {
+                for (ModelUsage model : usage.models.values()) {
+                    total += model.promptTokens.sum()
+                        + model.outputTokens.sum();
+                }
+            }
+            return total;
+        }
+
+        Map<String, Object> stats() {
+            long calls = 0;
+            long promptTokens = 0;
+            long outputTokens = 0;
+            final Map<String, Object> byKind = new LinkedHashMap<>();
+            for (Map.Entry<PromptKind, KindUsage> entry : kinds.entrySet()) {
+                final KindUsage usage = entry.getValue();
+                if (usage.isEmpty()) {
+                    continue;
+                }
+                for (ModelUsage model : usage.models.values()) {
+                    calls += model.calls.sum();
+                    promptTokens += model.promptTokens.sum();
+                    outputTokens += model.outputTokens.sum();
+                }
+                byKind.put(entry.getKey().name().toLowerCase(Locale.ROOT),
+                    usage.stats());
+            }
+            final Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("calls", calls);
+            stats.put("promptTokens", promptTokens);
+            stats.put("outputTokens", outputTokens);
+            stats.put("totalTokens", promptTokens + outputTokens);
+            stats.put("prompts", byKind);
+            return stats;
+        }
+    }
+
+    /**
+     * Usage of one client for one prompt kind.
+     */
+    private static final class KindUsage {
+
+        /** Requests answered from the response cache. */
+        private final LongAdder cacheHits = new LongAdder();
+
+        /** Requests answered from a user's recipe pool. */
+        private final LongAdder poolHits = new LongAdder();
+
+        /** Requests that shared a generation in flight. */
+        private final LongAdder coalesced = new LongAdder();
+
+        /** Model calls per model name. */
+        private final Map<String, ModelUsage> models =
+            new ConcurrentHashMap<>();
+
+        ModelUsage model(final String name) {
+            return models.computeIfAbsent(name, n -> new ModelUsage());
+        }
+
+        void addTo(final KindUsage target) {
+            target.cacheHits.add(cacheHits.sum());
+            target.poolHits.add(poolHits.sum());
+            target.coalesced.add(coalesced.sum());
+            models.forEach((name, usage) -> usage.addTo(target.model(name)));
+        }
+
+        boolean isEmpty() {
+            return models.isEmpty() && cacheHits.sum() == 0
+                && poolHits.sum() == 0 && coalesced.sum() == 0;
+        }
+
+        Map<String, Object> stats() {
+            final Map<String, Object> byModel = new LinkedHashMap<>();
+            models.forEach((name, usage) -> byModel.put(name, usage.stats()));
+            final Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("cacheHits", cacheHits.sum());
+            stats.put("poolHits", poolHits.sum());
+            stats.put("coalesced", coalesced.sum());
+            stats.put("models", byModel);
+            return stats;
+        }
+    }
+
+    /**
+     * Model calls of one client and prompt kind to one model.
+     */
+    private static final class ModelUsage {
+
+        /** Total calls. */
+        private final LongAdder calls = new LongAdder();
+
+        /** Failed calls, included in {@link #calls}. */
+        private final LongAdder errors = new LongAdder();
+
+        /** Responses that could not be parsed. */
+        private final LongAdder parseFailures = new LongAdder();
+
+        /** Total latency of successful calls, in nanoseconds. */
+        private final LongAdder latencyNanos = new LongAdder();
+
+        /** Latencies of successful calls. */
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        /** Total prompt tokens. */
+        private final LongAdder promptTokens = new LongAdder();
+
+        /** Total output tokens. */
+        private final LongAdder outputTokens = new LongAdder();
+
+        void success(final long nanos, final GenerationResult result) {
+            calls.increment();
+            latencyNanos.add(nanos);
+            histogram.record(nanos);
+            promptTokens.add(result.getPromptTokens());
+            outputTokens.add(result.getOutputTokens());
+        }
+
+        void failure() {
+            calls.increment();
+            errors.increment();
+        }
+
+        void addTo(final ModelUsage target) {
+            target.calls.add(calls.sum());
+            target.errors.add(errors.sum());
+            target.parseFailures.add(parseFailures.sum());
+            target.latencyNanos.add(latencyNanos.sum());
+            target.histogram.addAll(histogram);
+            target.promptTokens.add(promptTokens.sum());
+            target.outputTokens.add(outputTokens.sum());
+        }
+
+        Map<String, Object> stats() {
+            final long total = calls.sum();
+            final long failed = errors.sum();
+            final long succeeded = total - failed;
+            final Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("calls", total);
+            stats.put("errors", failed);
+            stats.put("parseFailures", parseFailures.sum());
+            stats.put("avgLatencyMs", succeeded == 0 ? null
+                : latencyNanos.sum() / NANOS_PER_MILLI / succeeded);
+            stats.put("latencyHistogramMs", histogram.toMap());
+            stats.put("promptTokens", promptTokens.sum());
+            stats.put("outputTokens", outputTokens.sum());
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.nutriflow.service.ai;
+
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Executor view that runs at most a fixed number of tasks at a time on
+ * a shared delegate executor.
+ * Tasks beyond the limit wait in an unbounded local queue without
+ * occupying delegate threads, so a single caller (for example one meal
+ * plan) cannot saturate the shared pool.
+ * A task the delegate rejects goes back to the head of the queue and is
+ * retried when a running task completes. Once nothing is running, no
+ * completion will retry the queued tasks: the caller whose own task was
+ * rejected gets the rejection, and every other queued task is handed to
+ * the stranded-task handler, which by default runs it on the calling
+ * thread.
+ */
+public final class BoundedExecutor implements Executor {
+
+    /** Executor that actually runs the tasks. */
+    private final Executor delegate;
+
+    /** Maximum number of tasks running on the delegate at once. */
+    private final int maxConcurrency;
+
+    /** Tasks waiting for a slot. */
+    private final Deque<Runnable> pending = new ConcurrentLinkedDeque<>();
+
+    /** Number of tasks currently handed to the delegate. */
+    private final AtomicInteger active = new AtomicInteger();
+
+    /** Receives queued tasks that nothing is left to retry. */
+    private final Consumer<Runnable> strandedHandler;
+
+    /**
+     * Creates a bounded view of the given executor.
+     *
+     * @param delegateExecutor the shared executor
+     * @param concurrency maximum number of concurrently running tasks
+     */
+    public BoundedExecutor(final Executor delegateExecutor,
+                           final int concurrency) {
+        this(delegateExecutor, concurrency, Runnable::run);
+    }
+
+    /**
+     * Creates a bounded view of the given executor with a handler for
+     * tasks the delegate rejected while nothing was running.
+     *
+     * @param delegateExecutor the shared executor
+     * @param concurrency maximum number of concurrently running tasks
+     * @param handler receives each stranded task, for example to run it
+     *                or to complete its result with a fallback
+     */
+    public BoundedExecutor(final Executor delegateExecutor,
+                           final int concurrency,
+                           final Consumer<Runnable> handler) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException(
+                "concurrency must be at least 1");
+        }
+        this.delegate = delegateExecutor;
+        this.maxConcurrency = concurrency;
+        this.strandedHandler = handler;
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        pending.add(task);
+        final RejectedExecutionException rejected = drain();
+        if (rejected != null && active.get() == 0) {
+            final boolean own = pending.removeLastOccurrence(task);
+            handOffStranded();
+            if (own) {
+                throw rejected;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tasks currently running on the delegate.
+     *
+     * @return active task count
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * Hands queued tasks to the delegate while slots are free.
+     *
+     * @return the delegate's rejection, or null if it took every task
+     *         it was offered
+     */
+    private RejectedExecutionException drain() {
+        while (!pending.isEmpty()) {
+            final int current = active.get();
+            if (current >= maxConcurrency) {
+                return null;
+            }
+            if (!active.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            final Runnable next = pending.poll();
+            if (next == null) {
+                active.decrementAndGet();
+                continue;
+            }
+            try {
+                delegate.execute(() -> {
+                    try {
+                        next.run();
+                    } finally {
+                        active.decrementAndGet();
+                        if (drain() != null && active.get() == 0) {
+                            handOffStranded();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                pending.offerFirst(next);
+                active.decrementAndGet();
+                return ex;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Hands every queued task to the stranded-task handler. Each task is
+     * handed off even if the handler fails for an earlier one; the first
+     * failure is rethrown afterwards.
+     */
+    private void handOffStranded() {
+        RuntimeException failure = null;
+        Runnable stranded;
+        while ((stranded = pending.poll()) != null) {
+            try {
+                strandedHandler.accept(stranded);
+            } catch (RuntimeException ex) {
+                if (failure == null) {
+                    failure = ex;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.nutriflow.service.ai;
+
+/**
+ * Thrown instead of calling the model while the
+ * {@link ModelCircuitBreaker} is open, or half-open with all probe
+ * calls already taken.
+ */
+public class CircuitOpenException extends ModelOverloadedException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates the exception.
+     *
+     * @param message description of the breaker state
+     * @param retryAfterSecondsValue seconds until the breaker lets a
+     *                               probe call through
+     */
+    public CircuitOpenException(final String message,
+                                final long retryAfterSecondsValue) {
+        super(message, retryAfterSecondsValue);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.nutriflow.service.ai;
+
+/**
+ * The API client on whose behalf the current thread works, taken from
+ * the {@code X-Client-Id} request header. It is bound to the request
+ * thread for the duration of a request and carried over to the AI
+ * executors by {@link #wrap(Runnable)}, so model calls made on other
+ * threads are still attributed to the client that caused them.
+ */
+public final class ClientContext {
+
+    /** Client reported when a request carries no client id. */
+    public static final String ANONYMOUS = "anonymous";
+
+    /** Longest client id kept; longer ids are truncated. */
+    private static final int MAX_LENGTH = 64;
+
+    /** Client of the current thread, or null. */
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private ClientContext() {
+    }
+
+    /**
+     * Returns the client of the current thread.
+     *
+     * @return the client id, or {@link #ANONYMOUS} if none is bound
+     */
+    public static String current() {
+        final String client = CURRENT.get();
+        return client == null ? ANONYMOUS : client;
+    }
+
+    /**
+     * Binds a client to the current thread. A blank id binds
+     * {@link #ANONYMOUS}.
+     *
+     * @param clientId the client id, possibly null
+     */
+    public static void set(final String clientId) {
+        CURRENT.set(normalize(clientId));
+    }
+
+    /**
+     * Returns the client id a header value stands for: trimmed and
+     * truncated, or {@link #ANONYMOUS} if blank.
+     *
+     * @param clientId the client id, possibly null
+     * @return the normalized client id
+     */
+    public static String normalize(final String clientId) {
+        final String trimmed = clientId == null ? "" : clientId.trim();
+        if (trimmed.isEmpty()) {
+            return ANONYMOUS;
+        }
+        return trimmed.length() > MAX_LENGTH
+            ? trimmed.substring(0, MAX_LENGTH) : trimmed;
+    }
+
+    /**
+     * Unbinds the client of the current thread.
+     */
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Returns a task that runs with the client of the calling thread
+     * bound, restoring the executing thread's own binding afterwards.
+     * Its signature fits a {@code TaskDecorator}.
+     *
+     * @param task the task
+     * @return the task bound to the current client
+     */
+    public static Runnable wrap(final Runnable task) {
+        final String client = CURRENT.get();
+        return () -> {
+            final String previous = CURRENT.get();
+            CURRENT.set(client);
+            try {
+                task.run();
+            } finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+}
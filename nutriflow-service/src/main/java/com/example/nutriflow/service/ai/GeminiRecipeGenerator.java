@@ -0,0 +1,204 @@
+package com.example.nutriflow.service.ai;
+
+import com.google.genai.Client;
+import com.google.genai.ResponseStream;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.GenerateContentResponse;
+import com.google.genai.types.GenerateContentResponseUsageMetadata;
+import com.google.genai.types.Schema;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * {@link RecipeGenerator} backed by the Gemini API, using structured
+ * output so responses match the recipe schema.
+ * Active unless {@code nutriflow.ai.generator} names another backend.
+ */
+@Component
+@ConditionalOnProperty(name = "nutriflow.ai.generator",
+    havingValue = "gemini", matchIfMissing = true)
+public class GeminiRecipeGenerator implements RecipeGenerator {
+    /** Structured output schema describing a single recipe. */
+    private static final Schema RECIPE_SCHEMA =
+        Schema.builder().type("OBJECT")
+        .properties(Map.ofEntries(
+            Map.entry("title",
+                Schema.builder().type("STRING").build()),
+            Map.entry("cookTime",
+                Schema.builder().type("INTEGER").build()),
+            Map.entry("cuisines",
+                Schema.builder().type("ARRAY")
+                    .items(Schema.builder().type("STRING").build())
+                    .build()),
+            Map.entry("tags",
+                Schema.builder().type("ARRAY")
+                    .items(Schema.builder().type("STRING").build())
+                    .build()),
+            Map.entry("ingredients",
+                Schema.builder().type("ARRAY").items(
+                    Schema.builder().type("OBJECT")
+                        .properties(Map.ofEntries(
+                            Map.entry("id",
+                                Schema.builder().type("NULL").build()),
+                            Map.entry("recipeId",
+                                Schema.builder().type("NULL").build()),
+                            Map.entry("ingredient",
+                                Schema.builder().type("STRING").build()),
+                            Map.entry("quantity",
+                                Schema.builder().type("NUMBER").build()),
+                            Map.entry("unit",
+                                Schema.builder().type("STRING").build()),
+                            Map.entry("allergenTags",
+                                Schema.builder().type("ARRAY")
+                                    .items(Schema.builder()
+                                        .type("STRING").build())
+                                    .build())
+                            )).build())
+                    .build()),
+            Map.entry("instructions",
+                Schema.builder().type("STRING").build()),
+            Map.entry("nutrition",
+                Schema.builder().type("OBJECT").properties(
+                    Map.ofEntries(
+                        Map.entry("summary",
+                            Schema.builder().type("NULL").build())
+                    )
+                    )
+                .build()),
+            Map.entry("calories",
+                Schema.builder().type("NUMBER").build()),
+            Map.entry("carbohydrates",
+                Schema.builder().type("NUMBER").build()),
+            Map.entry("fat",
+                Schema.builder().type("NUMBER").build()),
+            Map.entry("fiber",
+                Schema.builder().type("NUMBER").build()),
+            Map.entry("protein",
+                Schema.builder().type("NUMBER").build())
+        ))
+        .required(List.of("title", "ingredients"))
+        .propertyOrdering(List.of("title", "cookTime", "cuisines", "tags",
+            "ingredients", "instructions", "nutrition", "calories",
+            "carbohydrates", "fat", "fiber", "protein"))
+        .build();
+
+    /** Generation config requesting JSON that matches the schema. */
+    private static final GenerateContentConfig RECIPE_CONFIG =
+        GenerateContentConfig.builder()
+            .responseMimeType("application/json")
+            .responseSchema(RECIPE_SCHEMA)
+            .build();
+
+    /** Structured output schema describing a list of recipes. */
+    private static final Schema RECIPE_LIST_SCHEMA =
+        Schema.builder().type("ARRAY").items(RECIPE_SCHEMA).build();
+
+    /** Client object that makes a connection to LLM. */
+    private final Client client;
+
+    /** Model type used for LLM. */
+    private final String model;
+
+    /**
+     * Creates the generator.
+     *
+     * @param apiKey apikey used for the LLM authentication
+     * @param modelName the model type (for ex., gemini-flash)
+     */
+    @Autowired
+    public GeminiRecipeGenerator(
+            final @Value("${google.api.key}") String apiKey,
+            final @Value("${google.model.name}") String modelName) {
+        this(Client.builder().apiKey(apiKey).build(), modelName);
+    }
+
+    private GeminiRecipeGenerator(final Client sharedClient,
+                                  final String modelName) {
+        this.client = sharedClient;
+        this.model = modelName;
+    }
+
+    @Override
+    public String modelName() {
+        return model;
+    }
+
+    /** Shares this generator's client, so no new connection is set up. */
+    @Override
+    public RecipeGenerator withModel(final String otherModel) {
+        return otherModel.equals(model)
+            ? this : new GeminiRecipeGenerator(client, otherModel);
+    }
+
+    @Override
+    public GenerationResult generateRecipe(final String prompt) {
+        return toResult(
+            client.models.generateContent(model, prompt, RECIPE_CONFIG));
+    }
+
+    /**
+     * Streams one recipe with {@code generateContentStream}. The schema
+     * orders the title and ingredients before the instructions, so they
+     * can be shown while the rest is still being generated.
+     */
+    @Override
+    public GenerationResult streamRecipe(final String prompt,
+                                         final Consumer<String> onText) {
+        final StringBuilder text = new StringBuilder();
+        GenerateContentResponse last = null;
+        try (ResponseStream<GenerateContentResponse> stream =
+                 client.models.generateContentStream(model, prompt,
+                     RECIPE_CONFIG)) {
+            for (GenerateContentResponse chunk : stream) {
+                final String piece = chunk.text();
+                if (piece != null && !piece.isEmpty()) {
+                    text.append(piece);
+                    onText.accept(piece);
+                }
+                last = chunk;
+            }
+        }
+        final GenerationResult usage = last == null
+            ? GenerationResult.builder().build() : toResult(last);
+        return GenerationResult.builder()
+            .text(text.toString())
+            .promptTokens(usage.getPromptTokens())
+            .outputTokens(usage.getOutputTokens())
+            .build();
+    }
+
+    @Override
+    public GenerationResult generateRecipes(final String prompt,
+                                            final int count) {
+        final GenerateContentConfig config = GenerateContentConfig.builder()
+            .responseMimeType("application/json")
+            .responseSchema(RECIPE_LIST_SCHEMA.toBuilder()
+                .minItems((long) count)
+                .maxItems((long) count)
+                .build())
+            .build();
+        return toResult(client.models.generateContent(model, prompt, config));
+    }
+
+    private static GenerationResult toResult(
+            final GenerateContentResponse response) {
+        final Optional<GenerateContentResponseUsageMetadata> usage =
+            response.usageMetadata();
+        return GenerationResult.builder()
+            .text(response.text())
+            .promptTokens(usage.flatMap(
+                GenerateContentResponseUsageMetadata::promptTokenCount)
+                .orElse(0))
+            .outputTokens(usage.flatMap(
+                GenerateContentResponseUsageMetadata::candidatesTokenCount)
+                .orElse(0))
+            .build();
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.nutriflow.service.ai;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Raw output of one {@link RecipeGenerator} call: the JSON text together
+ * with the token usage reported (or estimated) by the backend.
+ */
+@Getter
+@Builder
+public final class GenerationResult {
+
+    /** JSON text of the recipe or recipe array. */
+    private final String text;
+
+    /** Tokens in the prompt. */
+    private final int promptTokens;
+
+    /** Tokens in the generated output. */
+    private final int outputTokens;
+}
@@ -0,0 +1,73 @@
+package com.example.nutriflow.service.ai;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of call latencies over fixed millisecond
+ * buckets, from a quarter second up to one minute. Unlike
+ * {@link LatencyWindow} it keeps every sample since startup, so it
+ * describes the whole history rather than the current behaviour.
+ */
+public final class LatencyHistogram {
+
+    /** Upper bounds of the buckets, in milliseconds. */
+    private static final long[] BUCKET_BOUNDS_MS =
+        {250, 500, 1_000, 2_000, 5_000, 10_000, 20_000, 30_000, 60_000};
+
+    /** Samples per bucket; the last bucket is unbounded. */
+    private final LongAdder[] buckets =
+        new LongAdder[BUCKET_BOUNDS_MS.length + 1];
+
+    /**
+     * Creates an empty histogram.
+     */
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(final long nanos) {
+        final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MS.length
+            && millis > BUCKET_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+    }
+
+    /**
+     * Adds every sample of another histogram to this one.
+     *
+     * @param other the histogram to add
+     */
+    public void addAll(final LatencyHistogram other) {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i].add(other.buckets[i].sum());
+        }
+    }
+
+    /**
+     * Returns the sample count of each bucket, keyed {@code le<ms>} by
+     * upper bound, with {@code inf} for the unbounded bucket.
+     *
+     * @return map of bucket name to sample count
+     */
+    public Map<String, Long> toMap() {
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+            counts.put("le" + BUCKET_BOUNDS_MS[i], buckets[i].sum());
+        }
+        counts.put("inf", buckets[BUCKET_BOUNDS_MS.length].sum());
+        return counts;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.nutriflow.service.ai;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed-size window of the most recent call latencies, from which
+ * percentiles are read. Older samples are overwritten, so percentiles
+ * follow the current behaviour of the model.
+ */
+public final class LatencyWindow {
+
+    /** Percentiles are given out of this value. */
+    private static final double PERCENT = 100d;
+
+    /** Recorded latencies in nanoseconds, used as a ring. */
+    private final long[] samples;
+
+    /** Guards the ring. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Next ring position to overwrite. */
+    private int next;
+
+    /** Number of samples in the ring. */
+    private int recorded;
+
+    /**
+     * Creates an empty window.
+     *
+     * @param size number of recent samples kept
+     */
+    public LatencyWindow(final int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be at least 1");
+        }
+        this.samples = new long[size];
+    }
+
+    /**
+     * Adds a latency sample, replacing the oldest one once full.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(final long nanos) {
+        lock.lock();
+        try {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            recorded = Math.min(samples.length, recorded + 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of samples in the window.
+     *
+     * @return sample count
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return recorded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the latency below which the given share of the samples
+     * fall (nearest-rank method).
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the latency in nanoseconds, or -1 if the window is empty
+     */
+    public long percentile(final double percentile) {
+        final long[] sorted;
+        lock.lock();
+        try {
+            if (recorded == 0) {
+                return -1;
+            }
+            sorted = Arrays.copyOf(samples, recorded);
+        } finally {
+            lock.unlock();
+        }
+        Arrays.sort(sorted);
+        final double share = Math.min(PERCENT, Math.max(0, percentile));
+        final int rank = (int) Math.ceil(share / PERCENT * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,355 @@
+package com.example.nutriflow.service.ai;
+
+import com.example.nutriflow.model.Recipe;
+import com.example.nutriflow.service.repository.RecipeRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * {@link RecipeGenerator} that answers without network access, for load
+ * tests and benchmarks of the AI paths.
+ * Recipes are copied from the catalog, chosen deterministically from
+ * the prompt, and emitted in the same JSON shape as the Gemini schema.
+ * Each call waits for a simulated latency and fails with the configured
+ * error rate; both are drawn from a seeded random source so a run can
+ * be repeated. Active when {@code nutriflow.ai.generator=local}.
+ */
+@Component
+@ConditionalOnProperty(name = "nutriflow.ai.generator", havingValue = "local")
+public class LocalRecipeGenerator implements RecipeGenerator {
+
+    /**
+     * Shape of the simulated latency.
+     */
+    public enum LatencyDistribution {
+        /** Every call takes the median latency. */
+        FIXED,
+        /** Uniform within median * (1 +/- spread). */
+        UNIFORM,
+        /** Log-normal around the median with sigma = spread. */
+        LOGNORMAL
+    }
+
+    /** Logger for this class. */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(LocalRecipeGenerator.class);
+
+    /** Model name reported for cache keys. */
+    private static final String MODEL_NAME = "local";
+
+    /** Rough number of characters per token, for usage estimates. */
+    private static final int CHARS_PER_TOKEN = 4;
+
+    /** Number of pieces a streamed recipe is emitted in. */
+    private static final int STREAM_PIECES = 5;
+
+    /** Age after which the catalog snapshot is reloaded, in ms. */
+    private static final long REFRESH_MS = 300_000;
+
+    /** Repository the recipes are copied from. */
+    private final RecipeRepository recipeRepository;
+
+    /** Mapper used to build and read recipe JSON. */
+    private final ObjectMapper objectMapper;
+
+    /** Median simulated latency in milliseconds. */
+    private final long latencyMs;
+
+    /** Shape of the simulated latency. */
+    private final LatencyDistribution distribution;
+
+    /** Spread of the simulated latency (see {@link LatencyDistribution}). */
+    private final double spread;
+
+    /** Probability that a call fails. */
+    private final double errorRate;
+
+    /** Number of catalog recipes sampled from. */
+    private final int catalogSize;
+
+    /** Source of latency and error draws. */
+    private final Random random;
+
+    /** Current catalog snapshot. */
+    private volatile List<Recipe> catalog = List.of();
+
+    /** Whether {@link #catalog} has been loaded (or tried) once. */
+    private volatile boolean loaded;
+
+    /** Time {@link #catalog} was last loaded or tried. */
+    private volatile long loadedAt;
+
+    /** Held by the caller reloading {@link #catalog}. */
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    /**
+     * Creates the generator from application properties.
+     *
+     * @param recipeRepositoryValue repository the recipes are copied from
+     * @param objectMapperValue mapper used to build the recipe JSON
+     * @param latencyMsValue median simulated latency in milliseconds
+     * @param distributionValue shape of the simulated latency
+     * @param spreadValue spread of the simulated latency
+     * @param errorRateValue probability that a call fails (0 to 1)
+     * @param catalogSizeValue number of catalog recipes sampled from
+     * @param seed seed of the latency and error draws
+     */
+    @Autowired
+    public LocalRecipeGenerator(
+            final RecipeRepository recipeRepositoryValue,
+            final ObjectMapper objectMapperValue,
+            final @Value("${nutriflow.ai.local.latency-ms:800}")
+                long latencyMsValue,
+            final @Value("${nutriflow.ai.local.latency-distribution:LOGNORMAL}")
+                LatencyDistribution distributionValue,
+            final @Value("${nutriflow.ai.local.latency-spread:0.5}")
+                double spreadValue,
+            final @Value("${nutriflow.ai.local.error-rate:0}")
+                double errorRateValue,
+            final @Value("${nutriflow.ai.local.catalog-size:200}")
+                int catalogSizeValue,
+            final @Value("${nutriflow.ai.local.seed:42}") long seed) {
+        this.recipeRepository = recipeRepositoryValue;
+        this.objectMapper = objectMapperValue;
+        this.latencyMs = Math.max(0, latencyMsValue);
+        this.distribution = distributionValue;
+        this.spread = Math.max(0, spreadValue);
+        this.errorRate = Math.min(1, Math.max(0, errorRateValue));
+        this.catalogSize = Math.max(1, catalogSizeValue);
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public String modelName() {
+        return MODEL_NAME;
+    }
+
+    @Override
+    public GenerationResult generateRecipe(final String prompt) {
+        simulateCall();
+        return result(prompt, recipeNode(prompt, 0));
+    }
+
+    /**
+     * Emits the recipe in pieces: the first arrives after a fifth of the
+     * latency draw and the rest are spread over the remainder, like a
+     * streamed model response.
+     */
+    @Override
+    public GenerationResult streamRecipe(final String prompt,
+                                         final Consumer<String> onText) {
+        final long delay = nextLatencyMs();
+        pause(delay / STREAM_PIECES);
+        failRandomly();
+        final GenerationResult result = result(prompt, recipeNode(prompt, 0));
+        final String text = result.getText();
+        final int pieceLength = Math.max(1, text.length() / STREAM_PIECES);
+        for (int start = 0; start < text.length(); start += pieceLength) {
+            if (start > 0) {
+                pause((delay - delay / STREAM_PIECES) / STREAM_PIECES);
+            }
+            onText.accept(text.substring(start,
+                Math.min(text.length(), start + pieceLength)));
+        }
+        return result;
+    }
+
+    @Override
+    public GenerationResult generateRecipes(final String prompt,
+                                            final int count) {
+        simulateCall();
+        final ArrayNode recipes = objectMapper.createArrayNode();
+        for (int i = 0; i < count; i++) {
+            recipes.add(recipeNode(prompt, i));
+        }
+        return result(prompt, recipes);
+    }
+
+    /**
+     * Waits for one latency draw, then fails with the error rate.
+     */
+    private void simulateCall() {
+        pause(nextLatencyMs());
+        failRandomly();
+    }
+
+    private static void pause(final long delay) {
+        if (delay > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(
+                    "Interrupted during simulated generation", ex);
+            }
+        }
+    }
+
+    private void failRandomly() {
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            throw new IllegalStateException("Simulated model error");
+        }
+    }
+
+    private long nextLatencyMs() {
+        switch (distribution) {
+            case UNIFORM:
+                return Math.round(latencyMs
+                    * (1 + spread * (2 * random.nextDouble() - 1)));
+            case LOGNORMAL:
+                return Math.round(latencyMs
+                    * Math.exp(spread * random.nextGaussian()));
+            default:
+                return latencyMs;
+        }
+    }
+
+    /**
+     * Builds the recipe for one position of a prompt's answer.
+     * The same prompt and position always give the same recipe.
+     */
+    private ObjectNode recipeNode(final String prompt, final int position) {
+        final List<Recipe> recipes = currentCatalog();
+        if (recipes.isEmpty()) {
+            return syntheticNode(prompt, position);
+        }
+        final Recipe recipe = recipes.get(Math.floorMod(
+            prompt.hashCode() + position, recipes.size()));
+
+        final ObjectNode node = objectMapper.createObjectNode();
+        node.put("title", recipe.getTitle());
+        if (recipe.getCookTime() != null) {
+            node.put("cookTime", recipe.getCookTime());
+        }
+        putArray(node, "cuisines", recipe.getCuisines());
+        putArray(node, "tags", recipe.getTags());
+        node.set("ingredients", ingredientsOf(recipe));
+        node.put("instructions", recipe.getInstructions());
+        putDecimal(node, "calories", recipe.getCalories());
+        putDecimal(node, "carbohydrates", recipe.getCarbohydrates());
+        putDecimal(node, "fat", recipe.getFat());
+        putDecimal(node, "fiber", recipe.getFiber());
+        putDecimal(node, "protein", recipe.getProtein());
+        return node;
+    }
+
+    private ObjectNode syntheticNode(final String prompt, final int position) {
+        final int id = Math.floorMod(prompt.hashCode() + position, 10_000);
+        final ObjectNode node = objectMapper.createObjectNode();
+        node.put("title", "Local Recipe " + id);
+        node.put("cookTime", 20 + id % 40);
+        node.set("ingredients", objectMapper.createArrayNode().add(
+            objectMapper.createObjectNode()
+                .put("ingredient", "rice")
+                .put("quantity", 1)
+                .put("unit", "cup")));
+        node.put("instructions", "Cook and serve.");
+        node.put("calories", 400 + id % 400);
+        node.put("protein", 10 + id % 30);
+        return node;
+    }
+
+    private JsonNode ingredientsOf(final Recipe recipe) {
+        if (recipe.getIngredients() != null) {
+            try {
+                final JsonNode parsed =
+                    objectMapper.readTree(recipe.getIngredients());
+                if (parsed != null && parsed.isArray()) {
+                    return parsed;
+                }
+            } catch (JsonProcessingException ex) {
+                LOGGER.debug("Recipe {} has unreadable ingredients",
+                    recipe.getRecipeId());
+            }
+        }
+        return objectMapper.createArrayNode();
+    }
+
+    private static void putArray(final ObjectNode node, final String field,
+                                 final String[] values) {
+        if (values == null) {
+            return;
+        }
+        final ArrayNode array = node.putArray(field);
+        for (String value : values) {
+            array.add(value);
+        }
+    }
+
+    private static void putDecimal(final ObjectNode node, final String field,
+                                   final BigDecimal value) {
+        if (value != null) {
+            node.put(field, value);
+        }
+    }
+
+    private GenerationResult result(final String prompt,
+                                    final JsonNode body) {
+        final String text = body.toString();
+        return GenerationResult.builder()
+            .text(text)
+            .promptTokens(prompt.length() / CHARS_PER_TOKEN)
+            .outputTokens(text.length() / CHARS_PER_TOKEN)
+            .build();
+    }
+
+    /**
+     * Returns the catalog, reloading it once it is stale. Only one caller
+     * reloads; the others keep the stale snapshot meanwhile, except before
+     * the first load, when they wait for it. A failed load is not retried
+     * before the next refresh.
+     */
+    private List<Recipe> currentCatalog() {
+        if (!isStale()) {
+            return catalog;
+        }
+        if (!loaded) {
+            refreshLock.lock();
+        } else if (!refreshLock.tryLock()) {
+            return catalog;
+        }
+        try {
+            if (isStale()) {
+                refresh();
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+        return catalog;
+    }
+
+    private void refresh() {
+        try {
+            catalog = List.copyOf(recipeRepository.findPopularRecipes(
+                PageRequest.of(0, catalogSize)));
+        } catch (DataAccessException ex) {
+            LOGGER.warn("Could not load catalog for local generation: {}",
+                ex.getMessage());
+        }
+        loadedAt = System.nanoTime();
+        loaded = true;
+    }
+
+    private boolean isStale() {
+        return !loaded || System.nanoTime() - loadedAt
+            > TimeUnit.MILLISECONDS.toNanos(REFRESH_MS);
+    }
+}
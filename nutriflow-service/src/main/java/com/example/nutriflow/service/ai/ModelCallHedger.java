@@ -0,0 +1,409 @@
+package com.example.nutriflow.service.ai;
+
+import com.example.nutriflow.config.GenerationExecutorConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Hedges model calls against the latency tail.
+ * A call that has not returned after the configured percentile of
+ * recent call latencies is sent a second time; whichever attempt
+ * finishes first is used and the other is cancelled.
+ * Hedges are capped per minute at a fixed percentage of the calls made
+ * in that minute, and the hedge itself only runs if the
+ * {@link ModelCallLimiter} has spare capacity, so hedging never adds
+ * load when the model is already busy. A hedge turned away for lack of
+ * capacity is counted as declined, not fired, and gives its budget
+ * back. Hedging is off by default.
+ */
+@Component
+public class ModelCallHedger {
+
+    /** Percentages are given out of this value. */
+    private static final double PERCENT = 100d;
+
+    /** Nanoseconds in one millisecond. */
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    /** Length of a budget window, in nanoseconds. */
+    private static final long BUDGET_WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /** Whether calls are hedged at all. */
+    private final boolean enabled;
+
+    /** Latency percentile after which a hedge is sent. */
+    private final double percentile;
+
+    /** Shortest hedge delay, in nanoseconds. */
+    private final long minDelayNanos;
+
+    /** Samples needed before calls are hedged. */
+    private final int minSamples;
+
+    /** Hedges allowed per budget window, as a percentage of calls. */
+    private final double budgetPercent;
+
+    /** Executor running both attempts of a hedged call. */
+    private final Executor executor;
+
+    /** Monotonic clock in nanoseconds. */
+    private final LongSupplier clock;
+
+    /** Latencies of recent model calls. */
+    private final LatencyWindow latencies;
+
+    /** Guards the budget window. */
+    private final ReentrantLock budgetLock = new ReentrantLock();
+
+    /** Start of the current budget window. */
+    private long windowStart;
+
+    /** Calls made in the current budget window. */
+    private int windowCalls;
+
+    /** Hedges sent in the current budget window. */
+    private int windowHedges;
+
+    /** Number of calls that went through the hedger. */
+    private final LongAdder calls = new LongAdder();
+
+    /** Number of hedges that made a model call. */
+    private final LongAdder fired = new LongAdder();
+
+    /** Number of hedges that finished before the first attempt. */
+    private final LongAdder won = new LongAdder();
+
+    /**
+     * Number of hedges turned away for lack of capacity, by the limiter
+     * or the hedge executor.
+     */
+    private final LongAdder declined = new LongAdder();
+
+    /** Number of slow calls not hedged because the budget was spent. */
+    private final LongAdder overBudget = new LongAdder();
+
+    /**
+     * Creates a hedger from application properties.
+     *
+     * @param enabledValue whether calls are hedged
+     * @param percentileValue latency percentile after which to hedge
+     * @param minDelayMs shortest hedge delay, in milliseconds
+     * @param minSamplesValue samples needed before calls are hedged
+     * @param windowSize number of recent latencies kept
+     * @param budgetPercentValue hedges allowed per minute, as a
+     *                           percentage of that minute's calls
+     * @param hedgeExecutor executor running both attempts
+     */
+    @Autowired
+    public ModelCallHedger(
+            final @Value("${nutriflow.ai.hedge.enabled:false}")
+                boolean enabledValue,
+            final @Value("${nutriflow.ai.hedge.percentile:95}")
+                double percentileValue,
+            final @Value("${nutriflow.ai.hedge.min-delay-ms:500}")
+                long minDelayMs,
+            final @Value("${nutriflow.ai.hedge.min-samples:20}")
+                int minSamplesValue,
+            final @Value("${nutriflow.ai.hedge.window-size:200}")
+                int windowSize,
+            final @Value("${nutriflow.ai.hedge.budget-percent:5}")
+                double budgetPercentValue,
+            final @Qualifier(GenerationExecutorConfig.AI_HEDGE_EXECUTOR)
+                Executor hedgeExecutor) {
+        this(enabledValue, percentileValue,
+            TimeUnit.MILLISECONDS.toNanos(minDelayMs), minSamplesValue,
+            windowSize, budgetPercentValue, hedgeExecutor, System::nanoTime);
+    }
+
+    /**
+     * Creates a hedger with an explicit clock.
+     *
+     * @param enabledValue whether calls are hedged
+     * @param percentileValue latency percentile after which to hedge
+     * @param minDelayNanosValue shortest hedge delay, in nanoseconds
+     * @param minSamplesValue samples needed before calls are hedged
+     * @param windowSize number of recent latencies kept
+     * @param budgetPercentValue hedges allowed per minute, as a
+     *                           percentage of that minute's calls
+     * @param hedgeExecutor executor running both attempts
+     * @param clockSource monotonic nanosecond clock
+     */
+    ModelCallHedger(final boolean enabledValue,
+                    final double percentileValue,
+                    final long minDelayNanosValue,
+                    final int minSamplesValue,
+                    final int windowSize,
+                    final double budgetPercentValue,
+                    final Executor hedgeExecutor,
+                    final LongSupplier clockSource) {
+        this.enabled = enabledValue;
+        this.percentile = Math.min(PERCENT, Math.max(0, percentileValue));
+        this.minDelayNanos = Math.max(0, minDelayNanosValue);
+        this.minSamples = Math.max(1, minSamplesValue);
+        this.budgetPercent = Math.max(0, budgetPercentValue);
+        this.executor = hedgeExecutor;
+        this.clock = clockSource;
+        this.latencies = new LatencyWindow(Math.max(1, windowSize));
+        this.windowStart = clockSource.getAsLong();
+    }
+
+    /**
+     * Runs a model call, sending the hedge if the call is slower than
+     * the hedge delay and the budget allows it.
+     *
+     * @param call the model call
+     * @param hedge the same call made as a hedge; it should throw
+     *              {@link ModelOverloadedException} when there is no
+     *              spare capacity for it
+     * @param <T> the result type
+     * @return the result of whichever attempt finished first
+     */
+    public <T> T call(final Supplier<T> call, final Supplier<T> hedge) {
+        if (!enabled) {
+            return call.get();
+        }
+        calls.increment();
+        final long start = clock.getAsLong();
+        countCall(start);
+        final long delay = hedgeDelayNanos();
+        if (delay < 0) {
+            final T result = call.get();
+            latencies.record(clock.getAsLong() - start);
+            return result;
+        }
+
+        final Race<T> race = new Race<>();
+        if (!race.start(call, false)) {
+            final T result = call.get();
+            latencies.record(clock.getAsLong() - start);
+            return result;
+        }
+        try {
+            T result;
+            try {
+                result = race.outcome.get(delay, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException ex) {
+                if (!tryAcquireBudget()) {
+                    overBudget.increment();
+                } else if (!race.start(hedge, true)) {
+                    decline();
+                }
+                result = race.outcome.get();
+                if (race.hedgeWon) {
+                    won.increment();
+                }
+            }
+            // When the hedge wins this is a lower bound of the first
+            // attempt's latency, which keeps slow calls in the window.
+            latencies.record(clock.getAsLong() - start);
+            return result;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                "Interrupted while waiting for a model call", ex);
+        } catch (ExecutionException ex) {
+            throw rethrow(ex.getCause());
+        } finally {
+            race.cancel();
+        }
+    }
+
+    /**
+     * Returns the delay after which calls are currently hedged.
+     *
+     * @return the delay in nanoseconds, or -1 until enough calls have
+     *         been recorded
+     */
+    long hedgeDelayNanos() {
+        if (latencies.size() < minSamples) {
+            return -1;
+        }
+        return Math.max(minDelayNanos, latencies.percentile(percentile));
+    }
+
+    /**
+     * Returns a snapshot of the hedging state and counters.
+     *
+     * @return map of counter name to value
+     */
+    public Map<String, Object> stats() {
+        final long delay = enabled ? hedgeDelayNanos() : -1;
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("hedgeDelayMs", delay < 0 ? null : delay / NANOS_PER_MILLI);
+        stats.put("calls", calls.sum());
+        stats.put("hedgeFired", fired.sum());
+        stats.put("hedgeWon", won.sum());
+        stats.put("hedgeDeclined", declined.sum());
+        stats.put("overBudget", overBudget.sum());
+        return stats;
+    }
+
+    private void countCall(final long now) {
+        budgetLock.lock();
+        try {
+            rollWindow(now);
+            windowCalls++;
+        } finally {
+            budgetLock.unlock();
+        }
+    }
+
+    private boolean tryAcquireBudget() {
+        budgetLock.lock();
+        try {
+            rollWindow(clock.getAsLong());
+            if ((windowHedges + 1) * PERCENT > budgetPercent * windowCalls) {
+                return false;
+            }
+            windowHedges++;
+            return true;
+        } finally {
+            budgetLock.unlock();
+        }
+    }
+
+    /**
+     * Counts a hedge that made no model call and returns its budget.
+     */
+    private void decline() {
+        declined.increment();
+        budgetLock.lock();
+        try {
+            windowHedges = Math.max(0, windowHedges - 1);
+        } finally {
+            budgetLock.unlock();
+        }
+    }
+
+    private void rollWindow(final long now) {
+        if (now - windowStart >= BUDGET_WINDOW_NANOS) {
+            windowStart = now;
+            windowCalls = 0;
+            windowHedges = 0;
+        }
+    }
+
+    private static RuntimeException rethrow(final Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalStateException("Model call failed", cause);
+    }
+
+    /**
+     * The attempts of one call. The first successful attempt completes
+     * the outcome; it fails only once every started attempt has failed,
+     * with the first attempt's failure if it has one.
+     *
+     * @param <T> the result type
+     */
+    private final class Race<T> {
+
+        /** Result of the first successful attempt. */
+        private final CompletableFuture<T> outcome = new CompletableFuture<>();
+
+        /** Whether an attempt has succeeded. */
+        private final AtomicBoolean decided = new AtomicBoolean();
+
+        /** Attempts started and not yet failed. */
+        private final AtomicInteger running = new AtomicInteger();
+
+        /** Failure reported if every attempt fails. */
+        private final AtomicReference<Throwable> failure =
+            new AtomicReference<>();
+
+        /** The first attempt. */
+        private FutureTask<T> first;
+
+        /** The hedge, once sent. */
+        private FutureTask<T> second;
+
+        /** Whether the hedge produced the outcome. */
+        private volatile boolean hedgeWon;
+
+        /**
+         * Starts an attempt on the executor.
+         *
+         * @return false if the executor rejected it
+         */
+        boolean start(final Supplier<T> attempt, final boolean isHedge) {
+            final FutureTask<T> task = new FutureTask<>(() -> {
+                try {
+                    final T value = attempt.get();
+                    if (isHedge) {
+                        fired.increment();
+                    }
+                    if (decided.compareAndSet(false, true)) {
+                        hedgeWon = isHedge;
+                        outcome.complete(value);
+                    }
+                    return value;
+                } catch (RuntimeException | Error ex) {
+                    fail(ex, isHedge);
+                    throw ex;
+                }
+            });
+            running.incrementAndGet();
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException ex) {
+                running.decrementAndGet();
+                return false;
+            }
+            if (isHedge) {
+                second = task;
+            } else {
+                first = task;
+            }
+            return true;
+        }
+
+        void cancel() {
+            if (first != null) {
+                first.cancel(true);
+            }
+            if (second != null) {
+                second.cancel(true);
+            }
+        }
+
+        private void fail(final Throwable ex, final boolean isHedge) {
+            if (isHedge && ex instanceof ModelOverloadedException) {
+                decline();
+            } else if (isHedge) {
+                fired.increment();
+            }
+            if (isHedge) {
+                failure.compareAndSet(null, ex);
+            } else {
+                failure.set(ex);
+            }
+            if (running.decrementAndGet() == 0) {
+                outcome.completeExceptionally(failure.get());
+            }
+        }
+    }
+}
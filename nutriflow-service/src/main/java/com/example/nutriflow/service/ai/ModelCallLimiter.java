@@ -0,0 +1,305 @@
+package com.example.nutriflow.service.ai;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Outbound limiter for language model calls.
+ * A call must first get one of a fixed number of in-flight slots and
+ * then a token from a bucket refilled at the configured request rate,
+ * so bursts are smoothed to what the provider quota allows instead of
+ * slowing every request down together.
+ * Callers waiting for a slot form a bounded queue; when it is full, or
+ * a call cannot start within the maximum wait, the call is shed with a
+ * {@link ModelOverloadedException} without reaching the model.
+ */
+@Component
+public class ModelCallLimiter {
+
+    /** Nanoseconds in one second. */
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    /** Nanoseconds in one millisecond. */
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    /** Token refill rate in permits per second; zero disables. */
+    private final double permitsPerSecond;
+
+    /** Maximum number of tokens the bucket holds. */
+    private final double burst;
+
+    /** Maximum number of concurrent model calls. */
+    private final int maxInFlight;
+
+    /** Maximum number of callers waiting for an in-flight slot. */
+    private final int queueCapacity;
+
+    /** Longest time a call may wait before it starts, in nanoseconds. */
+    private final long maxWaitNanos;
+
+    /** In-flight slots, granted in arrival order. */
+    private final Semaphore slots;
+
+    /** Guards the token bucket state. */
+    private final ReentrantLock bucketLock = new ReentrantLock();
+
+    /** Tokens currently available; negative when reserved ahead. */
+    private double tokens;
+
+    /** Time of the last refill, in nanoseconds. */
+    private long lastRefill;
+
+    /** Number of callers waiting for an in-flight slot. */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /** Number of calls that were allowed to run. */
+    private final LongAdder admitted = new LongAdder();
+
+    /** Number of calls shed because the queue was full. */
+    private final LongAdder rejected = new LongAdder();
+
+    /** Number of calls shed because they waited too long. */
+    private final LongAdder timedOut = new LongAdder();
+
+    /** Number of low-priority calls turned away for lack of capacity. */
+    private final LongAdder deferred = new LongAdder();
+
+    /** Total wait of admitted calls, in nanoseconds. */
+    private final LongAdder waitNanos = new LongAdder();
+
+    /** Longest wait of an admitted call, in nanoseconds. */
+    private final LongAccumulator longestWaitNanos =
+        new LongAccumulator(Math::max, 0);
+
+    /**
+     * Creates a limiter from application properties.
+     *
+     * @param permitsPerSecondValue sustained model requests per second
+     *                              (zero or less disables rate limiting)
+     * @param burstValue number of requests allowed back to back
+     * @param maxInFlightValue maximum number of concurrent model calls
+     * @param queueCapacityValue maximum number of waiting callers
+     * @param maxWaitMs longest wait before a call is shed, in milliseconds
+     */
+    @Autowired
+    public ModelCallLimiter(
+            final @Value("${nutriflow.ai.limiter.requests-per-second:5}")
+                double permitsPerSecondValue,
+            final @Value("${nutriflow.ai.limiter.burst:10}")
+                int burstValue,
+            final @Value("${nutriflow.ai.limiter.max-in-flight:8}")
+                int maxInFlightValue,
+            final @Value("${nutriflow.ai.limiter.queue-capacity:100}")
+                int queueCapacityValue,
+            final @Value("${nutriflow.ai.limiter.max-wait-ms:30000}")
+                long maxWaitMs) {
+        this.permitsPerSecond = Math.max(0, permitsPerSecondValue);
+        this.burst = Math.max(1, burstValue);
+        this.maxInFlight = Math.max(1, maxInFlightValue);
+        this.queueCapacity = Math.max(0, queueCapacityValue);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(
+            Math.max(0, maxWaitMs));
+        this.slots = new Semaphore(maxInFlight, true);
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Runs a model call once an in-flight slot and a rate token are
+     * available.
+     *
+     * @param call the model call
+     * @param <T> the result type
+     * @return the result of the call
+     * @throws ModelOverloadedException if the queue is full or the call
+     *         could not start within the maximum wait
+     */
+    public <T> T call(final Supplier<T> call) {
+        final long start = System.nanoTime();
+        acquire(start);
+        try {
+            return call.get();
+        } finally {
+            slots.release();
+        }
+    }
+
+    /**
+     * Runs a low-priority model call only if it can start at once
+     * without taking capacity that interactive calls may need: nobody
+     * is waiting, another in-flight slot stays free, and a rate token is
+     * available without waiting. Background work uses this to yield to
+     * interactive traffic.
+     *
+     * @param call the model call
+     * @param <T> the result type
+     * @return the result of the call
+     * @throws ModelOverloadedException if the model has no spare capacity
+     */
+    public <T> T callIfIdle(final Supplier<T> call) {
+        if (queued.get() > 0 || !slots.tryAcquire()) {
+            deferred.increment();
+            throw overloaded("No spare model capacity");
+        }
+        if ((maxInFlight > 1 && slots.availablePermits() == 0)
+            || reserveToken(System.nanoTime()) != 0) {
+            slots.release();
+            deferred.increment();
+            throw overloaded("No spare model capacity");
+        }
+        admitted.increment();
+        try {
+            return call.get();
+        } finally {
+            slots.release();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the limiter state and counters.
+     *
+     * @return map of counter name to value
+     */
+    public Map<String, Object> stats() {
+        final long calls = admitted.sum();
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requestsPerSecond", permitsPerSecond);
+        stats.put("maxInFlight", maxInFlight);
+        stats.put("inFlight", maxInFlight - slots.availablePermits());
+        stats.put("queueDepth", queued.get());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("admitted", calls);
+        stats.put("rejected", rejected.sum());
+        stats.put("timedOut", timedOut.sum());
+        stats.put("deferred", deferred.sum());
+        stats.put("avgWaitMs", calls == 0
+            ? 0d : waitNanos.sum() / NANOS_PER_MILLI / calls);
+        stats.put("maxWaitMs", longestWaitNanos.get() / NANOS_PER_MILLI);
+        return stats;
+    }
+
+    /**
+     * Returns the number of callers waiting for an in-flight slot.
+     *
+     * @return current queue depth
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * Returns the number of calls shed without reaching the model.
+     *
+     * @return rejected plus timed-out call count
+     */
+    public long getShed() {
+        return rejected.sum() + timedOut.sum();
+    }
+
+    private void acquire(final long start) {
+        final long deadline = start + maxWaitNanos;
+        try {
+            if (!slots.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+                waitForSlot(deadline);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                "Interrupted while waiting for a model call slot", ex);
+        }
+
+        try {
+            final long delay = reserveToken(deadline);
+            if (delay < 0) {
+                timedOut.increment();
+                throw overloaded("Model rate limit wait exceeded");
+            }
+            if (delay > 0) {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+        } catch (InterruptedException ex) {
+            slots.release();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                "Interrupted while waiting for a model call slot", ex);
+        } catch (RuntimeException ex) {
+            slots.release();
+            throw ex;
+        }
+
+        final long waited = System.nanoTime() - start;
+        admitted.increment();
+        waitNanos.add(waited);
+        longestWaitNanos.accumulate(waited);
+    }
+
+    private void waitForSlot(final long deadline)
+            throws InterruptedException {
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            rejected.increment();
+            throw overloaded("Model call queue is full");
+        }
+        try {
+            if (!slots.tryAcquire(deadline - System.nanoTime(),
+                    TimeUnit.NANOSECONDS)) {
+                timedOut.increment();
+                throw overloaded("Model call queue wait exceeded");
+            }
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    /**
+     * Takes a token from the bucket, reserving a future one if none is
+     * left.
+     *
+     * @return nanoseconds to wait before the token is valid, or -1 if
+     *         that would pass the deadline (nothing is reserved then)
+     */
+    private long reserveToken(final long deadline) {
+        if (permitsPerSecond <= 0) {
+            return 0;
+        }
+        bucketLock.lock();
+        try {
+            final long now = System.nanoTime();
+            tokens = Math.min(burst, tokens
+                + (now - lastRefill) * permitsPerSecond / NANOS_PER_SECOND);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            final long wait = (long) Math.ceil(
+                (1 - tokens) * NANOS_PER_SECOND / permitsPerSecond);
+            if (now + wait - deadline > 0) {
+                return -1;
+            }
+            tokens -= 1;
+            return wait;
+        } finally {
+            bucketLock.unlock();
+        }
+    }
+
+    private ModelOverloadedException overloaded(final String reason) {
+        final double drainSeconds = permitsPerSecond > 0
+            ? (queued.get() + maxInFlight) / permitsPerSecond
+            : TimeUnit.NANOSECONDS.toSeconds(maxWaitNanos);
+        return new ModelOverloadedException(reason,
+            Math.max(1, (long) Math.ceil(drainSeconds)));
+    }
+}
@@ -0,0 +1,402 @@
+package com.example.nutriflow.service.ai;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker around language model calls.
+ * Outcomes of the most recent calls are kept in a fixed-size window;
+ * once it holds enough calls and the share of failed or slow calls
+ * reaches its threshold, the breaker opens and calls fail at once with
+ * a {@link CircuitOpenException} instead of waiting on the model.
+ * After the open interval a few probe calls are let through
+ * (half-open): if they all succeed the breaker closes again, otherwise
+ * it reopens.
+ * Calls shed by the {@link ModelCallLimiter} are not counted, since
+ * they never reached the model, nor are streams stopped by their
+ * receiver ({@link StreamCancelledException}) or calls whose thread was
+ * interrupted because their result is no longer wanted. Callers run
+ * the breaker inside their limiter slot, so time spent queueing for
+ * the limiter is not taken for a slow model, and use
+ * {@link #checkPermitted()} beforehand to fail fast instead of
+ * queueing while the breaker is open.
+ */
+@Component
+public class ModelCircuitBreaker {
+
+    /**
+     * Breaker state.
+     */
+    public enum State {
+        /** Calls go through and their outcomes are recorded. */
+        CLOSED,
+        /** Calls are rejected without reaching the model. */
+        OPEN,
+        /** A limited number of probe calls go through. */
+        HALF_OPEN
+    }
+
+    /** Logger for this class. */
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(ModelCircuitBreaker.class);
+
+    /** Percentages are given out of this value. */
+    private static final double PERCENT = 100d;
+
+    /** Number of recent calls considered. */
+    private final int windowSize;
+
+    /** Calls needed in the window before the breaker may open. */
+    private final int minimumCalls;
+
+    /** Failure percentage that opens the breaker. */
+    private final double failureRateThreshold;
+
+    /** Slow call percentage that opens the breaker. */
+    private final double slowRateThreshold;
+
+    /** Duration above which a call counts as slow, in nanoseconds. */
+    private final long slowCallNanos;
+
+    /** Time the breaker stays open before probing, in nanoseconds. */
+    private final long openNanos;
+
+    /** Number of probe calls allowed (and needed) when half-open. */
+    private final int halfOpenProbes;
+
+    /** Monotonic clock in nanoseconds. */
+    private final LongSupplier clock;
+
+    /** Guards the state and the window. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Whether each call in the window failed. */
+    private final boolean[] failed;
+
+    /** Whether each call in the window was slow. */
+    private final boolean[] slow;
+
+    /** Next window position to overwrite. */
+    private int next;
+
+    /** Number of calls in the window. */
+    private int recorded;
+
+    /** Failed calls in the window. */
+    private int failures;
+
+    /** Slow calls in the window. */
+    private int slowCalls;
+
+    /** Current state. */
+    private State state = State.CLOSED;
+
+    /** Time the breaker last opened. */
+    private long openedAt;
+
+    /** Probe calls currently running. */
+    private int probesInFlight;
+
+    /** Probe calls that succeeded since the breaker became half-open. */
+    private int probeSuccesses;
+
+    /** Number of times the breaker opened. */
+    private final LongAdder opened = new LongAdder();
+
+    /** Number of calls rejected without reaching the model. */
+    private final LongAdder notPermitted = new LongAdder();
+
+    /**
+     * Creates a breaker from application properties.
+     *
+     * @param windowSizeValue number of recent calls considered
+     * @param minimumCallsValue calls needed before the breaker may open
+     * @param failureRatePercent failure percentage that opens it
+     * @param slowRatePercent slow call percentage that opens it
+     * @param slowCallMs duration above which a call is slow, in ms
+     * @param openMs time the breaker stays open before probing, in ms
+     * @param halfOpenProbesValue probe calls allowed when half-open
+     */
+    @Autowired
+    public ModelCircuitBreaker(
+            final @Value("${nutriflow.ai.breaker.window-size:20}")
+                int windowSizeValue,
+            final @Value("${nutriflow.ai.breaker.minimum-calls:10}")
+                int minimumCallsValue,
+            final @Value("${nutriflow.ai.breaker.failure-rate-percent:50}")
+                double failureRatePercent,
+            final @Value("${nutriflow.ai.breaker.slow-rate-percent:80}")
+                double slowRatePercent,
+            final @Value("${nutriflow.ai.breaker.slow-call-ms:20000}")
+                long slowCallMs,
+            final @Value("${nutriflow.ai.breaker.open-ms:30000}")
+                long openMs,
+            final @Value("${nutriflow.ai.breaker.half-open-probes:2}")
+                int halfOpenProbesValue) {
+        this(windowSizeValue, minimumCallsValue, failureRatePercent,
+            slowRatePercent, TimeUnit.MILLISECONDS.toNanos(slowCallMs),
+            TimeUnit.MILLISECONDS.toNanos(openMs), halfOpenProbesValue,
+            System::nanoTime);
+    }
+
+    /**
+     * Creates a breaker with an explicit clock.
+     *
+     * @param windowSizeValue number of recent calls considered
+     * @param minimumCallsValue calls needed before the breaker may open
+     * @param failureRatePercent failure percentage that opens it
+     * @param slowRatePercent slow call percentage that opens it
+     * @param slowCallNanosValue duration above which a call is slow
+     * @param openNanosValue time the breaker stays open before probing
+     * @param halfOpenProbesValue probe calls allowed when half-open
+     * @param clockSource monotonic nanosecond clock
+     */
+    ModelCircuitBreaker(final int windowSizeValue,
+                        final int minimumCallsValue,
+                        final double failureRatePercent,
+                        final double slowRatePercent,
+                        final long slowCallNanosValue,
+                        final long openNanosValue,
+                        final int halfOpenProbesValue,
+                        final LongSupplier clockSource) {
+        this.windowSize = Math.max(1, windowSizeValue);
+        this.minimumCalls = Math.min(windowSize,
+            Math.max(1, minimumCallsValue));
+        this.failureRateThreshold = failureRatePercent / PERCENT;
+        this.slowRateThreshold = slowRatePercent / PERCENT;
+        this.slowCallNanos = Math.max(0, slowCallNanosValue);
+        this.openNanos = Math.max(0, openNanosValue);
+        this.halfOpenProbes = Math.max(1, halfOpenProbesValue);
+        this.clock = clockSource;
+        this.failed = new boolean[windowSize];
+        this.slow = new boolean[windowSize];
+    }
+
+    /**
+     * Runs a model call if the breaker permits it and records its
+     * outcome.
+     *
+     * @param call the model call
+     * @param <T> the result type
+     * @return the result of the call
+     * @throws CircuitOpenException if the breaker rejects the call
+     */
+    public <T> T call(final Supplier<T> call) {
+        final boolean probe = acquirePermission();
+        final long start = clock.getAsLong();
+        try {
+            final T result = call.get();
+            onResult(probe, false, clock.getAsLong() - start);
+            return result;
+        } catch (ModelOverloadedException | StreamCancelledException ex) {
+            onIgnored(probe);
+            throw ex;
+        } catch (RuntimeException | Error ex) {
+            if (Thread.currentThread().isInterrupted()) {
+                onIgnored(probe);
+            } else {
+                onResult(probe, true, clock.getAsLong() - start);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Fails at once if a call made now would be rejected, without
+     * taking a half-open probe. Callers use it before queueing for the
+     * limiter, so no one waits for a slot only to be rejected.
+     *
+     * @throws CircuitOpenException while the breaker is open
+     */
+    public void checkPermitted() {
+        lock.lock();
+        try {
+            if (currentState() == State.OPEN) {
+                throw rejected(State.OPEN);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current state, moving from open to half-open if the
+     * open interval has passed.
+     *
+     * @return the state
+     */
+    public State getState() {
+        lock.lock();
+        try {
+            return currentState();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Tells whether a call made now would be rejected.
+     *
+     * @return true while the breaker is open
+     */
+    public boolean isOpen() {
+        return getState() == State.OPEN;
+    }
+
+    /**
+     * Returns a snapshot of the breaker state and counters.
+     *
+     * @return map of counter name to value
+     */
+    public Map<String, Object> stats() {
+        lock.lock();
+        try {
+            final Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("state", currentState().name());
+            stats.put("windowCalls", recorded);
+            stats.put("failureRatePercent", percent(failures));
+            stats.put("slowRatePercent", percent(slowCalls));
+            stats.put("opened", opened.sum());
+            stats.put("notPermitted", notPermitted.sum());
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether a call may run.
+     *
+     * @return true if the call is a half-open probe
+     */
+    private boolean acquirePermission() {
+        lock.lock();
+        try {
+            final State current = currentState();
+            if (current == State.CLOSED) {
+                return false;
+            }
+            if (current == State.HALF_OPEN
+                && probesInFlight + probeSuccesses < halfOpenProbes) {
+                probesInFlight++;
+                return true;
+            }
+            throw rejected(current);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Counts a rejected call and describes it; called with the lock
+     * held.
+     */
+    private CircuitOpenException rejected(final State current) {
+        notPermitted.increment();
+        final long waitNanos = current == State.OPEN
+            ? openNanos - (clock.getAsLong() - openedAt) : 0;
+        return new CircuitOpenException(
+            "AI recipe generation is temporarily unavailable",
+            Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos)));
+    }
+
+    private void onResult(final boolean probe, final boolean failure,
+                          final long elapsedNanos) {
+        final boolean tooSlow = elapsedNanos > slowCallNanos;
+        lock.lock();
+        try {
+            if (probe) {
+                probesInFlight = Math.max(0, probesInFlight - 1);
+                if (state != State.HALF_OPEN) {
+                    return;
+                }
+                if (failure || tooSlow) {
+                    open();
+                } else if (++probeSuccesses >= halfOpenProbes) {
+                    close();
+                }
+                return;
+            }
+            if (state != State.CLOSED) {
+                return;
+            }
+            record(failure, tooSlow);
+            if (recorded >= minimumCalls
+                && (failures >= failureRateThreshold * recorded
+                    || slowCalls >= slowRateThreshold * recorded)) {
+                open();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onIgnored(final boolean probe) {
+        if (!probe) {
+            return;
+        }
+        lock.lock();
+        try {
+            probesInFlight = Math.max(0, probesInFlight - 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void record(final boolean failure, final boolean tooSlow) {
+        if (recorded == windowSize) {
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failed[next] = failure;
+        slow[next] = tooSlow;
+        failures += failure ? 1 : 0;
+        slowCalls += tooSlow ? 1 : 0;
+        next = (next + 1) % windowSize;
+    }
+
+    private State currentState() {
+        if (state == State.OPEN
+            && clock.getAsLong() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            probesInFlight = 0;
+            probeSuccesses = 0;
+            LOGGER.info("Model circuit breaker half-open, probing");
+        }
+        return state;
+    }
+
+    private void open() {
+        LOGGER.warn("Model circuit breaker opened ({} failed, {} slow of "
+            + "{} recent calls)", failures, slowCalls, recorded);
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+        opened.increment();
+    }
+
+    private void close() {
+        LOGGER.info("Model circuit breaker closed");
+        state = State.CLOSED;
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    private double percent(final int count) {
+        return recorded == 0 ? 0d : count * PERCENT / recorded;
+    }
+}
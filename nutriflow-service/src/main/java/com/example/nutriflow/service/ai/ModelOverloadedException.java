@@ -0,0 +1,36 @@
+package com.example.nutriflow.service.ai;
+
+/**
+ * Thrown when a model call is shed locally instead of being sent to the
+ * model: by the {@link ModelCallLimiter} because its wait queue is full
+ * or the call could not start within the maximum wait, or by the
+ * {@link ModelCircuitBreaker} while it is open.
+ */
+public class ModelOverloadedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Suggested delay before retrying, in seconds. */
+    private final long retryAfterSeconds;
+
+    /**
+     * Creates the exception.
+     *
+     * @param message description of why the call was shed
+     * @param retryAfterSecondsValue suggested retry delay in seconds
+     */
+    public ModelOverloadedException(final String message,
+                                    final long retryAfterSecondsValue) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSecondsValue;
+    }
+
+    /**
+     * Returns the suggested delay before retrying.
+     *
+     * @return retry delay in seconds (at least one)
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,384 @@
+package com.example.nutriflow.service.ai;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Chooses the model each generation is sent to.
+ * The primary (quality) model is the one configured for the backend;
+ * an optional fast model takes the prompt classes listed for it, and
+ * every other class while the primary breaches its latency SLO or
+ * error budget over its recent calls. During such a breach one call in
+ * {@code probe-every} still goes to the primary, so recovery is seen.
+ * Latency histograms, percentiles, error rates and token usage are
+ * recorded per model.
+ */
+@Component
+public class ModelRouter {
+
+    /**
+     * Kind of generation request, as far as model choice is concerned.
+     */
+    public enum PromptClass {
+        /** Short, unpersonalized prompts (one ingredient, a suggestion). */
+        SIMPLE,
+        /** One recipe under a user's constraints and pantry. */
+        PERSONALIZED,
+        /** Several recipes in one call (pools and meal plans). */
+        BATCH
+    }
+
+    /** Percentages are given out of this value. */
+    private static final double PERCENT = 100d;
+
+    /** Nanoseconds in one millisecond. */
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    /** The quality model, which serves every class by default. */
+    private final RecipeGenerator primary;
+
+    /** The fast model, or null if only one model is configured. */
+    private final RecipeGenerator fast;
+
+    /** Classes always sent to the fast model. */
+    private final Set<PromptClass> fastClasses;
+
+    /** Latency SLO of the primary model, in nanoseconds. */
+    private final long sloNanos;
+
+    /** Latency percentile held to the SLO. */
+    private final double sloPercentile;
+
+    /** Error percentage above which a model is considered unhealthy. */
+    private final double maxErrorPercent;
+
+    /** Number of recent calls kept per model. */
+    private final int windowSize;
+
+    /** Recent calls needed before a model can be judged. */
+    private final int minSamples;
+
+    /** During a breach, one call in this many still goes to the primary. */
+    private final int probeEvery;
+
+    /** Monotonic clock in nanoseconds. */
+    private final LongSupplier clock;
+
+    /** Statistics per model name. */
+    private final Map<String, ModelStats> models = new ConcurrentHashMap<>();
+
+    /** Calls routed away from the primary during a breach. */
+    private final AtomicLong breachRouted = new AtomicLong();
+
+    /** Calls sent to the fast model because of their class. */
+    private final LongAdder classRouted = new LongAdder();
+
+    /** Calls sent to the primary during a breach to check on it. */
+    private final LongAdder probes = new LongAdder();
+
+    /**
+     * Creates a router from application properties.
+     *
+     * @param generator the configured backend, serving the primary model
+     * @param fastModel name of the fast model; blank for none
+     * @param fastClassesValue prompt classes always sent to the fast model
+     * @param sloMs latency SLO of the primary model, in milliseconds
+     * @param sloPercentileValue latency percentile held to the SLO
+     * @param maxErrorPercentValue error percentage that counts as a breach
+     * @param windowSizeValue number of recent calls kept per model
+     * @param minSamplesValue recent calls needed before judging a model
+     * @param probeEveryValue during a breach, one call in this many
+     *                        still goes to the primary
+     */
+    @Autowired
+    public ModelRouter(
+            final RecipeGenerator generator,
+            final @Value("${nutriflow.ai.router.fast-model:}")
+                String fastModel,
+            final @Value("${nutriflow.ai.router.fast-classes:SIMPLE}")
+                List<String> fastClassesValue,
+            final @Value("${nutriflow.ai.router.latency-slo-ms:15000}")
+                long sloMs,
+            final @Value("${nutriflow.ai.router.slo-percentile:95}")
+                double sloPercentileValue,
+            final @Value("${nutriflow.ai.router.max-error-percent:25}")
+                double maxErrorPercentValue,
+            final @Value("${nutriflow.ai.router.window-size:100}")
+                int windowSizeValue,
+            final @Value("${nutriflow.ai.router.min-samples:10}")
+                int minSamplesValue,
+            final @Value("${nutriflow.ai.router.probe-every:10}")
+                int probeEveryValue) {
+        this(generator, fastModel, fastClassesValue,
+            TimeUnit.MILLISECONDS.toNanos(sloMs), sloPercentileValue,
+            maxErrorPercentValue, windowSizeValue, minSamplesValue,
+            probeEveryValue, System::nanoTime);
+    }
+
+    /**
+     * Creates a router with an explicit clock.
+     *
+     * @param generator the configured backend, serving the primary model
+     * @param fastModel name of the fast model; blank for none
+     * @param fastClassesValue prompt classes always sent to the fast model
+     * @param sloNanosValue latency SLO of the primary, in nanoseconds
+     * @param sloPercentileValue latency percentile held to the SLO
+     * @param maxErrorPercentValue error percentage that counts as a breach
+     * @param windowSizeValue number of recent calls kept per model
+     * @param minSamplesValue recent calls needed before judging a model
+     * @param probeEveryValue during a breach, one call in this many
+     *                        still goes to the primary
+     * @param clockSource monotonic nanosecond clock
+     */
+    ModelRouter(final RecipeGenerator generator,
+                final String fastModel,
+                final List<String> fastClassesValue,
+                final long sloNanosValue,
+                final double sloPercentileValue,
+                final double maxErrorPercentValue,
+                final int windowSizeValue,
+                final int minSamplesValue,
+                final int probeEveryValue,
+                final LongSupplier clockSource) {
+        this.primary = generator;
+        this.fast = fastModel == null || fastModel.isBlank()
+            || fastModel.trim().equals(generator.modelName())
+            ? null : generator.withModel(fastModel.trim());
+        this.fastClasses = EnumSet.noneOf(PromptClass.class);
+        for (String name : fastClassesValue) {
+            if (!name.isBlank()) {
+                fastClasses.add(PromptClass.valueOf(
+                    name.trim().toUpperCase(Locale.ROOT)));
+            }
+        }
+        this.sloNanos = Math.max(0, sloNanosValue);
+        this.sloPercentile = Math.min(PERCENT, Math.max(0, sloPercentileValue));
+        this.maxErrorPercent = Math.max(0, maxErrorPercentValue);
+        this.windowSize = Math.max(1, windowSizeValue);
+        this.minSamples = Math.min(windowSize, Math.max(1, minSamplesValue));
+        this.probeEvery = Math.max(1, probeEveryValue);
+        this.clock = clockSource;
+    }
+
+    /**
+     * Chooses the backend for a generation.
+     *
+     * @param promptClass the kind of request
+     * @return the backend to send it to
+     */
+    public RecipeGenerator route(final PromptClass promptClass) {
+        if (fast == null) {
+            return primary;
+        }
+        if (fastClasses.contains(promptClass)) {
+            classRouted.increment();
+            return fast;
+        }
+        if (!breached(stats(primary), true) || breached(stats(fast), false)) {
+            return primary;
+        }
+        if (breachRouted.incrementAndGet() % probeEvery == 0) {
+            probes.increment();
+            return primary;
+        }
+        return fast;
+    }
+
+    /**
+     * Runs a request against a backend, recording its latency, outcome
+     * and token usage under the backend's model. Calls interrupted
+     * because a hedge won, and streams stopped by their receiver, are
+     * not counted as failures.
+     *
+     * @param target the backend chosen by {@link #route(PromptClass)}
+     * @param request the request to run
+     * @return the generation result
+     */
+    public GenerationResult call(final RecipeGenerator target,
+                                 final Function<RecipeGenerator,
+                                     GenerationResult> request) {
+        final ModelStats model = stats(target);
+        final long start = clock.getAsLong();
+        try {
+            final GenerationResult result = request.apply(target);
+            model.success(clock.getAsLong() - start, result);
+            return result;
+        } catch (RuntimeException | Error ex) {
+            if (!Thread.currentThread().isInterrupted()
+                && !(ex instanceof StreamCancelledException)) {
+                model.failure();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns a snapshot of the routing counters and per-model
+     * statistics.
+     *
+     * @return map of counter name to value
+     */
+    public Map<String, Object> stats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("primaryModel", primary.modelName());
+        stats.put("fastModel", fast == null ? null : fast.modelName());
+        stats.put("primaryBreached", fast != null
+            && breached(stats(primary), true));
+        stats.put("classRouted", classRouted.sum());
+        stats.put("breachRouted", breachRouted.get() - probes.sum());
+        stats.put("probes", probes.sum());
+        final Map<String, Object> perModel = new LinkedHashMap<>();
+        models.forEach((name, model) -> perModel.put(name, model.stats()));
+        stats.put("models", perModel);
+        return stats;
+    }
+
+    private ModelStats stats(final RecipeGenerator target) {
+        return models.computeIfAbsent(target.modelName(),
+            name -> new ModelStats(windowSize));
+    }
+
+    /**
+     * Tells whether a model's recent calls breach the error budget, or
+     * (if {@code checkLatency}) the latency SLO.
+     */
+    private boolean breached(final ModelStats model,
+                             final boolean checkLatency) {
+        if (model.outcomes() < minSamples) {
+            return false;
+        }
+        if (model.errorPercent() > maxErrorPercent) {
+            return true;
+        }
+        return checkLatency
+            && model.latencies.size() >= minSamples
+            && model.latencies.percentile(sloPercentile) > sloNanos;
+    }
+
+    /**
+     * Recent latencies and outcomes of one model, and its totals.
+     */
+    private static final class ModelStats {
+
+        /** Latencies of recent successful calls. */
+        private final LatencyWindow latencies;
+
+        /** Whether each recent call failed, used as a ring. */
+        private final boolean[] failed;
+
+        /** Guards the outcome ring. */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /** Next ring position to overwrite. */
+        private int next;
+
+        /** Number of outcomes in the ring. */
+        private int recorded;
+
+        /** Failed calls in the ring. */
+        private int failures;
+
+        /** Latencies of all successful calls. */
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        /** Total calls. */
+        private final LongAdder calls = new LongAdder();
+
+        /** Total failed calls. */
+        private final LongAdder errors = new LongAdder();
+
+        /** Total prompt tokens. */
+        private final LongAdder promptTokens = new LongAdder();
+
+        /** Total output tokens. */
+        private final LongAdder outputTokens = new LongAdder();
+
+        ModelStats(final int size) {
+            this.latencies = new LatencyWindow(size);
+            this.failed = new boolean[size];
+        }
+
+        void success(final long nanos, final GenerationResult result) {
+            calls.increment();
+            latencies.record(nanos);
+            histogram.record(nanos);
+            promptTokens.add(result.getPromptTokens());
+            outputTokens.add(result.getOutputTokens());
+            recordOutcome(false);
+        }
+
+        void failure() {
+            calls.increment();
+            errors.increment();
+            recordOutcome(true);
+        }
+
+        int outcomes() {
+            lock.lock();
+            try {
+                return recorded;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        double errorPercent() {
+            lock.lock();
+            try {
+                return recorded == 0 ? 0d : failures * PERCENT / recorded;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Map<String, Object> stats() {
+            final Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("calls", calls.sum());
+            stats.put("errors", errors.sum());
+            stats.put("recentErrorRatePercent", errorPercent());
+            stats.put("p50Ms", percentileMs(50));
+            stats.put("p95Ms", percentileMs(95));
+            stats.put("p99Ms", percentileMs(99));
+            stats.put("latencyHistogramMs", histogram.toMap());
+            stats.put("promptTokens", promptTokens.sum());
+            stats.put("outputTokens", outputTokens.sum());
+            return stats;
+        }
+
+        private Double percentileMs(final double percentile) {
+            final long nanos = latencies.percentile(percentile);
+            return nanos < 0 ? null : nanos / NANOS_PER_MILLI;
+        }
+
+        private void recordOutcome(final boolean failure) {
+            lock.lock();
+            try {
+                if (recorded == failed.length) {
+                    failures -= failed[next] ? 1 : 0;
+                } else {
+                    recorded++;
+                }
+                failed[next] = failure;
+                failures += failure ? 1 : 0;
+                next = (next + 1) % failed.length;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
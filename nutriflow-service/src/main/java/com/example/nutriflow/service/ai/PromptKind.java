@@ -0,0 +1,36 @@
+package com.example.nutriflow.service.ai;
+
+import com.example.nutriflow.service.ai.ModelRouter.PromptClass;
+
+/**
+ * What a generation was requested for, as reported in usage metrics.
+ * Each kind maps to the {@link PromptClass} that routes its
+ * single-recipe prompts; recipe arrays are always routed as
+ * {@link PromptClass#BATCH}.
+ */
+public enum PromptKind {
+    /** A recipe around a given ingredient. */
+    INGREDIENT(PromptClass.SIMPLE),
+    /** A general recipe recommendation. */
+    RECOMMENDATION(PromptClass.SIMPLE),
+    /** A recipe for a user's profile and pantry. */
+    USER(PromptClass.PERSONALIZED),
+    /** Recipes for the slots of a user's meal plan. */
+    PLAN(PromptClass.PERSONALIZED);
+
+    /** Routing class of single-recipe prompts of this kind. */
+    private final PromptClass promptClass;
+
+    PromptKind(final PromptClass promptClassValue) {
+        this.promptClass = promptClassValue;
+    }
+
+    /**
+     * Returns the routing class of single-recipe prompts of this kind.
+     *
+     * @return the prompt class
+     */
+    public PromptClass promptClass() {
+        return promptClass;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.nutriflow.service.ai;
+
+import java.util.function.Consumer;
+
+/**
+ * Backend that turns a recipe prompt into schema-conformant recipe
+ * JSON. Exactly one implementation is active, chosen by the
+ * {@code nutriflow.ai.generator} property: {@code gemini} (the default)
+ * calls the Gemini API, {@code local} synthesizes recipes from the
+ * catalog without network access, for load tests and benchmarks.
+ * Implementations must be thread-safe; caching, coalescing, rate
+ * limiting and circuit breaking are applied by the caller.
+ */
+public interface RecipeGenerator {
+
+    /**
+     * Returns the name of the model behind this backend, used to keep
+     * cached responses of different models apart.
+     *
+     * @return the model name
+     */
+    String modelName();
+
+    /**
+     * Returns a backend that sends the same requests to another model
+     * of the same provider, for the {@link ModelRouter}. Backends that
+     * serve a single model return themselves.
+     *
+     * @param otherModel the model name
+     * @return a backend for that model
+     */
+    default RecipeGenerator withModel(final String otherModel) {
+        return this;
+    }
+
+    /**
+     * Generates one recipe.
+     *
+     * @param prompt the prompt
+     * @return a JSON object with the recipe fields
+     */
+    GenerationResult generateRecipe(String prompt);
+
+    /**
+     * Generates several recipes in one call.
+     *
+     * @param prompt the prompt
+     * @param count the number of recipes requested
+     * @return a JSON array of recipe objects (ideally {@code count})
+     */
+    GenerationResult generateRecipes(String prompt, int count);
+
+    /**
+     * Generates one recipe, handing the response text to
+     * {@code onText} piece by piece as it arrives. The pieces joined
+     * together are the text of the returned result. Backends without
+     * streaming hand over the whole text at once.
+     *
+     * @param prompt the prompt
+     * @param onText receives each new piece of the response text
+     * @return a JSON object with the recipe fields
+     */
+    default GenerationResult streamRecipe(final String prompt,
+                                          final Consumer<String> onText) {
+        final GenerationResult result = generateRecipe(prompt);
+        onText.accept(result.getText());
+        return result;
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.nutriflow.service.ai;
+
+import com.example.nutriflow.model.Recipe;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-pass decoder of model recipe JSON into {@link Recipe} objects.
+ * Fields are read straight from a streaming {@link JsonParser} instead
+ * of an intermediate {@code JsonNode} tree. The {@code ingredients} and
+ * {@code nutrition} sub-documents are stored on the recipe as JSON text;
+ * they are copied as slices of the input bytes rather than re-serialized.
+ * Instances are stateless and thread-safe.
+ */
+public final class RecipeJsonDecoder {
+
+    /** Text stored for missing or null ingredients. */
+    private static final String EMPTY_JSON = "{}";
+
+    /** Factory of the streaming parsers. */
+    private final JsonFactory jsonFactory;
+
+    /**
+     * Creates a decoder.
+     *
+     * @param factory factory of the streaming parsers, usually the one
+     *                of the application's {@code ObjectMapper}
+     */
+    public RecipeJsonDecoder(final JsonFactory factory) {
+        this.jsonFactory = factory;
+    }
+
+    /**
+     * Decodes a single recipe object. Input whose root is not an object
+     * gives a recipe without fields.
+     *
+     * @param json the recipe JSON
+     * @return the decoded recipe
+     * @throws IOException if the input is not valid JSON
+     */
+    public Recipe decodeRecipe(final String json) throws IOException {
+        final byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        try (JsonParser parser = jsonFactory.createParser(bytes)) {
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                return readRecipe(parser, bytes);
+            }
+            parser.skipChildren();
+            return emptyRecipe();
+        }
+    }
+
+    /**
+     * Decodes an array of recipe objects, skipping elements that are not
+     * objects or have no title. Reading stops once {@code limit} recipes
+     * have been decoded.
+     *
+     * @param json the recipe array JSON
+     * @param limit maximum number of recipes returned
+     * @return the decoded recipes in array order
+     * @throws IOException if the input is not valid JSON
+     * @throws IllegalStateException if the root is not an array
+     */
+    public List<Recipe> decodeRecipes(final String json, final int limit)
+            throws IOException {
+        final byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        try (JsonParser parser = jsonFactory.createParser(bytes)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalStateException(
+                    "Recipe list response is not an array");
+            }
+            final List<Recipe> recipes = new ArrayList<>();
+            JsonToken token;
+            while (recipes.size() < limit
+                && (token = parser.nextToken()) != JsonToken.END_ARRAY
+                && token != null) {
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                final Recipe recipe = readRecipe(parser, bytes);
+                if (recipe.getTitle() != null) {
+                    recipes.add(recipe);
+                }
+            }
+            return recipes;
+        }
+    }
+
+    /**
+     * Reads the fields of the object whose START_OBJECT is the current
+     * token, leaving the parser on its END_OBJECT.
+     */
+    private static Recipe readRecipe(final JsonParser parser,
+                                     final byte[] bytes) throws IOException {
+        final Recipe recipe = emptyRecipe();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.currentName();
+            final JsonToken value = parser.nextToken();
+            switch (field) {
+                case "title":
+                    recipe.setTitle(readText(parser, value));
+                    break;
+                case "cookTime":
+                    recipe.setCookTime(readInt(parser, value));
+                    break;
+                case "cuisines":
+                    recipe.setCuisines(readStringArray(parser, value));
+                    break;
+                case "tags":
+                    recipe.setTags(readStringArray(parser, value));
+                    break;
+                case "ingredients":
+                    recipe.setIngredients(value == JsonToken.VALUE_NULL
+                        ? EMPTY_JSON : readRaw(parser, value, bytes));
+                    break;
+                case "instructions":
+                    recipe.setInstructions(readText(parser, value));
+                    break;
+                case "nutrition":
+                    recipe.setNutrition(value == JsonToken.VALUE_NULL
+                        ? null : readRaw(parser, value, bytes));
+                    break;
+                case "calories":
+                    recipe.setCalories(readDecimal(parser, value));
+                    break;
+                case "carbohydrates":
+                    recipe.setCarbohydrates(readDecimal(parser, value));
+                    break;
+                case "fat":
+                    recipe.setFat(readDecimal(parser, value));
+                    break;
+                case "fiber":
+                    recipe.setFiber(readDecimal(parser, value));
+                    break;
+                case "protein":
+                    recipe.setProtein(readDecimal(parser, value));
+                    break;
+                case "popularityScore":
+                    recipe.setPopularityScore(readInt(parser, value));
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        return recipe;
+    }
+
+    private static Recipe emptyRecipe() {
+        final Recipe recipe = new Recipe();
+        recipe.setIngredients(EMPTY_JSON);
+        return recipe;
+    }
+
+    /**
+     * Text of a scalar value; containers read as empty text, as
+     * {@code JsonNode.asText()} does.
+     */
+    private static String readText(final JsonParser parser,
+                                   final JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (value.isStructStart()) {
+            parser.skipChildren();
+            return "";
+        }
+        return parser.getText();
+    }
+
+    private static Integer readInt(final JsonParser parser,
+                                   final JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (value.isStructStart()) {
+            parser.skipChildren();
+            return 0;
+        }
+        return parser.getValueAsInt();
+    }
+
+    private static BigDecimal readDecimal(final JsonParser parser,
+                                          final JsonToken value)
+            throws IOException {
+        if (value.isNumeric()) {
+            return parser.getDecimalValue();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private static String[] readStringArray(final JsonParser parser,
+                                            final JsonToken value)
+            throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        final List<String> values = new ArrayList<>();
+        JsonToken item;
+        while ((item = parser.nextToken()) != JsonToken.END_ARRAY) {
+            values.add(item == JsonToken.VALUE_NULL
+                ? "null" : readText(parser, item));
+        }
+        return values.toArray(String[]::new);
+    }
+
+    /**
+     * JSON text of the current value. Objects and arrays are copied
+     * from the input bytes between their start and end tokens.
+     */
+    private static String readRaw(final JsonParser parser,
+                                  final JsonToken value,
+                                  final byte[] bytes) throws IOException {
+        if (value.isStructStart()) {
+            final int start =
+                (int) parser.currentTokenLocation().getByteOffset();
+            parser.skipChildren();
+            final int end = (int) parser.currentLocation().getByteOffset();
+            return new String(bytes, start, end - start,
+                StandardCharsets.UTF_8);
+        }
+        if (value == JsonToken.VALUE_STRING) {
+            return '"' + new String(JsonStringEncoder.getInstance()
+                .quoteAsString(parser.getText())) + '"';
+        }
+        return parser.getText();
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.nutriflow.service.ai;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Collapses concurrent identical requests into a single execution.
+ * The first caller for a key runs the work; callers arriving with the
+ * same key while it is still running wait on the same result instead of
+ * starting their own. Once the work finishes the key is released, so
+ * later callers trigger a fresh execution. Waiting callers give up
+ * after a maximum wait, or when their thread is interrupted.
+ */
+@Component
+public class RequestCoalescer {
+
+    /** Seconds a caller that gave up waiting is asked to wait. */
+    private static final long RETRY_AFTER_SECONDS = 1;
+
+    /** Longest a caller waits for an execution in flight, in ms. */
+    private final long maxWaitMs;
+
+    /** Results of the executions currently in flight, by key. */
+    private final Map<String, CompletableFuture<Object>> inFlight =
+        new ConcurrentHashMap<>();
+
+    /** Number of calls that ran the work themselves. */
+    private final LongAdder leaders = new LongAdder();
+
+    /** Number of calls that joined an execution already in flight. */
+    private final LongAdder followers = new LongAdder();
+
+    /** Number of joined calls that gave up waiting. */
+    private final LongAdder timedOut = new LongAdder();
+
+    /**
+     * Creates the coalescer.
+     *
+     * @param maxWaitMsValue longest a caller waits for an identical
+     *                       execution in flight, in milliseconds
+     */
+    @Autowired
+    public RequestCoalescer(
+            final @Value("${nutriflow.ai.coalescing.max-wait-ms:60000}")
+                long maxWaitMsValue) {
+        this.maxWaitMs = Math.max(1, maxWaitMsValue);
+    }
+
+    /**
+     * Runs the work for the given key, or waits for the execution of the
+     * same key that is already in flight.
+     * Keys should be namespaced by the kind of result they produce,
+     * since callers sharing a key share the returned object. Use
+     * {@link #execute(String, Supplier, UnaryOperator)} for mutable
+     * results.
+     *
+     * @param key identifies identical requests
+     * @param work produces the result
+     * @param <V> the result type
+     * @return the result of the (possibly shared) execution
+     */
+    public <V> V execute(final String key, final Supplier<V> work) {
+        return execute(key, work, UnaryOperator.identity());
+    }
+
+    /**
+     * Runs the work for the given key, or waits for the execution of the
+     * same key that is already in flight and returns a copy of its
+     * result, so that no two callers share a mutable result.
+     *
+     * @param key identifies identical requests
+     * @param work produces the result
+     * @param copy copies the result for each joined caller
+     * @param <V> the result type
+     * @return the result of the execution, or a copy of it
+     * @throws ModelOverloadedException if the execution in flight did
+     *         not finish within the maximum wait
+     * @throws IllegalStateException if interrupted while waiting
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V execute(final String key, final Supplier<V> work,
+                         final UnaryOperator<V> copy) {
+        final CompletableFuture<Object> mine = new CompletableFuture<>();
+        final CompletableFuture<Object> existing =
+            inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            followers.increment();
+            final V shared = (V) await(existing);
+            return shared == null ? null : copy.apply(shared);
+        }
+
+        leaders.increment();
+        try {
+            final V value = work.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the coalescing counters.
+     *
+     * @return map of counter name to value
+     */
+    public Map<String, Object> stats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", inFlight.size());
+        stats.put("executions", leaders.sum());
+        stats.put("coalesced", followers.sum());
+        stats.put("timedOut", timedOut.sum());
+        return stats;
+    }
+
+    /**
+     * Returns the number of calls that joined an execution in flight.
+     *
+     * @return coalesced call count
+     */
+    public long getCoalesced() {
+        return followers.sum();
+    }
+
+    private Object await(final CompletableFuture<Object> future) {
+        try {
+            return future.get(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            timedOut.increment();
+            throw new ModelOverloadedException(
+                "Timed out waiting for an identical request",
+                RETRY_AFTER_SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                "Interrupted while waiting for an identical request", ex);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
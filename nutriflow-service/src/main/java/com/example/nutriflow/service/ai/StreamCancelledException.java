@@ -0,0 +1,24 @@
+package com.example.nutriflow.service.ai;
+
+/**
+ * Thrown from the text callback of a streamed model call to stop it
+ * because the receiver of the stream went away or the request was
+ * cancelled. It says nothing about the model, so the
+ * {@link ModelCircuitBreaker}, {@link ModelRouter} and
+ * {@link AIUsageMetrics} do not count it as a failed call.
+ */
+public class StreamCancelledException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates the exception.
+     *
+     * @param message description of why the stream stopped
+     * @param cause the failure of the receiver, or null
+     */
+    public StreamCancelledException(final String message,
+                                    final Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * Supporting components for the AI recipe generation path, such as
+ * caching and request coordination around the language model call.
+ */
+package com.example.nutriflow.service.ai;
@@ -0,0 +1,98 @@
+package com.example.nutriflow.service.repository;
+
+import com.example.nutriflow.model.ClientUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository interface for ClientUsage entity.
+ * Provides time-window queries over aggregated API usage.
+ */
+@Repository
+public interface ClientUsageRepository
+        extends JpaRepository<ClientUsage, Long> {
+
+    /**
+     * Sum the usage rows whose window starts in a range per time bucket,
+     * client, route and status, so only one row per group leaves the
+     * database.
+     *
+     * @param clientId the client, or null for all
+     * @param route the route, or null for all
+     * @param from inclusive start of the range
+     * @param to exclusive end of the range
+     * @param bucketSeconds length of a time bucket in seconds
+     * @return one row per bucket, client, route and status
+     */
+    @Query("SELECT CAST(EXTRACT(EPOCH FROM u.windowStart) AS Long) "
+            + "/ :bucketSeconds AS bucket, "
+            + "u.clientId AS clientId, u.route AS route, "
+            + "u.status AS status, SUM(u.requestCount) AS requestCount, "
+            + "MAX(u.endUserCount) AS endUserCount, "
+            + "SUM(u.totalLatencyMs) AS totalLatencyMs, "
+            + "MAX(u.maxLatencyMs) AS maxLatencyMs "
+            + "FROM ClientUsage u "
+            + "WHERE u.windowStart >= :from AND u.windowStart < :to "
+            + "AND (:clientId IS NULL OR u.clientId = :clientId) "
+            + "AND (:route IS NULL OR u.route = :route) "
+            + "GROUP BY bucket, u.clientId, u.route, u.status")
+    List<BucketTotals> sumPerBucket(
+            @Param("clientId") String clientId,
+            @Param("route") String route,
+            @Param("from") LocalDateTime from,
+            @Param("to") LocalDateTime to,
+            @Param("bucketSeconds") long bucketSeconds);
+
+    /**
+     * Totals of the usage rows of one time bucket, client, route and
+     * status.
+     */
+    interface BucketTotals {
+
+        /**
+         * @return the bucket, as seconds since the epoch divided by the
+         *         bucket length
+         */
+        Long getBucket();
+
+        /**
+         * @return the client
+         */
+        String getClientId();
+
+        /**
+         * @return the HTTP method and route pattern
+         */
+        String getRoute();
+
+        /**
+         * @return the response status
+         */
+        Integer getStatus();
+
+        /**
+         * @return number of requests
+         */
+        Long getRequestCount();
+
+        /**
+         * @return most distinct end users of a single window
+         */
+        Integer getEndUserCount();
+
+        /**
+         * @return sum of the latencies in milliseconds
+         */
+        Long getTotalLatencyMs();
+
+        /**
+         * @return longest latency in milliseconds
+         */
+        Long getMaxLatencyMs();
+    }
+}
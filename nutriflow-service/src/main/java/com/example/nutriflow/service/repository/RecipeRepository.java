@@ -4,8 +4,10 @@ import com.example.nutriflow.model.Recipe;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -24,4 +26,14 @@ public interface RecipeRepository extends JpaRepository<Recipe, Integer> {
      */
     @Query("SELECT r FROM Recipe r ORDER BY r.popularityScore DESC")
     List<Recipe> findPopularRecipes(Pageable pageable);
+
+    /**
+     * Find which of the given canonical hashes are already stored.
+     *
+     * @param hashes canonical hashes of generated recipes
+     * @return the hashes that belong to a stored recipe
+     */
+    @Query("SELECT r.canonicalHash FROM Recipe r "
+            + "WHERE r.canonicalHash IN :hashes")
+    List<String> findStoredHashes(@Param("hashes") Collection<String> hashes);
 }
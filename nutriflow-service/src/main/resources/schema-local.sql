@@ -68,6 +68,7 @@ CREATE TABLE nutriflow.recipes (
     potassium DECIMAL(6,2),
     sodium DECIMAL(6,2),
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    canonical_hash VARCHAR(64) UNIQUE,
     PRIMARY KEY (recipe_id),
     FOREIGN KEY (user_id) REFERENCES nutriflow.users(user_id) ON DELETE SET NULL
 );
@@ -93,3 +94,16 @@ CREATE TABLE nutriflow.favorite_recipes (
     FOREIGN KEY (user_id) REFERENCES nutriflow.users(user_id) ON DELETE CASCADE,
     FOREIGN KEY (recipe_id) REFERENCES nutriflow.recipes(recipe_id) ON DELETE CASCADE
 );
+
+CREATE TABLE nutriflow.client_usage (
+    usage_id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    window_start TIMESTAMP NOT NULL,
+    client_id VARCHAR(255) NOT NULL,
+    route VARCHAR(255) NOT NULL,
+    status INT NOT NULL,
+    request_count BIGINT NOT NULL,
+    end_user_count INT NOT NULL,
+    total_latency_ms BIGINT NOT NULL,
+    max_latency_ms BIGINT NOT NULL,
+    PRIMARY KEY (usage_id)
+);
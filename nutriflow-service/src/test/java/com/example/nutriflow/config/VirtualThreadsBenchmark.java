@@ -0,0 +1,117 @@
+package com.example.nutriflow.config;
+
+import com.example.nutriflow.model.Recipe;
+import com.example.nutriflow.service.ai.GenerationResult;
+import com.example.nutriflow.service.ai.LocalRecipeGenerator;
+import com.example.nutriflow.service.repository.RecipeRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * JMH comparison of platform and virtual threads serving bursts of
+ * requests that block on a slow model, stubbed by
+ * {@link LocalRecipeGenerator} with a fixed latency. The platform
+ * variant is a pool sized like Tomcat's default worker pool; the
+ * virtual variant starts a virtual thread per request, as the
+ * {@code nutriflow.threads.virtual} mode does. Throughput is in bursts
+ * per second, so multiply by {@code requests} for requests per second.
+ * The virtual variant needs Java 21 (build with {@code -Pjava21}); run
+ * as {@link com.example.nutriflow.service.ai.RecipeJsonDecoderBenchmark}
+ * is (see the README).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VirtualThreadsBenchmark {
+
+    /** Thread model: {@code platform} or {@code virtual}. */
+    @Param({"platform", "virtual"})
+    private String threads;
+
+    /** Platform threads, as Tomcat's default {@code max-threads}. */
+    @Param({"200"})
+    private int platformThreads;
+
+    /** Concurrent requests per burst. */
+    @Param({"1000"})
+    private int requests;
+
+    /** Latency of the stubbed model, in milliseconds. */
+    @Param({"50"})
+    private long modelLatencyMs;
+
+    private ExecutorService executor;
+
+    private LocalRecipeGenerator model;
+
+    @Setup
+    public void setUp() {
+        executor = "virtual".equals(threads)
+            ? VirtualThreads.newThreadPerTaskExecutor("bench-vt-")
+            : Executors.newFixedThreadPool(platformThreads);
+        Recipe recipe = new Recipe();
+        recipe.setTitle("Benchmark Stew");
+        RecipeRepository repository = mock(RecipeRepository.class);
+        when(repository.findPopularRecipes(any())).thenReturn(List.of(recipe));
+        model = new LocalRecipeGenerator(repository, new ObjectMapper(), modelLatencyMs,
+            LocalRecipeGenerator.LatencyDistribution.FIXED, 0, 0, 1, 42);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Submits one burst of requests and waits for all of them.
+     *
+     * @return total output tokens, so the work is not optimized away
+     */
+    @Benchmark
+    public long burst() throws Exception {
+        List<Future<GenerationResult>> results = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            String prompt = "Generate a delicious recipe " + i;
+            results.add(executor.submit(() -> model.generateRecipe(prompt)));
+        }
+        long tokens = 0;
+        for (Future<GenerationResult> result : results) {
+            tokens += result.get().getOutputTokens();
+        }
+        return tokens;
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(VirtualThreadsBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
@@ -1,31 +1,64 @@
 package com.example.nutriflow.controller;
 
+import com.example.nutriflow.config.GenerationExecutorConfig;
 import com.example.nutriflow.model.Recipe;
 import com.example.nutriflow.service.AIRecipeService;
+import com.example.nutriflow.service.RecipePrefetcher;
+import com.example.nutriflow.service.RecipeStreamListener;
+import com.example.nutriflow.service.UsageAnalytics;
+import com.example.nutriflow.service.ai.ModelOverloadedException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.mock.web.MockAsyncContext;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 
 @WebMvcTest(controllers = AIRecipeController.class)
+@Import(GenerationExecutorConfig.class)
 class AIRecipeControllerTest {
 
     @Autowired
     private MockMvc mockMvc;
 
+    @MockBean
+    private UsageAnalytics usageAnalytics;
+
     @MockBean
     private AIRecipeService aiRecipeService;
 
+    @MockBean
+    private RecipePrefetcher prefetcher;
+
     @Test
     @DisplayName("GET ingredient endpoint returns recipe from service")
     void getAIRecipe_ok() throws Exception {
@@ -36,7 +69,7 @@ class AIRecipeControllerTest {
         Mockito.when(aiRecipeService.getAIRecipe(eq("milk")))
                 .thenReturn(recipe);
 
-        mockMvc.perform(get("/api/ai/recipes/ingredient/milk"))
+        performAsync(get("/api/ai/recipes/ingredient/milk"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.recipeId").value(7))
                 .andExpect(jsonPath("$.title").value("Milkshake"));
@@ -48,7 +81,7 @@ class AIRecipeControllerTest {
         Mockito.when(aiRecipeService.getAIRecipe("milk"))
                 .thenThrow(new IllegalStateException("LLM down"));
 
-        mockMvc.perform(get("/api/ai/recipes/ingredient/milk"))
+        performAsync(get("/api/ai/recipes/ingredient/milk"))
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.error").value(containsString("LLM down")));
     }
@@ -63,7 +96,7 @@ class AIRecipeControllerTest {
         Mockito.when(aiRecipeService.getAIRecommendedRecipe())
                 .thenReturn(recipe);
 
-        mockMvc.perform(get("/api/ai/recipes/recommendation"))
+        performAsync(get("/api/ai/recipes/recommendation"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.recipeId").value(12))
                 .andExpect(jsonPath("$.title").value("AI Recommendation"));
@@ -75,7 +108,7 @@ class AIRecipeControllerTest {
         Mockito.when(aiRecipeService.getAIRecommendedRecipe())
                 .thenThrow(new IllegalStateException("Model timeout"));
 
-        mockMvc.perform(get("/api/ai/recipes/recommendation"))
+        performAsync(get("/api/ai/recipes/recommendation"))
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.error").value(containsString("Model timeout")));
     }
@@ -90,7 +123,7 @@ class AIRecipeControllerTest {
         Mockito.when(aiRecipeService.getUserRecipe(7))
                 .thenReturn(recipe);
 
-        mockMvc.perform(get("/api/ai/recipes/user/7"))
+        performAsync(get("/api/ai/recipes/user/7"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.recipeId").value(12))
                 .andExpect(jsonPath("$.title").value("Jane Doe Special"));
@@ -102,8 +135,119 @@ class AIRecipeControllerTest {
         Mockito.when(aiRecipeService.getUserRecipe(7))
                 .thenThrow(new IllegalStateException("Model timeout"));
 
-        mockMvc.perform(get("/api/ai/recipes/user/7"))
+        performAsync(get("/api/ai/recipes/user/7"))
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.error").value(containsString("Model timeout")));
     }
+
+    @Test
+    @DisplayName("GET user endpoint returns 503 with Retry-After when model calls are shed")
+    void getUserRecipe_overloaded() throws Exception {
+        Mockito.when(aiRecipeService.getUserRecipe(3))
+                .thenThrow(new ModelOverloadedException("Model call queue is full", 4));
+
+        performAsync(get("/api/ai/recipes/user/3"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "4"))
+                .andExpect(jsonPath("$.error").value("Model call queue is full"));
+    }
+
+    @Test
+    @DisplayName("GET user stream endpoint sends title, ingredients, instructions and recipe events")
+    void streamUserRecipe_sendsEvents() throws Exception {
+        Recipe recipe = new Recipe();
+        recipe.setTitle("Lentil Soup");
+        CompletableFuture<Recipe> future = new CompletableFuture<>();
+        Mockito.when(aiRecipeService.streamUserRecipe(eq(7), any(RecipeStreamListener.class)))
+                .thenAnswer(inv -> {
+                    RecipeStreamListener listener = inv.getArgument(1);
+                    listener.onTitle("Lentil Soup");
+                    listener.onIngredients(new ObjectMapper().readTree("[{\"ingredient\":\"lentils\"}]"));
+                    listener.onInstructions("Simmer ");
+                    listener.onInstructions("for 20 minutes.");
+                    listener.onComplete(recipe);
+                    return future;
+                });
+
+        MvcResult result = mockMvc.perform(get("/api/ai/recipes/user/7/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        future.complete(recipe);
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("event:title")))
+                .andExpect(content().string(containsString("\"ingredient\":\"lentils\"")))
+                .andExpect(content().string(containsString("\"text\":\"for 20 minutes.\"")))
+                .andExpect(content().string(containsString("event:recipe")));
+        Mockito.verify(prefetcher).recordActivity(7);
+    }
+
+    @Test
+    @DisplayName("GET user stream endpoint ends with an error event when the model is overloaded")
+    void streamUserRecipe_overloaded() throws Exception {
+        Mockito.when(aiRecipeService.streamUserRecipe(eq(3), any(RecipeStreamListener.class)))
+                .thenReturn(CompletableFuture.failedFuture(
+                        new CompletionException(new ModelOverloadedException("Model call queue is full", 4))));
+
+        MvcResult result = mockMvc.perform(get("/api/ai/recipes/user/3/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(content().string(containsString("event:error")))
+                .andExpect(content().string(containsString("\"retryAfterSeconds\":4")));
+    }
+
+    @Test
+    @DisplayName("GET user stream endpoint answers 503 with an error event when no request thread is free")
+    void streamUserRecipe_rejected() throws Exception {
+        Mockito.when(aiRecipeService.streamUserRecipe(eq(4), any(RecipeStreamListener.class)))
+                .thenThrow(new TaskRejectedException("Executor is full"));
+
+        mockMvc.perform(get("/api/ai/recipes/user/4/stream"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "5"))
+                .andExpect(content().string(containsString("event:error")))
+                .andExpect(content().string(containsString("\"retryAfterSeconds\":5")));
+        Mockito.verifyNoInteractions(prefetcher);
+    }
+
+    @Test
+    @DisplayName("GET user endpoint answers 503 with Retry-After and interrupts generation on timeout")
+    void getUserRecipe_timesOut() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Mockito.when(aiRecipeService.getUserRecipe(9)).thenAnswer(inv -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return new Recipe();
+        });
+
+        MvcResult result = mockMvc.perform(get("/api/ai/recipes/user/9"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        started.await(5, TimeUnit.SECONDS);
+        MockAsyncContext context = (MockAsyncContext) result.getRequest().getAsyncContext();
+        for (AsyncListener listener : context.getListeners()) {
+            listener.onTimeout(new AsyncEvent(context));
+        }
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "5"))
+                .andExpect(jsonPath("$.error").value("AI request timed out"));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    private ResultActions performAsync(final MockHttpServletRequestBuilder builder) throws Exception {
+        MvcResult result = mockMvc.perform(builder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(result));
+    }
 }
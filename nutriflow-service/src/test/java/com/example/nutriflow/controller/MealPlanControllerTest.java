@@ -0,0 +1,155 @@
+package com.example.nutriflow.controller;
+
+import com.example.nutriflow.config.GenerationExecutorConfig;
+import com.example.nutriflow.model.enums.MealPlanMode;
+import com.example.nutriflow.service.MealPlanListener;
+import com.example.nutriflow.service.MealPlanService;
+import com.example.nutriflow.service.RecipePrefetcher;
+import com.example.nutriflow.service.UsageAnalytics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Web layer tests for {@link MealPlanController}.
+ * Uses MockMvc and mocks {@link MealPlanService}.
+ */
+@WebMvcTest(controllers = MealPlanController.class)
+@Import(GenerationExecutorConfig.class)
+class MealPlanControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private UsageAnalytics usageAnalytics;
+
+    @MockBean
+    private MealPlanService mealPlanService;
+
+    @MockBean
+    private RecipePrefetcher prefetcher;
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(mealPlanService.getDefaultMode())
+                .thenReturn(MealPlanMode.PARALLEL);
+    }
+
+    @Test
+    @DisplayName("POST /api/mealplan/generate/{id} → 200 with plan in the requested mode")
+    void generateWeeklyPlan_ok() throws Exception {
+        Mockito.when(mealPlanService.generateWeeklyPlan(5L, 2, MealPlanMode.BATCH))
+                .thenReturn(Map.of("days", List.of(Map.of("day", "Monday"))));
+
+        performAsync(post("/api/mealplan/generate/5")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"mealsPerDay\":2,\"mode\":\"batch\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.days[0].day").value("Monday"));
+    }
+
+    @Test
+    @DisplayName("POST /api/mealplan/generate/{id} with unknown mode → 400")
+    void generateWeeklyPlan_badMode() throws Exception {
+        performAsync(post("/api/mealplan/generate/5")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"mode\":\"fast\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value(containsString("mode")));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0", "-1", "11", "2.5", "\"three\""})
+    @DisplayName("POST /api/mealplan/generate/{id} with invalid mealsPerDay → 400")
+    void generateWeeklyPlan_badMealsPerDay(final String mealsPerDay) throws Exception {
+        performAsync(post("/api/mealplan/generate/5")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"mealsPerDay\":" + mealsPerDay + "}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value(containsString("mealsPerDay")));
+        Mockito.verifyNoInteractions(prefetcher);
+    }
+
+    @Test
+    @DisplayName("POST /api/mealplan/generate/{id}/stream with mealsPerDay 0 → 400")
+    void streamWeeklyPlan_badMealsPerDay() throws Exception {
+        mockMvc.perform(post("/api/mealplan/generate/5/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"mealsPerDay\":0}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(containsString("mealsPerDay")));
+    }
+
+    @Test
+    @DisplayName("POST /api/mealplan/generate/{id}/stream → meal, day and complete events")
+    void streamWeeklyPlan_sendsEvents() throws Exception {
+        Map<String, Object> meal = Map.of("title", "Oats");
+        Map<String, Object> day = Map.of("day", "Monday", "meals", List.of(meal));
+        Map<String, Object> plan = Map.of("days", List.of(day));
+        CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+        Mockito.when(mealPlanService.streamWeeklyPlan(eq(5L), eq(3),
+                        eq(MealPlanMode.PARALLEL), any(MealPlanListener.class)))
+                .thenAnswer(inv -> {
+                    MealPlanListener listener = inv.getArgument(3);
+                    listener.onMeal("Monday", 0, meal);
+                    listener.onDay(day);
+                    listener.onComplete(plan);
+                    return future;
+                });
+
+        MvcResult result = mockMvc.perform(post("/api/mealplan/generate/5/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        future.complete(plan);
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("event:meal")))
+                .andExpect(content().string(containsString("\"title\":\"Oats\"")))
+                .andExpect(content().string(containsString("event:day")))
+                .andExpect(content().string(containsString("event:complete")));
+    }
+
+    @Test
+    @DisplayName("POST /api/mealplan/generate/{id}/stream with unknown mode → 400")
+    void streamWeeklyPlan_badMode() throws Exception {
+        mockMvc.perform(post("/api/mealplan/generate/5/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"mode\":\"fast\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(containsString("event:error")));
+    }
+
+    private ResultActions performAsync(final MockHttpServletRequestBuilder builder) throws Exception {
+        MvcResult result = mockMvc.perform(builder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(result));
+    }
+}
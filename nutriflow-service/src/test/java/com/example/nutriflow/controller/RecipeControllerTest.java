@@ -2,7 +2,9 @@ package com.example.nutriflow.controller;
 
 import com.example.nutriflow.model.FavoriteRecipe;
 import com.example.nutriflow.model.Recipe;
+import com.example.nutriflow.service.RecipeIngredientIndex;
 import com.example.nutriflow.service.RecipeService;
+import com.example.nutriflow.service.UsageAnalytics;
 import java.util.List;
 import java.util.Optional;
 import org.junit.jupiter.api.DisplayName;
@@ -16,6 +18,8 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import static org.hamcrest.Matchers.*;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -29,6 +33,9 @@ class RecipeControllerTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @MockBean
+    private UsageAnalytics usageAnalytics;
+
     @MockBean
     private RecipeService recipeService;
 
@@ -57,6 +64,21 @@ class RecipeControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    @DisplayName("records client, end user, route and status of each request")
+    void getRecipeById_recordsUsage() throws Exception {
+        Mockito.when(recipeService.getRecipeById(anyInt()))
+                .thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/recipes/7")
+                        .header("X-Client-Id", "fitness-app")
+                        .header("X-End-User-Id", "u-1"))
+                .andExpect(status().isNotFound());
+
+        Mockito.verify(usageAnalytics).record(eq("fitness-app"), eq("u-1"),
+                eq("GET /api/recipes/{id}"), eq(404), anyLong());
+    }
+
     @Test
     @DisplayName(
         "GET /api/recipes/{id} → 200 empty result")
@@ -141,4 +163,28 @@ class RecipeControllerTest {
                 .andExpect(jsonPath("$.message").value("Favorite removed successfully"));
         Mockito.verify(recipeService).removeFavorite(7, 3);
     }
+
+    @Test
+    @DisplayName("GET /api/recipes/search → 200 ranked list")
+    void searchByIngredients_ok() throws Exception {
+        Recipe a = new Recipe();
+        a.setRecipeId(3);
+        a.setTitle("Spinach Omelette");
+        Mockito.when(recipeService.searchByIngredients(List.of("egg", "spinach"),
+                RecipeIngredientIndex.MatchMode.ALL))
+                .thenReturn(List.of(a));
+
+        mockMvc.perform(get("/api/recipes/search?ingredients=egg,spinach&match=all"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].title").value("Spinach Omelette"));
+    }
+
+    @Test
+    @DisplayName("GET /api/recipes/search with unknown match mode → 400")
+    void searchByIngredients_badMode() throws Exception {
+        mockMvc.perform(get("/api/recipes/search?ingredients=egg&match=some"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error", containsString("any")));
+    }
 }
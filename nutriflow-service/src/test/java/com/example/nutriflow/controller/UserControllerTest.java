@@ -11,6 +11,7 @@ import com.example.nutriflow.model.enums.BMICategory;
 import com.example.nutriflow.model.enums.CookingSkillLevel;
 import com.example.nutriflow.model.enums.SexType;
 import com.example.nutriflow.service.HealthStatisticsService;
+import com.example.nutriflow.service.UsageAnalytics;
 import com.example.nutriflow.service.UserService;
 import com.example.nutriflow.service.UserTargetService;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -39,6 +40,9 @@ public class UserControllerTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @MockBean
+    private UsageAnalytics usageAnalytics;
+
     @Autowired
     private ObjectMapper objectMapper;
 
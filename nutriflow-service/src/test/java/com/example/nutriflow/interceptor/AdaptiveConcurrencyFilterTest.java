@@ -0,0 +1,182 @@
+package com.example.nutriflow.interceptor;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link AdaptiveConcurrencyFilter}.
+ * Each route class gets a limit of one slot and no queue, so a slot
+ * still held makes the next request of that class shed.
+ */
+class AdaptiveConcurrencyFilterTest {
+
+    private AdaptiveConcurrencyLimit aiLimit;
+
+    private AdaptiveConcurrencyLimit crudLimit;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private AdaptiveConcurrencyFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        aiLimit = new AdaptiveConcurrencyLimit(1, 1, 1, 0, 0, 1.5);
+        crudLimit = new AdaptiveConcurrencyLimit(1, 1, 1, 0, 0, 1.5);
+        filter = new AdaptiveConcurrencyFilter(true,
+            List.of("/api/ai/recipes/", "/api/mealplan/"),
+            aiLimit, crudLimit, clock::get);
+    }
+
+    @Test
+    @DisplayName("classifies recipe generation and meal plans as AI routes")
+    void classify_byPathPrefix() {
+        assertEquals(AdaptiveConcurrencyFilter.RouteClass.AI,
+            filter.classify(get("/api/ai/recipes/user/1")));
+        assertEquals(AdaptiveConcurrencyFilter.RouteClass.AI,
+            filter.classify(get("/api/mealplan/generate/1")));
+        assertEquals(AdaptiveConcurrencyFilter.RouteClass.CRUD,
+            filter.classify(get("/api/ai/metrics")));
+        assertEquals(AdaptiveConcurrencyFilter.RouteClass.CRUD,
+            filter.classify(get("/api/recipes/popular")));
+    }
+
+    @Test
+    @DisplayName("frees the slot of a synchronous request when it returns")
+    void doFilter_releasesSynchronousRequest() throws Exception {
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        filter.doFilter(get("/api/recipes/1"), first, new MockFilterChain());
+        MockHttpServletResponse second = new MockHttpServletResponse();
+        filter.doFilter(get("/api/recipes/2"), second, new MockFilterChain());
+
+        assertEquals(200, first.getStatus());
+        assertEquals(200, second.getStatus());
+        assertEquals(2L, crudLimit.stats().get("admitted"));
+        assertEquals(0, crudLimit.stats().get("inFlight"));
+    }
+
+    @Test
+    @DisplayName("sheds AI requests with 503 while CRUD requests still pass")
+    void doFilter_shedsAiRequestsOnly() throws Exception {
+        MockHttpServletRequest pending = get("/api/ai/recipes/user/1");
+        pending.setAsyncSupported(true);
+        filter.doFilter(pending, new MockHttpServletResponse(),
+            (request, response) -> request.startAsync());
+
+        MockHttpServletResponse shed = new MockHttpServletResponse();
+        filter.doFilter(get("/api/ai/recipes/recommendation"), shed,
+            new MockFilterChain());
+        MockHttpServletResponse crud = new MockHttpServletResponse();
+        filter.doFilter(get("/api/recipes/popular"), crud,
+            new MockFilterChain());
+
+        assertEquals(503, shed.getStatus());
+        assertEquals(String.valueOf(
+            AdaptiveConcurrencyFilter.RETRY_AFTER_SECONDS),
+            shed.getHeader("Retry-After"));
+        assertTrue(shed.getContentAsString().contains("error"));
+        assertEquals(200, crud.getStatus());
+        assertEquals(1L, aiLimit.getShed());
+    }
+
+    @Test
+    @DisplayName("holds the slot of an async request until it completes")
+    void doFilter_releasesAsyncRequestOnCompletion() throws Exception {
+        MockHttpServletRequest request = get("/api/ai/recipes/user/1");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response,
+            (req, res) -> req.startAsync());
+        assertEquals(1, aiLimit.stats().get("inFlight"));
+
+        clock.addAndGet(25_000_000L);
+        MockAsyncContext context = (MockAsyncContext) request.getAsyncContext();
+        context.complete();
+
+        assertEquals(0, aiLimit.stats().get("inFlight"));
+        assertEquals(25d, (Double) aiLimit.stats().get("shortLatencyMs"));
+        assertEquals(0L, aiLimit.stats().get("dropped"));
+    }
+
+    @Test
+    @DisplayName("gives back the slot of an event stream once it has started, without a latency sample")
+    void doFilter_releasesStreamWhenStarted() throws Exception {
+        MockHttpServletRequest request = get("/api/ai/recipes/user/1/stream");
+        request.setAsyncSupported(true);
+        filter.doFilter(request, new MockHttpServletResponse(),
+            (req, res) -> req.startAsync());
+        assertEquals(0, aiLimit.stats().get("inFlight"));
+
+        MockHttpServletResponse next = new MockHttpServletResponse();
+        filter.doFilter(get("/api/mealplan/generate/1"), next,
+            new MockFilterChain());
+        Object latency = aiLimit.stats().get("shortLatencyMs");
+        clock.addAndGet(120_000_000_000L);
+        ((MockAsyncContext) request.getAsyncContext()).complete();
+
+        assertEquals(200, next.getStatus());
+        assertEquals(latency, aiLimit.stats().get("shortLatencyMs"));
+        assertEquals(0, aiLimit.stats().get("inFlight"));
+    }
+
+    @Test
+    @DisplayName("counts a timed-out async request as an overload signal")
+    void doFilter_dropsTimedOutAsyncRequest() throws Exception {
+        MockHttpServletRequest request = get("/api/ai/recipes/user/1");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response,
+            (req, res) -> req.startAsync());
+
+        MockAsyncContext context = (MockAsyncContext) request.getAsyncContext();
+        for (AsyncListener listener : context.getListeners()) {
+            listener.onTimeout(new AsyncEvent(context, request, response));
+        }
+        context.complete();
+
+        assertEquals(0, aiLimit.stats().get("inFlight"));
+        assertEquals(1L, aiLimit.stats().get("dropped"));
+    }
+
+    @Test
+    @DisplayName("counts a 503 response as an overload signal")
+    void doFilter_dropsUnavailableResponse() throws Exception {
+        filter.doFilter(get("/api/recipes/1"), new MockHttpServletResponse(),
+            (req, res) -> ((MockHttpServletResponse) res).setStatus(503));
+
+        assertEquals(1L, crudLimit.stats().get("dropped"));
+        assertEquals(0, crudLimit.stats().get("inFlight"));
+    }
+
+    @Test
+    @DisplayName("passes every request through when disabled")
+    void doFilter_disabled() throws Exception {
+        filter = new AdaptiveConcurrencyFilter(false, List.of("/api/ai/"),
+            aiLimit, crudLimit, clock::get);
+        MockHttpServletRequest pending = get("/api/recipes/1");
+        pending.setAsyncSupported(true);
+        filter.doFilter(pending, new MockHttpServletResponse(),
+            (request, response) -> request.startAsync());
+
+        MockHttpServletResponse next = new MockHttpServletResponse();
+        filter.doFilter(get("/api/recipes/2"), next, new MockFilterChain());
+
+        assertEquals(200, next.getStatus());
+        assertEquals(0L, crudLimit.stats().get("admitted"));
+    }
+
+    private static MockHttpServletRequest get(final String uri) {
+        return new MockHttpServletRequest("GET", uri);
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.nutriflow.interceptor;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link AdaptiveConcurrencyLimit}.
+ * Latency samples are passed in directly, in milliseconds converted to
+ * nanoseconds.
+ */
+class AdaptiveConcurrencyLimitTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    @DisplayName("grows while latency stays flat and requests fill the limit")
+    void release_growsWithFlatLatency() {
+        AdaptiveConcurrencyLimit limit =
+            new AdaptiveConcurrencyLimit(4, 1, 20, 0, 0, 1.5);
+
+        for (int round = 0; round < 20; round++) {
+            fillAndRelease(limit, 10 * MS);
+        }
+
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    @DisplayName("does not grow while far fewer requests run than allowed")
+    void release_keepsLimitWhenUnderused() {
+        AdaptiveConcurrencyLimit limit =
+            new AdaptiveConcurrencyLimit(10, 1, 100, 0, 0, 1.5);
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(limit.acquire());
+            limit.release(10 * MS);
+        }
+
+        assertEquals(10, limit.getLimit());
+    }
+
+    @Test
+    @DisplayName("shrinks once latency rises well past its long-term average")
+    void release_shrinksWhenLatencyRises() {
+        AdaptiveConcurrencyLimit limit =
+            new AdaptiveConcurrencyLimit(40, 2, 40, 0, 0, 1.5);
+        for (int i = 0; i < 100; i++) {
+            fillAndRelease(limit, 10 * MS);
+        }
+        assertEquals(40, limit.getLimit());
+
+        for (int round = 0; round < 10; round++) {
+            fillAndRelease(limit, 200 * MS);
+        }
+
+        assertTrue(limit.getLimit() < 20, "limit " + limit.getLimit());
+    }
+
+    @Test
+    @DisplayName("cuts the limit on overload signals but not below the minimum")
+    void releaseDropped_backsOff() {
+        AdaptiveConcurrencyLimit limit =
+            new AdaptiveConcurrencyLimit(10, 5, 20, 0, 0, 1.5);
+
+        assertTrue(limit.acquire());
+        limit.releaseDropped();
+        assertEquals(9, limit.getLimit());
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limit.acquire());
+            limit.releaseDropped();
+        }
+        assertEquals(5, limit.getLimit());
+        assertEquals(21L, limit.stats().get("dropped"));
+    }
+
+    @Test
+    @DisplayName("sheds at once when the limit is reached and nobody may queue")
+    void acquire_rejectsWithoutQueue() {
+        AdaptiveConcurrencyLimit limit =
+            new AdaptiveConcurrencyLimit(2, 1, 10, 0, 1_000, 1.5);
+
+        assertTrue(limit.acquire());
+        assertTrue(limit.acquire());
+        assertFalse(limit.acquire());
+
+        limit.releaseIgnored();
+        assertTrue(limit.acquire());
+        assertEquals(1L, limit.stats().get("rejected"));
+        assertEquals(1L, limit.getShed());
+    }
+
+    @Test
+    @DisplayName("sheds a queued request once it waits past the maximum")
+    void acquire_timesOutInQueue() {
+        AdaptiveConcurrencyLimit limit =
+            new AdaptiveConcurrencyLimit(1, 1, 10, 5, 50, 1.5);
+        assertTrue(limit.acquire());
+
+        long start = System.nanoTime();
+        assertFalse(limit.acquire());
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(waitedMs >= 40, "waited " + waitedMs + " ms");
+        assertEquals(1L, limit.stats().get("timedOut"));
+        assertEquals(0, limit.stats().get("queueDepth"));
+    }
+
+    @Test
+    @DisplayName("admits a queued request when a slot is freed")
+    void acquire_waitsForFreedSlot() throws Exception {
+        AdaptiveConcurrencyLimit limit =
+            new AdaptiveConcurrencyLimit(1, 1, 10, 5, 5_000, 1.5);
+        assertTrue(limit.acquire());
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> queued = pool.submit(limit::acquire);
+            waitUntilQueued(limit);
+
+            limit.releaseIgnored();
+
+            assertTrue(queued.get(5, TimeUnit.SECONDS));
+            assertEquals(1, limit.stats().get("inFlight"));
+            assertTrue((Double) limit.stats().get("maxQueueMs") > 0);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Takes every slot, then frees them all with the given latency. */
+    private static void fillAndRelease(final AdaptiveConcurrencyLimit limit,
+                                       final long latencyNanos) {
+        int taken = limit.getLimit();
+        for (int i = 0; i < taken; i++) {
+            assertTrue(limit.acquire());
+        }
+        for (int i = 0; i < taken; i++) {
+            limit.release(latencyNanos);
+        }
+    }
+
+    private static void waitUntilQueued(final AdaptiveConcurrencyLimit limit)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((Integer) limit.stats().get("queueDepth") == 0) {
+            assertTrue(System.nanoTime() < deadline, "request never queued");
+            Thread.sleep(5);
+        }
+    }
+}
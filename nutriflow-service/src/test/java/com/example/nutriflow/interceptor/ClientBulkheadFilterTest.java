@@ -0,0 +1,142 @@
+package com.example.nutriflow.interceptor;
+
+import com.example.nutriflow.service.ai.ClientContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ClientBulkheadFilter}.
+ * Every client gets one slot, no overflow and no queue, so a request
+ * still in progress makes the same client's next request rejected.
+ */
+class ClientBulkheadFilterTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private ClientBulkheadFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        filter = new ClientBulkheadFilter(true,
+            new ClientBulkheads(1, Map.of(), 0, 50, 0, 0, 10), clock::get);
+    }
+
+    @Test
+    @DisplayName("throttles a client with 429 while other clients pass")
+    void doFilter_throttlesBusyClient() throws Exception {
+        startAsync(request("fitness-app"));
+
+        MockHttpServletResponse throttled = new MockHttpServletResponse();
+        filter.doFilter(request("fitness-app"), throttled,
+            new MockFilterChain());
+        MockHttpServletResponse other = new MockHttpServletResponse();
+        filter.doFilter(request("web"), other, new MockFilterChain());
+
+        assertEquals(429, throttled.getStatus());
+        assertEquals(String.valueOf(ClientBulkheadFilter.RETRY_AFTER_SECONDS),
+            throttled.getHeader("Retry-After"));
+        assertEquals(200, other.getStatus());
+        assertEquals(1L, filter.stats("fitness-app").get("rejected"));
+    }
+
+    @Test
+    @DisplayName("holds an async request's slot until it completes")
+    void doFilter_releasesAsyncRequestOnCompletion() throws Exception {
+        MockHttpServletRequest pending = request("fitness-app");
+        startAsync(pending);
+        clock.addAndGet(2_000_000_000L);
+
+        ((MockAsyncContext) pending.getAsyncContext()).complete();
+
+        MockHttpServletResponse next = new MockHttpServletResponse();
+        filter.doFilter(request("fitness-app"), next, new MockFilterChain());
+        assertEquals(200, next.getStatus());
+        assertEquals(1000d, filter.stats("fitness-app").get("avgLatencyMs"));
+    }
+
+    @Test
+    @DisplayName("accounts requests without a client id as anonymous")
+    void doFilter_anonymousClient() throws Exception {
+        filter.doFilter(request(null), new MockHttpServletResponse(),
+            new MockFilterChain());
+
+        assertEquals(1L, filter.stats(" ").get("admitted"));
+        assertTrue(filter.stats("web").isEmpty());
+    }
+
+    @Test
+    @DisplayName("gives a started stream's slot back without a latency sample")
+    void doFilter_releasesStreamOnceStarted() throws Exception {
+        MockHttpServletRequest stream = new MockHttpServletRequest("POST",
+            "/api/mealplan/generate/1/stream");
+        stream.addHeader("X-Client-Id", "fitness-app");
+        startAsync(stream);
+        clock.addAndGet(2_000_000_000L);
+
+        MockHttpServletResponse next = new MockHttpServletResponse();
+        filter.doFilter(request("fitness-app"), next, new MockFilterChain());
+        ((MockAsyncContext) stream.getAsyncContext()).complete();
+
+        assertEquals(200, next.getStatus());
+        Map<String, Object> stats = filter.stats("fitness-app");
+        assertEquals(1L, stats.get("releasedEarly"));
+        assertEquals(0d, stats.get("avgLatencyMs"));
+    }
+
+    @Test
+    @DisplayName("gives anonymous callers their own quota and a bulkhead other clients cannot take")
+    void withAnonymous_reservesAnonymousQuota() {
+        ClientBulkheads bulkheads = new ClientBulkheads(1,
+            ClientBulkheadFilter.withAnonymous(Map.of(), 1, 3), 0, 50, 0, 0, 1);
+
+        assertNotNull(bulkheads.acquire("web"));
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(bulkheads.acquire(ClientContext.ANONYMOUS));
+        }
+
+        assertNull(bulkheads.acquire(ClientContext.ANONYMOUS));
+        assertEquals(3, bulkheads.stats(ClientContext.ANONYMOUS).get("quota"));
+        assertEquals(2d, ClientBulkheadFilter.withAnonymous(
+            Map.of("anonymous", 2d), 1, 3).get("anonymous"));
+    }
+
+    @Test
+    @DisplayName("passes every request through when disabled")
+    void doFilter_disabled() throws Exception {
+        filter = new ClientBulkheadFilter(false,
+            new ClientBulkheads(1, Map.of(), 0, 50, 0, 0, 10), clock::get);
+        startAsync(request("fitness-app"));
+
+        MockHttpServletResponse next = new MockHttpServletResponse();
+        filter.doFilter(request("fitness-app"), next, new MockFilterChain());
+
+        assertEquals(200, next.getStatus());
+        assertTrue(filter.stats("fitness-app").isEmpty());
+    }
+
+    private void startAsync(final MockHttpServletRequest request)
+            throws Exception {
+        request.setAsyncSupported(true);
+        filter.doFilter(request, new MockHttpServletResponse(),
+            (req, res) -> req.startAsync());
+    }
+
+    private static MockHttpServletRequest request(final String clientId) {
+        MockHttpServletRequest request =
+            new MockHttpServletRequest("GET", "/api/mealplan/generate/1");
+        if (clientId != null) {
+            request.addHeader("X-Client-Id", clientId);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.nutriflow.interceptor;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ClientBulkheads}.
+ */
+class ClientBulkheadsTest {
+
+    @Test
+    @DisplayName("rejects a client past its quota while other clients pass")
+    void acquire_isolatesClients() {
+        ClientBulkheads bulkheads =
+            new ClientBulkheads(2, Map.of(), 0, 50, 0, 0, 10);
+
+        assertNotNull(bulkheads.acquire("noisy"));
+        assertNotNull(bulkheads.acquire("noisy"));
+        assertNull(bulkheads.acquire("noisy"));
+
+        assertNotNull(bulkheads.acquire("quiet"));
+        assertEquals(1L, bulkheads.stats("noisy").get("rejected"));
+        assertEquals(0L, bulkheads.stats("quiet").get("rejected"));
+    }
+
+    @Test
+    @DisplayName("scales the quota by the client's weight")
+    void quotaOf_appliesWeights() {
+        ClientBulkheads bulkheads = new ClientBulkheads(4,
+            ClientBulkheads.parseWeights("fitness-app:2, web:0.5"),
+            0, 50, 0, 0, 10);
+
+        assertEquals(8, bulkheads.quotaOf("fitness-app"));
+        assertEquals(2, bulkheads.quotaOf("web"));
+        assertEquals(4, bulkheads.quotaOf("anonymous"));
+    }
+
+    @Test
+    @DisplayName("rejects malformed or non-positive weights")
+    void parseWeights_rejectsMalformed() {
+        assertTrue(ClientBulkheads.parseWeights(" ").isEmpty());
+        assertThrows(IllegalArgumentException.class,
+            () -> ClientBulkheads.parseWeights("web"));
+        assertThrows(IllegalArgumentException.class,
+            () -> ClientBulkheads.parseWeights("web:fast"));
+        assertThrows(IllegalArgumentException.class,
+            () -> ClientBulkheads.parseWeights("web:0"));
+    }
+
+    @Test
+    @DisplayName("lends a client at most its share of the overflow pool")
+    void acquire_capsOverflowPerClient() {
+        ClientBulkheads bulkheads =
+            new ClientBulkheads(1, Map.of(), 4, 50, 0, 0, 10);
+
+        assertNotNull(bulkheads.acquire("noisy"));
+        assertNotNull(bulkheads.acquire("noisy"));
+        assertNotNull(bulkheads.acquire("noisy"));
+        assertNull(bulkheads.acquire("noisy"));
+
+        assertNotNull(bulkheads.acquire("other-app"));
+        assertNotNull(bulkheads.acquire("other-app"));
+        assertEquals(2L, bulkheads.stats("noisy").get("borrowed"));
+        assertEquals(3, bulkheads.stats().get("overflowInUse"));
+    }
+
+    @Test
+    @DisplayName("returns overflow slots to the pool on release")
+    void release_returnsOverflowSlot() {
+        ClientBulkheads bulkheads =
+            new ClientBulkheads(1, Map.of(), 1, 100, 0, 0, 10);
+        bulkheads.acquire("web");
+        ClientBulkheads.Permit borrowed = bulkheads.acquire("web");
+        assertNotNull(borrowed);
+        assertEquals(1, bulkheads.stats().get("overflowInUse"));
+
+        borrowed.release(TimeUnit.MILLISECONDS.toNanos(300));
+
+        assertEquals(0, bulkheads.stats().get("overflowInUse"));
+        assertEquals(300d, bulkheads.stats("web").get("avgLatencyMs"));
+        @SuppressWarnings("unchecked")
+        Map<String, Long> histogram =
+            (Map<String, Long>) bulkheads.stats("web").get("latencyHistogram");
+        assertEquals(1L, histogram.get("le500"));
+    }
+
+    @Test
+    @DisplayName("admits a queued request once the client frees a slot")
+    void acquire_waitsInClientQueue() throws Exception {
+        ClientBulkheads bulkheads =
+            new ClientBulkheads(1, Map.of(), 0, 50, 5, 5_000, 10);
+        ClientBulkheads.Permit first = bulkheads.acquire("web");
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<ClientBulkheads.Permit> queued =
+                pool.submit(() -> bulkheads.acquire("web"));
+            waitUntilQueued(bulkheads, "web");
+
+            first.release(0);
+
+            assertNotNull(queued.get(5, TimeUnit.SECONDS));
+            assertEquals(2L, bulkheads.stats("web").get("admitted"));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("rejects a queued request once it waits past the maximum")
+    void acquire_timesOutInQueue() {
+        ClientBulkheads bulkheads =
+            new ClientBulkheads(1, Map.of(), 0, 50, 5, 30, 10);
+        assertNotNull(bulkheads.acquire("web"));
+
+        assertNull(bulkheads.acquire("web"));
+
+        assertEquals(1L, bulkheads.stats("web").get("timedOut"));
+        assertEquals(0, bulkheads.stats("web").get("queueDepth"));
+    }
+
+    @Test
+    @DisplayName("shares one bulkhead among clients beyond the maximum")
+    void acquire_foldsExtraClients() {
+        ClientBulkheads bulkheads =
+            new ClientBulkheads(1, Map.of(), 0, 50, 0, 0, 2);
+
+        bulkheads.acquire("a");
+        bulkheads.acquire("b");
+        assertNotNull(bulkheads.acquire("c"));
+        assertNull(bulkheads.acquire("d"));
+
+        assertTrue(bulkheads.stats("c").isEmpty());
+        assertEquals(1L, bulkheads.stats(ClientBulkheads.OTHER_CLIENTS)
+            .get("rejected"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> clients =
+            (Map<String, Object>) bulkheads.stats().get("clients");
+        assertEquals(ClientBulkheads.OTHER_CLIENTS,
+            clients.keySet().iterator().next());
+    }
+
+    @Test
+    @DisplayName("gives an idle client's place to a new one, never a configured client's")
+    void acquire_evictsIdleClients() {
+        ClientBulkheads bulkheads = new ClientBulkheads(1,
+            ClientBulkheads.parseWeights("web:1"), 0, 50, 0, 0, 2);
+
+        bulkheads.acquire("web");
+        ClientBulkheads.Permit idle = bulkheads.acquire("a");
+        bulkheads.acquire("b");
+        idle.release(0);
+        bulkheads.acquire("web");
+        assertNotNull(bulkheads.acquire("c"));
+
+        assertTrue(bulkheads.stats("a").isEmpty());
+        assertEquals(1L, bulkheads.stats("web").get("rejected"));
+        assertEquals(1, bulkheads.stats("c").get("inFlight"));
+        assertTrue(bulkheads.stats(ClientBulkheads.OTHER_CLIENTS).isEmpty());
+        assertNotNull(bulkheads.acquire("d"));
+        assertTrue(bulkheads.stats("d").isEmpty());
+        assertEquals(1L, bulkheads.stats().get("evicted"));
+    }
+
+    private static void waitUntilQueued(final ClientBulkheads bulkheads,
+                                        final String client)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((Integer) bulkheads.stats(client).get("queueDepth") == 0) {
+            assertTrue(System.nanoTime() < deadline, "request never queued");
+            Thread.sleep(5);
+        }
+    }
+}
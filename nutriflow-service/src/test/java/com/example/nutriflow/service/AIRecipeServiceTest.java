@@ -4,9 +4,22 @@ import com.example.nutriflow.model.PantryItem;
 import com.example.nutriflow.model.Recipe;
 import com.example.nutriflow.model.RecipeIngredient;
 import com.example.nutriflow.model.User;
-import com.example.nutriflow.service.repository.RecipeIngredientRepository;
 import com.example.nutriflow.service.repository.RecipeRepository;
 import com.example.nutriflow.model.enums.CookingSkillLevel;
+import com.example.nutriflow.service.ai.AIResponseCache;
+import com.example.nutriflow.service.ai.AIUsageMetrics;
+import com.example.nutriflow.service.ai.CircuitOpenException;
+import com.example.nutriflow.service.ai.ClientContext;
+import com.example.nutriflow.service.ai.GeminiRecipeGenerator;
+import com.example.nutriflow.service.ai.LocalRecipeGenerator;
+import com.example.nutriflow.service.ai.ModelCallHedger;
+import com.example.nutriflow.service.ai.ModelCallLimiter;
+import com.example.nutriflow.service.ai.ModelCircuitBreaker;
+import com.example.nutriflow.service.ai.ModelRouter;
+import com.example.nutriflow.service.ai.RecipeGenerator;
+import com.example.nutriflow.service.ai.ModelOverloadedException;
+import com.example.nutriflow.service.ai.RequestCoalescer;
+import com.example.nutriflow.service.ai.StreamCancelledException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
@@ -15,14 +28,29 @@ import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import com.google.genai.Client;
 import com.google.genai.Models;
+import com.google.genai.ResponseStream;
 import com.google.genai.types.GenerateContentConfig;
 import com.google.genai.types.GenerateContentResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -30,30 +58,55 @@ import static org.mockito.Mockito.*;
 class AIRecipeServiceTest {
 
     private RecipeRepository recipeRepository;
-    private RecipeIngredientRepository recipeIngredientRepository;
+    private RecipeIngredientIndex ingredientIndex;
     private AIRecipeService aiRecipeService;
     private UserService userService;
     private PantryService pantryService;
     private Client client;
     private Models models;
     private ObjectMapper objectMapper;
+    private RequestCoalescer coalescer;
+    private GeneratedRecipeWriter recipeWriter;
+    private ModelCallLimiter limiter;
+    private ModelCircuitBreaker breaker;
+    private FallbackRecipeProvider fallbackRecipes;
+    private PersonalizedRecipeCache personalCache;
+    private AIUsageMetrics usage;
 
     @BeforeEach
     void setUp() throws Exception {
         recipeRepository = mock(RecipeRepository.class);
-        recipeIngredientRepository = mock(RecipeIngredientRepository.class);
+        ingredientIndex = new RecipeIngredientIndex();
         userService = mock(UserService.class);
         pantryService = mock(PantryService.class);
         objectMapper = new ObjectMapper();
-        aiRecipeService = new AIRecipeService("test-api-key", "test-model", objectMapper);
         client = mock(Client.class);
         models = mock(Models.class);
+        GeminiRecipeGenerator generator = new GeminiRecipeGenerator("test-api-key", "test-model");
+        setField(generator, "client", client);
+        aiRecipeService = new AIRecipeService(router(generator, ""), objectMapper);
 
         injectDependency("recipeRepository", recipeRepository);
-        injectDependency("recipeIngredientRepository", recipeIngredientRepository);
+        injectDependency("ingredientIndex", ingredientIndex);
+        injectDependency("responseCache", new AIResponseCache(16, 600, AIResponseCache.EvictionPolicy.LRU));
+        coalescer = new RequestCoalescer(5_000);
+        recipeWriter = mock(GeneratedRecipeWriter.class);
+        injectDependency("recipeWriter", recipeWriter);
+        injectDependency("coalescer", coalescer);
+        limiter = new ModelCallLimiter(0, 1, 8, 100, 5_000);
+        injectDependency("limiter", limiter);
+        breaker = new ModelCircuitBreaker(20, 10, 50, 80, 20_000, 30_000, 2);
+        injectDependency("breaker", breaker);
+        injectDependency("hedger", new ModelCallHedger(false, 95, 500, 20, 200, 5, Runnable::run));
+        fallbackRecipes = mock(FallbackRecipeProvider.class);
+        injectDependency("fallbackRecipes", fallbackRecipes);
         injectDependency("userService", userService);
         injectDependency("pantryService", pantryService);
-        injectDependency("client", client);
+        injectDependency("promptCompactor", new PromptCompactor(25, 250));
+        personalCache = new PersonalizedRecipeCache(1, 600, 100);
+        injectDependency("personalCache", personalCache);
+        usage = new AIUsageMetrics(200, 600);
+        injectDependency("usage", usage);
         setField(client, "models", models);
     }
 
@@ -68,15 +121,15 @@ class AIRecipeServiceTest {
         ingredient.setRecipeId(8);
         ingredient.setIngredient("avocado");
 
-        when(recipeRepository.findAll()).thenReturn(List.of(storedRecipe));
-        when(recipeIngredientRepository.findByRecipeId(8)).thenReturn(List.of(ingredient));
+        ingredientIndex.index(List.of(ingredient));
+        when(recipeRepository.findById(8)).thenReturn(Optional.of(storedRecipe));
 
-        Recipe result = aiRecipeService.getAIRecipe("avocado");
+        Recipe result = aiRecipeService.getAIRecipe("Avocado");
 
         assertSame(storedRecipe, result);
-        verify(recipeRepository).findAll();
-        verify(recipeIngredientRepository).findByRecipeId(8);
-        verifyNoMoreInteractions(recipeRepository, recipeIngredientRepository);
+        verify(recipeRepository).findById(8);
+        verifyNoMoreInteractions(recipeRepository);
+        verifyNoInteractions(models);
     }
 
     @Test
@@ -90,8 +143,7 @@ class AIRecipeServiceTest {
         ingredient.setRecipeId(5);
         ingredient.setIngredient(null);
 
-        when(recipeRepository.findAll()).thenReturn(List.of(storedRecipe));
-        when(recipeIngredientRepository.findByRecipeId(5)).thenReturn(List.of(ingredient));
+        ingredientIndex.index(List.of(ingredient));
 
         GenerateContentResponse response = mock(GenerateContentResponse.class);
         when(response.text()).thenReturn("{\"title\":\"AI Avocado\",\"ingredients\":[]}");
@@ -104,8 +156,7 @@ class AIRecipeServiceTest {
         assertEquals("AI Avocado", result.getTitle());
         assertEquals("Generate a delicious recipe with the following ingredient: Avocado",
             promptCaptor.getValue());
-        verify(recipeRepository).findAll();
-        verify(recipeIngredientRepository).findByRecipeId(5);
+        verifyNoInteractions(recipeRepository);
         verify(models).generateContent(eq("test-model"), anyString(), any(GenerateContentConfig.class));
     }
 
@@ -146,7 +197,7 @@ class AIRecipeServiceTest {
         assertTrue(prompt.contains("peanuts"));
         assertTrue(prompt.contains("broccoli"));
         assertTrue(prompt.contains("$10.00"));
-        assertTrue(prompt.contains("Milk (1 Ounce)"));
+        assertTrue(prompt.contains("milk (1 ounce)"));
         verify(userService).getUserById(7);
         verify(pantryService).getPantryItems(7);
         verify(models).generateContent(eq("test-model"), anyString(), any(GenerateContentConfig.class));
@@ -168,8 +219,81 @@ class AIRecipeServiceTest {
     }
 
     @Test
-    @DisplayName("Get user recipe uses defaults when optional user data is missing")
-    void getUserRecipe_usesDefaultsWhenOptionalDataMissing() {
+    @DisplayName("Identical prompts are answered from the response cache")
+    void getAIRecommendedRecipe_servesRepeatFromCache() {
+        GenerateContentResponse response = mock(GenerateContentResponse.class);
+        when(response.text()).thenReturn("{\"title\":\"Cached Dish\",\"ingredients\":[]}");
+        when(models.generateContent(eq("test-model"), anyString(), any(GenerateContentConfig.class)))
+            .thenReturn(response);
+
+        Recipe first = aiRecipeService.getAIRecommendedRecipe();
+        Recipe second = aiRecipeService.getAIRecommendedRecipe();
+
+        assertEquals("Cached Dish", first.getTitle());
+        assertEquals("Cached Dish", second.getTitle());
+        assertNotSame(first, second);
+        verify(recipeWriter, times(1)).submit(first);
+        verify(models, times(1)).generateContent(eq("test-model"), anyString(), any(GenerateContentConfig.class));
+    }
+
+    @Test
+    @DisplayName("Unparseable responses are not cached")
+    void getAIRecommendedRecipe_doesNotCacheInvalidJson() {
+        GenerateContentResponse bad = mock(GenerateContentResponse.class);
+        when(bad.text()).thenReturn("not-json");
+        GenerateContentResponse good = mock(GenerateContentResponse.class);
+        when(good.text()).thenReturn("{\"title\":\"Retry Dish\",\"ingredients\":[]}");
+        when(models.generateContent(eq("test-model"), anyString(), any(GenerateContentConfig.class)))
+            .thenReturn(bad, good);
+
+        assertThrows(IllegalStateException.class, () -> aiRecipeService.getAIRecommendedRecipe());
+        assertEquals("Retry Dish", aiRecipeService.getAIRecommendedRecipe().getTitle());
+        verify(models, times(2)).generateContent(eq("test-model"), anyString(), any(GenerateContentConfig.class));
+    }
+
+    @Test
+    @DisplayName("Concurrent requests for the same ingredient share one model call")
+    void getAIRecipe_coalescesConcurrentRequests() throws Exception {
+        int callers = 4;
+        CountDownLatch release = new CountDownLatch(1);
+        GenerateContentResponse response = mock(GenerateContentResponse.class);
+        when(response.text()).thenReturn("{\"title\":\"Trending Dish\",\"ingredients\":[]}");
+        when(models.generateContent(eq("test-model"), anyString(), any(GenerateContentConfig.class)))
+            .thenAnswer(invocation -> {
+                release.await(5, TimeUnit.SECONDS);
+                return response;
+            });
+
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<Recipe>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                String ingredient = i % 2 == 0 ? "Saffron" : "saffron ";
+                results.add(pool.submit(() -> aiRecipeService.getAIRecipe(ingredient)));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (coalescer.getCoalesced() < callers - 1) {
+                assertTrue(System.nanoTime() < deadline, "callers did not coalesce");
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            Set<Recipe> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Future<Recipe> result : results) {
+                Recipe recipe = result.get(5, TimeUnit.SECONDS);
+                assertEquals("Trending Dish", recipe.getTitle());
+                distinct.add(recipe);
+            }
+            assertEquals(callers, distinct.size(), "each caller gets its own recipe instance");
+        } finally {
+            pool.shutdownNow();
+        }
+        verify(models, times(1)).generateContent(eq("test-model"), anyString(), any(GenerateContentConfig.class));
+    }
+
+    @Test
+    @DisplayName("Get user recipe leaves out optional user data that is missing")
+    void getUserRecipe_omitsMissingOptionalData() {
         User minimalUser = new User();
         minimalUser.setUserId(9);
         minimalUser.setName("Anon");
@@ -187,10 +311,10 @@ class AIRecipeServiceTest {
 
         assertEquals("Fallback Meal", recipe.getTitle());
         String prompt = promptCaptor.getValue();
-        assertTrue(prompt.contains("unspecified budget"));
-        assertTrue(prompt.contains("unspecified cooking skill"));
-        assertTrue(prompt.contains("[]"));
-        assertTrue(prompt.contains("no pantry items"));
+        assertFalse(prompt.contains("budget"));
+        assertFalse(prompt.contains("cooking skill"));
+        assertFalse(prompt.contains("[]"));
+        assertFalse(prompt.contains("pantry"));
         verify(pantryService).getPantryItems(9);
     }
 
@@ -235,8 +359,8 @@ class AIRecipeServiceTest {
         assertEquals("Skill Meal", recipe.getTitle());
         String prompt = promptCaptor.getValue();
         assertTrue(prompt.contains("INTERMEDIATE")); 
-        assertTrue(prompt.contains("Salt"));         
-        assertFalse(prompt.contains("Salt ("));      
+        assertTrue(prompt.contains("salt"));
+        assertFalse(prompt.contains("salt ("));
         verify(userService).getUserById(3);
         verify(pantryService).getPantryItems(3);
         verify(models).generateContent(eq("test-model"), anyString(), any(GenerateContentConfig.class));
@@ -338,6 +462,521 @@ class AIRecipeServiceTest {
         assertNull(result.getPopularityScore());
     }
 
+    @Test
+    @DisplayName("getUserRecipes asks for all occasions in one array-schema call")
+    void getUserRecipes_generatesBatchInOneCall() {
+        User user = new User();
+        user.setUserId(4);
+        user.setAllergies(new String[] {"peanut"});
+        when(userService.getUserById(4)).thenReturn(Optional.of(user));
+        when(pantryService.getPantryItems(4)).thenReturn(List.of());
+
+        GenerateContentResponse response = mock(GenerateContentResponse.class);
+        when(response.text()).thenReturn("""
+                [{"title":"Oats","ingredients":[],"calories":350},
+                 {"title":"Salad","ingredients":[]},
+                 {"title":"Curry","ingredients":[],"cookTime":40}]
+                """);
+        ArgumentCaptor<String> promptCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<GenerateContentConfig> configCaptor =
+                ArgumentCaptor.forClass(GenerateContentConfig.class);
+        when(models.generateContent(eq("test-model"), promptCaptor.capture(), configCaptor.capture()))
+            .thenReturn(response);
+
+        List<Recipe> recipes = aiRecipeService.getUserRecipes(
+                aiRecipeService.buildUserContext(4),
+                List.of("Monday meal 1", "Monday meal 2", "Monday meal 3"));
+
+        assertEquals(List.of("Oats", "Salad", "Curry"),
+                recipes.stream().map(Recipe::getTitle).toList());
+        assertEquals(40, recipes.get(2).getCookTime());
+        String prompt = promptCaptor.getValue();
+        assertTrue(prompt.startsWith("Generate 3 different"));
+        assertTrue(prompt.contains("User profile - allergies: peanut"));
+        assertTrue(prompt.contains("1. Monday meal 1; 2. Monday meal 2; 3. Monday meal 3"));
+        var schema = configCaptor.getValue().responseSchema().orElseThrow();
+        assertEquals(Optional.of(3L), schema.minItems());
+        assertEquals(Optional.of(3L), schema.maxItems());
+        verify(models, times(1)).generateContent(anyString(), anyString(), any(GenerateContentConfig.class));
+        verify(recipeWriter, times(3)).submit(any(Recipe.class));
+    }
+
+    @Test
+    @DisplayName("generateRecipesForUser returns fewer meals when the model returns fewer")
+    void generateRecipesForUser_keepsShortResult() {
+        User user = new User();
+        user.setUserId(5);
+        when(userService.getUserById(5)).thenReturn(Optional.of(user));
+        when(pantryService.getPantryItems(5)).thenReturn(List.of());
+
+        GenerateContentResponse response = mock(GenerateContentResponse.class);
+        when(response.text()).thenReturn("[{\"title\":\"Only One\",\"ingredients\":[]}, 42]");
+        when(models.generateContent(eq("test-model"), anyString(), any(GenerateContentConfig.class)))
+            .thenReturn(response);
+
+        var meals = aiRecipeService.generateRecipesForUser(
+                aiRecipeService.buildUserContext(5),
+                List.of("Tuesday meal 1", "Tuesday meal 2"));
+
+        assertEquals(1, meals.size());
+        assertEquals("Only One", meals.get(0).get("title"));
+        assertEquals(0, meals.get(0).get("cookTime"));
+    }
+
+    @Test
+    @DisplayName("getUserRecipes rejects a response that is not an array")
+    void getUserRecipes_rejectsNonArray() {
+        User user = new User();
+        user.setUserId(6);
+        when(userService.getUserById(6)).thenReturn(Optional.of(user));
+        when(pantryService.getPantryItems(6)).thenReturn(List.of());
+
+        GenerateContentResponse response = mock(GenerateContentResponse.class);
+        when(response.text()).thenReturn("{\"title\":\"Single\"}");
+        when(models.generateContent(eq("test-model"), anyString(), any(GenerateContentConfig.class)))
+            .thenReturn(response);
+
+        UserGenerationContext context = aiRecipeService.buildUserContext(6);
+        assertThrows(IllegalStateException.class,
+                () -> aiRecipeService.getUserRecipes(context, List.of("a", "b")));
+        verifyNoInteractions(recipeWriter);
+    }
+
+    @Test
+    @DisplayName("A shared user context loads the user and pantry only once")
+    void getUserRecipe_sharedContextLoadsUserOnce() {
+        User user = new User();
+        user.setUserId(9);
+        user.setDislikes(new String[] {"olives"});
+        when(userService.getUserById(9)).thenReturn(Optional.of(user));
+        when(pantryService.getPantryItems(9)).thenReturn(List.of());
+
+        GenerateContentResponse response = mock(GenerateContentResponse.class);
+        when(response.text()).thenReturn("{\"title\":\"Stew\",\"ingredients\":[]}");
+        ArgumentCaptor<String> promptCaptor = ArgumentCaptor.forClass(String.class);
+        when(models.generateContent(eq("test-model"), promptCaptor.capture(), any(GenerateContentConfig.class)))
+            .thenReturn(response);
+
+        UserGenerationContext context = aiRecipeService.buildUserContext(9);
+        aiRecipeService.getUserRecipe(context, "Monday meal 1");
+        aiRecipeService.getUserRecipe(context, "Monday meal 2");
+        aiRecipeService.getUserRecipe(context, "Tuesday meal 1");
+
+        assertSame(user, context.getUser());
+        verify(userService, times(1)).getUserById(9);
+        verify(pantryService, times(1)).getPantryItems(9);
+        verify(models, times(3)).generateContent(anyString(), anyString(), any(GenerateContentConfig.class));
+        assertTrue(promptCaptor.getAllValues().stream()
+                .allMatch(prompt -> prompt.contains("dislikes: olives.")));
+    }
+
+    @Test
+    @DisplayName("buildUserContext rejects an unknown user")
+    void buildUserContext_rejectsUnknownUser() {
+        when(userService.getUserById(10)).thenReturn(Optional.empty());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> aiRecipeService.buildUserContext(10));
+        verifyNoInteractions(pantryService, models);
+    }
+
+    @Test
+    @DisplayName("Model calls beyond the limiter's in-flight and queue capacity are shed")
+    void getAIRecipe_shedsCallsWhenModelIsSaturated() throws Exception {
+        limiter = new ModelCallLimiter(0, 1, 1, 0, 5_000);
+        injectDependency("limiter", limiter);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GenerateContentResponse response = mock(GenerateContentResponse.class);
+        when(response.text()).thenReturn("{\"title\":\"Slow Dish\",\"ingredients\":[]}");
+        when(models.generateContent(eq("test-model"), anyString(), any(GenerateContentConfig.class)))
+            .thenAnswer(inv -> {
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return response;
+            });
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Recipe> slow = executor.submit(() -> aiRecipeService.getAIRecipe("Leek"));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            assertThrows(ModelOverloadedException.class,
+                () -> aiRecipeService.getAIRecipe("Fennel"));
+
+            release.countDown();
+            assertEquals("Slow Dish", slow.get(5, TimeUnit.SECONDS).getTitle());
+            verify(models, times(1)).generateContent(anyString(), anyString(), any(GenerateContentConfig.class));
+            assertEquals(1L, limiter.stats().get("rejected"));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Time spent waiting for the limiter does not count as a slow model call")
+    void getAIRecipe_limiterWaitIsNotSlowCall() throws Exception {
+        limiter = new ModelCallLimiter(0, 1, 1, 1, 5_000);
+        injectDependency("limiter", limiter);
+        breaker = new ModelCircuitBreaker(20, 2, 50, 100, 200, 30_000, 2);
+        injectDependency("breaker", breaker);
+        CountDownLatch started = new CountDownLatch(1);
+        GenerateContentResponse response = mock(GenerateContentResponse.class);
+        when(response.text()).thenReturn("{\"title\":\"Queued Dish\",\"ingredients\":[]}");
+        when(models.generateContent(eq("test-model"), anyString(), any(GenerateContentConfig.class)))
+            .thenAnswer(inv -> {
+                if (started.getCount() > 0) {
+                    started.countDown();
+                    Thread.sleep(400);
+                }
+                return response;
+            });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Recipe> slow = executor.submit(() -> aiRecipeService.getAIRecipe("Leek"));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<Recipe> queued = executor.submit(() -> aiRecipeService.getAIRecipe("Fennel"));
+
+            assertEquals("Queued Dish", slow.get(5, TimeUnit.SECONDS).getTitle());
+            assertEquals("Queued Dish", queued.get(5, TimeUnit.SECONDS).getTitle());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(50d, breaker.stats().get("slowRatePercent"));
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    @DisplayName("While the breaker is open user recipes come from the safe catalog fallback")
+    void getUserRecipe_servesFallbackWhileBreakerOpen() {
+        User user = new User();
+        user.setUserId(11);
+        user.setAllergies(new String[] {"peanut"});
+        when(userService.getUserById(11)).thenReturn(Optional.of(user));
+        when(pantryService.getPantryItems(11)).thenReturn(List.of());
+        when(models.generateContent(eq("test-model"), anyString(), any(GenerateContentConfig.class)))
+            .thenThrow(new IllegalStateException("model error"));
+        for (int i = 0; i < 10; i++) {
+            String ingredient = "item" + i;
+            assertThrows(IllegalStateException.class, () -> aiRecipeService.getAIRecipe(ingredient));
+        }
+        assertTrue(breaker.isOpen());
+
+        Recipe safe = new Recipe();
+        safe.setRecipeId(21);
+        safe.setTitle("Veggie Soup");
+        when(fallbackRecipes.recipesForUser(user, "Monday meal 1", 1)).thenReturn(List.of(safe));
+
+        Recipe result = aiRecipeService.getUserRecipe(
+                aiRecipeService.buildUserContext(11), "Monday meal 1");
+
+        assertSame(safe, result);
+        verify(models, times(10)).generateContent(anyString(), anyString(), any(GenerateContentConfig.class));
+        verifyNoInteractions(recipeWriter);
+    }
+
+    @Test
+    @DisplayName("While the breaker is open and the catalog is empty the call is rejected")
+    void getAIRecommendedRecipe_rejectsWithoutFallback() {
+        when(models.generateContent(eq("test-model"), anyString(), any(GenerateContentConfig.class)))
+            .thenThrow(new IllegalStateException("model error"));
+        for (int i = 0; i < 10; i++) {
+            String ingredient = "item" + i;
+            assertThrows(IllegalStateException.class, () -> aiRecipeService.getAIRecipe(ingredient));
+        }
+        when(fallbackRecipes.popularRecipe(null)).thenReturn(Optional.empty());
+
+        assertThrows(CircuitOpenException.class,
+            () -> aiRecipeService.getAIRecommendedRecipe());
+    }
+
+    @Test
+    @DisplayName("The local generator backend serves batch user recipes without the Gemini client")
+    void getUserRecipes_withLocalGenerator() throws Exception {
+        Recipe stored = new Recipe();
+        stored.setTitle("Catalog Stew");
+        stored.setIngredients("[{\"ingredient\":\"beans\"}]");
+        when(recipeRepository.findPopularRecipes(any())).thenReturn(List.of(stored));
+        LocalRecipeGenerator local = new LocalRecipeGenerator(recipeRepository, objectMapper,
+            0, LocalRecipeGenerator.LatencyDistribution.FIXED, 0, 0, 10, 1);
+        setField(aiRecipeService, "router", router(local, ""));
+
+        User user = new User();
+        user.setUserId(12);
+        when(userService.getUserById(12)).thenReturn(Optional.of(user));
+        when(pantryService.getPantryItems(12)).thenReturn(List.of());
+
+        List<Recipe> recipes = aiRecipeService.getUserRecipes(
+            aiRecipeService.buildUserContext(12), List.of("Friday meal 1", "Friday meal 2"));
+
+        assertEquals(2, recipes.size());
+        assertEquals("Catalog Stew", recipes.get(0).getTitle());
+        verifyNoInteractions(models);
+    }
+
+    @Test
+    @DisplayName("Repeat visits by an unchanged user are served from the personal recipe pool")
+    void getUserRecipe_servesRepeatVisitsFromPool() throws Exception {
+        personalCache = new PersonalizedRecipeCache(3, 600, 100);
+        injectDependency("personalCache", personalCache);
+        User user = new User();
+        user.setUserId(13);
+        when(userService.getUserById(13)).thenReturn(Optional.of(user));
+        when(pantryService.getPantryItems(13)).thenReturn(List.of());
+        GenerateContentResponse response = mock(GenerateContentResponse.class);
+        when(response.text()).thenReturn("""
+                [{"title":"Oats","ingredients":[]},
+                 {"title":"Salad","ingredients":[]},
+                 {"title":"Curry","ingredients":[]}]
+                """);
+        ArgumentCaptor<String> promptCaptor = ArgumentCaptor.forClass(String.class);
+        when(models.generateContent(eq("test-model"), promptCaptor.capture(), any(GenerateContentConfig.class)))
+            .thenReturn(response);
+
+        List<String> titles = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            titles.add(aiRecipeService.getUserRecipe(13).getTitle());
+        }
+
+        assertEquals(List.of("Oats", "Salad", "Curry", "Oats"), titles);
+        assertTrue(promptCaptor.getValue().startsWith("Generate 3 different"));
+        verify(models, times(1)).generateContent(anyString(), anyString(), any(GenerateContentConfig.class));
+        verify(userService, times(1)).getUserById(13);
+    }
+
+    @Test
+    @DisplayName("A profile change regenerates the pool; an unrelated change keeps it")
+    void getUserRecipe_invalidationChecksFingerprint() {
+        User user = new User();
+        user.setUserId(14);
+        when(userService.getUserById(14)).thenReturn(Optional.of(user));
+        when(pantryService.getPantryItems(14)).thenReturn(List.of());
+        GenerateContentResponse first = mock(GenerateContentResponse.class);
+        when(first.text()).thenReturn("{\"title\":\"Peanut Stew\",\"ingredients\":[]}");
+        GenerateContentResponse second = mock(GenerateContentResponse.class);
+        when(second.text()).thenReturn("{\"title\":\"Bean Stew\",\"ingredients\":[]}");
+        when(models.generateContent(eq("test-model"), anyString(), any(GenerateContentConfig.class)))
+            .thenReturn(first, second);
+
+        assertEquals("Peanut Stew", aiRecipeService.getUserRecipe(14).getTitle());
+
+        user.setWeight(new BigDecimal("70"));
+        personalCache.invalidate(14);
+        assertEquals("Peanut Stew", aiRecipeService.getUserRecipe(14).getTitle());
+        verify(models, times(1)).generateContent(anyString(), anyString(), any(GenerateContentConfig.class));
+
+        user.setAllergies(new String[] {"peanut"});
+        personalCache.invalidate(14);
+        assertEquals("Bean Stew", aiRecipeService.getUserRecipe(14).getTitle());
+        verify(models, times(2)).generateContent(anyString(), anyString(), any(GenerateContentConfig.class));
+        assertEquals(1L, personalCache.stats().get("revalidated"));
+    }
+
+    @Test
+    @DisplayName("Prefetched pools are served in full and refilled with new recipes once consumed")
+    void prefetchPersonalRecipes_fillsPoolAheadOfDemand() throws Exception {
+        personalCache = new PersonalizedRecipeCache(2, 600, 100);
+        injectDependency("personalCache", personalCache);
+        User user = new User();
+        user.setUserId(15);
+        when(userService.getUserById(15)).thenReturn(Optional.of(user));
+        when(pantryService.getPantryItems(15)).thenReturn(List.of());
+        GenerateContentResponse first = mock(GenerateContentResponse.class);
+        when(first.text()).thenReturn("[{\"title\":\"Oats\"},{\"title\":\"Salad\"}]");
+        GenerateContentResponse second = mock(GenerateContentResponse.class);
+        when(second.text()).thenReturn("[{\"title\":\"Curry\"},{\"title\":\"Soup\"}]");
+        when(models.generateContent(eq("test-model"), anyString(), any(GenerateContentConfig.class)))
+            .thenReturn(first, second);
+
+        assertTrue(aiRecipeService.prefetchPersonalRecipes(15));
+        assertFalse(aiRecipeService.prefetchPersonalRecipes(15));
+        assertEquals("Oats", aiRecipeService.getUserRecipe(15).getTitle());
+        assertEquals("Salad", aiRecipeService.getUserRecipe(15).getTitle());
+
+        assertTrue(aiRecipeService.prefetchPersonalRecipes(15));
+        assertEquals("Curry", aiRecipeService.getUserRecipe(15).getTitle());
+        verify(models, times(2)).generateContent(anyString(), anyString(), any(GenerateContentConfig.class));
+    }
+
+    @Test
+    @DisplayName("Prefetching gives way when the model has no spare capacity")
+    void prefetchPersonalRecipes_yieldsToInteractiveCalls() throws Exception {
+        limiter = new ModelCallLimiter(0, 1, 1, 10, 5_000);
+        injectDependency("limiter", limiter);
+        User user = new User();
+        user.setUserId(16);
+        when(userService.getUserById(16)).thenReturn(Optional.of(user));
+        when(pantryService.getPantryItems(16)).thenReturn(List.of());
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            pool.submit(() -> limiter.call(() -> {
+                try {
+                    return release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }));
+            while ((Integer) limiter.stats().get("inFlight") == 0) {
+                Thread.sleep(1);
+            }
+
+            assertThrows(ModelOverloadedException.class,
+                () -> aiRecipeService.prefetchPersonalRecipes(16));
+            verifyNoInteractions(models);
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Streamed user recipes pass on each part as the model generates it")
+    void streamUserRecipe_passesPartsAsTheyArrive() throws Exception {
+        injectDependency("streamExecutor", (Executor) Runnable::run);
+        User user = new User();
+        user.setUserId(17);
+        when(userService.getUserById(17)).thenReturn(Optional.of(user));
+        when(pantryService.getPantryItems(17)).thenReturn(List.of());
+        List<GenerateContentResponse> chunks = new ArrayList<>();
+        for (String piece : List.of("{\"title\": \"Lentil ", "Soup\", \"ingredients\": [{\"ingredient\"",
+                ": \"lentils\"}], \"instructions\": \"Rinse the lentils.", " Simmer 20 minutes.\"}")) {
+            GenerateContentResponse chunk = mock(GenerateContentResponse.class);
+            when(chunk.text()).thenReturn(piece);
+            chunks.add(chunk);
+        }
+        @SuppressWarnings("unchecked")
+        ResponseStream<GenerateContentResponse> stream = mock(ResponseStream.class);
+        when(stream.iterator()).thenReturn(chunks.iterator());
+        when(models.generateContentStream(eq("test-model"), anyString(), any(GenerateContentConfig.class)))
+            .thenReturn(stream);
+        List<String> events = new ArrayList<>();
+
+        Recipe recipe = aiRecipeService.streamUserRecipe(17, new RecipeStreamListener() {
+            @Override
+            public void onTitle(final String title) {
+                events.add("title:" + title);
+            }
+
+            @Override
+            public void onIngredients(final JsonNode ingredients) {
+                events.add("ingredients:" + ingredients.get(0).get("ingredient").asText());
+            }
+
+            @Override
+            public void onInstructions(final String text) {
+                events.add("instructions:" + text);
+            }
+
+            @Override
+            public void onComplete(final Recipe complete) {
+                events.add("complete:" + complete.getTitle());
+            }
+        }).get();
+
+        assertEquals("Lentil Soup", recipe.getTitle());
+        assertEquals(List.of("title:Lentil Soup", "ingredients:lentils", "instructions:Rinse the lentils.",
+            "instructions: Simmer 20 minutes.", "complete:Lentil Soup"), events);
+        verify(stream).close();
+        verify(recipeWriter).submit(recipe);
+        verify(models, never()).generateContent(anyString(), anyString(), any(GenerateContentConfig.class));
+    }
+
+    @Test
+    @DisplayName("A stream whose listener fails stops without counting as a model failure")
+    void streamUserRecipe_listenerFailureIsNotModelFailure() throws Exception {
+        injectDependency("streamExecutor", (Executor) Runnable::run);
+        User user = new User();
+        user.setUserId(19);
+        when(userService.getUserById(19)).thenReturn(Optional.of(user));
+        when(pantryService.getPantryItems(19)).thenReturn(List.of());
+        GenerateContentResponse first = mock(GenerateContentResponse.class);
+        when(first.text()).thenReturn("{\"title\": \"Lentil Soup\", ");
+        GenerateContentResponse second = mock(GenerateContentResponse.class);
+        @SuppressWarnings("unchecked")
+        ResponseStream<GenerateContentResponse> stream = mock(ResponseStream.class);
+        when(stream.iterator()).thenReturn(List.of(first, second).iterator());
+        when(models.generateContentStream(eq("test-model"), anyString(), any(GenerateContentConfig.class)))
+            .thenReturn(stream);
+        RecipeStreamListener closed = mock(RecipeStreamListener.class);
+        doThrow(new UncheckedIOException(new IOException("Broken pipe"))).when(closed).onTitle(anyString());
+
+        ExecutionException ex = assertThrows(ExecutionException.class,
+            () -> aiRecipeService.streamUserRecipe(19, closed).get());
+
+        assertInstanceOf(StreamCancelledException.class, ex.getCause());
+        verify(second, never()).text();
+        verify(stream).close();
+        assertEquals(0, breaker.stats().get("windowCalls"));
+        Map<?, ?> prompts = (Map<?, ?>) usage.stats(ClientContext.ANONYMOUS).get("prompts");
+        Map<?, ?> model = (Map<?, ?>) ((Map<?, ?>) ((Map<?, ?>) prompts.get("user"))
+            .get("models")).get("test-model");
+        assertEquals(0L, model.get("errors"));
+        verify(recipeWriter, never()).submit(any());
+    }
+
+    @Test
+    @DisplayName("Simple prompts go to the fast model and personalized ones to the primary model")
+    void requestRecipe_routesByPromptClass() throws Exception {
+        GeminiRecipeGenerator generator = new GeminiRecipeGenerator("test-api-key", "test-model");
+        setField(generator, "client", client);
+        ModelRouter router = router(generator, "fast-model");
+        setField(aiRecipeService, "router", router);
+        User user = new User();
+        user.setUserId(18);
+        when(userService.getUserById(18)).thenReturn(Optional.of(user));
+        when(pantryService.getPantryItems(18)).thenReturn(List.of());
+        GenerateContentResponse response = mock(GenerateContentResponse.class);
+        when(response.text()).thenReturn("{\"title\":\"Routed\",\"ingredients\":[]}");
+        when(models.generateContent(anyString(), anyString(), any(GenerateContentConfig.class)))
+            .thenReturn(response);
+
+        aiRecipeService.getAIRecipe("Kale");
+        aiRecipeService.getUserRecipe(18);
+
+        verify(models).generateContent(eq("fast-model"), contains("Kale"), any(GenerateContentConfig.class));
+        verify(models).generateContent(eq("test-model"), contains("about the user"),
+            any(GenerateContentConfig.class));
+        assertTrue(((Map<?, ?>) router.stats().get("models")).containsKey("fast-model"));
+    }
+
+    @Test
+    @DisplayName("Model calls, cache hits and parse failures are accounted to the calling client")
+    void requestRecipe_accountsUsagePerClient() {
+        GenerateContentResponse bad = mock(GenerateContentResponse.class);
+        when(bad.text()).thenReturn("not-json");
+        GenerateContentResponse good = mock(GenerateContentResponse.class);
+        when(good.text()).thenReturn("{\"title\":\"Counted Dish\",\"ingredients\":[]}");
+        when(models.generateContent(eq("test-model"), anyString(), any(GenerateContentConfig.class)))
+            .thenReturn(bad, good);
+
+        ClientContext.set("mobile-app");
+        try {
+            assertThrows(IllegalStateException.class, () -> aiRecipeService.getAIRecommendedRecipe());
+            aiRecipeService.getAIRecommendedRecipe();
+            aiRecipeService.getAIRecommendedRecipe();
+        } finally {
+            ClientContext.clear();
+        }
+
+        Map<?, ?> prompts = (Map<?, ?>) usage.stats("mobile-app").get("prompts");
+        Map<?, ?> recommendation = (Map<?, ?>) prompts.get("recommendation");
+        Map<?, ?> model = (Map<?, ?>) ((Map<?, ?>) recommendation.get("models")).get("test-model");
+        assertEquals(1L, recommendation.get("cacheHits"));
+        assertEquals(2L, model.get("calls"));
+        assertEquals(1L, model.get("parseFailures"));
+        assertFalse(prompts.containsKey("ingredient"));
+        assertTrue(usage.stats(ClientContext.ANONYMOUS).isEmpty());
+    }
+
+    private static ModelRouter router(final RecipeGenerator generator, final String fastModel) {
+        return new ModelRouter(generator, fastModel, List.of("SIMPLE"), 15_000, 95, 25, 100, 10, 10);
+    }
+
     private void injectDependency(final String fieldName, final Object value) throws Exception { 
       setField(aiRecipeService, fieldName, value);
     }
@@ -0,0 +1,148 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.Recipe;
+import com.example.nutriflow.model.RecipeIngredient;
+import com.example.nutriflow.model.User;
+import com.example.nutriflow.service.repository.RecipeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link FallbackRecipeProvider}.
+ */
+@ExtendWith(MockitoExtension.class)
+class FallbackRecipeProviderTest {
+
+    @Mock
+    private RecipeRepository recipeRepository;
+
+    @Spy
+    private RecipeIngredientIndex ingredientIndex = new RecipeIngredientIndex();
+
+    @InjectMocks
+    private FallbackRecipeProvider provider;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(provider, "poolSize", 10);
+        ReflectionTestUtils.setField(provider, "refreshMs", 60_000L);
+        when(recipeRepository.findPopularRecipes(any(Pageable.class))).thenReturn(List.of(
+                recipe(1, "Peanut Noodles"),
+                recipe(2, "Shrimp Tacos"),
+                recipe(3, "Veggie Soup"),
+                recipe(4, "Olive Salad")));
+        ingredientIndex.index(List.of(
+                ingredient(2, "shrimp", "shellfish"),
+                ingredient(3, "carrot", null),
+                ingredient(4, "olives", null)));
+    }
+
+    @Test
+    @DisplayName("user fallbacks skip recipes with the user's allergies or dislikes")
+    void recipesForUser_excludesConflicts() {
+        User user = new User();
+        user.setAllergies(new String[] {"Peanut", "shellfish"});
+        user.setDislikes(new String[] {"olive"});
+
+        List<Recipe> recipes = provider.recipesForUser(user, "Monday meal 1", 3);
+
+        assertThat(recipes).extracting(Recipe::getTitle).containsExactly("Veggie Soup");
+    }
+
+    @Test
+    @DisplayName("different occasions start from different safe recipes")
+    void recipesForUser_rotatesByOccasion() {
+        User user = new User();
+
+        List<Recipe> all = provider.recipesForUser(user, null, 4);
+        long distinctFirsts = List.of("Monday meal 1", "Monday meal 2", "Monday meal 3",
+                        "Tuesday meal 1", "Tuesday meal 2", "Tuesday meal 3").stream()
+                .map(occasion -> provider.recipesForUser(user, occasion, 1).get(0))
+                .distinct()
+                .count();
+
+        assertThat(all).extracting(Recipe::getRecipeId).containsExactly(1, 2, 3, 4);
+        assertThat(distinctFirsts).isGreaterThan(1);
+        verify(recipeRepository, times(1)).findPopularRecipes(any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("the popular fallback prefers a recipe with the requested ingredient")
+    void popularRecipe_prefersIngredient() {
+        assertThat(provider.popularRecipe("Carrot")).get()
+                .extracting(Recipe::getTitle).isEqualTo("Veggie Soup");
+        assertThat(provider.popularRecipe("saffron")).get()
+                .extracting(Recipe::getTitle).isEqualTo("Peanut Noodles");
+    }
+
+    @Test
+    @DisplayName("while one caller reloads a stale list the others get the stale list at once")
+    void popularRecipe_singleCallerRefreshes() throws Exception {
+        assertThat(provider.popularRecipe(null)).isPresent();
+        ReflectionTestUtils.setField(provider, "refreshMs", 0L);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(recipeRepository.findPopularRecipes(any(Pageable.class))).thenAnswer(inv -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(recipe(5, "Fresh Stew"));
+        });
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<Optional<Recipe>> refreshing = pool.submit(() -> provider.popularRecipe(null));
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(provider.popularRecipe(null)).get()
+                    .extracting(Recipe::getTitle).isEqualTo("Peanut Noodles");
+
+            release.countDown();
+            assertThat(refreshing.get(5, TimeUnit.SECONDS)).get()
+                    .extracting(Recipe::getTitle).isEqualTo("Fresh Stew");
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+        verify(recipeRepository, times(2)).findPopularRecipes(any(Pageable.class));
+    }
+
+    private static Recipe recipe(final int id, final String title) {
+        Recipe recipe = new Recipe();
+        recipe.setRecipeId(id);
+        recipe.setTitle(title);
+        return recipe;
+    }
+
+    private static RecipeIngredient ingredient(final int recipeId, final String name,
+                                               final String allergen) {
+        RecipeIngredient row = new RecipeIngredient();
+        row.setRecipeId(recipeId);
+        row.setIngredient(name);
+        if (allergen != null) {
+            row.setAllergenTags(new String[] {allergen});
+        }
+        return row;
+    }
+}
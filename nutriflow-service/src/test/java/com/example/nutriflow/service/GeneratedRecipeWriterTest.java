@@ -0,0 +1,213 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.Recipe;
+import com.example.nutriflow.model.RecipeIngredient;
+import com.example.nutriflow.service.repository.RecipeIngredientRepository;
+import com.example.nutriflow.service.repository.RecipeRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link GeneratedRecipeWriter}.
+ */
+@ExtendWith(MockitoExtension.class)
+class GeneratedRecipeWriterTest {
+
+    private static final String INGREDIENTS = """
+            [{"ingredient":"Tomato","quantity":2,"unit":"pcs","allergenTags":["nightshade"]},
+             {"ingredient":"basil"},
+             {"ingredient":" "}]
+            """;
+
+    @Mock
+    private RecipeRepository recipeRepository;
+
+    @Mock
+    private RecipeIngredientRepository recipeIngredientRepository;
+
+    @Mock
+    private RecipeIngredientIndex ingredientIndex;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private GeneratedRecipeWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(writer, "enabled", true);
+        ReflectionTestUtils.setField(writer, "batchSize", 10);
+        ReflectionTestUtils.setField(writer, "queueCapacity", 2);
+        ReflectionTestUtils.setField(writer, "flushIntervalMs", 60_000L);
+        ReflectionTestUtils.setField(writer, "maxAttempts", 3);
+    }
+
+    @Test
+    @DisplayName("flush writes queued recipes with exploded ingredient rows")
+    void flush_writesRecipesAndIngredients() {
+        start();
+        Recipe generated = recipe("Tomato Salad", INGREDIENTS);
+        when(recipeRepository.saveAll(anyList())).thenAnswer(inv -> {
+            List<Recipe> saved = new ArrayList<>(inv.getArgument(0));
+            saved.get(0).setRecipeId(41);
+            return saved;
+        });
+        when(recipeIngredientRepository.saveAll(anyList()))
+                .thenAnswer(inv -> inv.getArgument(0));
+
+        assertThat(writer.submit(generated)).isTrue();
+        assertThat(writer.flush()).isEqualTo(1);
+
+        ArgumentCaptor<List<RecipeIngredient>> rows = ArgumentCaptor.forClass(List.class);
+        verify(recipeIngredientRepository).saveAll(rows.capture());
+        assertThat(rows.getValue()).hasSize(2);
+        ArgumentCaptor<List<Recipe>> recipes = ArgumentCaptor.forClass(List.class);
+        verify(recipeRepository).saveAll(recipes.capture());
+        assertThat(recipes.getValue().get(0).getCanonicalHash()).hasSize(64);
+        RecipeIngredient tomato = rows.getValue().get(0);
+        assertThat(tomato.getRecipeId()).isEqualTo(41);
+        assertThat(tomato.getIngredient()).isEqualTo("Tomato");
+        assertThat(tomato.getQuantity()).isEqualTo(2.0);
+        assertThat(tomato.getUnit()).isEqualTo("pcs");
+        assertThat(tomato.getAllergenTags()).containsExactly("nightshade");
+        verify(ingredientIndex).index(rows.getValue());
+        assertThat(generated.getRecipeId()).isNull();
+        assertThat(writer.stats().get("written")).isEqualTo(1L);
+    }
+
+    @Test
+    @DisplayName("near-identical recipes are written only once")
+    void submit_skipsDuplicates() {
+        start();
+
+        assertThat(writer.submit(recipe("Tomato Salad", INGREDIENTS))).isTrue();
+        assertThat(writer.submit(recipe(" tomato salad ",
+                "[{\"ingredient\":\"BASIL\"},{\"ingredient\":\"tomato\"}]"))).isFalse();
+
+        assertThat(writer.stats().get("queued")).isEqualTo(1);
+        assertThat(writer.stats().get("duplicates")).isEqualTo(1L);
+    }
+
+    @Test
+    @DisplayName("recipes already in the catalog are not queued")
+    void submit_skipsCatalogRecipes() {
+        Recipe stored = recipe("Tomato Salad", null);
+        stored.setRecipeId(3);
+        when(recipeRepository.findAll()).thenReturn(List.of(stored));
+        when(ingredientIndex.ingredientsOf(3)).thenReturn(java.util.Set.of("tomato", "basil"));
+        start();
+
+        assertThat(writer.submit(recipe("Tomato Salad", INGREDIENTS))).isFalse();
+    }
+
+    @Test
+    @DisplayName("recipes are dropped when the queue is full")
+    void submit_dropsWhenQueueFull() {
+        start();
+
+        writer.submit(recipe("A", "[]"));
+        writer.submit(recipe("B", "[]"));
+
+        assertThat(writer.submit(recipe("C", "[]"))).isFalse();
+        assertThat(writer.stats().get("dropped")).isEqualTo(1L);
+    }
+
+    @Test
+    @DisplayName("a failed batch is queued again and written by a later flush")
+    void flush_requeuesFailedBatch() {
+        start();
+        when(recipeRepository.saveAll(anyList()))
+                .thenThrow(new IllegalStateException("db down"))
+                .thenAnswer(inv -> inv.getArgument(0));
+        when(recipeIngredientRepository.saveAll(anyList()))
+                .thenAnswer(inv -> inv.getArgument(0));
+
+        writer.submit(recipe("A", "[]"));
+        writer.flush();
+
+        assertThat(writer.stats().get("retried")).isEqualTo(1L);
+        assertThat(writer.stats().get("queued")).isEqualTo(1);
+
+        writer.flush();
+
+        assertThat(writer.stats().get("written")).isEqualTo(1L);
+        assertThat(writer.stats().get("failed")).isEqualTo(0L);
+    }
+
+    @Test
+    @DisplayName("a recipe another instance already stored is skipped, not inserted again")
+    void flush_skipsStoredHashes() {
+        start();
+        Recipe generated = recipe("Tomato Salad", INGREDIENTS);
+        String hash = GeneratedRecipeWriter.canonicalHash("Tomato Salad", List.of("tomato", "basil"));
+        when(recipeRepository.findStoredHashes(List.of(hash))).thenReturn(List.of(hash));
+
+        assertThat(writer.submit(generated)).isTrue();
+        assertThat(writer.flush()).isEqualTo(1);
+
+        verify(recipeRepository, never()).saveAll(anyList());
+        assertThat(writer.stats()).containsEntry("written", 0L)
+                .containsEntry("duplicates", 1L);
+        assertThat(writer.submit(recipe("Tomato Salad", INGREDIENTS))).isFalse();
+    }
+
+    @Test
+    @DisplayName("a recipe is given up after its last attempt and can be submitted again")
+    void flush_givesUpAfterMaxAttempts() {
+        start();
+        when(recipeRepository.saveAll(anyList())).thenThrow(new IllegalStateException("db down"));
+
+        writer.submit(recipe("A", "[]"));
+        writer.stop();
+
+        verify(recipeRepository, times(3)).saveAll(anyList());
+        assertThat(writer.stats().get("failed")).isEqualTo(1L);
+        assertThat(writer.stats().get("queued")).isEqualTo(0);
+        assertThat(writer.submit(recipe("A", "[]"))).isTrue();
+        verifyNoInteractions(ingredientIndex);
+    }
+
+    @Test
+    @DisplayName("nothing is queued when persistence is disabled")
+    void submit_disabled() {
+        ReflectionTestUtils.setField(writer, "enabled", false);
+        writer.start();
+
+        assertThat(writer.submit(recipe("A", "[]"))).isFalse();
+        verifyNoInteractions(recipeRepository);
+    }
+
+    /** Initializes the writer and stops its background flusher so tests flush explicitly. */
+    private void start() {
+        writer.start();
+        writer.stop();
+    }
+
+    private static Recipe recipe(final String title, final String ingredients) {
+        Recipe recipe = new Recipe();
+        recipe.setTitle(title);
+        recipe.setIngredients(ingredients);
+        return recipe;
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.Recipe;
+import com.example.nutriflow.model.RecipeIngredient;
+import com.example.nutriflow.model.User;
+import com.example.nutriflow.model.UserTarget;
+import com.example.nutriflow.service.repository.RecipeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link MealPlanOptimizer}.
+ */
+@ExtendWith(MockitoExtension.class)
+class MealPlanOptimizerTest {
+
+    @Mock
+    private RecipeRepository recipeRepository;
+
+    @Spy
+    private RecipeIngredientIndex ingredientIndex = new RecipeIngredientIndex();
+
+    @InjectMocks
+    private MealPlanOptimizer optimizer;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(optimizer, "maxUsesPerRecipe", 2);
+        ReflectionTestUtils.setField(optimizer, "refreshMs", 300_000L);
+    }
+
+    @Test
+    @DisplayName("daily totals land close to the calorie and protein targets")
+    void plan_hitsTargets() {
+        catalog(
+                recipe(1, "Light Salad", 200, 5),
+                recipe(2, "Chicken Bowl", 600, 45),
+                recipe(3, "Oat Porridge", 400, 12),
+                recipe(4, "Steak Dinner", 900, 60),
+                recipe(5, "Lentil Curry", 550, 25),
+                recipe(6, "Tofu Stir Fry", 500, 30),
+                recipe(7, "Egg Wrap", 450, 28),
+                recipe(8, "Pasta", 700, 20));
+
+        List<List<Recipe>> plan = optimizer.plan(new User(),
+                target(1800, 100), 7, 3);
+
+        assertThat(plan).hasSize(7);
+        for (List<Recipe> day : plan.subList(0, 3)) {
+            assertThat(day).doesNotContainNull();
+            assertThat(day).doesNotHaveDuplicates();
+            double calories = day.stream()
+                    .mapToDouble(r -> r.getCalories().doubleValue()).sum();
+            assertThat(calories).isBetween(1600.0, 2000.0);
+        }
+    }
+
+    @Test
+    @DisplayName("recipes with allergies or dislikes are never picked")
+    void plan_excludesAllergiesAndDislikes() {
+        catalog(
+                recipe(1, "Peanut Noodles", 600, 20),
+                recipe(2, "Mushroom Risotto", 600, 15),
+                recipe(3, "Egg Fried Rice", 600, 18),
+                recipe(4, "Grilled Fish", 600, 40));
+        ingredientIndex.index(List.of(
+                RecipeIngredient.builder().recipeId(3).ingredient("egg")
+                        .allergenTags(new String[] {"eggs"}).build(),
+                RecipeIngredient.builder().recipeId(4).ingredient("cod")
+                        .build()));
+        User user = new User();
+        user.setAllergies(new String[] {"Peanut", "eggs"});
+        user.setDislikes(new String[] {"mushroom"});
+
+        List<List<Recipe>> plan = optimizer.plan(user, target(1200, 60), 1, 2);
+
+        assertThat(plan.get(0)).extracting(r -> r == null ? null : r.getRecipeId())
+                .containsExactly(4, null);
+    }
+
+    @Test
+    @DisplayName("recipes are used at most the configured number of times")
+    void plan_leavesGapsOnceRecipesRunOut() {
+        catalog(recipe(1, "Soup", 500, 20), recipe(2, "Stew", 700, 35));
+
+        List<List<Recipe>> plan = optimizer.plan(new User(),
+                target(1200, 55), 3, 2);
+
+        assertThat(plan.get(0)).doesNotContainNull();
+        assertThat(plan.get(1)).doesNotContainNull();
+        assertThat(plan.get(2)).containsOnlyNulls();
+        assertThat(plan.stream().flatMap(List::stream)
+                .filter(Objects::nonNull).count()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("recipes without calories are left out of the matrix")
+    void refresh_skipsRecipesWithoutCalories() {
+        Recipe unknown = recipe(2, "Mystery", 0, 0);
+        unknown.setCalories(null);
+        catalog(recipe(1, "Soup", 500, 20), unknown);
+
+        assertThat(optimizer.catalogSize()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("a failed reload keeps the old catalog until the next interval")
+    void catalogSize_doesNotRetryFailedReload() {
+        catalog(recipe(1, "Soup", 500, 20));
+        ReflectionTestUtils.setField(optimizer, "refreshedAt",
+                System.nanoTime() - TimeUnit.MINUTES.toNanos(10));
+        when(recipeRepository.findAll())
+                .thenThrow(new DataAccessResourceFailureException("db down"));
+
+        assertThat(optimizer.catalogSize()).isEqualTo(1);
+        assertThat(optimizer.catalogSize()).isEqualTo(1);
+
+        verify(recipeRepository, times(2)).findAll();
+    }
+
+    private void catalog(final Recipe... recipes) {
+        when(recipeRepository.findAll()).thenReturn(List.of(recipes));
+        optimizer.refresh();
+    }
+
+    private static Recipe recipe(final int id, final String title,
+                                 final int calories, final int protein) {
+        Recipe recipe = new Recipe();
+        recipe.setRecipeId(id);
+        recipe.setTitle(title);
+        recipe.setCalories(BigDecimal.valueOf(calories));
+        recipe.setProtein(BigDecimal.valueOf(protein));
+        return recipe;
+    }
+
+    private static UserTarget target(final int calories, final int protein) {
+        UserTarget target = new UserTarget();
+        target.setCalories(BigDecimal.valueOf(calories));
+        target.setProtein(BigDecimal.valueOf(protein));
+        return target;
+    }
+}
@@ -0,0 +1,500 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.Recipe;
+import com.example.nutriflow.model.User;
+import com.example.nutriflow.model.UserTarget;
+import com.example.nutriflow.model.enums.MealPlanMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link MealPlanService}.
+ */
+@ExtendWith(MockitoExtension.class)
+class MealPlanServiceTest {
+
+    private static final Long USER_ID = 7L;
+
+    private static final User USER = new User();
+
+    private static final UserGenerationContext CONTEXT =
+            UserGenerationContext.builder()
+                    .userId(7)
+                    .user(USER)
+                    .pantryText("no pantry items")
+                    .promptPrefix("")
+                    .build();
+
+    @Mock
+    private AIRecipeService aiRecipeService;
+
+    @Mock
+    private MealPlanOptimizer optimizer;
+
+    @Mock
+    private UserTargetService userTargetService;
+
+    @InjectMocks
+    private MealPlanService mealPlanService;
+
+    private ExecutorService pool;
+
+    @BeforeEach
+    void setUp() {
+        pool = Executors.newFixedThreadPool(8);
+        ReflectionTestUtils.setField(mealPlanService, "generationExecutor", pool);
+        ReflectionTestUtils.setField(mealPlanService, "streamExecutor", pool);
+        ReflectionTestUtils.setField(mealPlanService, "maxConcurrencyPerPlan", 3);
+        ReflectionTestUtils.setField(mealPlanService, "planDeadlineMs", 5_000L);
+        ReflectionTestUtils.setField(mealPlanService, "mealTimeoutMs", 5_000L);
+        lenient().when(aiRecipeService.buildUserContext(7)).thenReturn(CONTEXT);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("sequential mode generates one recipe per slot")
+    void sequential_generatesEverySlot() {
+        when(aiRecipeService.generateRecipeForUser(eq(CONTEXT), anyString()))
+                .thenAnswer(inv -> meal(inv.getArgument(1)));
+
+        Map<String, Object> plan = mealPlanService.generateWeeklyPlan(
+                USER_ID, 2, MealPlanMode.SEQUENTIAL);
+
+        List<Map<String, Object>> days = days(plan);
+        assertThat(days).hasSize(7);
+        assertThat(days.get(0).get("day")).isEqualTo("Monday");
+        assertThat(meals(days.get(6)).get(1).get("title"))
+                .isEqualTo("Sunday meal 2");
+        verify(aiRecipeService, times(14))
+                .generateRecipeForUser(eq(CONTEXT), anyString());
+    }
+
+    @Test
+    @DisplayName("parallel mode fills every slot in order within the cap")
+    void parallel_fillsSlotsWithinCap() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        when(aiRecipeService.generateRecipeForUser(eq(CONTEXT), anyString()))
+                .thenAnswer(inv -> {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(10);
+                    running.decrementAndGet();
+                    return meal(inv.getArgument(1));
+                });
+
+        Map<String, Object> plan = mealPlanService.generateWeeklyPlan(
+                USER_ID, 3, MealPlanMode.PARALLEL);
+
+        List<Map<String, Object>> days = days(plan);
+        assertThat(days).hasSize(7);
+        assertThat(meals(days.get(2)).get(0).get("title"))
+                .isEqualTo("Wednesday meal 1");
+        assertThat(meals(days.get(4)).get(2).get("title"))
+                .isEqualTo("Friday meal 3");
+        assertThat(peak.get()).isLessThanOrEqualTo(3);
+        verify(aiRecipeService, times(21))
+                .generateRecipeForUser(eq(CONTEXT), anyString());
+    }
+
+    @Test
+    @DisplayName("failed or empty meals become placeholders")
+    void parallel_failuresBecomePlaceholders() {
+        when(aiRecipeService.generateRecipeForUser(eq(CONTEXT), anyString()))
+                .thenAnswer(inv -> {
+                    String occasion = inv.getArgument(1);
+                    if (occasion.startsWith("Monday")) {
+                        throw new IllegalStateException("model down");
+                    }
+                    return occasion.startsWith("Tuesday")
+                            ? null : meal(occasion);
+                });
+
+        List<Map<String, Object>> days = days(mealPlanService
+                .generateWeeklyPlan(USER_ID, 1, MealPlanMode.PARALLEL));
+
+        assertThat(meals(days.get(0)).get(0).get("title"))
+                .isEqualTo("AI Recipe Not Available");
+        assertThat(meals(days.get(1)).get(0).get("title"))
+                .isEqualTo("AI Recipe Not Available");
+        assertThat(meals(days.get(2)).get(0).get("title"))
+                .isEqualTo("Wednesday meal 1");
+    }
+
+    @Test
+    @DisplayName("slow meals are replaced once the per-meal timeout passes")
+    void parallel_mealTimeoutUsesPlaceholder() {
+        ReflectionTestUtils.setField(mealPlanService, "mealTimeoutMs", 50L);
+        CountDownLatch release = new CountDownLatch(1);
+        when(aiRecipeService.generateRecipeForUser(eq(CONTEXT), anyString()))
+                .thenAnswer(inv -> {
+                    String occasion = inv.getArgument(1);
+                    if (occasion.startsWith("Sunday")) {
+                        release.await(5, TimeUnit.SECONDS);
+                    }
+                    return meal(occasion);
+                });
+
+        try {
+            List<Map<String, Object>> days = days(mealPlanService
+                    .generateWeeklyPlan(USER_ID, 1, MealPlanMode.PARALLEL));
+
+            assertThat(meals(days.get(6)).get(0).get("title"))
+                    .isEqualTo("AI Recipe Not Available");
+            assertThat(meals(days.get(5)).get(0).get("title"))
+                    .isEqualTo("Saturday meal 1");
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    @DisplayName("the plan deadline returns placeholders and skips queued meals")
+    void parallel_planDeadlineStopsQueuedWork() {
+        ReflectionTestUtils.setField(mealPlanService, "maxConcurrencyPerPlan", 1);
+        ReflectionTestUtils.setField(mealPlanService, "planDeadlineMs", 100L);
+        CountDownLatch release = new CountDownLatch(1);
+        when(aiRecipeService.generateRecipeForUser(eq(CONTEXT), anyString()))
+                .thenAnswer(inv -> {
+                    release.await(5, TimeUnit.SECONDS);
+                    return meal(inv.getArgument(1));
+                });
+
+        List<Map<String, Object>> days;
+        try {
+            days = days(mealPlanService
+                    .generateWeeklyPlan(USER_ID, 2, MealPlanMode.PARALLEL));
+        } finally {
+            release.countDown();
+        }
+
+        days.forEach(day -> meals(day).forEach(meal ->
+                assertThat(meal.get("title"))
+                        .isEqualTo("AI Recipe Not Available")));
+        verify(aiRecipeService, after(200).times(1))
+                .generateRecipeForUser(eq(CONTEXT), anyString());
+    }
+
+    @Test
+    @DisplayName("batch mode makes one call per group of days and pads short results")
+    void batch_oneCallPerDayGroup() {
+        ReflectionTestUtils.setField(mealPlanService, "batchDays", 3);
+        when(aiRecipeService.generateRecipesForUser(eq(CONTEXT), anyList()))
+                .thenAnswer(inv -> {
+                    List<String> occasions = inv.getArgument(1);
+                    if (occasions.get(0).startsWith("Sunday")) {
+                        return List.of(meal(occasions.get(0)));
+                    }
+                    return occasions.stream().map(MealPlanServiceTest::meal).toList();
+                });
+
+        List<Map<String, Object>> days = days(mealPlanService
+                .generateWeeklyPlan(USER_ID, 2, MealPlanMode.BATCH));
+
+        assertThat(meals(days.get(3)).get(1).get("title"))
+                .isEqualTo("Thursday meal 2");
+        assertThat(meals(days.get(6)).get(0).get("title"))
+                .isEqualTo("Sunday meal 1");
+        assertThat(meals(days.get(6)).get(1).get("title"))
+                .isEqualTo("AI Recipe Not Available");
+        verify(aiRecipeService, times(3))
+                .generateRecipesForUser(eq(CONTEXT), anyList());
+        verify(aiRecipeService, never())
+                .generateRecipeForUser(any(UserGenerationContext.class), anyString());
+    }
+
+    @Test
+    @DisplayName("the user context is built once and shared by every meal")
+    void parallel_buildsUserContextOnce() {
+        when(aiRecipeService.generateRecipeForUser(eq(CONTEXT), anyString()))
+                .thenAnswer(inv -> meal(inv.getArgument(1)));
+
+        mealPlanService.generateWeeklyPlan(USER_ID, 3, MealPlanMode.PARALLEL);
+
+        verify(aiRecipeService, times(1)).buildUserContext(7);
+        verify(aiRecipeService, times(21))
+                .generateRecipeForUser(eq(CONTEXT), anyString());
+    }
+
+    @ParameterizedTest
+    @EnumSource(MealPlanMode.class)
+    @DisplayName("an unknown user gets a placeholder plan without model calls")
+    void unknownUserGetsPlaceholders(final MealPlanMode mode) {
+        when(aiRecipeService.buildUserContext(8))
+                .thenThrow(new IllegalArgumentException("User not found"));
+
+        List<Map<String, Object>> days = days(mealPlanService
+                .generateWeeklyPlan(8L, 2, mode));
+
+        assertThat(days).hasSize(7);
+        days.forEach(day -> meals(day).forEach(meal ->
+                assertThat(meal.get("title"))
+                        .isEqualTo("AI Recipe Not Available")));
+        verify(aiRecipeService, never())
+                .generateRecipeForUser(any(UserGenerationContext.class), anyString());
+    }
+
+    @Test
+    @DisplayName("catalog mode uses catalog recipes and generates only the gaps")
+    void catalog_generatesOnlyGaps() {
+        UserTarget target = new UserTarget();
+        when(userTargetService.getUserTargets(7)).thenReturn(Optional.of(target));
+        Recipe stored = new Recipe();
+        stored.setRecipeId(12);
+        stored.setTitle("Catalog Bowl");
+        stored.setCalories(BigDecimal.valueOf(500));
+        List<List<Recipe>> picked = new ArrayList<>();
+        for (int d = 0; d < 7; d++) {
+            picked.add(Arrays.asList(stored, d == 2 ? null : stored));
+        }
+        when(optimizer.plan(USER, target, 7, 2)).thenReturn(picked);
+        when(aiRecipeService.generateRecipeForUser(eq(CONTEXT), anyString()))
+                .thenAnswer(inv -> meal(inv.getArgument(1)));
+
+        List<Map<String, Object>> days = days(mealPlanService
+                .generateWeeklyPlan(USER_ID, 2, MealPlanMode.CATALOG));
+
+        assertThat(meals(days.get(0)).get(0))
+                .containsEntry("title", "Catalog Bowl")
+                .containsEntry("recipeId", 12)
+                .containsEntry("calories", 500);
+        assertThat(meals(days.get(2)).get(1).get("title"))
+                .isEqualTo("Wednesday meal 2");
+        verify(aiRecipeService, times(1))
+                .generateRecipeForUser(eq(CONTEXT), anyString());
+    }
+
+    @Test
+    @DisplayName("catalog mode generates the whole plan when the user has no targets")
+    void catalog_withoutTargetsGeneratesPlan() {
+        when(userTargetService.getUserTargets(7)).thenReturn(Optional.empty());
+        when(aiRecipeService.generateRecipeForUser(eq(CONTEXT), anyString()))
+                .thenAnswer(inv -> meal(inv.getArgument(1)));
+
+        mealPlanService.generateWeeklyPlan(USER_ID, 1, MealPlanMode.CATALOG);
+
+        verifyNoInteractions(optimizer);
+        verify(aiRecipeService, times(7))
+                .generateRecipeForUser(eq(CONTEXT), anyString());
+    }
+
+    @Test
+    @DisplayName("streaming reports each meal before the slow ones finish")
+    void stream_reportsMealsAsTheyFinish() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(aiRecipeService.generateRecipeForUser(eq(CONTEXT), anyString()))
+                .thenAnswer(inv -> {
+                    String occasion = inv.getArgument(1);
+                    if (!occasion.startsWith("Monday")) {
+                        release.await(5, TimeUnit.SECONDS);
+                    }
+                    return meal(occasion);
+                });
+        RecordingListener listener = new RecordingListener();
+
+        CompletableFuture<Map<String, Object>> plan = mealPlanService
+                .streamWeeklyPlan(USER_ID, 1, MealPlanMode.PARALLEL, listener);
+        waitFor(() -> listener.events.contains("day:Monday"));
+
+        assertThat(plan).isNotDone();
+        assertThat(listener.events).containsExactly(
+                "meal:Monday:0:Monday meal 1", "day:Monday");
+
+        release.countDown();
+        Map<String, Object> result = plan.get(5, TimeUnit.SECONDS);
+
+        assertThat(days(result)).hasSize(7);
+        assertThat(listener.events).hasSize(15).endsWith("complete");
+    }
+
+    @Test
+    @DisplayName("cancelling a stream stops queued meals and the listener")
+    void stream_cancelStopsRemainingWork() throws Exception {
+        ReflectionTestUtils.setField(mealPlanService, "maxConcurrencyPerPlan", 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(aiRecipeService.generateRecipeForUser(eq(CONTEXT), anyString()))
+                .thenAnswer(inv -> {
+                    started.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    return meal(inv.getArgument(1));
+                });
+        RecordingListener listener = new RecordingListener();
+
+        CompletableFuture<Map<String, Object>> plan = mealPlanService
+                .streamWeeklyPlan(USER_ID, 2, MealPlanMode.PARALLEL, listener);
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        plan.cancel(true);
+        release.countDown();
+
+        verify(aiRecipeService, after(200).times(1))
+                .generateRecipeForUser(eq(CONTEXT), anyString());
+        assertThat(listener.events).isEmpty();
+    }
+
+    @Test
+    @DisplayName("cancelling a stream interrupts the meal being generated")
+    void stream_cancelInterruptsRunningMeal() throws Exception {
+        ReflectionTestUtils.setField(mealPlanService, "maxConcurrencyPerPlan", 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(aiRecipeService.generateRecipeForUser(eq(CONTEXT), anyString()))
+                .thenAnswer(inv -> {
+                    started.countDown();
+                    try {
+                        Thread.sleep(5_000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                        throw e;
+                    }
+                    return meal(inv.getArgument(1));
+                });
+
+        CompletableFuture<Map<String, Object>> plan = mealPlanService
+                .streamWeeklyPlan(USER_ID, 1, MealPlanMode.PARALLEL,
+                        new RecordingListener());
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        plan.cancel(true);
+
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    @DisplayName("the listener runs on the stream executor, one call at a time")
+    void stream_listenerRunsOffGenerationThreads() {
+        ExecutorService streamPool = Executors.newFixedThreadPool(4,
+                task -> new Thread(task, "stream-test"));
+        ReflectionTestUtils.setField(mealPlanService, "streamExecutor", streamPool);
+        when(aiRecipeService.generateRecipeForUser(eq(CONTEXT), anyString()))
+                .thenAnswer(inv -> meal(inv.getArgument(1)));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        MealPlanListener listener = new MealPlanListener() {
+            @Override
+            public void onMeal(final String day, final int slot,
+                               final Map<String, Object> meal) {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                threads.add(Thread.currentThread().getName());
+                running.decrementAndGet();
+            }
+
+            @Override
+            public void onDay(final Map<String, Object> day) {
+            }
+
+            @Override
+            public void onComplete(final Map<String, Object> plan) {
+            }
+        };
+        try {
+            CompletableFuture<Map<String, Object>> plan = mealPlanService
+                    .streamWeeklyPlan(USER_ID, 3, MealPlanMode.PARALLEL, listener);
+
+            assertThat(plan).succeedsWithin(5, TimeUnit.SECONDS);
+            assertThat(threads).hasSize(21).containsOnly("stream-test");
+            assertThat(peak.get()).isEqualTo(1);
+        } finally {
+            streamPool.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("a failing listener cancels the rest of the plan")
+    void stream_listenerFailureStopsPlan() {
+        ReflectionTestUtils.setField(mealPlanService, "maxConcurrencyPerPlan", 1);
+        when(aiRecipeService.generateRecipeForUser(eq(CONTEXT), anyString()))
+                .thenAnswer(inv -> meal(inv.getArgument(1)));
+        MealPlanListener listener = mock(MealPlanListener.class);
+        doThrow(new IllegalStateException("client gone"))
+                .when(listener).onMeal(anyString(), anyInt(), anyMap());
+
+        CompletableFuture<Map<String, Object>> plan = mealPlanService
+                .streamWeeklyPlan(USER_ID, 3, MealPlanMode.PARALLEL, listener);
+
+        assertThat(plan).failsWithin(5, TimeUnit.SECONDS);
+        verify(listener, times(1)).onMeal(anyString(), anyInt(), anyMap());
+        verify(listener, never()).onComplete(anyMap());
+        verify(aiRecipeService, after(100).atMost(2))
+                .generateRecipeForUser(eq(CONTEXT), anyString());
+    }
+
+    private static Map<String, Object> meal(final String title) {
+        return Map.of("title", title);
+    }
+
+    private static void waitFor(final java.util.function.BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Listener that records events as strings.
+     */
+    private static final class RecordingListener implements MealPlanListener {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onMeal(final String day, final int slot,
+                           final Map<String, Object> meal) {
+            events.add("meal:" + day + ":" + slot + ":" + meal.get("title"));
+        }
+
+        @Override
+        public void onDay(final Map<String, Object> day) {
+            events.add("day:" + day.get("day"));
+        }
+
+        @Override
+        public void onComplete(final Map<String, Object> plan) {
+            events.add("complete");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> days(final Map<String, Object> plan) {
+        return (List<Map<String, Object>>) plan.get("days");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> meals(final Map<String, Object> day) {
+        return (List<Map<String, Object>>) day.get("meals");
+    }
+}
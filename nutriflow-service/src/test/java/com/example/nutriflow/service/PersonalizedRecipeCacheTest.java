@@ -0,0 +1,164 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.Recipe;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link PersonalizedRecipeCache}.
+ */
+class PersonalizedRecipeCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final PersonalizedRecipeCache cache = new PersonalizedRecipeCache(
+            3, TimeUnit.MINUTES.toNanos(10), 2, now::get);
+
+    @Test
+    @DisplayName("serves the pool in turn, after the first recipe returned by the caller")
+    void next_rotatesThroughPool() {
+        cache.put(1, "fp", cache.version(1), List.of(recipe("A"), recipe("B"), recipe("C")));
+
+        assertThat(List.of(cache.next(1), cache.next(1), cache.next(1)))
+                .extracting(r -> r.orElseThrow().getTitle())
+                .containsExactly("B", "C", "A");
+        assertThat(cache.stats()).containsEntry("hits", 3L);
+    }
+
+    @Test
+    @DisplayName("an invalidated pool is only served again after its fingerprint is confirmed")
+    void invalidate_requiresRevalidation() {
+        long version = cache.version(1);
+        cache.put(1, "fp", version, List.of(recipe("A"), recipe("B")));
+
+        cache.invalidate(1);
+
+        assertThat(cache.next(1)).isEmpty();
+        assertThat(cache.revalidate(1, "other", cache.version(1))).isEmpty();
+        assertThat(cache.revalidate(1, "fp", cache.version(1))).get()
+                .extracting(Recipe::getTitle).isEqualTo("B");
+        assertThat(cache.next(1)).get().extracting(Recipe::getTitle).isEqualTo("A");
+    }
+
+    @Test
+    @DisplayName("a pool built from data read before an invalidation is not current")
+    void put_withOldVersionIsNotCurrent() {
+        long version = cache.version(1);
+        cache.invalidate(1);
+
+        cache.put(1, "fp", version, List.of(recipe("A")));
+
+        assertThat(cache.next(1)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("pools expire after the TTL")
+    void next_expiresPool() {
+        cache.put(1, "fp", cache.version(1), List.of(recipe("A")));
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(11));
+
+        assertThat(cache.next(1)).isEmpty();
+        assertThat(cache.revalidate(1, "fp", cache.version(1))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("drops the oldest pool when the user limit is reached")
+    void put_evictsOldestUser() {
+        cache.put(1, "fp1", 0, List.of(recipe("A")));
+        now.addAndGet(1);
+        cache.put(2, "fp2", 0, List.of(recipe("B")));
+        now.addAndGet(1);
+        cache.put(3, "fp3", 0, List.of(recipe("C")));
+
+        assertThat(cache.next(1)).isEmpty();
+        assertThat(cache.next(2)).isPresent();
+        assertThat(cache.next(3)).isPresent();
+    }
+
+    @Test
+    @DisplayName("versions of users without a current pool are pruned once no request can hold them")
+    void invalidate_prunesIdleVersions() {
+        cache.invalidate(1);
+        cache.invalidate(2);
+        cache.put(2, "fp2", cache.version(2), List.of(recipe("B")));
+        assertThat(cache.stats()).containsEntry("versions", 2);
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(5));
+        cache.invalidate(3);
+        assertThat(cache.stats()).containsEntry("versions", 3);
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(6));
+        cache.invalidate(4);
+
+        assertThat(cache.stats()).containsEntry("versions", 2)
+                .containsEntry("users", 0);
+        assertThat(cache.version(1)).isZero();
+        assertThat(cache.version(2)).isZero();
+        assertThat(cache.version(3)).isEqualTo(3);
+        assertThat(cache.version(4)).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("a prefilled pool serves every recipe before it needs a refill")
+    void prefill_needsRefillOnceConsumed() {
+        assertThat(cache.needsRefill(1)).isTrue();
+
+        cache.prefill(1, "fp", cache.version(1), List.of(recipe("A"), recipe("B")));
+
+        assertThat(cache.needsRefill(1)).isFalse();
+        assertThat(cache.next(1)).get().extracting(Recipe::getTitle).isEqualTo("A");
+        assertThat(cache.next(1)).get().extracting(Recipe::getTitle).isEqualTo("B");
+        assertThat(cache.needsRefill(1)).isTrue();
+        assertThat(cache.stats()).containsEntry("prefilled", 1L);
+    }
+
+    @Test
+    @DisplayName("a pool needs a refill after an invalidation or half its lifetime")
+    void needsRefill_afterInvalidationOrAging() {
+        cache.prefill(1, "fp", cache.version(1), List.of(recipe("A")));
+        cache.invalidate(1);
+        assertThat(cache.needsRefill(1)).isTrue();
+
+        assertThat(cache.adopt(1, "fp", cache.version(1))).isTrue();
+        assertThat(cache.needsRefill(1)).isFalse();
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(6));
+        assertThat(cache.needsRefill(1)).isTrue();
+        assertThat(cache.next(1)).get().extracting(Recipe::getTitle).isEqualTo("A");
+    }
+
+    @Test
+    @DisplayName("invalidation listeners hear about each invalidated user")
+    void invalidate_notifiesListeners() {
+        List<Integer> invalidated = new ArrayList<>();
+        cache.addInvalidationListener(invalidated::add);
+
+        cache.invalidate(4);
+        cache.invalidate(5);
+
+        assertThat(invalidated).containsExactly(4, 5);
+    }
+
+    @Test
+    @DisplayName("fingerprints differ when any prompt input differs")
+    void fingerprint_isStableAndSensitive() {
+        assertThat(PersonalizedRecipeCache.fingerprint("allergies: [nuts]"))
+                .isEqualTo(PersonalizedRecipeCache.fingerprint("allergies: [nuts]"))
+                .isNotEqualTo(PersonalizedRecipeCache.fingerprint("allergies: [milk]"))
+                .hasSize(64);
+    }
+
+    private static Recipe recipe(final String title) {
+        Recipe recipe = new Recipe();
+        recipe.setTitle(title);
+        return recipe;
+    }
+}
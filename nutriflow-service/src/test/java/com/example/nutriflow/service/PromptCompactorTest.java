@@ -0,0 +1,133 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.PantryItem;
+import com.example.nutriflow.model.User;
+import com.example.nutriflow.model.enums.CookingSkillLevel;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link PromptCompactor}.
+ */
+class PromptCompactorTest {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2024, 3, 1, 12, 0);
+
+    private final PromptCompactor compactor = new PromptCompactor(3, 250);
+
+    @Test
+    @DisplayName("canonicalizes and de-duplicates terms and merges pantry items")
+    void compact_canonicalizesTerms() {
+        User user = new User();
+        user.setAllergies(new String[] {" Peanuts", "peanuts ", "", null});
+        user.setEquipments(new String[] {"Oven", "air   fryer", "OVEN"});
+        user.setBudget(new BigDecimal("12.50"));
+        user.setCookingSkillLevel(CookingSkillLevel.INTERMEDIATE);
+
+        PromptCompactor.CompactProfile profile = compactor.compact(user, List.of(
+                item("Rice", "1.000", "KG", 1), item("rice ", "0.5", "kg", 2)));
+
+        assertThat(profile.getPromptPrefix()).isEqualTo(" User profile - allergies: peanuts; budget: $12.50; "
+                + "cooking skill: INTERMEDIATE; equipment: oven, air fryer; pantry: rice (1.5 kg). ");
+        assertThat(profile.getPantryText()).isEqualTo("rice (1.5 kg)");
+    }
+
+    @Test
+    @DisplayName("keeps the most recently stocked pantry items the user can eat")
+    void compact_capsPantryByRelevance() {
+        User user = new User();
+        user.setAllergies(new String[] {"peanut"});
+        user.setDislikes(new String[] {"Olives"});
+
+        PromptCompactor.CompactProfile profile = compactor.compact(user, List.of(
+                item("Flour", null, null, 1), item("Peanut butter", "1", "jar", 9),
+                item("Green olives", "1", "can", 8), item("Eggs", "6", null, 5),
+                item("Milk", "1", "l", 4), item("Salt", null, null, 3)));
+
+        assertThat(profile.getPantryText()).isEqualTo("flour, salt, milk (1 l)");
+    }
+
+    @Test
+    @DisplayName("matches allergies and dislikes as whole words, singular or plural")
+    void compact_matchesWholeWords() {
+        PromptCompactor wide = new PromptCompactor(10, 250);
+        User user = new User();
+        user.setAllergies(new String[] {"egg", "nut", "peanuts"});
+        user.setDislikes(new String[] {"ham", "olive"});
+
+        PromptCompactor.CompactProfile profile = wide.compact(user, List.of(
+                item("Eggplant", null, null, 1), item("Coconut milk", null, null, 2),
+                item("Nutmeg", null, null, 3), item("Graham crackers", null, null, 4),
+                item("Eggs", null, null, 5), item("Boiled egg", null, null, 6),
+                item("Mixed nuts", null, null, 7), item("Peanut butter", null, null, 8),
+                item("Smoked ham", null, null, 9), item("Olives", null, null, 10)));
+
+        assertThat(profile.getPantryText())
+                .isEqualTo("eggplant, coconut milk, nutmeg, graham crackers");
+    }
+
+    @Test
+    @DisplayName("merges pantry items whose quantities are all unknown")
+    void compact_mergesUnknownQuantities() {
+        PromptCompactor.CompactProfile profile = compactor.compact(new User(), List.of(
+                item("Salt", null, null, 1), item("salt", null, null, 2)));
+
+        assertThat(profile.getPantryText()).isEqualTo("salt");
+    }
+
+    @Test
+    @DisplayName("drops empty sections entirely")
+    void compact_dropsEmptySections() {
+        PromptCompactor.CompactProfile profile = compactor.compact(new User(), List.of());
+
+        assertThat(profile.getPromptPrefix()).isEqualTo(" ");
+        assertThat(profile.getPantryText()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("fits the token budget by dropping pantry detail before dislikes, never allergies")
+    void compact_enforcesTokenBudget() {
+        PromptCompactor small = new PromptCompactor(50, 40);
+        User user = new User();
+        user.setAllergies(new String[] {"shellfish", "sesame"});
+        user.setDislikes(new String[] {"cilantro", "anchovies", "liver"});
+        List<PantryItem> pantry = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            pantry.add(item("Spice " + i, "2", "tbsp", i));
+        }
+
+        PromptCompactor.CompactProfile profile = small.compact(user, pantry);
+
+        assertThat(profile.getTokensAfter()).isLessThanOrEqualTo(40);
+        assertThat(profile.getTokensBefore()).isGreaterThan(profile.getTokensAfter());
+        assertThat(profile.getPromptPrefix()).contains("allergies: shellfish, sesame")
+                .contains("dislikes: cilantro, anchovies, liver").doesNotContain("tbsp");
+        assertThat(profile.getPantryText()).startsWith("spice 0, spice 1");
+        assertThat(small.stats()).containsEntry("trimmedToBudget", 1L).containsEntry("compactions", 1L);
+    }
+
+    @Test
+    @DisplayName("estimates tokens from word pieces and punctuation")
+    void estimateTokens_countsWordsAndPunctuation() {
+        assertThat(PromptCompactor.estimateTokens("")).isZero();
+        assertThat(PromptCompactor.estimateTokens("oven, air fryer")).isEqualTo(5);
+        assertThat(PromptCompactor.estimateTokens("$12.50")).isEqualTo(4);
+    }
+
+    private static PantryItem item(final String name, final String quantity, final String unit,
+                                   final int daysAgo) {
+        PantryItem item = new PantryItem();
+        item.setName(name);
+        item.setQuantity(quantity == null ? null : new BigDecimal(quantity));
+        item.setUnit(unit);
+        item.setUpdatedAt(DAY.minusDays(daysAgo));
+        return item;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.RecipeIngredient;
+import com.example.nutriflow.service.repository.RecipeIngredientRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link RecipeIngredientIndex}.
+ */
+@ExtendWith(MockitoExtension.class)
+class RecipeIngredientIndexTest {
+
+    @Mock
+    private RecipeIngredientRepository recipeIngredientRepository;
+
+    @InjectMocks
+    private RecipeIngredientIndex index;
+
+    @BeforeEach
+    void setUp() {
+        when(recipeIngredientRepository.findAll()).thenReturn(List.of(
+                row(1, "Bread"),
+                row(1, "avocado"),
+                row(2, "Egg"),
+                row(2, "spinach "),
+                row(3, "egg"),
+                row(3, "Spinach"),
+                row(3, "Avocado"),
+                row(4, null),
+                row(null, "ghost")));
+        index.rebuild();
+    }
+
+    @Test
+    @DisplayName("lookup is case-insensitive and returns IDs in order")
+    void lookup_caseInsensitive() {
+        assertThat(index.lookup("AVOCADO")).containsExactly(1, 3);
+        assertThat(index.lookup(" spinach")).containsExactly(2, 3);
+    }
+
+    @Test
+    @DisplayName("lookup returns empty for unknown or blank ingredients")
+    void lookup_unknown() {
+        assertThat(index.lookup("tofu")).isEmpty();
+        assertThat(index.lookup("  ")).isEmpty();
+        assertThat(index.lookup(null)).isEmpty();
+        assertThat(index.lookup("ghost")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("index adds new rows to an existing index")
+    void index_addsRows() {
+        index.index(List.of(row(9, "Tofu"), row(9, "egg")));
+
+        assertThat(index.lookup("tofu")).containsExactly(9);
+        assertThat(index.lookup("egg")).containsExactly(2, 3, 9);
+    }
+
+    @Test
+    @DisplayName("ingredientsOf returns the normalized names of a recipe")
+    void ingredientsOf_returnsNames() {
+        assertThat(index.ingredientsOf(3))
+                .containsExactlyInAnyOrder("egg", "spinach", "avocado");
+        assertThat(index.ingredientsOf(42)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("allergensOf collects the tags of all ingredients of a recipe")
+    void allergensOf_collectsTags() {
+        index.index(List.of(
+                RecipeIngredient.builder().recipeId(7).ingredient("Bread")
+                        .allergenTags(new String[] {"Gluten", " "}).build(),
+                RecipeIngredient.builder().recipeId(7).ingredient("Butter")
+                        .allergenTags(new String[] {"dairy"}).build()));
+
+        assertThat(index.allergensOf(7))
+                .containsExactlyInAnyOrder("gluten", "dairy");
+        assertThat(index.allergensOf(1)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("ANY search ranks by number of matching terms")
+    void search_anyRanksByMatches() {
+        List<Integer> ids = index.search(
+                List.of("egg", "spinach", "avocado"),
+                RecipeIngredientIndex.MatchMode.ANY);
+
+        assertThat(ids).containsExactly(3, 2, 1);
+    }
+
+    @Test
+    @DisplayName("ALL search keeps only recipes matching every term")
+    void search_allRequiresEveryTerm() {
+        List<Integer> ids = index.search(
+                List.of("Egg", "egg", "avocado"),
+                RecipeIngredientIndex.MatchMode.ALL);
+
+        assertThat(ids).containsExactly(3);
+    }
+
+    @Test
+    @DisplayName("search with no usable terms returns empty")
+    void search_noTerms() {
+        assertThat(index.search(List.of(" "),
+                RecipeIngredientIndex.MatchMode.ANY)).isEmpty();
+    }
+
+    private static RecipeIngredient row(final Integer recipeId,
+                                        final String ingredient) {
+        return RecipeIngredient.builder()
+                .recipeId(recipeId)
+                .ingredient(ingredient)
+                .build();
+    }
+}
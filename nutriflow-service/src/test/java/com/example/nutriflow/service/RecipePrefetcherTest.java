@@ -0,0 +1,138 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.Recipe;
+import com.example.nutriflow.service.ai.ModelOverloadedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link RecipePrefetcher}.
+ * Refills run on the calling thread and a manual clock stands in for
+ * time.
+ */
+@ExtendWith(MockitoExtension.class)
+class RecipePrefetcherTest {
+
+    private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(30);
+
+    @Mock
+    private AIRecipeService aiRecipeService;
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final PersonalizedRecipeCache cache = new PersonalizedRecipeCache(
+            2, TimeUnit.HOURS.toNanos(1), 100, now::get);
+
+    private RecipePrefetcher prefetcher;
+
+    @BeforeEach
+    void setUp() {
+        prefetcher = new RecipePrefetcher(aiRecipeService, cache, Runnable::run,
+                true, 2, WINDOW_NANOS, 0, 10, now::get);
+        prefetcher.start();
+    }
+
+    @Test
+    @DisplayName("refills only once a user has made enough requests within the window")
+    void recordActivity_refillsActiveUsers() {
+        when(aiRecipeService.prefetchPersonalRecipes(1)).thenReturn(true);
+
+        prefetcher.recordActivity(1);
+        verify(aiRecipeService, never()).prefetchPersonalRecipes(1);
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(5));
+        prefetcher.recordActivity(1);
+
+        verify(aiRecipeService, times(1)).prefetchPersonalRecipes(1);
+        assertThat(prefetcher.stats()).containsEntry("generated", 1L);
+    }
+
+    @Test
+    @DisplayName("requests further apart than the window do not make a user active")
+    void recordActivity_ignoresSparseRequests() {
+        prefetcher.recordActivity(1);
+        now.addAndGet(WINDOW_NANOS + 1);
+        prefetcher.recordActivity(1);
+
+        assertThat(prefetcher.isActive(1)).isFalse();
+        verify(aiRecipeService, never()).prefetchPersonalRecipes(1);
+    }
+
+    @Test
+    @DisplayName("a pool with unserved recipes is left alone until it is invalidated")
+    void invalidation_triggersRefill() {
+        cache.prefill(1, "fp", cache.version(1), List.of(recipe("A"), recipe("B")));
+        prefetcher.recordActivity(1);
+        prefetcher.recordActivity(1);
+        verify(aiRecipeService, never()).prefetchPersonalRecipes(1);
+
+        cache.invalidate(1);
+
+        verify(aiRecipeService, times(1)).prefetchPersonalRecipes(1);
+    }
+
+    @Test
+    @DisplayName("refills that find no spare model capacity are dropped and retried later")
+    void refill_defersWhenOverloaded() {
+        when(aiRecipeService.prefetchPersonalRecipes(1))
+                .thenThrow(new ModelOverloadedException("No spare model capacity", 1));
+
+        prefetcher.recordActivity(1);
+        prefetcher.recordActivity(1);
+        prefetcher.scan();
+
+        verify(aiRecipeService, times(2)).prefetchPersonalRecipes(1);
+        assertThat(prefetcher.stats())
+                .containsEntry("deferred", 2L)
+                .containsEntry("pending", 0);
+    }
+
+    @Test
+    @DisplayName("a full executor rejects the refill without failing the request")
+    void recordActivity_survivesFullExecutor() {
+        RecipePrefetcher full = new RecipePrefetcher(aiRecipeService, cache,
+                task -> {
+                    throw new RejectedExecutionException("full");
+                }, true, 1, WINDOW_NANOS, 0, 10, now::get);
+
+        full.recordActivity(1);
+
+        assertThat(full.stats())
+                .containsEntry("rejected", 1L)
+                .containsEntry("pending", 0);
+    }
+
+    @Test
+    @DisplayName("the scan forgets users who have gone quiet")
+    void scan_dropsInactiveUsers() {
+        prefetcher.recordActivity(1);
+        prefetcher.recordActivity(2);
+        now.addAndGet(WINDOW_NANOS + 1);
+        prefetcher.recordActivity(2);
+
+        prefetcher.scan();
+
+        assertThat(prefetcher.stats()).containsEntry("trackedUsers", 1);
+    }
+
+    private static Recipe recipe(final String title) {
+        Recipe recipe = new Recipe();
+        recipe.setTitle(title);
+        return recipe;
+    }
+}
@@ -34,6 +34,9 @@ class RecipeServiceTest {
     @Mock
     private FavoriteRecipeRepository favoriteRecipeRepository;
 
+    @Mock
+    private RecipeIngredientIndex ingredientIndex;
+
     @InjectMocks
     private RecipeService recipeService;
 
@@ -127,4 +130,35 @@ class RecipeServiceTest {
             return count == 1;
         }));
     }
+
+    @Test
+    @DisplayName("searchByIngredients keeps the index ranking order")
+    void searchByIngredients_keepsRanking() {
+        Recipe first = new Recipe();
+        first.setRecipeId(3);
+        Recipe second = new Recipe();
+        second.setRecipeId(1);
+        when(ingredientIndex.search(List.of("egg", "spinach"),
+                RecipeIngredientIndex.MatchMode.ANY))
+                .thenReturn(List.of(3, 1, 5));
+        when(recipeRepository.findAllById(List.of(3, 1, 5)))
+                .thenReturn(List.of(second, first));
+
+        List<Recipe> out = recipeService.searchByIngredients(
+                List.of("egg", "spinach"), RecipeIngredientIndex.MatchMode.ANY);
+
+        assertThat(out).containsExactly(first, second);
+    }
+
+    @Test
+    @DisplayName("searchByIngredients skips the repository when nothing matches")
+    void searchByIngredients_noMatches() {
+        when(ingredientIndex.search(List.of("tofu"),
+                RecipeIngredientIndex.MatchMode.ALL))
+                .thenReturn(List.of());
+
+        assertThat(recipeService.searchByIngredients(
+                List.of("tofu"), RecipeIngredientIndex.MatchMode.ALL)).isEmpty();
+        verifyNoInteractions(recipeRepository);
+    }
 }
@@ -0,0 +1,146 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.Recipe;
+import com.example.nutriflow.service.ai.StreamCancelledException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link RecipeStreamParser}.
+ * Responses are fed in small pieces, as a streaming model returns them.
+ */
+class RecipeStreamParserTest {
+
+    private static final String RESPONSE = "{\"title\": \"Crème \\\"Brûlée\\\"\", "
+            + "\"cookTime\": 40, "
+            + "\"ingredients\": [{\"ingredient\": \"cream\", \"quantity\": 2, \"allergenTags\": [\"dairy\"]}, "
+            + "{\"ingredient\": \"sugar\"}], "
+            + "\"instructions\": \"Heat the cream.\\nWhisk in sugar \\u2014 slowly; serve \\ud83c\\udf6e.\", "
+            + "\"calories\": 350}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<String> events = new ArrayList<>();
+
+    private final StringBuilder instructions = new StringBuilder();
+
+    private final RecipeStreamParser parser = new RecipeStreamParser(objectMapper,
+            new RecipeStreamListener() {
+                @Override
+                public void onTitle(final String title) {
+                    events.add("title:" + title);
+                }
+
+                @Override
+                public void onIngredients(final JsonNode ingredients) {
+                    events.add("ingredients:" + ingredients.size());
+                }
+
+                @Override
+                public void onInstructions(final String text) {
+                    events.add("instructions");
+                    instructions.append(text);
+                }
+
+                @Override
+                public void onComplete(final Recipe recipe) {
+                    events.add("complete:" + recipe.getTitle());
+                }
+            });
+
+    @Test
+    @DisplayName("passes on each part once it is complete, and the instructions as they arrive")
+    void feed_streamsPartsInOrder() {
+        for (int i = 0; i < RESPONSE.length(); i++) {
+            parser.feed(RESPONSE.substring(i, i + 1));
+            if (RESPONSE.startsWith("\"ingredients\"", i - 12)) {
+                assertThat(events).containsExactly("title:Crème \"Brûlée\"");
+            }
+        }
+
+        assertThat(events.get(1)).isEqualTo("ingredients:2");
+        assertThat(events.subList(2, events.size())).containsOnly("instructions").hasSizeGreaterThan(10);
+        assertThat(instructions.toString())
+                .isEqualTo("Heat the cream.\nWhisk in sugar — slowly; serve 🍮.");
+    }
+
+    @Test
+    @DisplayName("a cancelled stream stops at the next piece")
+    void feed_stopsOnceCancelled() {
+        parser.feed(RESPONSE.substring(0, 10));
+        parser.cancel();
+
+        assertThatThrownBy(() -> parser.feed(RESPONSE.substring(10)))
+                .isInstanceOf(StreamCancelledException.class);
+        assertThat(events).isEmpty();
+    }
+
+    @Test
+    @DisplayName("a failing listener stops the stream with a cancellation")
+    void feed_wrapsListenerFailure() {
+        IllegalStateException closed = new IllegalStateException("connection closed");
+        RecipeStreamParser failing = new RecipeStreamParser(objectMapper, new RecipeStreamListener() {
+            @Override
+            public void onTitle(final String title) {
+                throw closed;
+            }
+
+            @Override
+            public void onIngredients(final JsonNode ingredients) {
+            }
+
+            @Override
+            public void onInstructions(final String text) {
+            }
+
+            @Override
+            public void onComplete(final Recipe recipe) {
+            }
+        });
+
+        assertThatThrownBy(() -> failing.feed(RESPONSE))
+                .isInstanceOf(StreamCancelledException.class)
+                .hasCause(closed);
+        assertThatThrownBy(() -> failing.feed("}"))
+                .isInstanceOf(StreamCancelledException.class);
+    }
+
+    @Test
+    @DisplayName("finish sends only what the stream has not sent, then the recipe")
+    void finish_completesStream() {
+        parser.feed(RESPONSE.substring(0, 90));
+        Recipe recipe = new Recipe();
+        recipe.setTitle("Crème \"Brûlée\"");
+        recipe.setIngredients("[{\"ingredient\": \"cream\"}, {\"ingredient\": \"sugar\"}]");
+        recipe.setInstructions("Heat the cream.\nWhisk in sugar.");
+
+        parser.finish(recipe);
+
+        assertThat(events).containsExactly("title:Crème \"Brûlée\"", "ingredients:2",
+                "instructions", "complete:Crème \"Brûlée\"");
+        assertThat(instructions.toString()).isEqualTo("Heat the cream.\nWhisk in sugar.");
+    }
+
+    @Test
+    @DisplayName("malformed input stops partial events without failing the stream")
+    void feed_survivesMalformedInput() {
+        parser.feed("{\"title\": \"Soup\", ]] \"instructions\": ");
+        parser.feed("\"Boil\"}");
+        Recipe recipe = new Recipe();
+        recipe.setTitle("Soup");
+        recipe.setInstructions("Boil water.");
+
+        parser.finish(recipe);
+
+        assertThat(events).containsExactly("title:Soup", "instructions", "complete:Soup");
+        assertThat(instructions.toString()).isEqualTo("Boil water.");
+    }
+}
@@ -0,0 +1,340 @@
+package com.example.nutriflow.service;
+
+import com.example.nutriflow.model.ClientUsage;
+import com.example.nutriflow.service.repository.ClientUsageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link UsageAnalytics} and its {@link UsageEventRing}.
+ * The clock starts at the epoch, so windows are whole minutes from
+ * 1970-01-01T00:00 UTC.
+ */
+@ExtendWith(MockitoExtension.class)
+class UsageAnalyticsTest {
+
+    private static final long MS = 1_000_000L;
+
+    private static final String ROUTE = "GET /api/recipes/{id}";
+
+    @Mock
+    private ClientUsageRepository repository;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private UsageAnalytics analytics;
+
+    @BeforeEach
+    void setUp() {
+        analytics = new UsageAnalytics(repository, true, 8, 60, 500, 100, 200,
+            3, clock::get);
+    }
+
+    @Test
+    @DisplayName("writes one aggregate row per window, client, route and status")
+    void drain_aggregatesClosedWindows() {
+        analytics.record("web", "u1", ROUTE, 200, 10 * MS);
+        analytics.record("web", "u2", ROUTE, 200, 30 * MS);
+        analytics.record("web", "u1", ROUTE, 200, 20 * MS);
+        analytics.record("web", null, ROUTE, 404, 5 * MS);
+        analytics.record("fitness-app", "u9", ROUTE, 200, 40 * MS);
+
+        assertThat(analytics.drain(false)).isZero();
+        verifyNoInteractions(repository);
+
+        clock.set(60_000);
+        assertThat(analytics.drain(false)).isEqualTo(3);
+
+        List<ClientUsage> rows = savedRows();
+        rows.sort(Comparator.comparing(ClientUsage::getClientId)
+            .thenComparing(ClientUsage::getStatus));
+        assertThat(rows).extracting(ClientUsage::getClientId,
+                ClientUsage::getStatus, ClientUsage::getRequestCount)
+            .containsExactly(
+                tuple("fitness-app", 200, 1L),
+                tuple("web", 200, 3L),
+                tuple("web", 404, 1L));
+        ClientUsage web = rows.get(1);
+        assertThat(web.getWindowStart())
+            .isEqualTo(LocalDateTime.of(1970, 1, 1, 0, 0));
+        assertThat(web.getRoute()).isEqualTo(ROUTE);
+        assertThat(web.getEndUserCount()).isEqualTo(2);
+        assertThat(web.getTotalLatencyMs()).isEqualTo(60L);
+        assertThat(web.getMaxLatencyMs()).isEqualTo(30L);
+        assertThat(analytics.stats()).containsEntry("rowsWritten", 3L)
+            .containsEntry("clientErrors", 1L);
+    }
+
+    @Test
+    @DisplayName("keeps the current window until it closes or the pipeline stops")
+    void stop_writesCurrentWindow() {
+        clock.set(60_000);
+        analytics.record("web", "u1", ROUTE, 200, MS);
+        clock.set(90_000);
+        analytics.record("web", "u1", ROUTE, 200, MS);
+
+        assertThat(analytics.drain(false)).isZero();
+        analytics.stop();
+
+        List<ClientUsage> rows = savedRows();
+        assertThat(rows).singleElement().satisfies(row -> {
+            assertThat(row.getWindowStart())
+                .isEqualTo(LocalDateTime.of(1970, 1, 1, 0, 1));
+            assertThat(row.getRequestCount()).isEqualTo(2L);
+        });
+    }
+
+    @Test
+    @DisplayName("drops events without blocking when the ring is full")
+    void record_dropsWhenRingFull() {
+        for (int i = 0; i < 10; i++) {
+            analytics.record("web", null, ROUTE, 200, MS);
+        }
+
+        assertThat(analytics.stats()).containsEntry("recorded", 10L)
+            .containsEntry("dropped", 2L)
+            .containsEntry("buffered", 8);
+
+        analytics.stop();
+        assertThat(savedRows()).singleElement()
+            .extracting(ClientUsage::getRequestCount).isEqualTo(8L);
+    }
+
+    @Test
+    @DisplayName("gives rows up after their last failed write instead of throwing")
+    void drain_countsWriteFailures() {
+        when(repository.saveAll(anyList()))
+            .thenThrow(new IllegalStateException("db down"));
+        analytics.record("web", null, ROUTE, 500, MS);
+
+        analytics.stop();
+
+        assertThat(analytics.stats()).containsEntry("rowsFailed", 1L)
+            .containsEntry("rowsRetried", 2L)
+            .containsEntry("serverErrors", 1L);
+        verify(repository, times(3)).saveAll(anyList());
+    }
+
+    @Test
+    @DisplayName("keeps rows of a failed write for the next drain")
+    void drain_retriesFailedRows() {
+        when(repository.saveAll(anyList()))
+            .thenThrow(new IllegalStateException("db down"))
+            .thenAnswer(inv -> inv.getArgument(0));
+        analytics.record("web", "u1", ROUTE, 200, MS);
+        clock.set(60_000);
+
+        assertThat(analytics.drain(false)).isZero();
+        assertThat(analytics.drain(false)).isEqualTo(1);
+
+        assertThat(analytics.stats()).containsEntry("rowsRetried", 1L)
+            .containsEntry("rowsWritten", 1L)
+            .containsEntry("rowsFailed", 0L);
+    }
+
+    @Test
+    @DisplayName("aggregates clients beyond the cap of a window as other")
+    void drain_foldsClientsBeyondCap() {
+        analytics = new UsageAnalytics(repository, true, 8, 60, 500, 100, 2,
+            3, clock::get);
+        for (String client : List.of("a", "b", "c", "d", "a")) {
+            analytics.record(client, null, ROUTE, 200, MS);
+        }
+        clock.set(60_000);
+        analytics.drain(false);
+        analytics.record("e", null, ROUTE, 200, MS);
+
+        analytics.stop();
+
+        List<ClientUsage> rows = savedRowsOf(2);
+        assertThat(rows).extracting(ClientUsage::getClientId,
+                ClientUsage::getRequestCount)
+            .containsExactlyInAnyOrder(tuple("a", 2L), tuple("b", 1L),
+                tuple(UsageAnalytics.OTHER_CLIENTS, 2L), tuple("e", 1L));
+        assertThat(analytics.stats()).containsEntry("foldedToOther", 2L);
+    }
+
+    @Test
+    @DisplayName("counts distinct trimmed end users without keeping their ids")
+    void drain_estimatesEndUsers() {
+        analytics = new UsageAnalytics(repository, true, 4096, 60, 500, 100,
+            200, 3, clock::get);
+        String longId = "x".repeat(10_000);
+        for (String user : List.of("u1", " u1 ", " ", longId, longId + "y")) {
+            analytics.record("web", user, ROUTE, 200, MS);
+        }
+        for (int i = 0; i < 2_000; i++) {
+            analytics.record("app", "user-" + i, ROUTE, 200, MS);
+        }
+
+        analytics.stop();
+
+        List<ClientUsage> rows = savedRows();
+        rows.sort(Comparator.comparing(ClientUsage::getClientId));
+        assertThat(rows.get(1).getEndUserCount()).isEqualTo(3);
+        assertThat(rows.get(0).getEndUserCount()).isBetween(1_900, 2_100);
+    }
+
+    @Test
+    @DisplayName("leaves the pending rows alone when the drain thread does not stop")
+    void stop_skipsDrainWhileThreadBusy() throws Exception {
+        analytics = new UsageAnalytics(repository, true, 8, 60, 5, 100, 200,
+            3, clock::get);
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(repository.saveAll(anyList())).thenAnswer(inv -> {
+            saving.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return inv.getArgument(0);
+        });
+        analytics.record("web", null, ROUTE, 200, MS);
+        clock.set(60_000);
+        analytics.start();
+        try {
+            assertThat(saving.await(5, TimeUnit.SECONDS)).isTrue();
+            analytics.record("web", null, ROUTE, 200, MS);
+
+            analytics.stop();
+
+            assertThat(analytics.stats()).containsEntry("buffered", 1);
+            verify(repository, times(1)).saveAll(anyList());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    @DisplayName("merges the database totals per client and route into time buckets")
+    void query_bucketsRows() {
+        LocalDateTime from = LocalDateTime.of(2025, 1, 1, 10, 0);
+        LocalDateTime to = from.plusHours(1);
+        when(repository.sumPerBucket("web", ROUTE, from, to, 300L))
+            .thenReturn(List.of(
+                totals(from, 200, 10, 3, 160, 50),
+                totals(from.plusMinutes(2), 503, 1, 1, 10, 10),
+                totals(from.plusMinutes(5), 200, 2, 1, 20, 15)));
+
+        List<Map<String, Object>> usage =
+            analytics.query("web", ROUTE, from, to, 5);
+
+        assertThat(usage).hasSize(2);
+        assertThat(usage.get(0))
+            .containsEntry("windowStart", from)
+            .containsEntry("clientId", "web")
+            .containsEntry("route", ROUTE)
+            .containsEntry("requests", 11L)
+            .containsEntry("serverErrors", 1L)
+            .containsEntry("avgLatencyMs", 170d / 11)
+            .containsEntry("maxLatencyMs", 50L)
+            .containsEntry("peakEndUsers", 3)
+            .containsEntry("statuses", Map.of(200, 10L, 503, 1L));
+        assertThat(usage.get(1))
+            .containsEntry("windowStart", from.plusMinutes(5))
+            .containsEntry("requests", 2L);
+    }
+
+    @Test
+    @DisplayName("the ring hands events over in order and reuses its slots")
+    void ring_preservesOrderAcrossWrap() {
+        UsageEventRing<Integer> ring = new UsageEventRing<>(3);
+        assertThat(ring.capacity()).isEqualTo(4);
+        List<Integer> taken = new ArrayList<>();
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertThat(ring.offer(round * 4 + i)).isTrue();
+            }
+            assertThat(ring.offer(-1)).isFalse();
+            assertThat(ring.drain(taken::add, 3)).isEqualTo(3);
+            assertThat(ring.drain(taken::add, 10)).isEqualTo(1);
+        }
+
+        assertThat(taken).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11);
+        assertThat(ring.size()).isZero();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<ClientUsage> savedRowsOf(final int batches) {
+        ArgumentCaptor<List<ClientUsage>> captor =
+            ArgumentCaptor.forClass(List.class);
+        verify(repository, times(batches)).saveAll(captor.capture());
+        List<ClientUsage> rows = new ArrayList<>();
+        captor.getAllValues().forEach(rows::addAll);
+        return rows;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<ClientUsage> savedRows() {
+        ArgumentCaptor<List<ClientUsage>> captor =
+            ArgumentCaptor.forClass(List.class);
+        verify(repository).saveAll(captor.capture());
+        return new ArrayList<>(captor.getValue());
+    }
+
+    private static ClientUsageRepository.BucketTotals totals(
+            final LocalDateTime windowStart, final int status,
+            final long requests, final int endUsers, final long totalMs,
+            final long maxMs) {
+        return new ClientUsageRepository.BucketTotals() {
+            @Override
+            public Long getBucket() {
+                return windowStart.toEpochSecond(ZoneOffset.UTC) / 300;
+            }
+
+            @Override
+            public String getClientId() {
+                return "web";
+            }
+
+            @Override
+            public String getRoute() {
+                return ROUTE;
+            }
+
+            @Override
+            public Integer getStatus() {
+                return status;
+            }
+
+            @Override
+            public Long getRequestCount() {
+                return requests;
+            }
+
+            @Override
+            public Integer getEndUserCount() {
+                return endUsers;
+            }
+
+            @Override
+            public Long getTotalLatencyMs() {
+                return totalMs;
+            }
+
+            @Override
+            public Long getMaxLatencyMs() {
+                return maxMs;
+            }
+        };
+    }
+}
@@ -31,6 +31,9 @@ class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private PersonalizedRecipeCache personalizedRecipeCache;
+
     @InjectMocks
     private UserService userService;
 
@@ -302,6 +305,7 @@ class UserServiceTest {
         assertArrayEquals(new String[]{"shellfish", "nuts"}, testUser.getAllergies());
         assertEquals(CookingSkillLevel.ADVANCED, testUser.getCookingSkillLevel());
         verify(userRepository, times(1)).save(testUser);
+        verify(personalizedRecipeCache, times(1)).invalidate(1);
     }
 
     @Test
@@ -318,5 +322,6 @@ class UserServiceTest {
         assertFalse(result.isPresent());
         verify(userRepository, times(1)).findUserById(999);
         verify(userRepository, never()).save(any(User.class));
+        verify(personalizedRecipeCache, never()).invalidate(any());
     }
 }
\ No newline at end of file
@@ -0,0 +1,122 @@
+package com.example.nutriflow.service.ai;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link AIResponseCache}.
+ */
+class AIResponseCacheTest {
+
+    private static final long TTL = 1_000L;
+
+    private final AtomicLong now = new AtomicLong();
+
+    private AIResponseCache cache(final int size,
+                                  final AIResponseCache.EvictionPolicy policy) {
+        return new AIResponseCache(size, TTL, policy, now::get);
+    }
+
+    @Test
+    @DisplayName("key normalizes whitespace and case but keeps model and schema")
+    void key_normalizesPrompt() {
+        assertEquals(
+                AIResponseCache.key("m", "s", "Generate  a\nRecipe "),
+                AIResponseCache.key("m", "s", "generate a recipe"));
+        assertNotEquals(
+                AIResponseCache.key("m", "s", "recipe"),
+                AIResponseCache.key("other", "s", "recipe"));
+        assertNotEquals(
+                AIResponseCache.key("m", "s", "recipe"),
+                AIResponseCache.key("m", "t", "recipe"));
+    }
+
+    @Test
+    @DisplayName("get counts hits and misses")
+    void get_countsHitsAndMisses() {
+        AIResponseCache cache = cache(4, AIResponseCache.EvictionPolicy.LRU);
+
+        assertTrue(cache.get("a").isEmpty());
+        cache.put("a", "{}");
+        assertEquals("{}", cache.get("a").orElseThrow());
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    @DisplayName("entries expire after the TTL")
+    void get_expiresAfterTtl() {
+        AIResponseCache cache = cache(4, AIResponseCache.EvictionPolicy.LRU);
+        cache.put("a", "{}");
+
+        now.set(TTL - 1);
+        assertTrue(cache.get("a").isPresent());
+        now.set(TTL);
+        assertTrue(cache.get("a").isEmpty());
+        assertEquals(0, cache.size());
+        assertEquals(1L, cache.stats().get("expirations"));
+    }
+
+    @Test
+    @DisplayName("LRU evicts the least recently used entry")
+    void put_evictsLeastRecentlyUsed() {
+        AIResponseCache cache = cache(2, AIResponseCache.EvictionPolicy.LRU);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.get("a");
+
+        cache.put("c", "C");
+
+        assertTrue(cache.get("a").isPresent());
+        assertTrue(cache.get("b").isEmpty());
+        assertTrue(cache.get("c").isPresent());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    @DisplayName("LFU evicts the least frequently used entry")
+    void put_evictsLeastFrequentlyUsed() {
+        AIResponseCache cache = cache(2, AIResponseCache.EvictionPolicy.LFU);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+
+        cache.put("c", "C");
+
+        assertTrue(cache.get("a").isPresent());
+        assertTrue(cache.get("b").isEmpty());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    @DisplayName("expired entries are purged before evicting live ones")
+    void put_prefersPurgingExpired() {
+        AIResponseCache cache = cache(2, AIResponseCache.EvictionPolicy.LRU);
+        cache.put("a", "A");
+        now.set(TTL / 2);
+        cache.put("b", "B");
+        now.set(TTL);
+
+        cache.put("c", "C");
+
+        assertTrue(cache.get("b").isPresent());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    @DisplayName("a zero size disables caching")
+    void disabledCache_neverStores() {
+        AIResponseCache cache = cache(0, AIResponseCache.EvictionPolicy.LRU);
+        cache.put("a", "A");
+
+        assertTrue(cache.get("a").isEmpty());
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.nutriflow.service.ai;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link AIUsageMetrics} and {@link ClientContext}.
+ * A manual clock stands in for time, so call latencies are simulated.
+ */
+class AIUsageMetricsTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final AIUsageMetrics usage = new AIUsageMetrics(2, TimeUnit.MINUTES.toNanos(10), now::get);
+
+    @Test
+    @DisplayName("records calls, errors, latency and tokens per client, prompt kind and model")
+    void recordCall_accountsPerClientKindAndModel() {
+        call("web", PromptKind.PLAN, "quality", TimeUnit.MILLISECONDS.toNanos(800), 100, 400);
+        call("web", PromptKind.PLAN, "quality", TimeUnit.MILLISECONDS.toNanos(1_200), 100, 600);
+        assertThrows(IllegalStateException.class, () -> usage.recordCall("web", PromptKind.PLAN, "quality",
+                () -> {
+                    throw new IllegalStateException("model error");
+                }));
+        usage.recordParseFailure("web", PromptKind.PLAN, "quality");
+        usage.recordCoalesced("web", PromptKind.PLAN);
+        usage.recordPoolHit("web", PromptKind.USER);
+
+        Map<String, Object> client = usage.stats("web");
+        Map<?, ?> prompts = (Map<?, ?>) client.get("prompts");
+        Map<?, ?> plan = (Map<?, ?>) prompts.get("plan");
+        Map<?, ?> quality = (Map<?, ?>) ((Map<?, ?>) plan.get("models")).get("quality");
+        Map<?, ?> histogram = (Map<?, ?>) quality.get("latencyHistogramMs");
+
+        assertEquals(3L, client.get("calls"));
+        assertEquals(1_200L, client.get("totalTokens"));
+        assertEquals(List.of("user", "plan"), List.copyOf(prompts.keySet()));
+        assertEquals(1L, plan.get("coalesced"));
+        assertEquals(3L, quality.get("calls"));
+        assertEquals(1L, quality.get("errors"));
+        assertEquals(1L, quality.get("parseFailures"));
+        assertEquals(1_000d, quality.get("avgLatencyMs"));
+        assertEquals(1L, histogram.get("le1000"));
+        assertEquals(1L, histogram.get("le2000"));
+        assertEquals(1L, ((Map<?, ?>) prompts.get("user")).get("poolHits"));
+    }
+
+    @Test
+    @DisplayName("lists the most expensive clients first and folds clients beyond the cap into one")
+    void stats_ranksClientsAndCapsCardinality() {
+        call("cheap", PromptKind.INGREDIENT, "fast", 0, 10, 10);
+        call("costly", PromptKind.USER, "quality", 0, 500, 500);
+        call("late", PromptKind.USER, "quality", 0, 1, 1);
+        usage.recordCacheHit("later", PromptKind.INGREDIENT);
+
+        Map<?, ?> clients = (Map<?, ?>) usage.stats().get("clients");
+
+        assertEquals(List.of("costly", "cheap", AIUsageMetrics.OTHER_CLIENTS), List.copyOf(clients.keySet()));
+        assertEquals(2L, ((Map<?, ?>) clients.get(AIUsageMetrics.OTHER_CLIENTS)).get("totalTokens"));
+        assertTrue(usage.stats("late").isEmpty());
+    }
+
+    @Test
+    @DisplayName("a new client past the cap replaces the client idle the longest")
+    void stats_replacesIdleClient() {
+        call("early", PromptKind.USER, "quality", 0, 30, 30);
+        now.addAndGet(TimeUnit.MINUTES.toNanos(5));
+        call("steady", PromptKind.USER, "quality", 0, 5, 5);
+        call("burst", PromptKind.USER, "quality", 0, 1, 1);
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(6));
+        call("fresh", PromptKind.USER, "quality", 0, 2, 2);
+        call("another", PromptKind.USER, "quality", 0, 3, 3);
+
+        Map<?, ?> clients = (Map<?, ?>) usage.stats().get("clients");
+        assertEquals(List.of(AIUsageMetrics.OTHER_CLIENTS, "steady", "fresh"), List.copyOf(clients.keySet()));
+        Map<?, ?> other = (Map<?, ?>) clients.get(AIUsageMetrics.OTHER_CLIENTS);
+        assertEquals(68L, other.get("totalTokens"));
+        assertEquals(3L, other.get("calls"));
+        assertTrue(usage.stats("early").isEmpty());
+    }
+
+    @Test
+    @DisplayName("concurrent new clients never exceed the cap and no count is lost when clients are replaced")
+    void recordCacheHit_capsAndKeepsCountsUnderContention() throws Exception {
+        AIUsageMetrics churning = new AIUsageMetrics(4, 0, System::nanoTime);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        int threads = 8;
+        int hits = 2_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                tasks.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < hits; i++) {
+                        churning.recordCacheHit("client-" + thread + "-" + (i % 16),
+                                PromptKind.INGREDIENT);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> task : tasks) {
+                task.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Map<String, Object> stats = churning.stats();
+        Map<?, ?> clients = (Map<?, ?>) stats.get("clients");
+        assertTrue(clients.size() <= 5, "tracked " + clients.keySet());
+        long total = 0;
+        for (Object client : clients.values()) {
+            Map<?, ?> prompts = (Map<?, ?>) ((Map<?, ?>) client).get("prompts");
+            Map<?, ?> ingredient = (Map<?, ?>) prompts.get("ingredient");
+            total += ingredient == null ? 0 : (Long) ingredient.get("cacheHits");
+        }
+        assertEquals((long) threads * hits, total);
+    }
+
+    @Test
+    @DisplayName("carries the submitting thread's client over to executor threads")
+    void clientContext_wrapPropagatesClient() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        AtomicReference<String> seen = new AtomicReference<>();
+        try {
+            ClientContext.set("  partner-42 ");
+            Runnable task = ClientContext.wrap(() -> seen.set(ClientContext.current()));
+            ClientContext.clear();
+
+            pool.submit(task).get(5, TimeUnit.SECONDS);
+            assertEquals("partner-42", seen.get());
+            pool.submit(() -> seen.set(ClientContext.current())).get(5, TimeUnit.SECONDS);
+            assertEquals(ClientContext.ANONYMOUS, seen.get());
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(ClientContext.ANONYMOUS, ClientContext.current());
+    }
+
+    private void call(final String client, final PromptKind kind, final String model, final long nanos,
+                      final int promptTokens, final int outputTokens) {
+        usage.recordCall(client, kind, model, () -> {
+            now.addAndGet(nanos);
+            return GenerationResult.builder().text("{}")
+                    .promptTokens(promptTokens).outputTokens(outputTokens).build();
+        });
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.nutriflow.service.ai;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link BoundedExecutor}.
+ */
+class BoundedExecutorTest {
+
+    @Test
+    @DisplayName("never runs more than the configured number of tasks")
+    void execute_capsConcurrency() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            BoundedExecutor executor = new BoundedExecutor(pool, 2);
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger peak = new AtomicInteger();
+            int tasks = 20;
+            CountDownLatch done = new CountDownLatch(tasks);
+
+            for (int i = 0; i < tasks; i++) {
+                executor.execute(() -> {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                });
+            }
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(2, peak.get());
+            // slots are released just after each task body returns
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (executor.getActiveCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(0, executor.getActiveCount());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("a failing task releases its slot")
+    void execute_failureReleasesSlot() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor(Runnable::run, 1);
+        AtomicInteger ran = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> executor.execute(() -> {
+            throw new IllegalStateException("boom");
+        }));
+        executor.execute(ran::incrementAndGet);
+
+        assertEquals(1, ran.get());
+        assertEquals(0, executor.getActiveCount());
+    }
+
+    @Test
+    @DisplayName("a task rejected by the delegate is kept and retried when a slot frees up")
+    void execute_requeuesRejectedTask() {
+        List<Runnable> accepted = new ArrayList<>();
+        AtomicBoolean rejecting = new AtomicBoolean();
+        Executor delegate = task -> {
+            if (rejecting.get()) {
+                throw new RejectedExecutionException("saturated");
+            }
+            accepted.add(task);
+        };
+        BoundedExecutor executor = new BoundedExecutor(delegate, 2);
+        AtomicInteger ran = new AtomicInteger();
+
+        executor.execute(ran::incrementAndGet);
+        rejecting.set(true);
+        assertDoesNotThrow(() -> executor.execute(ran::incrementAndGet));
+        assertEquals(1, executor.getActiveCount());
+
+        rejecting.set(false);
+        accepted.remove(0).run();
+        accepted.remove(0).run();
+
+        assertEquals(2, ran.get());
+        assertEquals(0, executor.getActiveCount());
+    }
+
+    @Test
+    @DisplayName("queued tasks nothing is left to retry go to the stranded-task handler")
+    void execute_handsOffStrandedTasks() {
+        List<Runnable> accepted = new ArrayList<>();
+        AtomicBoolean rejecting = new AtomicBoolean();
+        Executor delegate = task -> {
+            if (rejecting.get()) {
+                throw new RejectedExecutionException("saturated");
+            }
+            accepted.add(task);
+        };
+        List<Runnable> stranded = new ArrayList<>();
+        BoundedExecutor executor = new BoundedExecutor(delegate, 1, stranded::add);
+        Runnable queued = () -> { };
+
+        executor.execute(() -> { });
+        executor.execute(queued);
+        rejecting.set(true);
+        accepted.remove(0).run();
+
+        assertEquals(List.of(queued), stranded);
+        assertEquals(0, executor.getActiveCount());
+    }
+
+    @Test
+    @DisplayName("the caller sees the rejection when nothing is running to retry its task")
+    void execute_rejectsWhenIdle() {
+        BoundedExecutor executor = new BoundedExecutor(task -> {
+            throw new RejectedExecutionException("shut down");
+        }, 2);
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+        assertEquals(0, executor.getActiveCount());
+    }
+
+    @Test
+    @DisplayName("rejects a non-positive concurrency")
+    void constructor_rejectsZero() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new BoundedExecutor(Runnable::run, 0));
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.nutriflow.service.ai;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link LatencyWindow}.
+ */
+class LatencyWindowTest {
+
+    @Test
+    @DisplayName("percentiles use the nearest rank of the recorded samples")
+    void percentile_nearestRank() {
+        LatencyWindow window = new LatencyWindow(100);
+        assertEquals(-1, window.percentile(50));
+        for (int i = 100; i >= 1; i--) {
+            window.record(i);
+        }
+
+        assertEquals(50, window.percentile(50));
+        assertEquals(95, window.percentile(95));
+        assertEquals(100, window.percentile(100));
+        assertEquals(1, window.percentile(0));
+    }
+
+    @Test
+    @DisplayName("new samples replace the oldest once the window is full")
+    void record_overwritesOldest() {
+        LatencyWindow window = new LatencyWindow(3);
+        window.record(900);
+        window.record(10);
+        window.record(20);
+        window.record(30);
+
+        assertEquals(3, window.size());
+        assertEquals(30, window.percentile(100));
+    }
+}
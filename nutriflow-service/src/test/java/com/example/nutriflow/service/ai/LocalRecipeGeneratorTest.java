@@ -0,0 +1,144 @@
+package com.example.nutriflow.service.ai;
+
+import com.example.nutriflow.model.Recipe;
+import com.example.nutriflow.service.repository.RecipeRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.Pageable;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link LocalRecipeGenerator}.
+ */
+class LocalRecipeGeneratorTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private RecipeRepository recipeRepository;
+
+    @BeforeEach
+    void setUp() {
+        recipeRepository = mock(RecipeRepository.class);
+        when(recipeRepository.findPopularRecipes(any(Pageable.class))).thenReturn(List.of(
+                recipe("Lentil Soup", "[{\"ingredient\":\"lentils\",\"quantity\":1,\"unit\":\"cup\"}]"),
+                recipe("Tofu Bowl", "not json"),
+                recipe("Oat Porridge", null)));
+    }
+
+    @Test
+    @DisplayName("emits schema-shaped recipe JSON copied from the catalog")
+    void generateRecipe_copiesCatalogRecipe() throws Exception {
+        LocalRecipeGenerator generator = generator(0, 0);
+
+        GenerationResult result = generator.generateRecipe("Generate a delicious recipe");
+        JsonNode node = objectMapper.readTree(result.getText());
+
+        assertTrue(node.isObject());
+        assertTrue(List.of("Lentil Soup", "Tofu Bowl", "Oat Porridge")
+                .contains(node.get("title").asText()));
+        assertTrue(node.get("ingredients").isArray());
+        assertTrue(node.has("calories"));
+        assertEquals("local", generator.modelName());
+        assertTrue(result.getPromptTokens() > 0);
+        assertTrue(result.getOutputTokens() > 0);
+    }
+
+    @Test
+    @DisplayName("the same prompt always gives the same recipes, one per requested slot")
+    void generateRecipes_isDeterministic() throws Exception {
+        LocalRecipeGenerator generator = generator(0, 0);
+
+        JsonNode first = objectMapper.readTree(
+                generator.generateRecipes("Monday plan", 3).getText());
+        JsonNode second = objectMapper.readTree(
+                generator(0, 0).generateRecipes("Monday plan", 3).getText());
+
+        assertEquals(3, first.size());
+        assertEquals(first, second);
+        assertNotEquals(first.get(0).get("title"), first.get(1).get("title"));
+    }
+
+    @Test
+    @DisplayName("synthesizes recipes when the catalog is empty")
+    void generateRecipe_withoutCatalog() throws Exception {
+        when(recipeRepository.findPopularRecipes(any(Pageable.class))).thenReturn(List.of());
+
+        JsonNode node = objectMapper.readTree(generator(0, 0).generateRecipe("anything").getText());
+
+        assertTrue(node.get("title").asText().startsWith("Local Recipe "));
+        assertEquals(1, node.get("ingredients").size());
+    }
+
+    @Test
+    @DisplayName("concurrent callers load the catalog once, and a failed load is not retried at once")
+    void generateRecipe_loadsCatalogOnce() throws Exception {
+        when(recipeRepository.findPopularRecipes(any(Pageable.class)))
+                .thenThrow(new DataAccessResourceFailureException("down"));
+        LocalRecipeGenerator generator = generator(0, 0);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<GenerationResult>> calls = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                calls.add(pool.submit(() -> generator.generateRecipe("x")));
+            }
+            for (Future<GenerationResult> call : calls) {
+                call.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        verify(recipeRepository, times(1)).findPopularRecipes(any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("fails calls with the configured error rate")
+    void generateRecipe_simulatesErrors() {
+        LocalRecipeGenerator alwaysFails = generator(0, 1);
+
+        assertThrows(IllegalStateException.class, () -> alwaysFails.generateRecipe("x"));
+    }
+
+    @Test
+    @DisplayName("waits for the configured latency")
+    void generateRecipe_simulatesLatency() {
+        LocalRecipeGenerator slow = generator(60, 0);
+
+        long start = System.nanoTime();
+        slow.generateRecipe("x");
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 55);
+    }
+
+    private LocalRecipeGenerator generator(final long latencyMs, final double errorRate) {
+        return new LocalRecipeGenerator(recipeRepository, objectMapper, latencyMs,
+                LocalRecipeGenerator.LatencyDistribution.FIXED, 0.5, errorRate, 50, 7);
+    }
+
+    private static Recipe recipe(final String title, final String ingredients) {
+        Recipe recipe = new Recipe();
+        recipe.setTitle(title);
+        recipe.setIngredients(ingredients);
+        recipe.setCalories(BigDecimal.valueOf(420));
+        recipe.setCookTime(25);
+        return recipe;
+    }
+}
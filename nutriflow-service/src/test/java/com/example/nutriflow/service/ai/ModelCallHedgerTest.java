@@ -0,0 +1,165 @@
+package com.example.nutriflow.service.ai;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ModelCallHedger}.
+ * A few fast calls fill the latency window first, so the hedge delay
+ * settles at its 20 ms floor.
+ */
+class ModelCallHedgerTest {
+
+    private static final long MIN_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("a slow call is hedged and the first attempt cancelled when the hedge wins")
+    void call_hedgesSlowCall() throws Exception {
+        ModelCallHedger hedger = hedger(100);
+        warmUp(hedger);
+        CountDownLatch cancelled = new CountDownLatch(1);
+
+        String result = hedger.call(() -> {
+            try {
+                Thread.sleep(5_000);
+                return "slow";
+            } catch (InterruptedException e) {
+                cancelled.countDown();
+                throw new IllegalStateException(e);
+            }
+        }, () -> "hedge");
+
+        assertEquals("hedge", result);
+        assertTrue(cancelled.await(1, TimeUnit.SECONDS));
+        assertEquals(1L, hedger.stats().get("hedgeFired"));
+        assertEquals(1L, hedger.stats().get("hedgeWon"));
+    }
+
+    @Test
+    @DisplayName("calls faster than the hedge delay are never hedged")
+    void call_fastCallIsNotHedged() {
+        ModelCallHedger hedger = hedger(100);
+        warmUp(hedger);
+        AtomicInteger hedges = new AtomicInteger();
+
+        assertEquals("first", hedger.call(() -> "first", () -> "h" + hedges.incrementAndGet()));
+
+        assertEquals(0, hedges.get());
+        assertEquals(0L, hedger.stats().get("hedgeFired"));
+        assertEquals(20d, hedger.stats().get("hedgeDelayMs"));
+    }
+
+    @Test
+    @DisplayName("no call is hedged once the minute's budget is spent")
+    void call_respectsBudget() {
+        ModelCallHedger hedger = hedger(10);
+        warmUp(hedger);
+
+        assertEquals("first", hedger.call(() -> sleepThen(60, "first"), () -> "hedge"));
+
+        assertEquals(0L, hedger.stats().get("hedgeFired"));
+        assertEquals(1L, hedger.stats().get("overBudget"));
+    }
+
+    @Test
+    @DisplayName("a hedge turned away by the limiter leaves the first attempt running")
+    void call_declinedHedgeWaitsForFirstAttempt() {
+        ModelCallHedger hedger = hedger(100);
+        warmUp(hedger);
+
+        String result = hedger.call(() -> sleepThen(60, "first"), () -> {
+            throw new ModelOverloadedException("No spare model capacity", 1);
+        });
+
+        assertEquals("first", result);
+        assertEquals(0L, hedger.stats().get("hedgeFired"));
+        assertEquals(1L, hedger.stats().get("hedgeDeclined"));
+        assertEquals(0L, hedger.stats().get("hedgeWon"));
+    }
+
+    @Test
+    @DisplayName("a declined hedge gives its budget back for the next slow call")
+    void call_declinedHedgeReturnsBudget() {
+        ModelCallHedger hedger = hedger(25);
+        warmUp(hedger);
+
+        hedger.call(() -> sleepThen(60, "first"), () -> {
+            throw new ModelOverloadedException("No spare model capacity", 1);
+        });
+        String result = hedger.call(() -> sleepThen(500, "first"), () -> "hedge");
+
+        assertEquals("hedge", result);
+        assertEquals(1L, hedger.stats().get("hedgeFired"));
+        assertEquals(1L, hedger.stats().get("hedgeDeclined"));
+        assertEquals(0L, hedger.stats().get("overBudget"));
+    }
+
+    @Test
+    @DisplayName("fails with the first attempt's error once every attempt failed")
+    void call_failsWhenBothAttemptsFail() {
+        ModelCallHedger hedger = hedger(100);
+        warmUp(hedger);
+
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> hedger.call(
+                () -> {
+                    sleepThen(60, "first");
+                    throw new IllegalStateException("first failed");
+                },
+                () -> {
+                    throw new ModelOverloadedException("No spare model capacity", 1);
+                }));
+
+        assertEquals("first failed", ex.getMessage());
+    }
+
+    @Test
+    @DisplayName("runs calls directly when disabled or before enough latencies are known")
+    void call_unhedgedWhenDisabledOrCold() {
+        ModelCallHedger disabled = new ModelCallHedger(false, 95, MIN_DELAY_NANOS, 3, 10, 100,
+                pool, System::nanoTime);
+        ModelCallHedger cold = hedger(100);
+
+        assertEquals("first", disabled.call(() -> sleepThen(40, "first"), () -> "hedge"));
+        assertEquals("first", cold.call(() -> sleepThen(40, "first"), () -> "hedge"));
+
+        assertEquals(0L, disabled.stats().get("calls"));
+        assertNull(cold.stats().get("hedgeDelayMs"));
+        assertEquals(0L, cold.stats().get("hedgeFired"));
+    }
+
+    private ModelCallHedger hedger(final double budgetPercent) {
+        return new ModelCallHedger(true, 95, MIN_DELAY_NANOS, 3, 10, budgetPercent,
+                pool, System::nanoTime);
+    }
+
+    private static void warmUp(final ModelCallHedger hedger) {
+        for (int i = 0; i < 3; i++) {
+            hedger.call(() -> "warm", () -> "warm");
+        }
+    }
+
+    private static String sleepThen(final long millis, final String value) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return value;
+    }
+}
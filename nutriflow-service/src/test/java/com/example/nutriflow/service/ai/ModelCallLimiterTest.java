@@ -0,0 +1,198 @@
+package com.example.nutriflow.service.ai;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ModelCallLimiter}.
+ * Model calls are stubbed with suppliers that sleep or block to stand in
+ * for provider latency.
+ */
+class ModelCallLimiterTest {
+
+    @Test
+    @DisplayName("never runs more than max-in-flight calls at once")
+    void call_capsConcurrency() throws Exception {
+        ModelCallLimiter limiter = new ModelCallLimiter(0, 1, 2, 100, 5_000);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger peak = new AtomicInteger();
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                results.add(pool.submit(() -> limiter.call(() -> {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    sleep(20);
+                    running.decrementAndGet();
+                    return "ok";
+                })));
+            }
+            for (Future<String> result : results) {
+                assertEquals("ok", result.get(5, TimeUnit.SECONDS));
+            }
+
+            assertEquals(2, peak.get());
+            assertEquals(12L, limiter.stats().get("admitted"));
+            assertEquals(0, limiter.stats().get("inFlight"));
+            assertTrue((Double) limiter.stats().get("maxWaitMs") > 0);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("spaces calls at the configured rate once the burst is spent")
+    void call_limitsRate() {
+        ModelCallLimiter limiter = new ModelCallLimiter(20, 1, 4, 100, 5_000);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            limiter.call(() -> "ok");
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // one call from the burst, then four more at 50 ms intervals
+        assertTrue(elapsedMs >= 180, "elapsed " + elapsedMs + " ms");
+    }
+
+    @Test
+    @DisplayName("sheds a call at once when the wait queue is full")
+    void call_rejectsWhenQueueFull() throws Exception {
+        ModelCallLimiter limiter = new ModelCallLimiter(0, 1, 1, 1, 5_000);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            Future<String> running = pool.submit(() -> limiter.call(() -> {
+                await(release);
+                return "first";
+            }));
+            waitFor(() -> (Integer) limiter.stats().get("inFlight") == 1);
+            Future<String> queued = pool.submit(() -> limiter.call(() -> "second"));
+            waitFor(() -> limiter.getQueueDepth() == 1);
+
+            long start = System.nanoTime();
+            ModelOverloadedException ex = assertThrows(ModelOverloadedException.class,
+                    () -> limiter.call(() -> "third"));
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertTrue(elapsedMs < 1_000, "rejection took " + elapsedMs + " ms");
+            assertTrue(ex.getRetryAfterSeconds() >= 1);
+            release.countDown();
+            assertEquals("first", running.get(5, TimeUnit.SECONDS));
+            assertEquals("second", queued.get(5, TimeUnit.SECONDS));
+            assertEquals(1L, limiter.stats().get("rejected"));
+            assertEquals(1L, limiter.getShed());
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("sheds a queued call that cannot start within the maximum wait")
+    void call_timesOutInQueue() throws Exception {
+        ModelCallLimiter limiter = new ModelCallLimiter(0, 1, 1, 10, 100);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            Future<String> slow = pool.submit(() -> limiter.call(() -> {
+                await(release);
+                return "slow";
+            }));
+            waitFor(() -> (Integer) limiter.stats().get("inFlight") == 1);
+
+            assertThrows(ModelOverloadedException.class,
+                    () -> limiter.call(() -> "late"));
+
+            release.countDown();
+            assertEquals("slow", slow.get(5, TimeUnit.SECONDS));
+            assertEquals(1L, limiter.stats().get("timedOut"));
+            assertEquals(0, limiter.getQueueDepth());
+            assertEquals("next", limiter.call(() -> "next"));
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("a failing call releases its slot")
+    void call_failureReleasesSlot() {
+        ModelCallLimiter limiter = new ModelCallLimiter(0, 1, 1, 0, 100);
+
+        assertThrows(IllegalStateException.class, () -> limiter.call(() -> {
+            throw new IllegalStateException("provider error");
+        }));
+
+        assertEquals("ok", limiter.call(() -> "ok"));
+        assertEquals(0, limiter.stats().get("inFlight"));
+    }
+
+    @Test
+    @DisplayName("background calls run only while a slot and a token stay spare")
+    void callIfIdle_yieldsToInteractiveCalls() throws Exception {
+        ModelCallLimiter limiter = new ModelCallLimiter(0, 1, 2, 10, 5_000);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            assertEquals("idle", limiter.callIfIdle(() -> "idle"));
+
+            Future<String> busy = pool.submit(() -> limiter.call(() -> {
+                await(release);
+                return "busy";
+            }));
+            waitFor(() -> (Integer) limiter.stats().get("inFlight") == 1);
+
+            assertThrows(ModelOverloadedException.class,
+                    () -> limiter.callIfIdle(() -> "background"));
+            release.countDown();
+            assertEquals("busy", busy.get(5, TimeUnit.SECONDS));
+            assertEquals(1L, limiter.stats().get("deferred"));
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+
+        ModelCallLimiter rated = new ModelCallLimiter(1, 1, 4, 10, 5_000);
+        assertEquals("first", rated.callIfIdle(() -> "first"));
+        assertThrows(ModelOverloadedException.class, () -> rated.callIfIdle(() -> "second"));
+        assertEquals(0, rated.getQueueDepth());
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(final BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.nutriflow.service.ai;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ModelCircuitBreaker}.
+ * A manual clock stands in for time, so call latency and the open
+ * interval are simulated.
+ */
+class ModelCircuitBreakerTest {
+
+    private static final long OPEN_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final long SLOW_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final ModelCircuitBreaker breaker = new ModelCircuitBreaker(
+            10, 4, 50, 80, SLOW_NANOS, OPEN_NANOS, 2, now::get);
+
+    @Test
+    @DisplayName("opens once the failure rate reaches the threshold")
+    void call_opensOnFailureRate() {
+        succeed();
+        fail();
+        succeed();
+        assertEquals(ModelCircuitBreaker.State.CLOSED, breaker.getState());
+
+        fail();
+
+        assertEquals(ModelCircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1L, breaker.stats().get("opened"));
+    }
+
+    @Test
+    @DisplayName("rejects calls while open without running them")
+    void call_rejectsWhileOpen() {
+        trip();
+        AtomicInteger ran = new AtomicInteger();
+
+        CircuitOpenException ex = assertThrows(CircuitOpenException.class,
+                () -> breaker.call(ran::incrementAndGet));
+
+        assertEquals(0, ran.get());
+        assertEquals(30, ex.getRetryAfterSeconds());
+        assertEquals(1L, breaker.stats().get("notPermitted"));
+    }
+
+    @Test
+    @DisplayName("checkPermitted fails fast while open but leaves half-open probes alone")
+    void checkPermitted_rejectsOnlyWhileOpen() {
+        assertDoesNotThrow(breaker::checkPermitted);
+        trip();
+
+        assertThrows(CircuitOpenException.class, breaker::checkPermitted);
+        assertEquals(1L, breaker.stats().get("notPermitted"));
+
+        now.addAndGet(OPEN_NANOS);
+        assertDoesNotThrow(breaker::checkPermitted);
+        succeed();
+        succeed();
+        assertEquals(ModelCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    @DisplayName("opens when most calls are slow even if they succeed")
+    void call_opensOnSlowCalls() {
+        for (int i = 0; i < 4; i++) {
+            breaker.call(() -> {
+                now.addAndGet(SLOW_NANOS + 1);
+                return "late";
+            });
+        }
+
+        assertTrue(breaker.isOpen());
+        assertEquals(100d, breaker.stats().get("slowRatePercent"));
+    }
+
+    @Test
+    @DisplayName("half-open probes close the breaker when they all succeed")
+    void call_closesAfterSuccessfulProbes() {
+        trip();
+        now.addAndGet(OPEN_NANOS);
+        assertEquals(ModelCircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        succeed();
+        assertEquals(ModelCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        succeed();
+
+        assertEquals(ModelCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.stats().get("windowCalls"));
+    }
+
+    @Test
+    @DisplayName("a failed probe reopens the breaker")
+    void call_reopensOnFailedProbe() {
+        trip();
+        now.addAndGet(OPEN_NANOS);
+
+        fail();
+
+        assertEquals(ModelCircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2L, breaker.stats().get("opened"));
+    }
+
+    @Test
+    @DisplayName("only the configured number of probes run while half-open")
+    void call_limitsConcurrentProbes() {
+        trip();
+        now.addAndGet(OPEN_NANOS);
+
+        breaker.call(() -> breaker.call(() -> {
+            assertThrows(CircuitOpenException.class, () -> breaker.call(() -> "third"));
+            return "second";
+        }));
+
+        assertEquals(ModelCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    @DisplayName("calls shed by the limiter are not counted as failures")
+    void call_ignoresShedCalls() {
+        for (int i = 0; i < 6; i++) {
+            assertThrows(ModelOverloadedException.class, () -> breaker.call(() -> {
+                throw new ModelOverloadedException("Model call queue is full", 1);
+            }));
+        }
+
+        assertEquals(ModelCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.stats().get("windowCalls"));
+    }
+
+    private void trip() {
+        for (int i = 0; i < 4; i++) {
+            fail();
+        }
+        assertTrue(breaker.isOpen());
+    }
+
+    private void succeed() {
+        breaker.call(() -> "ok");
+    }
+
+    private void fail() {
+        assertThrows(IllegalStateException.class, () -> breaker.call(() -> {
+            throw new IllegalStateException("model error");
+        }));
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.nutriflow.service.ai;
+
+import com.example.nutriflow.service.ai.ModelRouter.PromptClass;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ModelRouter}.
+ * A manual clock stands in for time, so call latencies are simulated.
+ */
+class ModelRouterTest {
+
+    private static final long SLO_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final StubGenerator quality = new StubGenerator("quality");
+
+    private final ModelRouter router = new ModelRouter(quality, "fast", List.of("SIMPLE"),
+            SLO_NANOS, 95, 25, 20, 4, 3, now::get);
+
+    @Test
+    @DisplayName("sends listed prompt classes to the fast model and the rest to the primary")
+    void route_byPromptClass() {
+        assertEquals("fast", router.route(PromptClass.SIMPLE).modelName());
+        assertEquals("quality", router.route(PromptClass.PERSONALIZED).modelName());
+        assertEquals("quality", router.route(PromptClass.BATCH).modelName());
+        assertEquals(1L, router.stats().get("classRouted"));
+    }
+
+    @Test
+    @DisplayName("falls back to the fast model while the primary breaches its latency SLO, probing it")
+    void route_fallsBackOnSloBreach() {
+        for (int i = 0; i < 4; i++) {
+            call(router.route(PromptClass.BATCH), TimeUnit.SECONDS.toNanos(12));
+        }
+
+        assertEquals(Boolean.TRUE, router.stats().get("primaryBreached"));
+        assertEquals("fast", router.route(PromptClass.BATCH).modelName());
+        assertEquals("fast", router.route(PromptClass.BATCH).modelName());
+        assertEquals("quality", router.route(PromptClass.BATCH).modelName());
+        assertEquals(1L, router.stats().get("probes"));
+
+        for (int i = 0; i < 20; i++) {
+            call(quality, TimeUnit.SECONDS.toNanos(2));
+        }
+        assertEquals("quality", router.route(PromptClass.BATCH).modelName());
+    }
+
+    @Test
+    @DisplayName("keeps the primary when the fast model is failing too")
+    void route_keepsPrimaryWhenFastModelFails() {
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IllegalStateException.class, () -> router.call(quality, backend -> {
+                throw new IllegalStateException("model error");
+            }));
+        }
+        assertEquals("fast", router.route(PromptClass.PERSONALIZED).modelName());
+
+        RecipeGenerator fast = router.route(PromptClass.SIMPLE);
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IllegalStateException.class, () -> router.call(fast, backend -> {
+                throw new IllegalStateException("model error");
+            }));
+        }
+
+        assertEquals("quality", router.route(PromptClass.PERSONALIZED).modelName());
+    }
+
+    @Test
+    @DisplayName("records latency histograms, percentiles and token usage per model")
+    void call_recordsPerModelStats() {
+        call(quality, TimeUnit.MILLISECONDS.toNanos(300));
+        call(quality, TimeUnit.MILLISECONDS.toNanos(1_500));
+        call(quality, TimeUnit.SECONDS.toNanos(90));
+
+        Map<?, ?> models = (Map<?, ?>) router.stats().get("models");
+        Map<?, ?> stats = (Map<?, ?>) models.get("quality");
+        Map<?, ?> histogram = (Map<?, ?>) stats.get("latencyHistogramMs");
+
+        assertEquals(3L, stats.get("calls"));
+        assertEquals(1L, histogram.get("le500"));
+        assertEquals(1L, histogram.get("le2000"));
+        assertEquals(1L, histogram.get("inf"));
+        assertEquals(1_500d, stats.get("p50Ms"));
+        assertEquals(30L, stats.get("promptTokens"));
+        assertEquals(60L, stats.get("outputTokens"));
+    }
+
+    @Test
+    @DisplayName("routes everything to the primary when no fast model is configured")
+    void route_singleModel() {
+        ModelRouter single = new ModelRouter(quality, " ", List.of("SIMPLE"),
+                SLO_NANOS, 95, 25, 20, 4, 3, now::get);
+
+        assertSame(quality, single.route(PromptClass.SIMPLE));
+        assertNull(single.stats().get("fastModel"));
+    }
+
+    private void call(final RecipeGenerator target, final long nanos) {
+        router.call(target, backend -> {
+            now.addAndGet(nanos);
+            return backend.generateRecipe("prompt");
+        });
+    }
+
+    /**
+     * Backend that answers at once and serves any model name.
+     */
+    private static final class StubGenerator implements RecipeGenerator {
+
+        private final String model;
+
+        StubGenerator(final String modelName) {
+            this.model = modelName;
+        }
+
+        @Override
+        public String modelName() {
+            return model;
+        }
+
+        @Override
+        public RecipeGenerator withModel(final String otherModel) {
+            return new StubGenerator(otherModel);
+        }
+
+        @Override
+        public GenerationResult generateRecipe(final String prompt) {
+            return GenerationResult.builder().text("{}").promptTokens(10).outputTokens(20).build();
+        }
+
+        @Override
+        public GenerationResult generateRecipes(final String prompt, final int count) {
+            return generateRecipe(prompt);
+        }
+    }
+}
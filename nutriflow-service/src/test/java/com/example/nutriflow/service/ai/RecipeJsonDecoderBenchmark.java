@@ -0,0 +1,137 @@
+package com.example.nutriflow.service.ai;
+
+import com.example.nutriflow.model.Recipe;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH comparison of the streaming {@link RecipeJsonDecoder} with the
+ * tree-based parsing it replaced ({@link TreeRecipeDecoder}), on payloads
+ * shaped like model responses: one recipe, and a week of batch meals.
+ * Run after {@code mvn test-compile} with the main method or the JMH
+ * runner (see the README); it is not part of the unit test run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecipeJsonDecoderBenchmark {
+
+    private static final String[] INGREDIENTS = {
+        "chicken thigh", "brown rice", "red onion", "garlic", "olive oil",
+        "smoked paprika", "cherry tomatoes", "baby spinach", "lemon",
+        "greek yogurt", "chickpeas", "cumin", "fresh coriander", "feta"
+    };
+
+    /** Ingredients per recipe. */
+    @Param({"8", "16"})
+    private int ingredientCount;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private RecipeJsonDecoder streaming;
+
+    private TreeRecipeDecoder tree;
+
+    private String single;
+
+    private String week;
+
+    @Setup
+    public void setUp() {
+        streaming = new RecipeJsonDecoder(objectMapper.getFactory());
+        tree = new TreeRecipeDecoder(objectMapper);
+        single = recipeJson(1, ingredientCount);
+        StringJoiner recipes = new StringJoiner(",\n", "[\n", "\n]");
+        for (int i = 0; i < 21; i++) {
+            recipes.add(recipeJson(i, ingredientCount));
+        }
+        week = recipes.toString();
+    }
+
+    @Benchmark
+    public Recipe singleStreaming() throws Exception {
+        return streaming.decodeRecipe(single);
+    }
+
+    @Benchmark
+    public Recipe singleTree() throws Exception {
+        return tree.decodeRecipe(single);
+    }
+
+    @Benchmark
+    public List<Recipe> weekStreaming() throws Exception {
+        return streaming.decodeRecipes(week, 21);
+    }
+
+    @Benchmark
+    public List<Recipe> weekTree() throws Exception {
+        return tree.decodeRecipes(week, 21);
+    }
+
+    /**
+     * Builds a pretty-printed recipe as the model returns it.
+     *
+     * @param seed varies the title and quantities
+     * @param ingredientCount number of ingredients
+     * @return the recipe JSON
+     */
+    static String recipeJson(final int seed, final int ingredientCount) {
+        StringJoiner ingredients = new StringJoiner(",\n    ", "[\n    ", "\n  ]");
+        for (int i = 0; i < ingredientCount; i++) {
+            String allergens = i % 5 == 4 ? "\"allergenTags\": [\"dairy\"], " : "";
+            ingredients.add("{\"ingredient\": \"" + INGREDIENTS[(seed + i) % INGREDIENTS.length]
+                    + "\", \"quantity\": " + (1 + (seed + i) % 4) * 0.5
+                    + ", " + allergens + "\"unit\": \"cup\"}");
+        }
+        return "{\n"
+                + "  \"title\": \"Mediterranean Chicken Bowl " + seed + "\",\n"
+                + "  \"cookTime\": " + (20 + seed % 30) + ",\n"
+                + "  \"cuisines\": [\"Mediterranean\", \"Greek\"],\n"
+                + "  \"tags\": [\"high-protein\", \"meal-prep\", \"gluten-free\"],\n"
+                + "  \"ingredients\": " + ingredients + ",\n"
+                + "  \"instructions\": \"1. Season the chicken with paprika, cumin and salt. "
+                + "2. Sear in olive oil until golden, about 6 minutes per side. "
+                + "3. Simmer the rice, then fold in spinach and lemon. "
+                + "4. Serve topped with tomatoes, chickpeas, feta and a spoon of yogurt.\",\n"
+                + "  \"nutrition\": {\"servings\": 2, \"sodiumMg\": 640, \"sugarG\": 7.5, "
+                + "\"summary\": \"Balanced, high in protein\"},\n"
+                + "  \"calories\": " + (520 + seed) + ".5,\n"
+                + "  \"carbohydrates\": 48,\n"
+                + "  \"fat\": 18.25,\n"
+                + "  \"fiber\": 9,\n"
+                + "  \"protein\": 42\n"
+                + "}";
+    }
+
+    /**
+     * Runs the benchmark outside Maven.
+     *
+     * @param args ignored
+     * @throws RunnerException if JMH fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RecipeJsonDecoderBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.nutriflow.service.ai;
+
+import com.example.nutriflow.model.Recipe;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link RecipeJsonDecoder}.
+ * Results are compared with the tree-based {@link TreeRecipeDecoder};
+ * sub-documents are compared as parsed JSON, since the streaming
+ * decoder keeps the model's formatting.
+ */
+class RecipeJsonDecoderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final RecipeJsonDecoder decoder = new RecipeJsonDecoder(objectMapper.getFactory());
+
+    private final TreeRecipeDecoder tree = new TreeRecipeDecoder(objectMapper);
+
+    @Test
+    @DisplayName("decodes the same recipe as the tree-based parser")
+    void decodeRecipe_matchesTreeParser() throws Exception {
+        String json = RecipeJsonDecoderBenchmark.recipeJson(3, 12);
+
+        assertSameRecipe(tree.decodeRecipe(json), decoder.decodeRecipe(json));
+    }
+
+    @Test
+    @DisplayName("copies sub-documents byte for byte, including multi-byte characters")
+    void decodeRecipe_slicesRawSubDocuments() throws Exception {
+        String json = """
+                {"title": "Crème brûlée",
+                 "ingredients": [ {"ingredient": "crème fraîche", "quantity": 1} ],
+                 "nutrition": {"note": "naïve \\"estimate\\""},
+                 "cookTime": "45", "calories": 310.25}""";
+
+        Recipe recipe = decoder.decodeRecipe(json);
+
+        assertEquals("Crème brûlée", recipe.getTitle());
+        assertEquals("[ {\"ingredient\": \"crème fraîche\", \"quantity\": 1} ]", recipe.getIngredients());
+        assertEquals("{\"note\": \"naïve \\\"estimate\\\"\"}", recipe.getNutrition());
+        assertEquals(45, recipe.getCookTime());
+        assertEquals("310.25", recipe.getCalories().toPlainString());
+    }
+
+    @Test
+    @DisplayName("odd field types read as they did through JsonNode")
+    void decodeRecipe_handlesOddTypes() throws Exception {
+        String json = """
+                {"title": {"nested": true}, "cuisines": "fusion", "tags": ["a", 2, null, {"x": 1}],
+                 "ingredients": "see notes", "nutrition": null, "instructions": null,
+                 "protein": "lots", "popularityScore": 7.9, "unknown": [1, [2, {"3": 4}]]}""";
+
+        assertSameRecipe(tree.decodeRecipe(json), decoder.decodeRecipe(json));
+        assertSameRecipe(tree.decodeRecipe("[]"), decoder.decodeRecipe("[]"));
+    }
+
+    @Test
+    @DisplayName("arrays skip untitled elements and stop at the limit")
+    void decodeRecipes_skipsAndLimits() throws Exception {
+        String json = "[1, {\"title\": null}, " + RecipeJsonDecoderBenchmark.recipeJson(1, 2)
+                + ", {\"cookTime\": 5}, " + RecipeJsonDecoderBenchmark.recipeJson(2, 3)
+                + ", " + RecipeJsonDecoderBenchmark.recipeJson(3, 4) + "]";
+
+        List<Recipe> expected = tree.decodeRecipes(json, 2);
+        List<Recipe> actual = decoder.decodeRecipes(json, 2);
+
+        assertEquals(2, actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameRecipe(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    @DisplayName("rejects a list response that is not an array, and invalid JSON")
+    void decodeRecipes_rejectsBadInput() {
+        assertThrows(IllegalStateException.class, () -> decoder.decodeRecipes("{\"title\": \"x\"}", 3));
+        assertThrows(IOException.class, () -> decoder.decodeRecipe("not-json"));
+        assertThrows(IOException.class, () -> decoder.decodeRecipes("[{\"title\": ", 3));
+    }
+
+    private void assertSameRecipe(final Recipe expected, final Recipe actual) throws Exception {
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getCookTime(), actual.getCookTime());
+        assertArrayEquals(expected.getCuisines(), actual.getCuisines());
+        assertArrayEquals(expected.getTags(), actual.getTags());
+        assertEquals(objectMapper.readTree(expected.getIngredients()),
+                objectMapper.readTree(actual.getIngredients()));
+        assertEquals(expected.getInstructions(), actual.getInstructions());
+        if (expected.getNutrition() == null) {
+            assertNull(actual.getNutrition());
+        } else {
+            assertEquals(objectMapper.readTree(expected.getNutrition()),
+                    objectMapper.readTree(actual.getNutrition()));
+        }
+        assertEquals(expected.getCalories(), actual.getCalories());
+        assertEquals(expected.getCarbohydrates(), actual.getCarbohydrates());
+        assertEquals(expected.getFat(), actual.getFat());
+        assertEquals(expected.getFiber(), actual.getFiber());
+        assertEquals(expected.getProtein(), actual.getProtein());
+        assertEquals(expected.getPopularityScore(), actual.getPopularityScore());
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.nutriflow.service.ai;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link RequestCoalescer}.
+ */
+class RequestCoalescerTest {
+
+    private final RequestCoalescer coalescer = new RequestCoalescer(5_000);
+
+    @Test
+    @DisplayName("concurrent callers with the same key share one execution")
+    void execute_coalescesConcurrentCalls() throws Exception {
+        int callers = 8;
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(pool.submit(() -> coalescer.execute("k", () -> {
+                    executions.incrementAndGet();
+                    awaitQuietly(release);
+                    return "value";
+                })));
+            }
+            waitFor(() -> coalescer.getCoalesced() == callers - 1);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("value", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(1, executions.get());
+        assertEquals(0, coalescer.stats().get("inFlight"));
+    }
+
+    @Test
+    @DisplayName("sequential calls each run the work")
+    void execute_releasesKeyAfterCompletion() {
+        AtomicInteger executions = new AtomicInteger();
+
+        coalescer.execute("k", executions::incrementAndGet);
+        coalescer.execute("k", executions::incrementAndGet);
+
+        assertEquals(2, executions.get());
+        assertEquals(0L, coalescer.getCoalesced());
+    }
+
+    @Test
+    @DisplayName("followers receive the leader's exception")
+    void execute_propagatesFailureToFollowers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> leader = pool.submit(() -> coalescer.execute("k", () -> {
+                awaitQuietly(release);
+                throw new IllegalStateException("model down");
+            }));
+            waitFor(() -> (int) coalescer.stats().get("inFlight") == 1);
+            Future<Object> follower = pool.submit(() -> coalescer.execute("k", () -> "unused"));
+            waitFor(() -> coalescer.getCoalesced() == 1);
+            release.countDown();
+
+            for (Future<Object> f : List.of(leader, follower)) {
+                Exception ex = assertThrows(Exception.class, () -> f.get(5, TimeUnit.SECONDS));
+                assertInstanceOf(IllegalStateException.class, ex.getCause());
+                assertEquals("model down", ex.getCause().getMessage());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("followers get their own copy of the leader's result")
+    void execute_copiesResultForFollowers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<String>> leader = pool.submit(() -> coalescer.execute("k", () -> {
+                awaitQuietly(release);
+                return new ArrayList<>(List.of("a"));
+            }, ArrayList::new));
+            waitFor(() -> (int) coalescer.stats().get("inFlight") == 1);
+            Future<List<String>> follower = pool.submit(() -> coalescer.execute("k",
+                () -> new ArrayList<String>(), ArrayList::new));
+            waitFor(() -> coalescer.getCoalesced() == 1);
+            release.countDown();
+
+            List<String> led = leader.get(5, TimeUnit.SECONDS);
+            List<String> followed = follower.get(5, TimeUnit.SECONDS);
+            assertEquals(led, followed);
+            assertNotSame(led, followed);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("followers give up once the maximum wait has passed")
+    void execute_followerTimesOut() throws Exception {
+        RequestCoalescer impatient = new RequestCoalescer(50);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = pool.submit(() -> impatient.execute("k", () -> {
+                awaitQuietly(release);
+                return "value";
+            }));
+            waitFor(() -> (int) impatient.stats().get("inFlight") == 1);
+            Future<String> follower = pool.submit(() -> impatient.execute("k", () -> "unused"));
+
+            Exception ex = assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(ModelOverloadedException.class, ex.getCause());
+            assertEquals(1L, impatient.stats().get("timedOut"));
+
+            release.countDown();
+            assertEquals("value", leader.get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void awaitQuietly(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(final java.util.function.BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not reached");
+            Thread.sleep(5);
+        }
+    }
+}
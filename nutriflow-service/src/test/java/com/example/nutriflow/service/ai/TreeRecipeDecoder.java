@@ -0,0 +1,90 @@
+package com.example.nutriflow.service.ai;
+
+import com.example.nutriflow.model.Recipe;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The tree-based recipe parsing that {@link RecipeJsonDecoder} replaced:
+ * the response is read into a {@link JsonNode} and the ingredients and
+ * nutrition subtrees are written back to strings. Kept as the reference
+ * for equivalence tests and the baseline of
+ * {@link RecipeJsonDecoderBenchmark}.
+ */
+final class TreeRecipeDecoder {
+
+    private final ObjectMapper objectMapper;
+
+    TreeRecipeDecoder(final ObjectMapper mapper) {
+        this.objectMapper = mapper;
+    }
+
+    Recipe decodeRecipe(final String json) throws JsonProcessingException {
+        return parseRecipe(objectMapper.readTree(json));
+    }
+
+    List<Recipe> decodeRecipes(final String json, final int limit)
+            throws JsonProcessingException {
+        JsonNode array = objectMapper.readTree(json);
+        if (array == null || !array.isArray()) {
+            throw new IllegalStateException("Recipe list response is not an array");
+        }
+        List<Recipe> recipes = new ArrayList<>();
+        for (JsonNode node : array) {
+            if (recipes.size() >= limit) {
+                break;
+            }
+            if (node.isObject() && node.hasNonNull("title")) {
+                recipes.add(parseRecipe(node));
+            }
+        }
+        return recipes;
+    }
+
+    private Recipe parseRecipe(final JsonNode node) throws JsonProcessingException {
+        Recipe recipe = new Recipe();
+        recipe.setTitle(node.path("title").asText(null));
+        if (node.hasNonNull("cookTime")) {
+            recipe.setCookTime(node.get("cookTime").asInt());
+        }
+        recipe.setCuisines(readStringArray(node.get("cuisines")));
+        recipe.setTags(readStringArray(node.get("tags")));
+        recipe.setIngredients(writeJsonOrEmpty(node.get("ingredients")));
+        recipe.setInstructions(node.path("instructions").asText(null));
+        if (node.hasNonNull("nutrition")) {
+            recipe.setNutrition(writeJsonOrEmpty(node.get("nutrition")));
+        }
+        recipe.setCalories(readDecimal(node, "calories"));
+        recipe.setCarbohydrates(readDecimal(node, "carbohydrates"));
+        recipe.setFat(readDecimal(node, "fat"));
+        recipe.setFiber(readDecimal(node, "fiber"));
+        recipe.setProtein(readDecimal(node, "protein"));
+        if (node.hasNonNull("popularityScore")) {
+            recipe.setPopularityScore(node.get("popularityScore").asInt());
+        }
+        return recipe;
+    }
+
+    private static String[] readStringArray(final JsonNode node) {
+        if (node == null || !node.isArray()) {
+            return null;
+        }
+        List<String> values = new ArrayList<>();
+        node.forEach(item -> values.add(item.asText()));
+        return values.toArray(String[]::new);
+    }
+
+    private String writeJsonOrEmpty(final JsonNode node) throws JsonProcessingException {
+        return (node == null || node.isNull()) ? "{}" : objectMapper.writeValueAsString(node);
+    }
+
+    private static BigDecimal readDecimal(final JsonNode node, final String field) {
+        JsonNode valueNode = node.get(field);
+        return valueNode != null && valueNode.isNumber() ? valueNode.decimalValue() : null;
+    }
+}
@@ -134,9 +134,16 @@ CREATE TABLE IF NOT EXISTS recipes (
     fat DECIMAL(7,2),
     fiber DECIMAL(7,2),
     protein DECIMAL(7,2),
-    popularity_score INTEGER DEFAULT 0
+    popularity_score INTEGER DEFAULT 0,
+    canonical_hash VARCHAR(64)         -- set on generated recipes only
 );
 
+-- generated recipes are unique on the hash of title and ingredient names
+ALTER TABLE nutriflow.recipes
+    ADD COLUMN IF NOT EXISTS canonical_hash VARCHAR(64);
+CREATE UNIQUE INDEX IF NOT EXISTS recipes_canonical_hash_idx
+    ON nutriflow.recipes (canonical_hash);
+
 --
 -- create table 'favorite_recipes'
 --
@@ -177,4 +184,24 @@ CREATE TABLE IF NOT EXISTS nutriflow.substitution_rules (
     avoid TEXT,              -- nullable; null means general rule
     substitute TEXT NOT NULL,
     note TEXT
-);
\ No newline at end of file
+);
+
+-- 
+-- create table client_usage (aggregated API usage per client, route and status)
+--
+CREATE TABLE IF NOT EXISTS nutriflow.client_usage (
+    usage_id BIGSERIAL PRIMARY KEY,
+    window_start TIMESTAMP NOT NULL,   -- UTC
+    client_id VARCHAR(255) NOT NULL,
+    route VARCHAR(255) NOT NULL,
+    status INTEGER NOT NULL,
+    request_count BIGINT NOT NULL,
+    end_user_count INTEGER NOT NULL,
+    total_latency_ms BIGINT NOT NULL,
+    max_latency_ms BIGINT NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS client_usage_window_idx
+    ON nutriflow.client_usage (window_start);
+CREATE INDEX IF NOT EXISTS client_usage_client_window_idx
+    ON nutriflow.client_usage (client_id, window_start);